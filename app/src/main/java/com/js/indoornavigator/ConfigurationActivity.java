@@ -2,6 +2,7 @@ package com.js.indoornavigator;
 
 
 import android.app.Activity;
+import android.bluetooth.le.ScanSettings;
 import android.content.Context;
 import android.view.View.OnClickListener;
 import android.content.SharedPreferences;
@@ -9,6 +10,11 @@ import android.os.Bundle;
 import android.view.View;
 
 import android.widget.CheckBox;
+import android.widget.EditText;
+import android.widget.LinearLayout;
+import android.widget.RadioGroup;
+
+import java.util.Arrays;
 
 
 public class ConfigurationActivity extends Activity {
@@ -16,17 +22,35 @@ public class ConfigurationActivity extends Activity {
     private SharedPreferences sharedPreferences;
     private SharedPreferences.Editor edit;
 
-    // Boolean references for check boxes
-    boolean highestRssi;
-    boolean density1;
-    boolean density2;
-    boolean bayes;
+    // Whether each positioning method of PositionEstimators is selected, and its check box, by
+    // mode; methods without a preference key have no check box
+    boolean[] methods;
+    CheckBox[] methodCheckBoxes;
+
+    // With the ensemble several methods can be selected and run together
+    CheckBox ensembleCheckBox;
+
+    // Scan settings
+    int scanMode;
+    int reportDelay;
+    RadioGroup scanModeRadioGroup;
+    EditText reportDelayEditText;
+    int beaconTtl;
+    EditText beaconTtlEditText;
+
+    // Scan recording
+    CheckBox recordScansCheckBox;
 
-    // References to check boxes
-    CheckBox highestRssiCheckBox;
-    CheckBox density1CheckBox;
-    CheckBox density2CheckBox;
-    CheckBox bayesCheckBox;
+    // Drawing
+    CheckBox cacheFloorPlanCheckBox;
+    CheckBox debugOverlayCheckBox;
+    CheckBox adaptiveScanCheckBox;
+    int framesPerSecond;
+    RadioGroup framesPerSecondRadioGroup;
+
+    // RSSI filter
+    int rssiFilter;
+    RadioGroup rssiFilterRadioGroup;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -36,57 +60,81 @@ public class ConfigurationActivity extends Activity {
         sharedPreferences = getSharedPreferences(getString(R.string.pref_file_key), Context.MODE_PRIVATE);
         edit = sharedPreferences.edit();
 
-        // Get boolean values from shared preferences
-        highestRssi = sharedPreferences.getBoolean(getString(R.string.highestRssiKey), false);
-        density1= sharedPreferences.getBoolean(getString(R.string.density1Key), false);
-        density2 = sharedPreferences.getBoolean(getString(R.string.density2Key), false);
-        bayes = sharedPreferences.getBoolean(getString(R.string.bayesKey), false);
+        scanMode = sharedPreferences.getInt(getString(R.string.scanModeKey),
+                ScanSettings.SCAN_MODE_LOW_LATENCY);
+        reportDelay = sharedPreferences.getInt(getString(R.string.reportDelayKey), 0);
+        beaconTtl = sharedPreferences.getInt(getString(R.string.beaconTtlKey),
+                NavigatorView.DEFAULT_BEACON_TTL_SECONDS);
+        rssiFilter = sharedPreferences.getInt(getString(R.string.rssiFilterKey),
+                RssiFilterBank.FILTER_NONE);
+        framesPerSecond = sharedPreferences.getInt(getString(R.string.framesPerSecondKey),
+                NavigatorView.DEFAULT_FRAMES_PER_SECOND);
 
-        highestRssiCheckBox = (CheckBox) findViewById(R.id.highestRssiCheckBox);
-        density1CheckBox = (CheckBox) findViewById(R.id.density1CheckBox);
-        density2CheckBox = (CheckBox) findViewById(R.id.density2CheckBox);
-        bayesCheckBox = (CheckBox) findViewById(R.id.bayesCheckBox);
+        // One check box per positioning method, in the order of the table
+        int modeCount = PositionEstimators.getCount();
+        methods = new boolean[modeCount];
+        methodCheckBoxes = new CheckBox[modeCount];
+        LinearLayout methodLayout = (LinearLayout) findViewById(R.id.methodLayout);
+        for (int mode = 0; mode < modeCount; mode++) {
+            String key = PositionEstimators.getKey(mode);
+            if (key == null) {
+                continue;
+            }
+            methods[mode] = sharedPreferences.getBoolean(key, false);
 
-        highestRssiCheckBox.setOnClickListener(highestRssiCheckBoxListener);
-        density1CheckBox.setOnClickListener(density1CheckBoxListener);
-        density2CheckBox.setOnClickListener(density2CheckBoxListener);
-        bayesCheckBox.setOnClickListener(bayesCheckBoxListener);
+            CheckBox checkBox = (CheckBox) getLayoutInflater().inflate(
+                    R.layout.method_check_box, methodLayout, false);
+            checkBox.setText(PositionEstimators.getName(mode));
+            checkBox.setOnClickListener(createMethodCheckBoxListener(mode));
+            methodLayout.addView(checkBox);
+            methodCheckBoxes[mode] = checkBox;
+        }
 
-    }
+        ensembleCheckBox = (CheckBox) findViewById(R.id.ensembleCheckBox);
+        ensembleCheckBox.setChecked(
+                sharedPreferences.getBoolean(getString(R.string.ensembleKey), false));
+        ensembleCheckBox.setOnClickListener(ensembleCheckBoxListener);
 
-    public OnClickListener highestRssiCheckBoxListener = new OnClickListener() {
-        @Override
-        public void onClick(View v) {
-            setFalse();
-            highestRssi = true;
-            updateCheckBoxes();
-        }
-    };
+        scanModeRadioGroup = (RadioGroup) findViewById(R.id.scanModeRadioGroup);
+        reportDelayEditText = (EditText) findViewById(R.id.reportDelayEditText);
+        reportDelayEditText.setText(String.valueOf(reportDelay));
+        beaconTtlEditText = (EditText) findViewById(R.id.beaconTtlEditText);
+        beaconTtlEditText.setText(String.valueOf(beaconTtl));
+        rssiFilterRadioGroup = (RadioGroup) findViewById(R.id.rssiFilterRadioGroup);
+        recordScansCheckBox = (CheckBox) findViewById(R.id.recordScansCheckBox);
+        recordScansCheckBox.setChecked(
+                sharedPreferences.getBoolean(getString(R.string.recordScansKey), false));
+        cacheFloorPlanCheckBox = (CheckBox) findViewById(R.id.cacheFloorPlanCheckBox);
+        cacheFloorPlanCheckBox.setChecked(
+                sharedPreferences.getBoolean(getString(R.string.cacheFloorPlanKey), true));
+        debugOverlayCheckBox = (CheckBox) findViewById(R.id.debugOverlayCheckBox);
+        debugOverlayCheckBox.setChecked(
+                sharedPreferences.getBoolean(getString(R.string.debugOverlayKey), false));
+        adaptiveScanCheckBox = (CheckBox) findViewById(R.id.adaptiveScanCheckBox);
+        adaptiveScanCheckBox.setChecked(
+                sharedPreferences.getBoolean(getString(R.string.adaptiveScanKey), true));
+        framesPerSecondRadioGroup = (RadioGroup) findViewById(R.id.framesPerSecondRadioGroup);
 
-    public OnClickListener density1CheckBoxListener = new OnClickListener() {
-        @Override
-        public void onClick(View v) {
-            setFalse();
-            density1 = true;
-            updateCheckBoxes();
-        }
-    };
+    }
 
-    public OnClickListener density2CheckBoxListener = new OnClickListener() {
-        @Override
-        public void onClick(View v) {
-            setFalse();
-            density2 = true;
-            updateCheckBoxes();
-        }
-    };
+    private OnClickListener createMethodCheckBoxListener(final int mode) {
+        return new OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                boolean checked = methodCheckBoxes[mode].isChecked();
+                setFalseUnlessEnsemble();
+                methods[mode] = checked || !ensembleCheckBox.isChecked();
+                updateCheckBoxes();
+            }
+        };
+    }
 
-    public OnClickListener bayesCheckBoxListener = new OnClickListener() {
+    public OnClickListener ensembleCheckBoxListener = new OnClickListener() {
         @Override
         public void onClick(View v) {
-            setFalse();
-            bayes = true;
-            updateCheckBoxes();
+            if (!ensembleCheckBox.isChecked()) {
+                keepFirstMethod();
+            }
         }
     };
 
@@ -95,6 +143,9 @@ public class ConfigurationActivity extends Activity {
         super.onResume();
 
         updateCheckBoxes();
+        scanModeRadioGroup.check(getScanModeRadioButtonId());
+        rssiFilterRadioGroup.check(getRssiFilterRadioButtonId());
+        framesPerSecondRadioGroup.check(getFramesPerSecondRadioButtonId());
 
     }
 
@@ -102,24 +153,151 @@ public class ConfigurationActivity extends Activity {
     protected void onPause() {
         super.onPause();
 
-        edit.putBoolean(getString(R.string.highestRssiKey), highestRssi);
-        edit.putBoolean(getString(R.string.density1Key), density1);
-        edit.putBoolean(getString(R.string.density2Key), density2);
-        edit.putBoolean(getString(R.string.bayesKey), bayes);
+        for (int mode = 0; mode < methods.length; mode++) {
+            String key = PositionEstimators.getKey(mode);
+            if (key != null) {
+                edit.putBoolean(key, methods[mode]);
+            }
+        }
+        edit.putBoolean(getString(R.string.ensembleKey), ensembleCheckBox.isChecked());
+
+        scanMode = getCheckedScanMode();
+        reportDelay = getReportDelay();
+        edit.putInt(getString(R.string.scanModeKey), scanMode);
+        edit.putInt(getString(R.string.reportDelayKey), reportDelay);
+        beaconTtl = getBeaconTtl();
+        edit.putInt(getString(R.string.beaconTtlKey), beaconTtl);
+
+        rssiFilter = getCheckedRssiFilter();
+        edit.putInt(getString(R.string.rssiFilterKey), rssiFilter);
+        edit.putBoolean(getString(R.string.recordScansKey), recordScansCheckBox.isChecked());
+        edit.putBoolean(getString(R.string.cacheFloorPlanKey), cacheFloorPlanCheckBox.isChecked());
+        edit.putBoolean(getString(R.string.debugOverlayKey), debugOverlayCheckBox.isChecked());
+        edit.putBoolean(getString(R.string.adaptiveScanKey), adaptiveScanCheckBox.isChecked());
+        framesPerSecond = getCheckedFramesPerSecond();
+        edit.putInt(getString(R.string.framesPerSecondKey), framesPerSecond);
         edit.commit();
     }
 
+    private int getCheckedScanMode() {
+        switch (scanModeRadioGroup.getCheckedRadioButtonId()) {
+            case R.id.lowPowerRadioButton:
+                return ScanSettings.SCAN_MODE_LOW_POWER;
+            case R.id.balancedRadioButton:
+                return ScanSettings.SCAN_MODE_BALANCED;
+            default:
+                return ScanSettings.SCAN_MODE_LOW_LATENCY;
+        }
+    }
+
+    private int getScanModeRadioButtonId() {
+        switch (scanMode) {
+            case ScanSettings.SCAN_MODE_LOW_POWER:
+                return R.id.lowPowerRadioButton;
+            case ScanSettings.SCAN_MODE_BALANCED:
+                return R.id.balancedRadioButton;
+            default:
+                return R.id.lowLatencyRadioButton;
+        }
+    }
+
+    private int getCheckedRssiFilter() {
+        switch (rssiFilterRadioGroup.getCheckedRadioButtonId()) {
+            case R.id.emaFilterRadioButton:
+                return RssiFilterBank.FILTER_EMA;
+            case R.id.kalmanFilterRadioButton:
+                return RssiFilterBank.FILTER_KALMAN;
+            case R.id.medianFilterRadioButton:
+                return RssiFilterBank.FILTER_MEDIAN;
+            default:
+                return RssiFilterBank.FILTER_NONE;
+        }
+    }
+
+    private int getRssiFilterRadioButtonId() {
+        switch (rssiFilter) {
+            case RssiFilterBank.FILTER_EMA:
+                return R.id.emaFilterRadioButton;
+            case RssiFilterBank.FILTER_KALMAN:
+                return R.id.kalmanFilterRadioButton;
+            case RssiFilterBank.FILTER_MEDIAN:
+                return R.id.medianFilterRadioButton;
+            default:
+                return R.id.noFilterRadioButton;
+        }
+    }
+
+    // 0 draws on the UI thread
+    private int getCheckedFramesPerSecond() {
+        switch (framesPerSecondRadioGroup.getCheckedRadioButtonId()) {
+            case R.id.uiThreadRadioButton:
+                return 0;
+            case R.id.render30RadioButton:
+                return 30;
+            default:
+                return 60;
+        }
+    }
+
+    private int getFramesPerSecondRadioButtonId() {
+        switch (framesPerSecond) {
+            case 0:
+                return R.id.uiThreadRadioButton;
+            case 30:
+                return R.id.render30RadioButton;
+            default:
+                return R.id.render60RadioButton;
+        }
+    }
+
+    // Returns the report delay entered by the user, limited to what the navigator accepts
+    private int getReportDelay() {
+        try {
+            int delay = Integer.parseInt(reportDelayEditText.getText().toString());
+            return Math.max(0, Math.min(delay, NavigatorView.MAX_REPORT_DELAY_MILLIS));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    // Returns the beacon timeout entered by the user in seconds
+    private int getBeaconTtl() {
+        try {
+            int ttl = Integer.parseInt(beaconTtlEditText.getText().toString());
+            return Math.max(1, Math.min(ttl, NavigatorView.MAX_BEACON_TTL_SECONDS));
+        } catch (NumberFormatException e) {
+            return NavigatorView.DEFAULT_BEACON_TTL_SECONDS;
+        }
+    }
+
     public void updateCheckBoxes() {
-        highestRssiCheckBox.setChecked(highestRssi);
-        density1CheckBox.setChecked(density1);
-        density2CheckBox.setChecked(density2);
-        bayesCheckBox.setChecked(bayes);
+        for (int mode = 0; mode < methods.length; mode++) {
+            if (methodCheckBoxes[mode] != null) {
+                methodCheckBoxes[mode].setChecked(methods[mode]);
+            }
+        }
     }
 
     private void setFalse() {
-        highestRssi = false;
-        density1 = false;
-        density2 = false;
-        bayes = false;
+        Arrays.fill(methods, false);
     }
+
+    // Methods only exclude each other without the ensemble
+    private void setFalseUnlessEnsemble() {
+        if (!ensembleCheckBox.isChecked()) {
+            setFalse();
+        }
+    }
+
+    // Leaves only the first selected method, the one that runs without the ensemble
+    private void keepFirstMethod() {
+        boolean found = false;
+        for (int i = 0; i < methods.length; i++) {
+            methods[i] = methods[i] && !found;
+            found |= methods[i];
+        }
+
+        updateCheckBoxes();
+    }
+
 }
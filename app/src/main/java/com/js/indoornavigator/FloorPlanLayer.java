@@ -0,0 +1,144 @@
+package com.js.indoornavigator;
+
+import android.app.ActivityManager;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+
+// FloorPlanLayer draws the tiles of a FloorPlan that a MapViewport shows. Only tiles already in
+// the cache are drawn; missing tiles are handed to a TileLoader, and a cached tile of a coarser
+// level, scaled up, stands in for them until they are decoded. Drawing does not allocate.
+public class FloorPlanLayer {
+
+    // Share of the app's memory class used for decoded tiles
+    private static final int CACHE_MEMORY_DIVISOR = 8;
+
+    // Bounds the number of cached tiles, however small they are
+    private static final int MAX_CACHED_TILES = 4096;
+
+    private final FloorPlan plan;
+    private final TileCache<Bitmap> cache;
+    private final TileLoader loader;
+    private final Paint tilePaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private final Rect source = new Rect();
+    private final Rect destination = new Rect();
+    private long[] missing = new long[64];
+
+    // onTileLoaded is called on the loader thread whenever a tile can be drawn that could not
+    // be before
+    public FloorPlanLayer(FloorPlan plan, long cacheBytes, Runnable onTileLoaded) {
+        this.plan = plan;
+
+        // Enough entries for the byte budget filled with tiles a quarter of the full size
+        long tileBytes = 2L * plan.getTileSize() * plan.getTileSize();
+        int maxTiles = (int) Math.max(64, Math.min(MAX_CACHED_TILES, 4 * cacheBytes / tileBytes));
+        cache = new TileCache<>(cacheBytes, maxTiles, null);
+        loader = new TileLoader(plan, cache, onTileLoaded);
+    }
+
+    // Bytes of decoded tiles the device can afford to keep, from its memory class
+    public static long getCacheBytes(Context context) {
+        ActivityManager manager = (ActivityManager) context.getSystemService(
+                Context.ACTIVITY_SERVICE);
+        return (long) manager.getMemoryClass() * 1024 * 1024 / CACHE_MEMORY_DIVISOR;
+    }
+
+    public void start() {
+        loader.start();
+    }
+
+    public void stop() {
+        loader.stop();
+    }
+
+    public void draw(Canvas canvas, MapViewport viewport, int width, int height) {
+        int level = plan.selectLevel(viewport.getScale());
+        int firstColumn = Math.max(0, plan.getColumnAt(level, viewport.toMapX(0)));
+        int lastColumn = Math.min(plan.getColumns(level) - 1,
+                plan.getColumnAt(level, viewport.toMapX(width)));
+        int firstRow = Math.max(0, plan.getRowAt(level, viewport.toMapY(0)));
+        int lastRow = Math.min(plan.getRows(level) - 1,
+                plan.getRowAt(level, viewport.toMapY(height)));
+
+        int missingCount = 0;
+        for (int row = firstRow; row <= lastRow; row++) {
+            for (int column = firstColumn; column <= lastColumn; column++) {
+                if (plan.getTileLength(level, column, row) == 0) {
+                    continue;
+                }
+
+                long key = FloorPlan.tileKey(level, column, row);
+                Bitmap tile = cache.get(key);
+                if (tile != null) {
+                    drawTile(canvas, viewport, tile, level, column, row, 0);
+                    continue;
+                }
+
+                if (!cache.contains(key)) {
+                    if (missingCount == missing.length) {
+                        long[] grown = new long[missing.length * 2];
+                        System.arraycopy(missing, 0, grown, 0, missingCount);
+                        missing = grown;
+                    }
+                    missing[missingCount++] = key;
+                }
+                drawFallback(canvas, viewport, level, column, row);
+            }
+        }
+
+        loader.request(missing, missingCount);
+    }
+
+    // Draws the part of the nearest cached coarser tile that covers the tile
+    private void drawFallback(Canvas canvas, MapViewport viewport, int level, int column,
+            int row) {
+        for (int parentLevel = level + 1; parentLevel < plan.getLevelCount(); parentLevel++) {
+            int shift = parentLevel - level;
+            Bitmap parent = cache.get(FloorPlan.tileKey(parentLevel, column >> shift,
+                    row >> shift));
+            if (parent != null) {
+                drawTile(canvas, viewport, parent, level, column, row, shift);
+                return;
+            }
+        }
+    }
+
+    // Draws the tile at column, row of level from a tile bitmap of level + shift
+    private void drawTile(Canvas canvas, MapViewport viewport, Bitmap bitmap, int level,
+            int column, int row, int shift) {
+        int tileSize = plan.getTileSize();
+        int tileWidth = Math.min(tileSize, plan.getWidth(level) - column * tileSize);
+        int tileHeight = Math.min(tileSize, plan.getHeight(level) - row * tileSize);
+
+        // Pixels of the tile within the bitmap
+        int left = (column * tileSize >> shift) - (column >> shift) * tileSize;
+        int top = (row * tileSize >> shift) - (row >> shift) * tileSize;
+        source.set(left, top,
+                Math.min(bitmap.getWidth(), left + ((tileWidth + (1 << shift) - 1) >> shift)),
+                Math.min(bitmap.getHeight(), top + ((tileHeight + (1 << shift) - 1) >> shift)));
+
+        // Edges shared with the next tile are computed the same way for both, so no seams show
+        // between them; only the tiles on the right and bottom edges are narrower
+        float metres = (float) (1 << level) * plan.getMetresPerPixel();
+        float x = plan.getTileX(level, column);
+        float y = plan.getTileY(level, row);
+        float right = tileWidth == tileSize ? plan.getTileX(level, column + 1)
+                : x + tileWidth * metres;
+        float bottom = tileHeight == tileSize ? plan.getTileY(level, row + 1)
+                : y + tileHeight * metres;
+        destination.set(Math.round(viewport.toScreenX(x)), Math.round(viewport.toScreenY(y)),
+                Math.round(viewport.toScreenX(right)), Math.round(viewport.toScreenY(bottom)));
+
+        canvas.drawBitmap(bitmap, source, destination, tilePaint);
+    }
+
+    public FloorPlan getPlan() {
+        return plan;
+    }
+
+    public TileCache<Bitmap> getCache() {
+        return cache;
+    }
+}
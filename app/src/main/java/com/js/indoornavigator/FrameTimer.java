@@ -0,0 +1,50 @@
+package com.js.indoornavigator;
+
+import java.util.Arrays;
+
+// FrameTimer collects the time onDraw takes over windows of WINDOW_FRAMES frames so that
+// drawing changes can be compared on a device. Recording does not allocate; only the summary
+// does, once per window.
+public class FrameTimer {
+
+    public static final int WINDOW_FRAMES = 120;
+
+    // Frame budget at 60 frames per second
+    private static final long FRAME_BUDGET_NANOS = 16666667;
+
+    private final long[] times = new long[WINDOW_FRAMES];
+    private final long[] sorted = new long[WINDOW_FRAMES];
+    private int count;
+
+    // Records the draw time of a frame; returns true when the window is complete and can be
+    // summarized
+    public boolean record(long nanos) {
+        times[count % WINDOW_FRAMES] = nanos;
+        count++;
+        return count % WINDOW_FRAMES == 0;
+    }
+
+    public void reset() {
+        count = 0;
+    }
+
+    // Summary of the last complete window
+    public String summarize(String label) {
+        int frames = Math.min(count, WINDOW_FRAMES);
+        if (frames == 0) {
+            return label + ": no frames";
+        }
+
+        System.arraycopy(times, 0, sorted, 0, frames);
+        Arrays.sort(sorted, 0, frames);
+        long sum = 0;
+        for (int i = 0; i < frames; i++) {
+            sum += sorted[i];
+        }
+
+        return String.format("%s: %d frames, mean %.0f us, p50 %.0f us, p95 %.0f us, max %.0f us "
+                        + "(%.0f%% of the frame budget)", label, frames, sum / 1e3 / frames,
+                sorted[frames / 2] / 1e3, sorted[(int) (frames * 0.95)] / 1e3,
+                sorted[frames - 1] / 1e3, 100.0 * sum / frames / FRAME_BUDGET_NANOS);
+    }
+}
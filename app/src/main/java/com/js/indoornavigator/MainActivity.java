@@ -36,6 +36,13 @@ public class MainActivity extends AppCompatActivity {
         navigatorView.onResume();
     }
 
+    @Override
+    protected void onPause() {
+        super.onPause();
+
+        navigatorView.onPause();
+    }
+
     @Override
     public boolean onCreateOptionsMenu(Menu menu) {
         // Inflate the menu; this adds items to the action bar if it is present.
@@ -53,6 +60,10 @@ public class MainActivity extends AppCompatActivity {
             startActivity(intent);
             return true;
         }
+        else if (id == R.id.action_export_timings) {
+            navigatorView.exportMetrics();
+            return true;
+        }
 
         return super.onOptionsItemSelected(item);
     }
@@ -0,0 +1,737 @@
+package com.js.indoornavigator;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.os.SystemClock;
+import android.util.Log;
+
+// NavigatorRenderer draws the navigator: the floor plan, the quadrants with their live values,
+// the labels of the positioning method and the position marker. It holds all drawing state so
+// that frames can be drawn by NavigatorView.onDraw on the UI thread or by a RenderThread onto a
+// surface. Drawing does not allocate.
+//
+// draw and getOverlayDirtyRegion run on whichever thread draws; the set and invalidate methods
+// may be called from any thread and take effect at the start of the next frame.
+public class NavigatorRenderer {
+
+    private static final String TAG = "IndoorNavigator";
+
+    // Beacons sit in the centre of their quadrant; columns and rows of each quadrant on the
+    // floor plan, and the side of a quadrant in metres
+    static final int[] QUADRANT_COLUMNS = {0, 1, 2, 1, 1};
+    static final int[] QUADRANT_ROWS = {0, 0, 0, 1, 2};
+    static final float QUADRANT_SIZE_METRES = 3;
+
+    // Fields for drawing to canvas
+    static final int QUADRANT_LENGTH = 300;
+    static final int QUADRANT_STROKE_SIZE = 5;
+    private static final int GRID_NUMBER_MARGIN = 40;
+    private static final int GRID_TEXT_MARGIN = 40;
+    private static final int CURRENT_POINT_HORIZONTAL_MARGIN = 150;
+    private static final int CURRENT_POINT_VERTICAL_MARGIN = 100;
+    private static final int LABEL_MARGIN = 100;
+    private static final int POSITION_STROKE_SIZE = 50;
+    private static final int MARKER_RADIUS = POSITION_STROKE_SIZE / 2 + 2;
+
+    // The marker eases towards a new position with this time constant instead of jumping; the
+    // animation ends once it is within half a pixel
+    private static final double MARKER_TIME_CONSTANT_NANOS = 80 * 1000000.0;
+    private static final float MARKER_SNAP_PIXELS = 0.5f;
+
+    // The debug overlay lists the scan schedule and the stage timings at the bottom of the view,
+    // refreshed once a second, since formatting them allocates
+    private static final long METRICS_REFRESH_NANOS = 1000 * 1000000L;
+    private static final int METRICS_LINE_HEIGHT = 40;
+
+    // The marker shows the combined position of the ensemble, the method state that of its
+    // primary engine
+    private final PositioningEnsemble positioningEnsemble;
+    private final PositioningEngine positioningEngine;
+    private final Beacon[] beaconArray;
+    private final PipelineMetrics metrics;
+    private final ScanScheduler scanScheduler;
+
+    // Text drawn on every frame is cached so that drawing does not allocate
+    private static final int MAX_SAMPLE_COUNT_LABEL = 64;
+    private final String[] quadrantLabels;
+    private final String[] previousBeaconLabels;
+    private final String[] currentBeaconLabels;
+    private final LabelCache[] sampleCountLabels;
+    private final LabelCache[] probabilityLabels;
+    private final LabelCache rssiLabels = new LabelCache("RSSI: ", -128, 127);
+    private static final int MAX_RESIDUAL_LABEL_CM = 1000;
+    private final LabelCache iterationLabels = new LabelCache("Iterations: ", 0,
+            TrilaterationSolver.MAX_ITERATIONS);
+    private final LabelCache residualLabels = new LabelCache("Residual: ", " cm", 0,
+            MAX_RESIDUAL_LABEL_CM);
+
+    //Paint objects to draw grids, text, and current position
+    private final Paint gridPaint;
+    private final Paint textPaint;
+    private final Paint positionPaint;
+    private final Paint overlayPaint;
+
+    // State published by other threads for the next frame; viewport and size are guarded by
+    // pendingLock
+    private final Object pendingLock = new Object();
+    private final MapViewport pendingViewport = new MapViewport();
+    private int pendingWidth;
+    private int pendingHeight;
+    private boolean layoutChanged;
+    private volatile FloorPlanLayer floorPlanLayer;
+    private volatile boolean cacheFloorPlan = true;
+    private volatile boolean viewportMoving;
+    private volatile boolean floorPlanDirty;
+    private volatile int groundTruthQuadrant = ScanLogWriter.NO_GROUND_TRUTH;
+    private volatile String timingLabel = "";
+    private volatile boolean debugOverlay;
+
+    // Layout of the current frame: quadrants on screen, laid out from their position in metres
+    private final MapViewport viewport = new MapViewport();
+    private int width;
+    private int height;
+    private final Rect[] quadrantBounds;
+
+    // The static floor plan, the tiles, the quadrant bounds and numbers and the beacon ids, is
+    // drawn once into floorPlan and drawn again only when the layout changes. Only the overlay of
+    // live values and the position marker is drawn on top of it on every frame. Unchecking the
+    // setting draws everything on every frame, to compare frame times.
+    private Bitmap floorPlan;
+    private Canvas floorPlanCanvas;
+
+    // Overlay regions, so that an update invalidates only what changed: the marker as last
+    // drawn, the method labels above the grid and the RSSI of each quadrant
+    private final Rect markerBounds = new Rect();
+    private final Rect labelBounds = new Rect();
+    private final Rect[] rssiBounds;
+    private final int[] drawnRssi;
+
+    // Marker position in metres as drawn, and where it is heading
+    private boolean hasMarker;
+    private float markerX;
+    private float markerY;
+    private float targetX;
+    private float targetY;
+    private long lastFrameNanos;
+
+    private final FrameTimer frameTimer = new FrameTimer();
+    private String timedLabel = "";
+
+    // Debug overlay of the current frame: the method state next to the method label, and the
+    // stage timings and the comparison of the ensemble members in metricsBounds
+    private boolean drawDebug;
+    private final String[] metricsLines =
+            new String[PipelineMetrics.STAGE_COUNT + PositionEstimators.getCount()];
+    private int metricsLineCount;
+    private long metricsRefreshNanos;
+    private final Rect metricsBounds = new Rect();
+
+    // Timestamp of the position last drawn, to time each position from scan to render once
+    private long drawnPositionTimestamp;
+
+    public NavigatorRenderer(PositioningEnsemble positioningEnsemble, Beacon[] beaconArray,
+            PipelineMetrics metrics, ScanScheduler scanScheduler) {
+        this.positioningEnsemble = positioningEnsemble;
+        this.positioningEngine = positioningEnsemble.getPrimary();
+        this.beaconArray = beaconArray;
+        this.metrics = metrics;
+        this.scanScheduler = scanScheduler;
+
+        // Build the labels that are drawn on every frame
+        quadrantLabels = new String[beaconArray.length];
+        previousBeaconLabels = new String[beaconArray.length];
+        currentBeaconLabels = new String[beaconArray.length];
+        sampleCountLabels = new LabelCache[beaconArray.length];
+        probabilityLabels = new LabelCache[beaconArray.length];
+        for (int i = 0; i < beaconArray.length; i++) {
+            quadrantLabels[i] = String.valueOf(i + 1);
+            previousBeaconLabels[i] = "previous beacon: " + beaconArray[i].getId();
+            currentBeaconLabels[i] = "current beacon: " + beaconArray[i].getId();
+            sampleCountLabels[i] = new LabelCache("Beacon " + (i + 1) + "ID: " + beaconArray[i].getId()
+                    + ", Sample Count: ", ". ", 0, MAX_SAMPLE_COUNT_LABEL);
+            probabilityLabels[i] = new LabelCache("Beacon " + (i + 1) + "ID: " + beaconArray[i].getId()
+                    + ", Probability: ", "%", 0, 100);
+        }
+
+        quadrantBounds = new Rect[beaconArray.length];
+        rssiBounds = new Rect[beaconArray.length];
+        drawnRssi = new int[beaconArray.length];
+        for (int i = 0; i < beaconArray.length; i++) {
+            quadrantBounds[i] = new Rect();
+            rssiBounds[i] = new Rect();
+        }
+
+        // Setting up Paint objects
+        gridPaint = new Paint();
+        gridPaint.setStrokeWidth(QUADRANT_STROKE_SIZE);
+        gridPaint.setColor(Color.BLUE);
+        gridPaint.setStyle(Paint.Style.STROKE);
+
+        textPaint = new Paint();
+        textPaint.setTextSize(30);
+        textPaint.setColor(Color.BLACK);
+
+        positionPaint = new Paint();
+        positionPaint.setStrokeWidth(POSITION_STROKE_SIZE);
+        positionPaint.setColor(Color.BLACK);
+
+        overlayPaint = new Paint();
+        overlayPaint.setColor(Color.argb(200, 255, 255, 255));
+    }
+
+    // Quadrant that contains the position x, y in metres, or 0 if there is none
+    public static int getQuadrantAt(float x, float y) {
+        for (int i = 0; i < QUADRANT_COLUMNS.length; i++) {
+            float left = QUADRANT_COLUMNS[i] * QUADRANT_SIZE_METRES;
+            float top = QUADRANT_ROWS[i] * QUADRANT_SIZE_METRES;
+            if (x >= left && x < left + QUADRANT_SIZE_METRES
+                    && y >= top && y < top + QUADRANT_SIZE_METRES) {
+                return i + 1;
+            }
+        }
+
+        return 0;
+    }
+
+    // Size of the view or surface drawn on
+    public void setSize(int width, int height) {
+        synchronized (pendingLock) {
+            pendingWidth = width;
+            pendingHeight = height;
+            layoutChanged = true;
+        }
+    }
+
+    public void setViewport(MapViewport viewport) {
+        synchronized (pendingLock) {
+            pendingViewport.set(viewport.getScale(), viewport.getOffsetX(), viewport.getOffsetY());
+            layoutChanged = true;
+        }
+    }
+
+    public void setFloorPlanLayer(FloorPlanLayer floorPlanLayer) {
+        this.floorPlanLayer = floorPlanLayer;
+        invalidateFloorPlan();
+    }
+
+    public void setCacheFloorPlan(boolean cacheFloorPlan) {
+        this.cacheFloorPlan = cacheFloorPlan;
+        invalidateFloorPlan();
+    }
+
+    // While the map moves the floor plan is drawn directly instead of through its cache
+    public void setViewportMoving(boolean viewportMoving) {
+        this.viewportMoving = viewportMoving;
+        if (!viewportMoving) {
+            invalidateFloorPlan();
+        }
+    }
+
+    public void setGroundTruthQuadrant(int quadrant) {
+        groundTruthQuadrant = quadrant;
+    }
+
+    // Names the drawing setup in the frame time summaries
+    public void setTimingLabel(String label) {
+        timingLabel = label;
+    }
+
+    // Shows the state of the positioning method and the stage timings over the map
+    public void setDebugOverlay(boolean debugOverlay) {
+        this.debugOverlay = debugOverlay;
+        invalidateFloorPlan();
+    }
+
+    // Marks the floor plan for drawing again; call when its layout or tiles change
+    public void invalidateFloorPlan() {
+        floorPlanDirty = true;
+    }
+
+    // Draws a frame; returns true while the marker is still moving, so that another frame
+    // should follow
+    public synchronized boolean draw(Canvas canvas, long frameTimeNanos) {
+        long start = System.nanoTime();
+        applyPending();
+        drawDebug = debugOverlay;
+
+        canvas.drawColor(Color.WHITE);
+        if (cacheFloorPlan && floorPlan != null && !viewportMoving) {
+            if (floorPlanDirty) {
+                renderFloorPlan();
+            }
+            canvas.drawBitmap(floorPlan, 0, 0, null);
+        }
+        else {
+            drawFloorPlan(canvas);
+        }
+        drawLiveValues(canvas);
+
+        boolean animating = animateMarker(frameTimeNanos);
+
+        int mode = positioningEngine.getMode();
+        switch (mode) {
+            case PositioningEngine.MODE_HIGHEST_RSSI:
+                drawHighestRssiMethod(canvas);
+                break;
+            case PositioningEngine.MODE_DENSITY1:
+                drawDensityMethod(canvas, "Density1 Method", PositioningEngine.MODE_DENSITY1);
+                break;
+            case PositioningEngine.MODE_DENSITY2:
+                drawDensityMethod(canvas, "Density2 Method", PositioningEngine.MODE_DENSITY2);
+                break;
+            case PositioningEngine.MODE_BAYES:
+                drawBayesMethod(canvas);
+                break;
+            case PositioningEngine.MODE_FORWARD_FILTER:
+                drawForwardFilterMethod(canvas);
+                break;
+            case PositioningEngine.MODE_PARTICLE_FILTER:
+                drawParticleFilterMethod(canvas);
+                break;
+            case PositioningEngine.MODE_WEIGHTED_CENTROID:
+                drawRangingMethod(canvas, "Weighted Centroid Method", mode);
+                break;
+            case PositioningEngine.MODE_TRILATERATION:
+                drawRangingMethod(canvas, "Trilateration Method", mode);
+                break;
+            case PositioningEngine.MODE_FINGERPRINT:
+                drawFingerprintMethod(canvas);
+                break;
+            case PositioningEngine.MODE_NONE:
+                markerBounds.setEmpty();
+                canvas.drawText("No method selected", LABEL_MARGIN, LABEL_MARGIN, textPaint);
+                break;
+            default:
+                // Methods added to PositionEstimators have no overlay of their own
+                drawPosition(canvas);
+                canvas.drawText(positioningEngine.getName(), LABEL_MARGIN, LABEL_MARGIN,
+                        textPaint);
+                break;
+        }
+
+        if (drawDebug) {
+            drawMetrics(canvas, frameTimeNanos);
+        }
+        else {
+            metricsBounds.setEmpty();
+        }
+
+        // Labels are constants, so comparing references is enough
+        String label = timingLabel;
+        if (label != timedLabel) {
+            timedLabel = label;
+            frameTimer.reset();
+        }
+        long frameNanos = System.nanoTime() - start;
+        if (frameTimer.record(frameNanos)) {
+            Log.d(TAG, frameTimer.summarize(label));
+        }
+        if (metrics != null) {
+            metrics.record(PipelineMetrics.FRAME, frameNanos);
+            recordScanToRender();
+        }
+
+        return animating;
+    }
+
+    // Sets dirty to the part of the overlay that the next frame changes: the marker where it was
+    // last drawn and where it is heading, the method labels and the RSSI values that changed.
+    // Returns false if the whole frame must be drawn.
+    public synchronized boolean getOverlayDirtyRegion(Rect dirty) {
+        synchronized (pendingLock) {
+            if (layoutChanged) {
+                return false;
+            }
+        }
+        if (!cacheFloorPlan || floorPlan == null || viewportMoving || floorPlanDirty) {
+            return false;
+        }
+
+        dirty.set(labelBounds);
+        if (!metricsBounds.isEmpty()) {
+            dirty.union(metricsBounds);
+        }
+        if (!markerBounds.isEmpty()) {
+            dirty.union(markerBounds);
+        }
+        if (locateTarget()) {
+            float x = viewport.toScreenX(targetX);
+            float y = viewport.toScreenY(targetY);
+            dirty.union((int) x - MARKER_RADIUS, (int) y - MARKER_RADIUS,
+                    (int) x + MARKER_RADIUS + 1, (int) y + MARKER_RADIUS + 1);
+        }
+
+        BeaconRegistry registry = positioningEngine.getRegistry();
+        for (int i = 0; i < rssiBounds.length; i++) {
+            if (registry.getRssi(i) != drawnRssi[i]) {
+                dirty.union(rssiBounds[i]);
+            }
+        }
+
+        return true;
+    }
+
+    private void applyPending() {
+        boolean resized = false;
+        synchronized (pendingLock) {
+            if (!layoutChanged) {
+                return;
+            }
+
+            viewport.set(pendingViewport.getScale(), pendingViewport.getOffsetX(),
+                    pendingViewport.getOffsetY());
+            resized = pendingWidth != width || pendingHeight != height;
+            width = pendingWidth;
+            height = pendingHeight;
+            layoutChanged = false;
+        }
+
+        layoutQuadrants();
+        floorPlanDirty = true;
+
+        // The cached floor plan covers the whole view
+        if (resized) {
+            if (floorPlan != null) {
+                floorPlan.recycle();
+                floorPlan = null;
+            }
+            if (width > 0 && height > 0) {
+                floorPlan = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+                floorPlanCanvas = new Canvas(floorPlan);
+            }
+        }
+    }
+
+    // Places the quadrants, the RSSI line of each and the method labels on screen
+    private void layoutQuadrants() {
+        for (int i = 0; i < quadrantBounds.length; i++) {
+            float left = QUADRANT_COLUMNS[i] * QUADRANT_SIZE_METRES;
+            float top = QUADRANT_ROWS[i] * QUADRANT_SIZE_METRES;
+            Rect rect = quadrantBounds[i];
+            rect.set(Math.round(viewport.toScreenX(left)), Math.round(viewport.toScreenY(top)),
+                    Math.round(viewport.toScreenX(left + QUADRANT_SIZE_METRES)) - QUADRANT_STROKE_SIZE,
+                    Math.round(viewport.toScreenY(top + QUADRANT_SIZE_METRES)) - QUADRANT_STROKE_SIZE);
+
+            int baseline = rect.bottom - (GRID_TEXT_MARGIN * 3);
+            rssiBounds[i].set(rect.left, baseline + (int) Math.floor(textPaint.ascent()),
+                    rect.right, baseline + (int) Math.ceil(textPaint.descent()));
+        }
+
+        labelBounds.set(0, 0, width, QUADRANT_LENGTH);
+    }
+
+    private void renderFloorPlan() {
+        floorPlanDirty = false;
+        floorPlan.eraseColor(Color.TRANSPARENT);
+        drawFloorPlan(floorPlanCanvas);
+    }
+
+    // Method 1 uses the current highest RSSI value to calculate the current position of the device
+    private void drawHighestRssiMethod(Canvas canvas) {
+
+        // Draw current position onto canvas
+        drawPosition(canvas);
+
+        // Label for current method in use
+        canvas.drawText("Highest RSSI Method", LABEL_MARGIN, LABEL_MARGIN, textPaint);
+    }
+
+    // Density methods use the beacon that appears most often in a sample of highest RSSI beacons
+    private void drawDensityMethod(Canvas canvas, String label, int mode) {
+
+        // Draw current position onto canvas
+        drawPosition(canvas);
+
+        // Label for current method in use
+        canvas.drawText(label, LABEL_MARGIN, LABEL_MARGIN - 50, textPaint);
+
+        if (!drawDebug) {
+            return;
+        }
+
+        // Window of the method: how often each beacon was the highest
+        PositionEstimator estimator = positioningEngine.getEstimator(mode);
+        if (!(estimator instanceof DensityEstimator)) {
+            return;
+        }
+        SlidingWindowModeEstimator window = ((DensityEstimator) estimator).getWindow();
+        for (int i = 0; i < beaconArray.length; i++) {
+            canvas.drawText(sampleCountLabels[i].get(window.getCount(i)),
+                    LABEL_MARGIN, LABEL_MARGIN + (40 * i), textPaint);
+        }
+    }
+
+    // Bayes method only accepts positions that neighbor the previous position
+    private void drawBayesMethod(Canvas canvas) {
+
+        drawPosition(canvas);
+
+        if (!drawDebug) {
+            canvas.drawText("Bayes Method", LABEL_MARGIN, LABEL_MARGIN, textPaint);
+            return;
+        }
+
+        // The beacons the last move was checked between
+        PositionEstimator estimator = positioningEngine.getEstimator(PositioningEngine.MODE_BAYES);
+        if (!(estimator instanceof BayesEstimator)) {
+            return;
+        }
+        int previousBeacon = ((BayesEstimator) estimator).getPreviousBeacon();
+        int currentBeacon = ((BayesEstimator) estimator).getCurrentBeacon();
+        if (previousBeacon >= 0) {
+            canvas.drawText(previousBeaconLabels[previousBeacon],
+                    LABEL_MARGIN, LABEL_MARGIN, textPaint);
+        }
+        else {
+            canvas.drawText("previous beacon: null",
+                    LABEL_MARGIN, LABEL_MARGIN, textPaint);
+        }
+
+        if (currentBeacon >= 0) {
+            canvas.drawText(currentBeaconLabels[currentBeacon],
+                    LABEL_MARGIN, LABEL_MARGIN + 40, textPaint);
+        }
+        else {
+            canvas.drawText("current beacon: null",
+                    LABEL_MARGIN, LABEL_MARGIN + 40, textPaint);
+        }
+    }
+
+    // Forward filter method tracks the probability of being at each beacon
+    private void drawForwardFilterMethod(Canvas canvas) {
+
+        drawPosition(canvas);
+
+        canvas.drawText("Forward Filter Method", LABEL_MARGIN, LABEL_MARGIN - 50, textPaint);
+
+        if (!drawDebug) {
+            return;
+        }
+
+        // Probability of being at each beacon
+        PositionEstimator estimator =
+                positioningEngine.getEstimator(PositioningEngine.MODE_FORWARD_FILTER);
+        if (!(estimator instanceof ForwardFilterEstimator)) {
+            return;
+        }
+        ForwardFilter forwardFilter = ((ForwardFilterEstimator) estimator).getFilter();
+        for (int i = 0; i < beaconArray.length; i++) {
+            int percent = (int) Math.round(forwardFilter.getProbability(i) * 100);
+            canvas.drawText(probabilityLabels[i].get(percent),
+                    LABEL_MARGIN, LABEL_MARGIN + (40 * i), textPaint);
+        }
+    }
+
+    // Particle filter method estimates a continuous position between the beacons
+    private void drawParticleFilterMethod(Canvas canvas) {
+
+        drawPosition(canvas);
+
+        canvas.drawText("Particle Filter Method", LABEL_MARGIN, LABEL_MARGIN, textPaint);
+    }
+
+    // Ranging methods convert RSSI to distances and solve for the position
+    private void drawRangingMethod(Canvas canvas, String label, int mode) {
+
+        drawPosition(canvas);
+
+        canvas.drawText(label, LABEL_MARGIN, LABEL_MARGIN - 50, textPaint);
+
+        if (!drawDebug) {
+            return;
+        }
+
+        // How well the last solve converged
+        PositionEstimator estimator = positioningEngine.getEstimator(mode);
+        if (!(estimator instanceof RangingEstimator)) {
+            return;
+        }
+        TrilaterationSolver solver = ((RangingEstimator) estimator).getSolver();
+        canvas.drawText(iterationLabels.get(solver.getIterations()),
+                LABEL_MARGIN, LABEL_MARGIN, textPaint);
+        canvas.drawText(residualLabels.get((int) Math.min(solver.getRmsResidual() * 100,
+                MAX_RESIDUAL_LABEL_CM)), LABEL_MARGIN, LABEL_MARGIN + 40, textPaint);
+    }
+
+    // Fingerprint method matches the RSSI of all beacons against a surveyed radio map
+    private void drawFingerprintMethod(Canvas canvas) {
+
+        drawPosition(canvas);
+
+        if (positioningEngine.getRadioMap() != null) {
+            canvas.drawText("Fingerprint Method", LABEL_MARGIN, LABEL_MARGIN, textPaint);
+        }
+        else {
+            canvas.drawText("Fingerprint Method: no radio map", LABEL_MARGIN, LABEL_MARGIN,
+                    textPaint);
+        }
+    }
+
+    private void drawPosition(Canvas canvas) {
+        if (!hasMarker) {
+            markerBounds.setEmpty();
+            return;
+        }
+
+        float x = viewport.toScreenX(markerX);
+        float y = viewport.toScreenY(markerY);
+        markerBounds.set((int) x - MARKER_RADIUS, (int) y - MARKER_RADIUS,
+                (int) x + MARKER_RADIUS + 1, (int) y + MARKER_RADIUS + 1);
+        canvas.drawPoint(x, y, positionPaint);
+    }
+
+    // Draws the scan schedule, the stage timings and, with more than one method selected, how
+    // each method compares at the bottom left of the view, formatting them again at most once
+    // every METRICS_REFRESH_NANOS
+    private void drawMetrics(Canvas canvas, long frameTimeNanos) {
+        if (metrics == null) {
+            metricsBounds.setEmpty();
+            return;
+        }
+
+        if (metricsLines[0] == null || frameTimeNanos - metricsRefreshNanos >= METRICS_REFRESH_NANOS) {
+            metricsRefreshNanos = frameTimeNanos;
+            metricsLines[0] = scanScheduler.summarize(SystemClock.elapsedRealtimeNanos());
+            for (int i = 0; i < PipelineMetrics.STAGE_COUNT; i++) {
+                metricsLines[i + 1] = metrics.summarize(i);
+            }
+            metricsLineCount = PipelineMetrics.STAGE_COUNT + 1;
+            int members = positioningEnsemble.getMemberCount();
+            for (int i = 0; i < members && members > 1; i++) {
+                metricsLines[metricsLineCount++] = positioningEnsemble.summarize(i);
+            }
+        }
+
+        int top = height - (metricsLineCount + 1) * METRICS_LINE_HEIGHT;
+        metricsBounds.set(0, top, width, height);
+        canvas.drawRect(metricsBounds, overlayPaint);
+        for (int i = 0; i < metricsLineCount; i++) {
+            canvas.drawText(metricsLines[i], GRID_TEXT_MARGIN,
+                    top + (i + 1) * METRICS_LINE_HEIGHT, textPaint);
+        }
+    }
+
+    // Records how long the position drawn by this frame took from its advertisement, once for
+    // each position. Scan timestamps are in the elapsed realtime clock.
+    private void recordScanToRender() {
+        long timestamp = positioningEnsemble.getPositionTimestamp();
+        if (timestamp == 0 || timestamp == drawnPositionTimestamp || !hasMarker) {
+            return;
+        }
+
+        drawnPositionTimestamp = timestamp;
+        metrics.record(PipelineMetrics.SCAN_TO_RENDER, SystemClock.elapsedRealtimeNanos() - timestamp);
+    }
+
+    // Moves the marker towards the estimated position; returns true if it has not arrived yet
+    private boolean animateMarker(long frameTimeNanos) {
+        long elapsed = frameTimeNanos - lastFrameNanos;
+        lastFrameNanos = frameTimeNanos;
+        if (!locateTarget()) {
+            hasMarker = false;
+            return false;
+        }
+
+        // The first position is shown where it is
+        if (!hasMarker) {
+            hasMarker = true;
+            markerX = targetX;
+            markerY = targetY;
+            return false;
+        }
+
+        float step = (float) (1 - Math.exp(-Math.max(0, elapsed) / MARKER_TIME_CONSTANT_NANOS));
+        markerX += (targetX - markerX) * step;
+        markerY += (targetY - markerY) * step;
+
+        float snap = MARKER_SNAP_PIXELS / viewport.getScale();
+        if (Math.abs(targetX - markerX) < snap && Math.abs(targetY - markerY) < snap) {
+            markerX = targetX;
+            markerY = targetY;
+            return false;
+        }
+
+        return true;
+    }
+
+    // Sets targetX and targetY to the position in metres where the marker belongs; returns false
+    // if there is no position yet
+    private boolean locateTarget() {
+        if (!positioningEnsemble.hasPosition() || width == 0) {
+            return false;
+        }
+
+        // Coordinate modes place the dot at the estimated position
+        if (positioningEnsemble.hasCoordinate()) {
+            targetX = positioningEnsemble.getX();
+            targetY = positioningEnsemble.getY();
+            return true;
+        }
+
+        // Quadrant modes place it at the same spot of the quadrant
+        int quadrant = positioningEnsemble.getCurrentPosition() - 1;
+        targetX = (QUADRANT_COLUMNS[quadrant]
+                + (float) CURRENT_POINT_HORIZONTAL_MARGIN / QUADRANT_LENGTH) * QUADRANT_SIZE_METRES;
+        targetY = (QUADRANT_ROWS[quadrant]
+                + (float) CURRENT_POINT_VERTICAL_MARGIN / QUADRANT_LENGTH) * QUADRANT_SIZE_METRES;
+        return true;
+    }
+
+    // drawFloorPlan draws the parts of the map that do not change while the app runs: the tiled
+    // floor plan, if there is one, and the quadrants on top of it
+    private void drawFloorPlan(Canvas canvas) {
+        FloorPlanLayer layer = floorPlanLayer;
+        if (layer != null) {
+            layer.draw(canvas, viewport, width, height);
+        }
+
+        for (int i = 0; i < quadrantBounds.length; i++) {
+
+            // QUADRANT INFO
+
+            final Rect rect = quadrantBounds[i];
+
+            // bounds of each quadrant
+            canvas.drawRect(rect, gridPaint);
+
+            // quadrant number in top left
+            canvas.drawText(quadrantLabels[i], rect.left + GRID_NUMBER_MARGIN,
+                    rect.top + GRID_NUMBER_MARGIN, textPaint);
+
+            // BEACON INFO
+
+            final Beacon beacon = beaconArray[i];
+
+            // beacon UUID
+            canvas.drawText(beacon.getUuid(), rect.left + GRID_TEXT_MARGIN, rect.bottom - GRID_TEXT_MARGIN, textPaint);
+
+            // beacon ID
+            canvas.drawText(beacon.getId(), rect.left + GRID_TEXT_MARGIN, rect.bottom - (GRID_TEXT_MARGIN * 2), textPaint);
+
+        }
+    }
+
+    // drawLiveValues draws the values in the grid that change with every scan
+    private void drawLiveValues(Canvas canvas) {
+        BeaconRegistry registry = positioningEngine.getRegistry();
+        int groundTruth = groundTruthQuadrant;
+        for (int i = 0; i < quadrantBounds.length; i++) {
+            final Rect rect = quadrantBounds[i];
+
+            // ground truth mark while recording scans
+            if (groundTruth == i + 1) {
+                canvas.drawText("You are here", rect.left + GRID_TEXT_MARGIN,
+                        rect.top + GRID_NUMBER_MARGIN * 2, textPaint);
+            }
+
+            // RSSI
+            int rssi = registry.getRssi(i);
+            drawnRssi[i] = rssi;
+            canvas.drawText(rssiLabels.get(rssi),
+                    rect.left + GRID_TEXT_MARGIN, rect.bottom - (GRID_TEXT_MARGIN * 3), textPaint);
+        }
+    }
+}
@@ -11,38 +11,94 @@ import android.bluetooth.le.ScanSettings;
 import android.content.Context;
 import android.content.SharedPreferences;
 import android.graphics.Canvas;
-import android.graphics.Color;
-import android.graphics.Paint;
 import android.graphics.Rect;
 import android.os.ParcelUuid;
+import android.os.SystemClock;
 import android.util.Log;
-import android.view.View;
+import android.view.GestureDetector;
+import android.view.MotionEvent;
+import android.view.ScaleGestureDetector;
+import android.view.SurfaceHolder;
+import android.view.SurfaceView;
 import android.widget.Toast;
 
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.LinkedList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
-import java.util.Queue;
+import java.util.concurrent.atomic.AtomicBoolean;
 //Test comment for version control
 // test comment
-public class NavigatorView extends View {
+public class NavigatorView extends SurfaceView implements SurfaceHolder.Callback {
 
     private static final String TAG = "IndoorNavigator";
     private static final int REQUEST_ENABLE_BLUETOOTH = 1;
 
 
     // SCAN FIELDS
-    // scan settings
-    private static final ScanSettings SCAN_SETTINGS =
-            new ScanSettings.Builder().setScanMode(ScanSettings.SCAN_MODE_LOW_LATENCY).setReportDelay(0)
-                    .build();
+    // scan settings; the report delay is capped so that batching keeps positioning latency bounded
+    private static final int DEFAULT_SCAN_MODE = ScanSettings.SCAN_MODE_LOW_LATENCY;
+    static final int MAX_REPORT_DELAY_MILLIS = 1000;
+
+    // Beacon timeout limits in seconds
+    static final int DEFAULT_BEACON_TTL_SECONDS =
+            (int) (PositioningEngine.DEFAULT_BEACON_TTL_NANOS / 1000000000L);
+    static final int MAX_BEACON_TTL_SECONDS = 300;
+
+    private int scanMode = -1;
+    private long reportDelayMillis = -1;
+    private boolean batchingSupported;
+    private final ScanStatistics scanStatistics = new ScanStatistics();
+
+    // With adaptive scanning the scan scheduler backs off from the configured scan mode while the
+    // position is stable; scanScheduleUpdater applies its schedule on the UI thread whenever it
+    // changes. resumed is only used on the UI thread.
+    private final ScanScheduler scanScheduler = new ScanScheduler();
+    private boolean adaptiveScan;
+    private int configuredScanMode = DEFAULT_SCAN_MODE;
+    private long configuredReportDelayMillis;
+    private boolean resumed;
+    private final Runnable scanScheduleUpdater = new Runnable() {
+        @Override
+        public void run() {
+            applyScanSchedule();
+        }
+    };
+
+    // Times every stage from the scan callback to the frame; shown by the debug overlay and
+    // exported with exportMetrics
+    private PipelineMetrics metrics;
 
     // service UUID
     private static final ParcelUuid EDDYSTONE_SERVICE_UUID =
             ParcelUuid.fromString("0000FEAA-0000-1000-8000-00805F9B34FB");
 
+    // Eddystone namespace of our beacons. Their UID frames carry the beacon id in ASCII as the
+    // instance, which identifies a beacon even when it rotates its MAC address; UID frames of
+    // other namespaces are dropped before the MAC is parsed or any lookup. TLM frames carry no
+    // identity and are only matched to a beacon by MAC.
+    private static final String EDDYSTONE_NAMESPACE = "F7826DA6BC5B71E0893E";
+    private final long namespaceHigh;
+    private final long namespaceLow;
+
+    // Decodes the Eddystone frame of each advertisement in place; only used by the scan callback
+    private final EddystoneFrame eddystoneFrame = new EddystoneFrame();
+
+    // Maps the instance of each beacon to its index, and holds the MAC its last UID frame came
+    // from, so that TLM frames from that MAC can be attributed to it
+    private BeaconRegistry instanceRegistry;
+    private long[] beaconMacs;
+
+    // Telemetry of each beacon from its latest TLM frame; written by the scan callback, other
+    // threads may read slightly stale values
+    private int[] batteryMillivolts;
+    private float[] temperatures;
+
     private BluetoothLeScanner scanner;
 
     private List<ScanFilter> scanFilters;
@@ -51,41 +107,25 @@ public class NavigatorView extends View {
     // Shared preferences
     private SharedPreferences sharedPreferences;
 
-    // Booleans for the different methods used
-    private boolean highestRssiMethod;
-    private boolean density1Method;
-    private boolean density2Method;
-    private boolean bayesMethod;
-
-    // Holds highestRssi value
-    private int highestRssi;
-
-    // Holds largest sample count
-    private int largestSampleCount;
-
-    // Time variables used for density2Method
-    private double startTime;
-    private double elaspedTime;
-    private final int TIME_INTERVAL = 500;
-
-    // holds the current quadrant of the device
-    private int currentPosition;
+    // Runs the selected positioning modes on the scan results; positioningEngine runs the first
+    // of them and is the one the renderer draws the state of
+    private PositioningEnsemble positioningEnsemble;
+    private PositioningEngine positioningEngine;
 
-    // used with Bayes theorem algorithm
-    private int previousPosition;
-
-    // TEST USING BEACONS FOR CURRENT AND PREVIOUS POSITIONS
-    private Beacon currentBeacon;
-    private Beacon previousBeacon;
+    // Used to draw initial grid to canvas
+    boolean gridDrawn;
 
-    // Constants
-    private final int SAMPLE_SIZE = 10;
+    // Topology files in the assets, in order of preference
+    private static final String[] TOPOLOGY_ASSETS = {"topology.bin", "topology.txt"};
 
-    // Holds the beacons with the largest RSSI values over a time interval
-    private Queue<Beacon> sample;
+    // Scan samples are appended to scanLog while recording is enabled; groundTruthQuadrant is the
+    // quadrant last tapped by the user, recorded with every sample
+    private volatile ScanLogWriter scanLog;
+    private volatile int groundTruthQuadrant = ScanLogWriter.NO_GROUND_TRUTH;
 
-    // Used to draw initial grid to canvas
-    boolean gridDrawn;
+    // Radio map of the fingerprint method, copied to the app's external files directory after a
+    // survey
+    private static final String RADIO_MAP_FILE = "radiomap.bin";
 
     // Fields used to store the Beacon objects
     private final String[] beaconIds = {"J8Afaf", "nsk4UG", "5tXSCU", "S3aP63", "zPtPxR"};
@@ -95,32 +135,69 @@ public class NavigatorView extends View {
             "DE:38:78:85:1C:6D",
             "D1:07:0C:8F:45:90"};
     private Beacon[] beaconArray;
-    private Map<String /*Beacon UUID*/, Beacon> beaconMap;
 
-    // Used to store Rect objects that will be used to draw a grid to the canvas
-    private ArrayList<Rect> grid;
-
-    // Fields for drawing to canvas
-    final int QUADRANT_LENGTH = 300;
-    final int QUADRANT_STROKE_SIZE = 5;
-    private final int GRID_NUMBER_MARGIN = 40;
-    private final int GRID_TEXT_MARGIN = 40;
-    private final int CURRENT_POINT_HORIZONTAL_MARGIN = 150;
-    private final int CURRENT_POINT_VERTICAL_MARGIN = 100;
-    private final int LABEL_MARGIN = 100;
+    // Maps metres to the screen; dragging pans the map, pinching or double tapping zooms it.
+    // The renderer gets a copy whenever it changes.
+    private final MapViewport viewport = new MapViewport();
+    private GestureDetector gestureDetector;
+    private ScaleGestureDetector scaleGestureDetector;
+    private boolean viewportMoving;
+    private static final float MAX_ZOOM_IN = 8;
+    private static final float MAX_ZOOM_OUT = 4;
+    private static final float DOUBLE_TAP_ZOOM = 2;
+
+    // Tiled floor plan of the site, drawn under the quadrants when the app's external files
+    // directory holds one. Tiles are decoded in the background and the plan is drawn again as
+    // they arrive.
+    private static final String FLOOR_PLAN_FILE = "floorplan.bin";
+    private FloorPlanLayer floorPlanLayer;
+    private final AtomicBoolean floorPlanUpdatePending = new AtomicBoolean();
+    private final Runnable floorPlanUpdater = new Runnable() {
+        @Override
+        public void run() {
+            floorPlanUpdatePending.set(false);
+            invalidate();
+        }
+    };
+
+    // Frames are drawn by renderer, either on the UI thread in onDraw or, with a frame rate set,
+    // on renderThread onto the view's surface so that the UI thread stays free
+    private NavigatorRenderer renderer;
+    private volatile RenderThread renderThread;
+    private int framesPerSecond = -1;
+    private boolean surfaceReady;
+    static final int DEFAULT_FRAMES_PER_SECOND = 60;
+
+    // When drawing on the UI thread, position changes arrive on the positioning thread and are
+    // coalesced into a single overlay update on the UI thread, which redraws only overlayDirty
+    private final AtomicBoolean overlayUpdatePending = new AtomicBoolean();
+    private final Runnable overlayUpdater = new Runnable() {
+        @Override
+        public void run() {
+            overlayUpdatePending.set(false);
+            invalidateOverlay();
+        }
+    };
 
-    //Paint objects to draw grids, text, and current position
-    Paint gridPaint;
-    Paint textPaint;
-    Paint positionPaint;
+    private final Rect overlayDirty = new Rect();
 
     public NavigatorView(Context context) {
         super(context);
 
         init();
+        getHolder().addCallback(this);
 
+        // The controller passes only UID frames of our namespace and TLM frames, so foreign
+        // beacons mostly never wake the app
+        long[] namespace = EddystoneFrame.parseNamespace(EDDYSTONE_NAMESPACE);
+        namespaceHigh = namespace[0];
+        namespaceLow = namespace[1];
         scanFilters = new ArrayList<>();
-        scanFilters.add(new ScanFilter.Builder().setServiceUuid(EDDYSTONE_SERVICE_UUID).build());
+        scanFilters.add(new ScanFilter.Builder().setServiceData(EDDYSTONE_SERVICE_UUID,
+                EddystoneFrame.getUidFilterData(namespaceHigh, namespaceLow),
+                EddystoneFrame.getUidFilterMask()).build());
+        scanFilters.add(new ScanFilter.Builder().setServiceData(EDDYSTONE_SERVICE_UUID,
+                new byte[] {EddystoneFrame.FRAME_TLM}, new byte[] {(byte) 0xFF}).build());
         scanCallback = new ScanCallback() {
             @Override
             public void onScanResult(int callbackType, ScanResult result) {
@@ -130,11 +207,48 @@ public class NavigatorView extends View {
                     return;
                 }
 
-                // Set beacon as active
-                beaconMap.get(result.getDevice().getAddress()).setActive(true);
+                long now = SystemClock.elapsedRealtimeNanos();
+                metrics.recordCallback(now);
+                metrics.record(PipelineMetrics.DELIVERY, now - result.getTimestampNanos());
+                scanScheduler.recordCallback();
+                scanStatistics.recordCallback(1);
+                scanStatistics.recordLatency(now - result.getTimestampNanos());
+
+                // Hand the sample to the positioning thread
+                long key = resolveBeacon(result, scanRecord);
+                if (key == MacAddress.INVALID) {
+                    return;
+                }
+                recordSample(key, result.getRssi(), result.getTimestampNanos());
+                positioningEnsemble.submit(key, result.getRssi(), result.getTimestampNanos());
+            }
+
+            // Batched results are queued in a single pass and processed as one batch
+            @Override
+            public void onBatchScanResults(List<ScanResult> results) {
+                long now = SystemClock.elapsedRealtimeNanos();
+                metrics.recordCallback(now);
+                scanScheduler.recordCallback();
+                scanStatistics.recordCallback(results.size());
+
+                for (int i = 0; i < results.size(); i++) {
+                    ScanResult result = results.get(i);
+                    ScanRecord scanRecord = result.getScanRecord();
+                    if (scanRecord == null) {
+                        continue;
+                    }
+
+                    metrics.record(PipelineMetrics.DELIVERY, now - result.getTimestampNanos());
+                    scanStatistics.recordLatency(now - result.getTimestampNanos());
+                    long key = resolveBeacon(result, scanRecord);
+                    if (key == MacAddress.INVALID) {
+                        continue;
+                    }
+                    recordSample(key, result.getRssi(), result.getTimestampNanos());
+                    positioningEnsemble.enqueue(key, result.getRssi(), result.getTimestampNanos());
+                }
 
-                // Update Rssi of beacon
-                beaconMap.get(result.getDevice().getAddress()).setRssi(result.getRssi());
+                positioningEnsemble.wakeUp();
             }
 
             @Override
@@ -159,327 +273,578 @@ public class NavigatorView extends View {
             }
         }; // End ScanCallBack anonymous inner class
 
-        if (scanner != null) {
-            scanner.startScan(scanFilters, SCAN_SETTINGS, scanCallback);
-        }
+        // Scanning is started in onResume with the configured scan settings
 
     } // End constructor
 
 
+    // Only called when drawing on the UI thread
     @Override
     protected void onDraw(Canvas canvas) {
         super.onDraw(canvas);
 
-        drawGrid(canvas);
-
-        if (highestRssiMethod) {
-            drawHighestRssiMethod(canvas);
-        }
-        else if (density1Method) {
-            drawDensity1Method(canvas);
-        }
-        else if (density2Method) {
-            drawDensity2Method(canvas);
+        // Redraw the moving marker on the next frames; otherwise the view is redrawn when the
+        // positioning engine reports a change
+        if (renderer.draw(canvas, System.nanoTime())) {
+            if (renderer.getOverlayDirtyRegion(overlayDirty)) {
+                postInvalidateOnAnimation(overlayDirty.left, overlayDirty.top,
+                        overlayDirty.right, overlayDirty.bottom);
+            }
+            else {
+                postInvalidateOnAnimation();
+            }
         }
-        else if (bayesMethod) {
-            drawBayesMethod(canvas);
+    }
+
+    // Invalidates the parts of the overlay that the last position update changed
+    private void invalidateOverlay() {
+        if (renderer.getOverlayDirtyRegion(overlayDirty)) {
+            invalidate(overlayDirty);
         }
         else {
-            canvas.drawText("No method selected", LABEL_MARGIN, LABEL_MARGIN, textPaint);
+            invalidate();
         }
-
-
-        invalidate();
     }
 
-    // Method 1 uses the current highest RSSI value to calculate the current position of the device
-    private void drawHighestRssiMethod(Canvas canvas) {
-
-        // Get the highest Rssi
-        highestRssi = -100;
-        for (String beaconUuid : beaconUuids) {
-            if (beaconMap.get(beaconUuid).getRssi() > highestRssi) {
-                highestRssi = beaconMap.get(beaconUuid).getRssi();
-                currentPosition = beaconMap.get(beaconUuid).getQuadrant();
+    // Asks for a new frame from any thread; overlayOnly tells whether only the live values and
+    // the marker changed
+    private void requestRender(boolean overlayOnly) {
+        RenderThread thread = renderThread;
+        if (thread != null) {
+            thread.requestRender();
+        }
+        else if (overlayOnly) {
+            if (overlayUpdatePending.compareAndSet(false, true)) {
+                post(overlayUpdater);
             }
         }
+        else if (floorPlanUpdatePending.compareAndSet(false, true)) {
+            post(floorPlanUpdater);
+        }
+    }
 
-        // Draw current position onto canvas
-        drawPosition(canvas);
+    @Override
+    public void surfaceCreated(SurfaceHolder holder) {
 
-        // Label for current method in use
-        canvas.drawText("Highest RSSI Method", LABEL_MARGIN, LABEL_MARGIN, textPaint);
     }
 
-    // Density1Method updates sample every time the canvas is redrawn
-    private void drawDensity1Method(Canvas canvas) {
-
-        currentPosition = addBeaconToSample();
+    @Override
+    public void surfaceChanged(SurfaceHolder holder, int format, int width, int height) {
+        surfaceReady = true;
+        if (renderThread != null) {
+            renderThread.setSurfaceReady(true);
+        }
+    }
 
-        // Draw current position onto canvas
-        drawPosition(canvas);
+    @Override
+    public void surfaceDestroyed(SurfaceHolder holder) {
+        surfaceReady = false;
+        if (renderThread != null) {
+            renderThread.setSurfaceReady(false);
+        }
+    }
 
-        // Label for current method in use
-        canvas.drawText("Density1 Method", LABEL_MARGIN, LABEL_MARGIN - 50, textPaint);
+    // Draws on a render thread at framesPerSecond, or on the UI thread if it is 0
+    private void setFramesPerSecond(int fps) {
+        if (fps == framesPerSecond && (fps == 0 || renderThread != null)) {
+            return;
+        }
 
-        // USED FOR DEBUGGING
-        for (int i = 0; i < beaconMap.size(); i++) {
-            canvas.drawText("Beacon " + (i + 1) + beaconMap.get(beaconUuids[i]).toString(),
-                    LABEL_MARGIN, LABEL_MARGIN + (40 * i), textPaint);
+        stopRenderThread();
+        framesPerSecond = fps;
+        renderer.setTimingLabel(fps == 0 ? "UI thread" : fps + " fps render thread");
+        if (fps > 0) {
+            // The view itself draws nothing; the surface shows through
+            setWillNotDraw(true);
+            RenderThread thread = new RenderThread(getHolder(), renderer, fps);
+            thread.start();
+            if (surfaceReady) {
+                thread.setSurfaceReady(true);
+            }
+            renderThread = thread;
         }
+        else {
+            setWillNotDraw(false);
+        }
+        invalidate();
     }
 
-    public void drawDensity2Method(Canvas canvas) {
+    private void stopRenderThread() {
+        RenderThread thread = renderThread;
+        if (thread != null) {
+            renderThread = null;
+            thread.quit();
+        }
+    }
 
-        elaspedTime = System.currentTimeMillis() - startTime;
+    // onSizeChanged shows the quadrants where they were laid out before the map could be moved:
+    // QUADRANT_LENGTH pixels per quadrant, centred horizontally, one quadrant below the top
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
 
-        if (elaspedTime >= TIME_INTERVAL) {
-            startTime = System.currentTimeMillis();
+        float pixelsPerMetre = (NavigatorRenderer.QUADRANT_LENGTH
+                + NavigatorRenderer.QUADRANT_STROKE_SIZE) / NavigatorRenderer.QUADRANT_SIZE_METRES;
+        updateScaleLimits();
+        viewport.set(pixelsPerMetre, (int) ((w / 2) - (NavigatorRenderer.QUADRANT_LENGTH * 1.5)
+                - NavigatorRenderer.QUADRANT_STROKE_SIZE), NavigatorRenderer.QUADRANT_LENGTH);
+        renderer.setSize(w, h);
+        renderer.setViewport(viewport);
+        requestRender(false);
+    }
 
-            currentPosition = addBeaconToSample();
+    // Zoom is limited to a range around the default quadrant size, widened to show the whole
+    // floor plan and its full resolution
+    private void updateScaleLimits() {
+        float pixelsPerMetre = (NavigatorRenderer.QUADRANT_LENGTH
+                + NavigatorRenderer.QUADRANT_STROKE_SIZE) / NavigatorRenderer.QUADRANT_SIZE_METRES;
+        float minScale = pixelsPerMetre / MAX_ZOOM_OUT;
+        float maxScale = pixelsPerMetre * MAX_ZOOM_IN;
+        if (floorPlanLayer != null && getWidth() > 0 && getHeight() > 0) {
+            FloorPlan plan = floorPlanLayer.getPlan();
+            minScale = Math.min(minScale, Math.min(getWidth() / plan.getWidthMetres(),
+                    getHeight() / plan.getHeightMetres()));
+            maxScale = Math.max(maxScale, 2 / plan.getMetresPerPixel());
         }
+        viewport.setScaleLimits(minScale, maxScale);
+    }
 
-        // Draw current position onto canvas
-        drawPosition(canvas);
-
-        // Label for current method in use
-        canvas.drawText("Density2 Method", LABEL_MARGIN, LABEL_MARGIN - 50, textPaint);
+    // Called while a gesture pans or zooms the map
+    private void onViewportChanged() {
+        viewportMoving = true;
+        renderer.setViewportMoving(true);
+        renderer.setViewport(viewport);
+        requestRender(false);
+    }
 
-        // DEBUG
-        for (int i = 0; i < beaconMap.size(); i++) {
-            canvas.drawText("Beacon " + (i + 1) + beaconMap.get(beaconUuids[i]).toString(),
-                    LABEL_MARGIN, LABEL_MARGIN + (40 * i), textPaint);
+    public void onResume() {
+        // Select the positioning modes from the shared preferences, in the order of the
+        // configuration screen, which lists the methods of PositionEstimators; unless they run
+        // as an ensemble only the first of them runs
+        boolean ensemble = sharedPreferences.getBoolean(
+                getContext().getString(R.string.ensembleKey), false);
+        int[] modes = new int[PositionEstimators.getCount()];
+        int modeCount = 0;
+        for (int mode = 0; mode < modes.length && (ensemble || modeCount == 0); mode++) {
+            String key = PositionEstimators.getKey(mode);
+            if (key != null && sharedPreferences.getBoolean(key, false)) {
+                modes[modeCount++] = mode;
+            }
+        }
+        positioningEnsemble.setModes(Arrays.copyOf(modes, modeCount));
+
+        renderer.setCacheFloorPlan(sharedPreferences.getBoolean(
+                getContext().getString(R.string.cacheFloorPlanKey), true));
+        renderer.setDebugOverlay(sharedPreferences.getBoolean(
+                getContext().getString(R.string.debugOverlayKey), false));
+        setFramesPerSecond(sharedPreferences.getInt(
+                getContext().getString(R.string.framesPerSecondKey), DEFAULT_FRAMES_PER_SECOND));
+        requestRender(false);
+
+        positioningEnsemble.setRssiFilter(sharedPreferences.getInt(
+                getContext().getString(R.string.rssiFilterKey), RssiFilterBank.FILTER_NONE));
+        int beaconTtlSeconds = sharedPreferences.getInt(
+                getContext().getString(R.string.beaconTtlKey), DEFAULT_BEACON_TTL_SECONDS);
+        long beaconTtlNanos =
+                Math.max(1, Math.min(beaconTtlSeconds, MAX_BEACON_TTL_SECONDS)) * 1000000000L;
+        positioningEnsemble.setBeaconTtl(beaconTtlNanos);
+        scanScheduler.setBeaconTtl(beaconTtlNanos);
+
+        configuredScanMode = sharedPreferences.getInt(
+                getContext().getString(R.string.scanModeKey), DEFAULT_SCAN_MODE);
+        configuredReportDelayMillis = sharedPreferences.getInt(
+                getContext().getString(R.string.reportDelayKey), 0);
+        adaptiveScan = sharedPreferences.getBoolean(
+                getContext().getString(R.string.adaptiveScanKey), true);
+        resumed = true;
+        scanScheduler.resume(SystemClock.elapsedRealtimeNanos());
+        applyScanSchedule();
+
+        if (sharedPreferences.getBoolean(getContext().getString(R.string.recordScansKey), false)) {
+            startRecording();
         }
-
     }
 
-    // TODO: this method can work with a density algorithm or a highest rssi algorithm
-    public void drawBayesMethod(Canvas canvas) {
+    // Scanning stops while the app is in the background
+    public void onPause() {
+        resumed = false;
+        removeCallbacks(scanScheduleUpdater);
+        stopScan();
+        scanScheduler.pause(SystemClock.elapsedRealtimeNanos());
+        Log.i(TAG, scanScheduler.summarize(SystemClock.elapsedRealtimeNanos()));
 
-        BeaconNetwork beaconNetwork = new BeaconNetwork();
-        beaconNetwork.initializeNetwork(beaconArray);
-        boolean validPosition = false;
+        stopRecording();
+        stopRenderThread();
+    }
 
-        // Highest Rssi implementation
-        //*****************************************
-        if (currentBeacon == null) {
-            previousBeacon = currentBeacon = getHighestRssiBeacon();
-            validPosition = true;
+    // Opens a new scan log in the external files directory
+    private void startRecording() {
+        if (scanLog != null) {
+            return;
         }
-        else {
-            previousBeacon = currentBeacon;
-            currentBeacon = getHighestRssiBeacon();
-
-            // If in same position, then position is valid
-            if (currentBeacon != null) {
-                if (currentBeacon.equals(previousBeacon)) {
-                    validPosition = true;
-                }
-            }
 
-            Beacon[] validBeacons = beaconNetwork.getNeighborBeacons(previousBeacon);
+        File directory = getContext().getExternalFilesDir(null);
+        if (directory == null) {
+            logErrorAndShowToast("Cannot record scans: no external storage");
+            return;
+        }
 
-            for (Beacon beacon : validBeacons) {
-                if (beacon == currentBeacon) {
-                    validPosition = true;
-                }
-            }
+        File file = new File(directory, "scans-" + System.currentTimeMillis() + ".log");
+        try {
+            scanLog = new ScanLogWriter(file);
+            Log.i(TAG, "Recording scans to " + file);
+        } catch (IOException e) {
+            logErrorAndShowToast("Cannot record scans: " + e.getMessage());
+        }
+    }
 
+    private void stopRecording() {
+        ScanLogWriter log = scanLog;
+        if (log == null) {
+            return;
         }
 
-        if (validPosition && currentBeacon != null) {
-            currentPosition = currentBeacon.getQuadrant();
-            drawPosition(canvas);
+        scanLog = null;
+        renderer.setGroundTruthQuadrant(ScanLogWriter.NO_GROUND_TRUTH);
+        try {
+            log.close();
+            Log.i(TAG, "Recorded " + log.getRecordCount() + " scan samples");
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to close scan log", e);
         }
-        //*****************************************
+    }
 
-        // DEBUG
-        if (previousBeacon != null) {
-            canvas.drawText("previous beacon: " + previousBeacon.getId(),
-                    LABEL_MARGIN, LABEL_MARGIN, textPaint);
+    // Returns the key the positioning engine knows the beacon of a scan result by, or
+    // MacAddress.INVALID if the result is not a position sample. A UID frame of our namespace is
+    // identified by its instance, and falls back to its MAC if the instance is not one of ours;
+    // other namespaces are rejected first. TLM frames are never position samples; their
+    // telemetry goes to the beacon matched by their MAC, if any.
+    private long resolveBeacon(ScanResult result, ScanRecord scanRecord) {
+        if (!eddystoneFrame.parse(scanRecord.getBytes())) {
+            return MacAddress.INVALID;
         }
-        else {
-            canvas.drawText("previous beacon: null",
-                    LABEL_MARGIN, LABEL_MARGIN, textPaint);
+
+        switch (eddystoneFrame.getFrameType()) {
+            case EddystoneFrame.FRAME_UID:
+                if (!eddystoneFrame.isInNamespace(namespaceHigh, namespaceLow)) {
+                    return MacAddress.INVALID;
+                }
+
+                long mac = MacAddress.parse(result.getDevice().getAddress());
+                int index = instanceRegistry.indexOf(eddystoneFrame.getInstance());
+                if (index < 0) {
+                    return mac;
+                }
+                beaconMacs[index] = mac;
+                return positioningEngine.getRegistry().getMac(index);
+            case EddystoneFrame.FRAME_TLM:
+                updateTelemetry(MacAddress.parse(result.getDevice().getAddress()));
+                return MacAddress.INVALID;
+            default:
+                return MacAddress.INVALID;
         }
+    }
 
-        if (currentBeacon != null) {
-            canvas.drawText("current beacon: " + currentBeacon.getId(),
-                    LABEL_MARGIN, LABEL_MARGIN + 40, textPaint);
+    // Attributes a TLM frame to the beacon whose UID frames last came from mac, or whose
+    // configured MAC it is
+    private void updateTelemetry(long mac) {
+        int index = positioningEngine.getRegistry().indexOf(mac);
+        for (int i = 0; index < 0 && i < beaconMacs.length; i++) {
+            if (beaconMacs[i] == mac) {
+                index = i;
+            }
         }
-        else {
-            canvas.drawText("current beacon: null",
-                    LABEL_MARGIN, LABEL_MARGIN + 40, textPaint);
+        if (index < 0) {
+            return;
         }
 
+        batteryMillivolts[index] = eddystoneFrame.getBatteryMillivolts();
+        temperatures[index] = eddystoneFrame.getTemperature();
+    }
 
-
+    // Battery voltage the beacon at index last reported, or 0
+    public int getBatteryMillivolts(int index) {
+        return batteryMillivolts[index];
     }
 
-    private void drawPosition(Canvas canvas) {
-        float x = grid.get(currentPosition - 1).left + CURRENT_POINT_HORIZONTAL_MARGIN;
-        float y = grid.get(currentPosition - 1).top + CURRENT_POINT_VERTICAL_MARGIN;
-        canvas.drawPoint(x, y, positionPaint);
+    // Temperature the beacon at index last reported, or EddystoneFrame.NO_TEMPERATURE
+    public float getTemperature(int index) {
+        return temperatures[index];
     }
 
+    // Appends a sample to the scan log if recording
+    private void recordSample(long mac, int rssi, long timestampNanos) {
+        ScanLogWriter log = scanLog;
+        if (log == null) {
+            return;
+        }
 
-    // drawGrid is used to draw the grid to the canvas
-    private void drawGrid(Canvas canvas) {
-        for (int i = 0; i < grid.size(); i++) {
+        try {
+            log.append(timestampNanos, mac, rssi, groundTruthQuadrant);
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to record scan sample", e);
+            stopRecording();
+        }
+    }
 
-            // QUADRANT INFO
+    // Touches pan and zoom the map; once the gesture ends the floor plan is cached again
+    @Override
+    public boolean onTouchEvent(MotionEvent event) {
+        boolean handled = scaleGestureDetector.onTouchEvent(event);
+        handled |= gestureDetector.onTouchEvent(event);
+
+        int action = event.getActionMasked();
+        if (viewportMoving && (action == MotionEvent.ACTION_UP
+                || action == MotionEvent.ACTION_CANCEL)) {
+            viewportMoving = false;
+            renderer.setViewportMoving(false);
+            requestRender(false);
+        }
+
+        return handled || super.onTouchEvent(event);
+    }
 
-            final Rect rect = grid.get(i);
+    // While recording, tapping a quadrant marks it as the ground truth position; tapping it again
+    // clears the mark
+    private boolean markGroundTruth(float x, float y) {
+        if (scanLog == null) {
+            return false;
+        }
 
-            // bounds of each quadrant
-            canvas.drawRect(rect, gridPaint);
+        int quadrant = NavigatorRenderer.getQuadrantAt(viewport.toMapX(x), viewport.toMapY(y));
+        if (quadrant == 0) {
+            return false;
+        }
 
-            // quadrant number in top left
-            canvas.drawText(String.valueOf(i + 1), rect.left + GRID_NUMBER_MARGIN,
-                    rect.top + GRID_NUMBER_MARGIN, textPaint);
+        groundTruthQuadrant = groundTruthQuadrant == quadrant
+                ? ScanLogWriter.NO_GROUND_TRUTH : quadrant;
+        renderer.setGroundTruthQuadrant(groundTruthQuadrant);
+        requestRender(false);
+        return true;
+    }
 
-            // BEACON INFO
+    // Restarts the scan if the scan mode or report delay changed
+    private void updateScanSettings(int newScanMode, long newReportDelayMillis) {
+        newReportDelayMillis = Math.max(0, Math.min(newReportDelayMillis, MAX_REPORT_DELAY_MILLIS));
+        if (!batchingSupported) {
+            newReportDelayMillis = 0;
+        }
 
-            final Beacon beacon = beaconMap.get(beaconUuids[i]);
+        if (scanner == null || (newScanMode == scanMode && newReportDelayMillis == reportDelayMillis)) {
+            return;
+        }
 
-            // beacon UUID
-            canvas.drawText(beacon.getUuid(), rect.left + GRID_TEXT_MARGIN, rect.bottom - GRID_TEXT_MARGIN, textPaint);
+        stopScan();
 
-            // beacon ID
-            canvas.drawText(beacon.getId(), rect.left + GRID_TEXT_MARGIN, rect.bottom - (GRID_TEXT_MARGIN * 2), textPaint);
+        scanMode = newScanMode;
+        reportDelayMillis = newReportDelayMillis;
 
-            // RSSI
-            canvas.drawText("RSSI: " + String.valueOf(beacon.getRssi()),
-                    rect.left + GRID_TEXT_MARGIN, rect.bottom - (GRID_TEXT_MARGIN * 3), textPaint);
+        ScanSettings scanSettings = new ScanSettings.Builder().setScanMode(scanMode)
+                .setReportDelay(reportDelayMillis).build();
+        long now = SystemClock.elapsedRealtimeNanos();
+        scanStatistics.setMode(scanMode, now);
+        scanScheduler.setScanning(true, now);
+        scanner.startScan(scanFilters, scanSettings, scanCallback);
+    }
 
+    private void stopScan() {
+        if (scanner == null || scanMode < 0) {
+            return;
         }
-    }
 
-    // onSizeChanged is used to set up the bounds for the grid
-    @Override
-    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
-        super.onSizeChanged(w, h, oldw, oldh);
+        scanner.stopScan(scanCallback);
+        long now = SystemClock.elapsedRealtimeNanos();
+        Log.i(TAG, scanStatistics.toString(scanMode, now));
+        scanStatistics.setMode(-1, now);
+        scanScheduler.setScanning(false, now);
+        scanMode = -1;
+        reportDelayMillis = -1;
+    }
 
-        // variables used to store bounds for Rect objects
-        int left;
-        int top;
-        int right;
-        int bottom;
-
-        // rect1 bounds; used as a reference point to calculate other rect bounds
-        left = (int) ((w / 2) - (QUADRANT_LENGTH * 1.5) - QUADRANT_STROKE_SIZE);
-        top = QUADRANT_LENGTH;
-        right = (int) ((w / 2) - (0.5 * QUADRANT_LENGTH));
-        bottom = QUADRANT_LENGTH * 2;
-        grid.add(new Rect(left, top, right, bottom));
-
-        // rect2 bounds; top and bottom are the same for rect1, rect2, and rect3
-        left = right + QUADRANT_STROKE_SIZE;
-        right = left + QUADRANT_LENGTH;
-        grid.add(new Rect(left, top, right, bottom));
-
-        // rect3 bounds; top and bottom are the same for rect1, rect2, and rect3
-        left = right + QUADRANT_STROKE_SIZE;
-        right = left + QUADRANT_LENGTH;
-        grid.add(new Rect(left, top, right, bottom));
-
-        // rect4 bounds
-        right = left - QUADRANT_STROKE_SIZE;
-        left = right - QUADRANT_LENGTH;
-        top = bottom + QUADRANT_STROKE_SIZE;
-        bottom = top + QUADRANT_LENGTH;
-        grid.add(new Rect(left, top, right, bottom));
-
-        // rect5 bounds
-        top = bottom + QUADRANT_STROKE_SIZE;
-        bottom = top + QUADRANT_LENGTH;
-        grid.add(new Rect(left, top, right, bottom));
-
-    }
-
-    private int addBeaconToSample() {
-
-        // Initialize position to default of 1
-        int position = 1;
-
-        Beacon newBeacon;
-
-        // Get the beacon with the highest Rssi
-        highestRssi = -100; // default highestRssi
-        newBeacon = beaconMap.get(beaconUuids[0]); // default newBeacon
-        for (String beaconUuid : beaconUuids) {
-            if (beaconMap.get(beaconUuid).getRssi() > highestRssi) {
-                highestRssi = beaconMap.get(beaconUuid).getRssi();
-                newBeacon = beaconMap.get(beaconUuid);
-            }
+    // Scans in the configured mode, or with adaptive scanning in the mode and duty cycle the
+    // scan scheduler picks, and schedules the next change of the schedule
+    private void applyScanSchedule() {
+        removeCallbacks(scanScheduleUpdater);
+        if (!resumed) {
+            return;
         }
 
-        // Increment sample count of beacon
-        newBeacon.incrementSampleCount();
-
-        // dequeue oldest beacon and enqueue new beacon
-        if (sample.size() == SAMPLE_SIZE) {
+        if (!adaptiveScan) {
+            updateScanSettings(configuredScanMode, configuredReportDelayMillis);
+            return;
+        }
 
-            // Dequeue oldest beacon and decrement sample count of beacon
-            sample.remove().decrementSampleCount();
-            sample.add(newBeacon);
+        long now = SystemClock.elapsedRealtimeNanos();
+        int level = scanScheduler.getLevel(now);
+        if (scanScheduler.isScanning(now)) {
+            updateScanSettings(ScanScheduler.getScanMode(level, configuredScanMode),
+                    configuredReportDelayMillis);
         }
-        else { // sample.size() < SAMPLE_SIZE
-            sample.add(newBeacon);
+        else {
+            stopScan();
         }
 
-        // Get beacon with largest sample count and set current position to beacon's quadrant
-        largestSampleCount = 0;
-        for (String beaconUuid : beaconUuids) {
-            if (beaconMap.get(beaconUuid).getSampleCount() > largestSampleCount) {
-                largestSampleCount = beaconMap.get(beaconUuid).getSampleCount();
-                position = beaconMap.get(beaconUuid).getQuadrant();
-            }
+        long next = scanScheduler.getNextChangeNanos(now);
+        if (next != Long.MAX_VALUE) {
+            postDelayed(scanScheduleUpdater, Math.max(1, (next - now + 999999) / 1000000));
         }
+    }
 
-        return position;
+    public ScanStatistics getScanStatistics() {
+        return scanStatistics;
     }
 
-    public void onResume() {
-        // Update booleans
-        highestRssiMethod = sharedPreferences.getBoolean(
-                getContext().getString(R.string.highestRssiKey), false);
-        density1Method = sharedPreferences.getBoolean(
-                getContext().getString(R.string.density1Key), false);
-        density2Method = sharedPreferences.getBoolean(
-                getContext().getString(R.string.density2Key), false);
-        bayesMethod = sharedPreferences.getBoolean(
-                getContext().getString(R.string.bayesKey), false);
+    public PipelineMetrics getMetrics() {
+        return metrics;
+    }
 
-        // initialize startTime
-        startTime = System.currentTimeMillis();
+    // Writes the stage timings as CSV to the external files directory on a background thread
+    public void exportMetrics() {
+        File directory = getContext().getExternalFilesDir(null);
+        if (directory == null) {
+            logErrorAndShowToast("Cannot export timings: no external storage");
+            return;
+        }
+
+        final File file = new File(directory, "timings-" + System.currentTimeMillis() + ".csv");
+        Thread exporter = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                Writer out = null;
+                try {
+                    out = new BufferedWriter(new FileWriter(file));
+                    metrics.writeCsv(out);
+                    Log.i(TAG, "Exported timings to " + file);
+                } catch (IOException e) {
+                    Log.w(TAG, "Failed to export timings to " + file, e);
+                } finally {
+                    if (out != null) {
+                        try {
+                            out.close();
+                        } catch (IOException e) {
+                            Log.w(TAG, "Failed to close " + file, e);
+                        }
+                    }
+                }
+            }
+        }, "MetricsExporter");
+        exporter.setDaemon(true);
+        exporter.start();
+        Toast.makeText(getContext(), "Exporting timings to " + file, Toast.LENGTH_SHORT).show();
     }
 
-    private void logErrorAndShowToast(String message) {
-        Toast.makeText(getContext(), message, Toast.LENGTH_SHORT).show();
-        Log.e(TAG, message);
+    // Loads the beacon topology from the assets, preferring the binary deployment format. Falls
+    // back to the built-in network if no topology matches the beacons.
+    private BeaconNetwork loadBeaconNetwork() {
+        for (String file : TOPOLOGY_ASSETS) {
+            InputStream in = null;
+            try {
+                in = getContext().getAssets().open(file);
+                BeaconNetwork network = TopologyFile.read(in);
+                if (network.getNodeCount() == beaconArray.length) {
+                    return network;
+                }
+                Log.w(TAG, file + " has " + network.getNodeCount() + " nodes, expected "
+                        + beaconArray.length);
+            } catch (IOException e) {
+                Log.d(TAG, "No topology in " + file);
+            } finally {
+                if (in != null) {
+                    try {
+                        in.close();
+                    } catch (IOException e) {
+                        Log.w(TAG, "Failed to close " + file, e);
+                    }
+                }
+            }
+        }
+
+        return BeaconNetwork.createDefault();
     }
 
-    // Returns the beacon with the highest Rssi; returns null if no beacons intercepted
-    private Beacon getHighestRssiBeacon() {
+    // Maps the surveyed radio map and builds its index on a background thread, since large maps
+    // take a while to index
+    private void loadRadioMap() {
+        File directory = getContext().getExternalFilesDir(null);
+        if (directory == null) {
+            return;
+        }
 
-        // result points to first beacon by default
-        Beacon result = beaconMap.get(beaconUuids[0]);
+        final File file = new File(directory, RADIO_MAP_FILE);
+        if (!file.exists()) {
+            Log.d(TAG, "No radio map in " + file);
+            return;
+        }
 
-        highestRssi = -100;
-        for (String beaconUuid : beaconUuids) {
-            if (beaconMap.get(beaconUuid).getRssi() > highestRssi) {
-                highestRssi = beaconMap.get(beaconUuid).getRssi();
-                result = beaconMap.get(beaconUuid);
+        Thread loader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    RadioMap map = RadioMapFile.map(file);
+                    positioningEnsemble.setRadioMap(map);
+                    Log.i(TAG, "Loaded radio map with " + map.getPointCount() + " points");
+                } catch (IOException e) {
+                    Log.w(TAG, "Failed to load radio map " + file, e);
+                }
             }
+        }, "RadioMapLoader");
+        loader.setDaemon(true);
+        loader.start();
+    }
+
+    // Maps the tiled floor plan on a background thread, since its index is checked when mapped,
+    // and starts decoding its tiles
+    private void loadFloorPlan() {
+        File directory = getContext().getExternalFilesDir(null);
+        if (directory == null) {
+            return;
         }
 
-        if (result.isActive()) {
-            return result;
+        final File file = new File(directory, FLOOR_PLAN_FILE);
+        if (!file.exists()) {
+            Log.d(TAG, "No floor plan in " + file);
+            return;
         }
 
-        // return null if resulting beacon is not null
-        return null;
+        final long cacheBytes = FloorPlanLayer.getCacheBytes(getContext());
+        Thread loader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                final FloorPlan plan;
+                try {
+                    plan = FloorPlanFile.map(file);
+                } catch (IOException e) {
+                    Log.w(TAG, "Failed to load floor plan " + file, e);
+                    return;
+                }
+
+                Log.i(TAG, "Loaded floor plan with " + plan.getLevelCount() + " levels, caching "
+                        + cacheBytes / 1024 + " KB of tiles");
+                post(new Runnable() {
+                    @Override
+                    public void run() {
+                        floorPlanLayer = new FloorPlanLayer(plan, cacheBytes, new Runnable() {
+                            @Override
+                            public void run() {
+                                renderer.invalidateFloorPlan();
+                                requestRender(false);
+                            }
+                        });
+                        floorPlanLayer.start();
+                        updateScaleLimits();
+                        renderer.setFloorPlanLayer(floorPlanLayer);
+                        requestRender(false);
+                    }
+                });
+            }
+        }, "FloorPlanLoader");
+        loader.setDaemon(true);
+        loader.start();
+    }
+
+    private void logErrorAndShowToast(String message) {
+        Toast.makeText(getContext(), message, Toast.LENGTH_SHORT).show();
+        Log.e(TAG, message);
     }
 
     private void init() {
@@ -490,6 +855,7 @@ public class NavigatorView extends View {
         BluetoothAdapter btAdapter = manager.getAdapter();
         if (btAdapter != null) {
             scanner = btAdapter.getBluetoothLeScanner();
+            batchingSupported = btAdapter.isOffloadedScanBatchingSupported();
         }
 
         sharedPreferences = getContext().getSharedPreferences(
@@ -502,41 +868,96 @@ public class NavigatorView extends View {
         beaconArray = new Beacon[beaconUuids.length];
         for (int i = 0; i < beaconIds.length; i++) {
             beaconArray[i] = new Beacon(i + 1 /* Quadrant */,
-                    beaconIds[i], beaconUuids[i]);
+                    beaconIds[i], beaconUuids[i],
+                    (NavigatorRenderer.QUADRANT_COLUMNS[i] + 0.5f)
+                            * NavigatorRenderer.QUADRANT_SIZE_METRES,
+                    (NavigatorRenderer.QUADRANT_ROWS[i] + 0.5f)
+                            * NavigatorRenderer.QUADRANT_SIZE_METRES);
         }
 
-        //Initialize HashMap with Beacon objects
-        beaconMap = new HashMap<>();
+        // Beacons are also known by the Eddystone instance of their id
+        instanceRegistry = new BeaconRegistry(beaconArray.length);
+        beaconMacs = new long[beaconArray.length];
+        batteryMillivolts = new int[beaconArray.length];
+        temperatures = new float[beaconArray.length];
         for (int i = 0; i < beaconArray.length; i++) {
-            beaconMap.put(beaconUuids[i], beaconArray[i]);
+            instanceRegistry.register(EddystoneFrame.instanceOf(beaconArray[i].getId()),
+                    beaconArray[i].getQuadrant());
+            beaconMacs[i] = MacAddress.INVALID;
+            temperatures[i] = EddystoneFrame.NO_TEMPERATURE;
         }
 
-        // instantiate grid to hold Rect objects
-        grid = new ArrayList<>();
-
-        // Instantiate sample
-        sample = new LinkedList<>();
-
-        // Initial current position is quadrant 1
-        currentPosition = 1;
-
-        // Initial previous position is -1
-        previousPosition = -1;
-
-        // Setting up Paint objects
-        gridPaint = new Paint();
-        gridPaint.setStrokeWidth(QUADRANT_STROKE_SIZE);
-        gridPaint.setColor(Color.BLUE);
-        gridPaint.setStyle(Paint.Style.STROKE);
-
-        textPaint = new Paint();
-        textPaint.setTextSize(30);
-        textPaint.setColor(Color.BLACK);
-
-        positionPaint = new Paint();
-        positionPaint.setStrokeWidth(50);
-        positionPaint.setColor(Color.BLACK);
+        // Redraw the view only when the estimated position changes
+        positioningEnsemble = new PositioningEnsemble(beaconArray, loadBeaconNetwork());
+        positioningEngine = positioningEnsemble.getPrimary();
 
+        // Scan results are timestamped in elapsed realtime, which the scan scheduler uses too
+        positioningEnsemble.setClock(new PositioningEngine.Clock() {
+            @Override
+            public long nowNanos() {
+                return SystemClock.elapsedRealtimeNanos();
+            }
+        });
+        metrics = new PipelineMetrics(beaconArray.length);
+        positioningEngine.setMetrics(metrics);
+        renderer = new NavigatorRenderer(positioningEnsemble, beaconArray, metrics, scanScheduler);
+        positioningEnsemble.addOnPositionChangedListener(
+                new PositioningEnsemble.OnPositionChangedListener() {
+                    @Override
+                    public void onPositionChanged(PositioningEnsemble ensemble) {
+                        requestRender(true);
+
+                        // Scan harder as soon as the device moves
+                        if (scanScheduler.onPosition(ensemble.hasPosition(),
+                                ensemble.getCurrentPosition(), ensemble.hasCoordinate(),
+                                ensemble.getX(), ensemble.getY(),
+                                SystemClock.elapsedRealtimeNanos())) {
+                            post(scanScheduleUpdater);
+                        }
+                    }
+                });
+        positioningEnsemble.start();
+        loadRadioMap();
+        loadFloorPlan();
+
+        gestureDetector = new GestureDetector(getContext(),
+                new GestureDetector.SimpleOnGestureListener() {
+                    @Override
+                    public boolean onDown(MotionEvent e) {
+                        return true;
+                    }
+
+                    @Override
+                    public boolean onScroll(MotionEvent e1, MotionEvent e2, float distanceX,
+                            float distanceY) {
+                        viewport.pan(-distanceX, -distanceY);
+                        onViewportChanged();
+                        return true;
+                    }
+
+                    @Override
+                    public boolean onSingleTapConfirmed(MotionEvent e) {
+                        return markGroundTruth(e.getX(), e.getY());
+                    }
+
+                    @Override
+                    public boolean onDoubleTap(MotionEvent e) {
+                        viewport.zoom(DOUBLE_TAP_ZOOM, e.getX(), e.getY());
+                        renderer.setViewport(viewport);
+                        requestRender(false);
+                        return true;
+                    }
+                });
+        scaleGestureDetector = new ScaleGestureDetector(getContext(),
+                new ScaleGestureDetector.SimpleOnScaleGestureListener() {
+                    @Override
+                    public boolean onScale(ScaleGestureDetector detector) {
+                        viewport.zoom(detector.getScaleFactor(), detector.getFocusX(),
+                                detector.getFocusY());
+                        onViewportChanged();
+                        return true;
+                    }
+                });
     }
 
 }
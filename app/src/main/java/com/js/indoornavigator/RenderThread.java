@@ -0,0 +1,125 @@
+package com.js.indoornavigator;
+
+import android.graphics.Canvas;
+import android.os.Process;
+import android.view.SurfaceHolder;
+
+// RenderThread draws a NavigatorRenderer onto a surface so that drawing stays off the UI thread.
+// It sleeps until requestRender is called, draws at most framesPerSecond frames a second, and
+// keeps drawing only while the renderer reports that the marker is still moving, so the thread
+// idles while the position does not change.
+public class RenderThread extends Thread {
+
+    private final SurfaceHolder holder;
+    private final NavigatorRenderer renderer;
+    private final long frameIntervalNanos;
+
+    // Guarded by this
+    private boolean running = true;
+    private boolean surfaceReady;
+    private boolean renderRequested;
+    private boolean drawing;
+
+    public RenderThread(SurfaceHolder holder, NavigatorRenderer renderer, int framesPerSecond) {
+        super("RenderThread");
+        this.holder = holder;
+        this.renderer = renderer;
+        frameIntervalNanos = 1000000000L / framesPerSecond;
+    }
+
+    // Asks for a frame; may be called from any thread
+    public synchronized void requestRender() {
+        renderRequested = true;
+        notifyAll();
+    }
+
+    // Called from the surface callbacks. Once the surface is gone this waits for a frame in
+    // progress to finish, since the surface must not be drawn on after surfaceDestroyed returns.
+    public synchronized void setSurfaceReady(boolean ready) {
+        surfaceReady = ready;
+        if (ready) {
+            renderRequested = true;
+            notifyAll();
+            return;
+        }
+
+        while (drawing) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    // Stops the thread and waits for it to finish
+    public void quit() {
+        synchronized (this) {
+            running = false;
+            notifyAll();
+        }
+
+        interrupt();
+        try {
+            join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void run() {
+        Process.setThreadPriority(Process.THREAD_PRIORITY_DISPLAY);
+
+        long nextFrameNanos = 0;
+        boolean animating = false;
+        while (true) {
+            // Frame pacing: wait out the rest of the frame interval before the next frame
+            long delay = nextFrameNanos - System.nanoTime();
+            if (delay > 0) {
+                try {
+                    Thread.sleep(delay / 1000000, (int) (delay % 1000000));
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+
+            synchronized (this) {
+                while (running && (!surfaceReady || !(renderRequested || animating))) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (!running) {
+                    return;
+                }
+                renderRequested = false;
+                drawing = true;
+            }
+
+            long frameStart = System.nanoTime();
+            try {
+                Canvas canvas = holder.lockCanvas();
+                if (canvas != null) {
+                    try {
+                        animating = renderer.draw(canvas, frameStart);
+                    } finally {
+                        holder.unlockCanvasAndPost(canvas);
+                    }
+                }
+                else {
+                    animating = false;
+                }
+            } finally {
+                synchronized (this) {
+                    drawing = false;
+                    notifyAll();
+                }
+            }
+            nextFrameNanos = frameStart + frameIntervalNanos;
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package com.js.indoornavigator;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Process;
+import android.util.Log;
+
+// TileLoader decodes floor plan tiles into a TileCache on a background thread, so that drawing
+// never waits for a decode. Every frame hands it the visible tiles that were not cached; a new
+// request replaces the previous one, so tiles that scrolled out of view before their turn are
+// never decoded.
+public class TileLoader implements Runnable {
+
+    private static final String TAG = "TileLoader";
+
+    private final FloorPlan plan;
+    private final TileCache<Bitmap> cache;
+    private final Runnable onTileLoaded;
+    private final BitmapFactory.Options options = new BitmapFactory.Options();
+
+    // Outstanding requests, guarded by this
+    private long[] requests = new long[64];
+    private int requestCount;
+    private int nextRequest;
+    private boolean running;
+    private Thread thread;
+
+    // Encoded tile being decoded; only used on the loader thread
+    private byte[] data = new byte[64 * 1024];
+
+    // onTileLoaded is called on the loader thread after each tile is added to the cache
+    public TileLoader(FloorPlan plan, TileCache<Bitmap> cache, Runnable onTileLoaded) {
+        this.plan = plan;
+        this.cache = cache;
+        this.onTileLoaded = onTileLoaded;
+
+        // Floor plans are opaque; tiles with transparency are still decoded with alpha
+        options.inPreferredConfig = Bitmap.Config.RGB_565;
+    }
+
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+
+        running = true;
+        thread = new Thread(this, "TileLoader");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public void stop() {
+        Thread loader;
+        synchronized (this) {
+            running = false;
+            requestCount = 0;
+            nextRequest = 0;
+            notifyAll();
+            loader = thread;
+            thread = null;
+        }
+
+        if (loader != null) {
+            try {
+                loader.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    // Replaces the outstanding requests with keys, most wanted first
+    public synchronized void request(long[] keys, int count) {
+        if (count > requests.length) {
+            requests = new long[Math.max(count, requests.length * 2)];
+        }
+
+        System.arraycopy(keys, 0, requests, 0, count);
+        requestCount = count;
+        nextRequest = 0;
+        if (count > 0) {
+            notifyAll();
+        }
+    }
+
+    @Override
+    public void run() {
+        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+
+        while (true) {
+            long key;
+            synchronized (this) {
+                while (running && nextRequest >= requestCount) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (!running) {
+                    return;
+                }
+                key = requests[nextRequest++];
+            }
+
+            if (!cache.contains(key)) {
+                load(key);
+            }
+        }
+    }
+
+    private void load(long key) {
+        int level = FloorPlan.getKeyLevel(key);
+        int column = FloorPlan.getKeyColumn(key);
+        int row = FloorPlan.getKeyRow(key);
+
+        int length = plan.getTileLength(level, column, row);
+        if (length > data.length) {
+            data = new byte[Math.max(length, data.length * 2)];
+        }
+        plan.readTile(level, column, row, data);
+
+        Bitmap tile = length > 0 ? BitmapFactory.decodeByteArray(data, 0, length, options) : null;
+        if (tile == null) {
+            // Remember the tile so that it is not requested again
+            Log.w(TAG, "Cannot decode tile " + column + ", " + row + " of level " + level);
+            cache.put(key, null, 0);
+            return;
+        }
+
+        cache.put(key, tile, tile.getByteCount());
+        onTileLoaded.run();
+    }
+}
@@ -0,0 +1,63 @@
+package com.js.indoornavigator;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Measures the neighbour queries of the Bayes method on grid networks of growing size: the
+// adjacency check between the previous and the current beacon, and a walk over the neighbours of
+// a beacon, which is what looking up a beacon's neighbour list amounts to.
+@State(Scope.Thread)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class BeaconNetworkBenchmark {
+
+    private static final int QUERIES = 1 << 14;
+
+    @Param({"3", "32", "100", "316"})
+    public int gridSize;
+
+    private BeaconNetwork network;
+    private int[] from;
+    private int[] to;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        network = BenchmarkFixtures.createGrid(gridSize);
+
+        // Half of the pairs are neighbours, the rest random nodes
+        Random random = new Random(1);
+        from = new int[QUERIES];
+        to = new int[QUERIES];
+        for (int i = 0; i < QUERIES; i++) {
+            from[i] = random.nextInt(network.getNodeCount());
+            to[i] = random.nextBoolean()
+                    ? network.getNeighbor(from[i], random.nextInt(network.getNeighborCount(from[i])))
+                    : random.nextInt(network.getNodeCount());
+        }
+    }
+
+    @Benchmark
+    public boolean isNeighbor() {
+        int i = next++ & (QUERIES - 1);
+        return network.isNeighbor(from[i], to[i]);
+    }
+
+    @Benchmark
+    public int neighbors() {
+        int node = from[next++ & (QUERIES - 1)];
+        int[] neighbors = network.getNeighbors();
+        int sum = 0;
+        for (int k = network.getNeighborStart(node); k < network.getNeighborEnd(node); k++) {
+            sum += neighbors[k];
+        }
+
+        return sum;
+    }
+}
@@ -0,0 +1,71 @@
+package com.js.indoornavigator;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Compares BeaconRegistry lookups with the HashMap<String, Beacon> lookups NavigatorView used to
+// do for every advertisement
+@State(Scope.Thread)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class BeaconRegistryBenchmark {
+
+    // Lookups follow a random order of advertisements
+    private static final int LOOKUPS = 1 << 16;
+
+    @Param({"10", "1000", "10000"})
+    public int beaconCount;
+
+    private long[] macs;
+    private String[] addresses;
+    private Map<String, Beacon> beaconMap;
+    private BeaconRegistry registry;
+    private int[] order;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(beaconCount);
+
+        macs = new long[beaconCount];
+        addresses = new String[beaconCount];
+        beaconMap = new HashMap<>();
+        registry = new BeaconRegistry(beaconCount);
+        for (int i = 0; i < beaconCount; i++) {
+            macs[i] = random.nextLong() & 0xFFFFFFFFFFFFL;
+            addresses[i] = MacAddress.toString(macs[i]);
+            beaconMap.put(addresses[i], new Beacon(i % 5 + 1, String.valueOf(i), addresses[i]));
+            registry.register(macs[i], i % 5 + 1);
+        }
+
+        order = new int[LOOKUPS];
+        for (int i = 0; i < LOOKUPS; i++) {
+            order[i] = random.nextInt(beaconCount);
+        }
+    }
+
+    @Benchmark
+    public int hashMap() {
+        return beaconMap.get(addresses[order[next++ & (LOOKUPS - 1)]]).getQuadrant();
+    }
+
+    @Benchmark
+    public int registry() {
+        return registry.getQuadrant(registry.indexOf(macs[order[next++ & (LOOKUPS - 1)]]));
+    }
+
+    // Includes parsing the address string, as the scan callback has to
+    @Benchmark
+    public int registryWithParsing() {
+        long mac = MacAddress.parse(addresses[order[next++ & (LOOKUPS - 1)]]);
+        return registry.getQuadrant(registry.indexOf(mac));
+    }
+}
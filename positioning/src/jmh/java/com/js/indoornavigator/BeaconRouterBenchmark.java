@@ -0,0 +1,144 @@
+package com.js.indoornavigator;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Measures routing between random beacons of a grid with A*, routing to destinations that have a
+// next-hop table, alone and from several threads, and keeping a route up to date while the
+// position walks along it with jitter. The larger grid has 50,176 beacons.
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class BeaconRouterBenchmark {
+
+    private static final int QUERIES = 1 << 12;
+    private static final int DESTINATIONS = 8;
+
+    // Routers shared by all threads
+    @State(Scope.Benchmark)
+    public static class Network {
+
+        @Param({"32", "224"})
+        public int gridSize;
+
+        BeaconRouter searchRouter;
+        BeaconRouter tableRouter;
+        int[] destinations;
+
+        @Setup
+        public void setUp() {
+            BeaconNetwork network = BenchmarkFixtures.createGrid(gridSize);
+            Beacon[] beacons = BenchmarkFixtures.createBeacons(gridSize);
+            BeaconRouter router = BeaconRouter.create(network, beacons);
+
+            // Same weights, but never promoting destinations to tables
+            float[] weights = new float[network.getEdgeCount()];
+            float[] x = new float[beacons.length];
+            float[] y = new float[beacons.length];
+            for (int k = 0; k < weights.length; k++) {
+                weights[k] = router.getWeight(k);
+            }
+            for (int i = 0; i < beacons.length; i++) {
+                x[i] = beacons[i].getX();
+                y[i] = beacons[i].getY();
+            }
+            searchRouter = new BeaconRouter(network, weights, x, y, 0, Integer.MAX_VALUE);
+
+            tableRouter = router;
+            Random random = new Random(1);
+            destinations = new int[DESTINATIONS];
+            for (int i = 0; i < DESTINATIONS; i++) {
+                destinations[i] = random.nextInt(beacons.length);
+                tableRouter.precompute(destinations[i]);
+            }
+        }
+    }
+
+    // Search, route and query pairs of one thread
+    @State(Scope.Thread)
+    public static class Query {
+
+        BeaconRouter.Search search;
+        BeaconRouter.Search tableSearch;
+        RouteTracker tracker;
+        Route route = new Route();
+        int[] sources;
+        int[] targets;
+        int next;
+        Random random = new Random(3);
+
+        @Setup
+        public void setUp(Network network) {
+            search = network.searchRouter.newSearch();
+            tableSearch = network.tableRouter.newSearch();
+            tracker = new RouteTracker(network.tableRouter);
+
+            int nodes = network.gridSize * network.gridSize;
+            Random random = new Random(2);
+            sources = new int[QUERIES];
+            targets = new int[QUERIES];
+            for (int i = 0; i < QUERIES; i++) {
+                sources[i] = random.nextInt(nodes);
+                targets[i] = random.nextInt(nodes);
+            }
+            tracker.setDestination(sources[0], network.destinations[0]);
+        }
+    }
+
+    @Benchmark
+    public float aStar(Network network, Query query) {
+        int i = query.next++ & (QUERIES - 1);
+        network.searchRouter.route(query.sources[i], query.targets[i], query.search, query.route);
+        return query.route.getDistance();
+    }
+
+    @Benchmark
+    public float nextHop(Network network, Query query) {
+        int i = query.next++ & (QUERIES - 1);
+        network.tableRouter.route(query.sources[i], network.destinations[i % DESTINATIONS],
+                query.tableSearch, query.route);
+        return query.route.getDistance();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public float nextHopConcurrent(Network network, Query query) {
+        return nextHop(network, query);
+    }
+
+    // Mostly steps along the route or to a neighbour of it, and now and then jumps elsewhere
+    @Benchmark
+    public float reroute(Network network, Query query) {
+        RouteTracker tracker = query.tracker;
+        Route route = tracker.getRoute();
+        BeaconNetwork beacons = network.tableRouter.getNetwork();
+        int i = query.next++ & (QUERIES - 1);
+        if (route.getLength() <= 1) {
+            tracker.setDestination(query.sources[i], network.destinations[i % DESTINATIONS]);
+            return tracker.getRoute().getDistance();
+        }
+
+        int step = query.random.nextInt(16);
+        int position;
+        if (step == 0) {
+            position = query.sources[i];
+        }
+        else if (step < 10) {
+            position = route.getNextNode();
+        }
+        else {
+            int current = route.getNode(0);
+            int start = beacons.getNeighborStart(current);
+            int count = beacons.getNeighborEnd(current) - start;
+            position = beacons.getNeighbors()[start + query.random.nextInt(count)];
+        }
+        tracker.onPosition(position);
+        return route.getDistance();
+    }
+}
@@ -0,0 +1,41 @@
+package com.js.indoornavigator;
+
+// Beacon layouts shared by the benchmarks
+final class BenchmarkFixtures {
+
+    // Distance between neighbouring beacons, in metres
+    static final float BEACON_SPACING = 3;
+
+    private BenchmarkFixtures() {
+
+    }
+
+    // A square grid of size * size nodes, each connected to the nodes beside, above and below it
+    static BeaconNetwork createGrid(int size) {
+        BeaconNetwork.Builder builder = new BeaconNetwork.Builder(size * size);
+        for (int row = 0; row < size; row++) {
+            for (int column = 0; column < size; column++) {
+                int node = row * size + column;
+                if (column + 1 < size) {
+                    builder.addEdge(node, node + 1);
+                }
+                if (row + 1 < size) {
+                    builder.addEdge(node, node + size);
+                }
+            }
+        }
+
+        return builder.build();
+    }
+
+    // size * size beacons laid out like the nodes of createGrid, one quadrant each
+    static Beacon[] createBeacons(int size) {
+        Beacon[] beacons = new Beacon[size * size];
+        for (int i = 0; i < beacons.length; i++) {
+            beacons[i] = new Beacon(i + 1, String.valueOf(i), MacAddress.toString(0xC0FFEE000000L + i),
+                    (i % size) * BEACON_SPACING, (i / size) * BEACON_SPACING);
+        }
+
+        return beacons;
+    }
+}
@@ -0,0 +1,78 @@
+package com.js.indoornavigator;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Cost of deciding whether an advertisement belongs to our beacons: foreign Eddystone UID
+// frames are rejected by their namespace before any lookup, ours are resolved by instance
+@State(Scope.Thread)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class EddystoneFrameBenchmark {
+
+    private static final int ADVERTISEMENTS = 1 << 10;
+    private static final String NAMESPACE = "F7826DA6BC5B71E0893E";
+
+    private final EddystoneFrame frame = new EddystoneFrame();
+    private long namespaceHigh;
+    private long namespaceLow;
+    private BeaconRegistry instances;
+    private byte[][] foreign;
+    private byte[][] ours;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(1);
+        long[] namespace = EddystoneFrame.parseNamespace(NAMESPACE);
+        namespaceHigh = namespace[0];
+        namespaceLow = namespace[1];
+
+        instances = new BeaconRegistry(ADVERTISEMENTS);
+        foreign = new byte[ADVERTISEMENTS][];
+        ours = new byte[ADVERTISEMENTS][];
+        for (int i = 0; i < ADVERTISEMENTS; i++) {
+            String instance = String.format("%06d", i);
+            instances.register(EddystoneFrame.instanceOf(instance), 1);
+            ours[i] = uid(NAMESPACE, instance);
+            foreign[i] = uid(String.format("%020X", random.nextLong() & Long.MAX_VALUE), instance);
+        }
+    }
+
+    private static byte[] uid(String namespace, String instance) {
+        byte[] record = {0x02, 0x01, 0x06, 0x03, 0x03, (byte) 0xAA, (byte) 0xFE, 0x17, 0x16,
+                (byte) 0xAA, (byte) 0xFE, 0x00, (byte) 0xEC, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0,
+                0, 0, 0, 0, 0, 0, 0, 0};
+        for (int i = 0; i < 10; i++) {
+            record[13 + i] = (byte) Integer.parseInt(namespace.substring(2 * i, 2 * i + 2), 16);
+        }
+        for (int i = 0; i < 6; i++) {
+            record[23 + i] = (byte) instance.charAt(i);
+        }
+
+        return record;
+    }
+
+    private int resolve(byte[] record) {
+        if (!frame.parse(record) || !frame.isInNamespace(namespaceHigh, namespaceLow)) {
+            return -1;
+        }
+
+        return instances.indexOf(frame.getInstance());
+    }
+
+    @Benchmark
+    public int rejectForeign() {
+        return resolve(foreign[next++ & (ADVERTISEMENTS - 1)]);
+    }
+
+    @Benchmark
+    public int resolveOurs() {
+        return resolve(ours[next++ & (ADVERTISEMENTS - 1)]);
+    }
+}
@@ -0,0 +1,71 @@
+package com.js.indoornavigator;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Measures ForwardFilter updates on grid shaped networks of up to 10,000 beacons, which have to
+// stay within a one millisecond per-update budget
+@State(Scope.Thread)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ForwardFilterBenchmark {
+
+    private static final int OBSERVATIONS = 8;
+    private static final int UPDATES = 1 << 12;
+
+    @Param({"10", "32", "100"})
+    public int gridSize;
+
+    private ForwardFilter filter;
+    private int[][] beacons;
+    private int[][] rssis;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        BeaconNetwork network = BenchmarkFixtures.createGrid(gridSize);
+        filter = new ForwardFilter(network);
+        Random random = new Random(1);
+
+        beacons = new int[UPDATES][OBSERVATIONS];
+        rssis = new int[UPDATES][OBSERVATIONS];
+        int position = 0;
+        for (int i = 0; i < UPDATES; i++) {
+            position = walk(network, position, random);
+            observe(network, position, random, beacons[i], rssis[i]);
+        }
+    }
+
+    @Benchmark
+    public int update() {
+        int i = next++ & (UPDATES - 1);
+        return filter.update(beacons[i], rssis[i], OBSERVATIONS);
+    }
+
+    // Occasionally moves the device to a neighboring node
+    private static int walk(BeaconNetwork network, int position, Random random) {
+        if (random.nextInt(10) != 0) {
+            return position;
+        }
+
+        return network.getNeighbor(position, random.nextInt(network.getNeighborCount(position)));
+    }
+
+    // Observes the beacon at the position and its neighbors with noisy RSSI values
+    private static void observe(BeaconNetwork network, int position, Random random, int[] beacons,
+            int[] rssis) {
+        beacons[0] = position;
+        rssis[0] = -60 + (int) (random.nextGaussian() * 6);
+        for (int i = 1; i < beacons.length; i++) {
+            int degree = network.getNeighborCount(position);
+            beacons[i] = network.getNeighbor(position, random.nextInt(degree));
+            rssis[i] = -75 + (int) (random.nextGaussian() * 6);
+        }
+    }
+}
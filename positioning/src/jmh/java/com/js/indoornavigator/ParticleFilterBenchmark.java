@@ -0,0 +1,73 @@
+package com.js.indoornavigator;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Measures ParticleFilter updates for increasing particle counts, single threaded below
+// ParticleFilter.PARALLEL_THRESHOLD and split across cores above it. The device walks slowly
+// around the middle of a 4 x 4 beacon grid.
+@State(Scope.Thread)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ParticleFilterBenchmark {
+
+    private static final int GRID_SIZE = 4;
+    private static final float BEACON_SPACING = 5;
+    private static final int UPDATES = 1 << 11;
+
+    @Param({"1000", "2000", "4000", "8000", "16000"})
+    public int particleCount;
+
+    private ParticleFilter filter;
+    private int[] beacons;
+    private int[][] rssis;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        int beaconCount = GRID_SIZE * GRID_SIZE;
+        float[] beaconX = new float[beaconCount];
+        float[] beaconY = new float[beaconCount];
+        beacons = new int[beaconCount];
+        for (int i = 0; i < beaconCount; i++) {
+            beaconX[i] = (i % GRID_SIZE) * BEACON_SPACING;
+            beaconY[i] = (i / GRID_SIZE) * BEACON_SPACING;
+            beacons[i] = i;
+        }
+
+        PathLossModel model = new PathLossModel();
+        filter = new ParticleFilter(particleCount, beaconX, beaconY, model, 1);
+        Random random = new Random(1);
+
+        rssis = new int[UPDATES][beaconCount];
+        for (int i = 0; i < UPDATES; i++) {
+            double angle = i * 0.01;
+            float x = (float) (7.5 + 4 * Math.cos(angle));
+            float y = (float) (7.5 + 4 * Math.sin(angle));
+            for (int j = 0; j < beaconCount; j++) {
+                double dx = x - beaconX[j];
+                double dy = y - beaconY[j];
+                rssis[i][j] = (int) Math.round(model.rssiAtDistance(Math.sqrt(dx * dx + dy * dy))
+                        + random.nextGaussian() * 4);
+            }
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        filter.close();
+    }
+
+    @Benchmark
+    public float update() {
+        filter.update(beacons, rssis[next++ & (UPDATES - 1)], beacons.length);
+        return filter.getX();
+    }
+}
@@ -0,0 +1,74 @@
+package com.js.indoornavigator;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Measures one scan sample going through PositioningEngine, from the registry lookup to the
+// position update, for the highest RSSI, density and Bayes methods on growing beacon grids. The
+// device walks along the grid and hears the beacon it is next to and its neighbours.
+@State(Scope.Thread)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PositioningEngineBenchmark {
+
+    // Power of two so that the sample index can wrap with a mask
+    private static final int SAMPLES = 1 << 14;
+    private static final long INTERVAL_NANOS = 20 * 1000000L;
+
+    @Param({"1", "2", "3", "4"})
+    public int mode;
+
+    // Side of the beacon grid
+    @Param({"3", "10", "32"})
+    public int gridSize;
+
+    private PositioningEngine engine;
+    private long[] macs;
+    private int[] rssis;
+    private int next;
+    private long time;
+
+    @Setup
+    public void setUp() {
+        Beacon[] beacons = BenchmarkFixtures.createBeacons(gridSize);
+        BeaconNetwork network = BenchmarkFixtures.createGrid(gridSize);
+        engine = new PositioningEngine(beacons, network);
+        engine.setRandomSeed(1);
+        engine.setMode(mode);
+
+        Random random = new Random(1);
+        macs = new long[SAMPLES];
+        rssis = new int[SAMPLES];
+        int position = 0;
+        for (int i = 0; i < SAMPLES; i++) {
+            if (i % 40 == 39) {
+                position = network.getNeighbor(position,
+                        random.nextInt(network.getNeighborCount(position)));
+            }
+
+            int beacon = position;
+            int rssi = -60;
+            if (random.nextBoolean()) {
+                beacon = network.getNeighbor(position,
+                        random.nextInt(network.getNeighborCount(position)));
+                rssi = -75;
+            }
+            macs[i] = MacAddress.parse(beacons[beacon].getUuid());
+            rssis[i] = rssi + (int) (random.nextGaussian() * 4);
+        }
+    }
+
+    @Benchmark
+    public int onScanResult() {
+        int i = next++ & (SAMPLES - 1);
+        time += INTERVAL_NANOS;
+        engine.onScanResult(macs[i], rssis[i], time);
+        return engine.getCurrentPosition();
+    }
+}
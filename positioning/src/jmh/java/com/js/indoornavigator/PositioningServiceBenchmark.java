@@ -0,0 +1,121 @@
+package com.js.indoornavigator;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Load test of PositioningService with 10,000 simulated devices walking over a 4 x 4 beacon
+// grid. Every invocation feeds a batch of samples through one producer and waits until the
+// shards have processed it, so the score is the service's sample throughput for the given
+// number of shards; it should grow close to linearly up to the number of cores.
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class PositioningServiceBenchmark {
+
+    private static final int GRID_SIZE = 4;
+    private static final int BATCH = 1 << 16;
+    private static final int SAMPLES = 1 << 20;
+    private static final long INTERVAL_NANOS = 100 * 1000L;
+
+    @Param({"10000"})
+    public int deviceCount;
+
+    @Param({"1", "2", "4", "8"})
+    public int shardCount;
+
+    @Param({"1", "4", "7"})
+    public int mode;
+
+    private PositioningService service;
+    private PositioningService.Producer producer;
+    private long[] devices;
+    private long[] macs;
+    private int[] rssis;
+    private int next;
+    private long time;
+
+    @Setup
+    public void setUp() {
+        Beacon[] beacons = BenchmarkFixtures.createBeacons(GRID_SIZE);
+        BeaconNetwork network = BenchmarkFixtures.createGrid(GRID_SIZE);
+        service = new PositioningService(beacons, network, shardCount,
+                new PositioningService.PositionListener() {
+                    @Override
+                    public void onPosition(int shard, long device, PositioningEngine engine,
+                            long timestampNanos) {
+
+                    }
+
+                    @Override
+                    public void onShardIdle(int shard) {
+
+                    }
+                });
+        service.setMode(mode);
+        service.start();
+        producer = service.newProducer();
+
+        // Each device walks the grid on its own and hears the beacon it is next to and its
+        // neighbours
+        Random random = new Random(1);
+        int[] positions = new int[deviceCount];
+        for (int i = 0; i < deviceCount; i++) {
+            positions[i] = random.nextInt(beacons.length);
+        }
+        devices = new long[SAMPLES];
+        macs = new long[SAMPLES];
+        rssis = new int[SAMPLES];
+        for (int i = 0; i < SAMPLES; i++) {
+            int device = random.nextInt(deviceCount);
+            int position = positions[device];
+            if (random.nextInt(50) == 0) {
+                position = network.getNeighbor(position,
+                        random.nextInt(network.getNeighborCount(position)));
+                positions[device] = position;
+            }
+
+            int beacon = position;
+            int rssi = -60;
+            if (random.nextBoolean()) {
+                beacon = network.getNeighbor(position,
+                        random.nextInt(network.getNeighborCount(position)));
+                rssi = -75;
+            }
+            devices[i] = 0xD0000000000L + device;
+            macs[i] = MacAddress.parse(beacons[beacon].getUuid());
+            rssis[i] = rssi + (int) (random.nextGaussian() * 4);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        producer.close();
+        service.stop();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public long feed() {
+        for (int i = 0; i < BATCH; i++) {
+            int sample = next++ & (SAMPLES - 1);
+            time += INTERVAL_NANOS;
+            producer.submit(devices[sample], macs[sample], rssis[sample], time);
+        }
+
+        // Wait for the shards to catch up
+        long submitted = producer.getSubmittedCount();
+        while (service.getSampleCount() < submitted) {
+            Thread.yield();
+        }
+
+        return service.getPositionCount();
+    }
+}
@@ -0,0 +1,77 @@
+package com.js.indoornavigator;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Compares RadioMap k-nearest neighbour queries with a linear scan on surveys of up to 50,000
+// points
+@State(Scope.Thread)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RadioMapBenchmark {
+
+    private static final int BEACONS = 40;
+    private static final int NEIGHBORS = 4;
+    private static final int QUERIES = 1 << 11;
+
+    // Side of the surveyed grid of reference points
+    @Param({"32", "100", "224"})
+    public int gridSize;
+
+    private RadioMap map;
+    private float[][] queries;
+    private final int[] points = new int[NEIGHBORS];
+    private final float[] distances = new float[NEIGHBORS];
+    private int next;
+
+    @Setup
+    public void setUp() throws IOException {
+        byte[] survey = RadioMapTest.createSurvey(gridSize, BEACONS, 1);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(survey.length);
+        buffer.put(survey);
+        buffer.flip();
+        map = RadioMapFile.read(buffer);
+
+        Random random = new Random(2);
+        queries = new float[QUERIES][BEACONS];
+        for (float[] query : queries) {
+            int point = random.nextInt(map.getPointCount());
+            // Beacons that were not heard at the point stay missing
+            for (int j = 0; j < BEACONS; j++) {
+                int rssi = map.getRssi(point, j);
+                query[j] = rssi == RadioMap.RSSI_FLOOR ? rssi
+                        : Math.max(RadioMap.RSSI_FLOOR, rssi + (float) random.nextGaussian() * 4);
+            }
+        }
+    }
+
+    @Benchmark
+    public int vantagePointTree() {
+        map.findNearest(queries[next++ & (QUERIES - 1)], NEIGHBORS, points, distances);
+        return points[0];
+    }
+
+    @Benchmark
+    public float linearScan() {
+        float[] query = queries[next++ & (QUERIES - 1)];
+        float best = Float.MAX_VALUE;
+        for (int i = 0; i < map.getPointCount(); i++) {
+            float sum = 0;
+            for (int j = 0; j < query.length; j++) {
+                float difference = query[j] - map.getRssi(i, j);
+                sum += difference * difference;
+            }
+            best = Math.min(best, sum);
+        }
+
+        return (float) Math.sqrt(best);
+    }
+}
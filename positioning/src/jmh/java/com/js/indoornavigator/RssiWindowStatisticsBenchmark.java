@@ -0,0 +1,65 @@
+package com.js.indoornavigator;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Measures adding a reading to the windowed RSSI statistics, which expires the readings that
+// left the window, and querying a full window, across window capacities
+@State(Scope.Thread)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RssiWindowStatisticsBenchmark {
+
+    private static final int READINGS = 1 << 14;
+    private static final int BEACONS = 16;
+    private static final long WINDOW_NANOS = 10 * 1000000000L;
+
+    @Param({"16", "128", "1024"})
+    public int capacity;
+
+    private RssiWindowStatistics statistics;
+    private int[] rssi;
+    private int next;
+    private long time;
+
+    @Setup
+    public void setUp() {
+        statistics = new RssiWindowStatistics(BEACONS, capacity, WINDOW_NANOS);
+
+        Random random = new Random(1);
+        rssi = new int[READINGS];
+        for (int i = 0; i < READINGS; i++) {
+            rssi[i] = -70 + (int) Math.round(random.nextGaussian() * 6);
+        }
+
+        // Fill every window so that each add also expires
+        long interval = WINDOW_NANOS / capacity;
+        for (int i = 0; i < capacity * BEACONS; i++) {
+            time += interval / BEACONS;
+            statistics.add(i % BEACONS, rssi[i & (READINGS - 1)], time);
+        }
+    }
+
+    @Benchmark
+    public void add() {
+        int i = next++;
+        time += WINDOW_NANOS / capacity / BEACONS;
+        statistics.add(i % BEACONS, rssi[i & (READINGS - 1)], time);
+    }
+
+    @Benchmark
+    public int median() {
+        return statistics.getPercentile(next++ % BEACONS, 50, time);
+    }
+
+    @Benchmark
+    public double variance() {
+        return statistics.getVariance(next++ % BEACONS, WINDOW_NANOS / 2, time);
+    }
+}
@@ -0,0 +1,50 @@
+package com.js.indoornavigator;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Measures adding a sample to the density methods' sliding window across window sizes and beacon
+// counts. Each add evicts the oldest sample once the window is full.
+@State(Scope.Thread)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SlidingWindowModeEstimatorBenchmark {
+
+    private static final int SAMPLES = 1 << 14;
+
+    @Param({"10", "100", "1000"})
+    public int windowSize;
+
+    @Param({"5", "100", "1000"})
+    public int beaconCount;
+
+    private SlidingWindowModeEstimator estimator;
+    private int[] keys;
+    private int next;
+    private long time;
+
+    @Setup
+    public void setUp() {
+        estimator = new SlidingWindowModeEstimator(beaconCount, windowSize);
+
+        // Samples cluster around a slowly moving beacon, as they do for a walking device
+        Random random = new Random(1);
+        keys = new int[SAMPLES];
+        for (int i = 0; i < SAMPLES; i++) {
+            int nearest = (i / 40) % beaconCount;
+            keys[i] = random.nextInt(3) == 0 ? random.nextInt(beaconCount) : nearest;
+        }
+    }
+
+    @Benchmark
+    public int add() {
+        time += 1000000L;
+        return estimator.add(keys[next++ & (SAMPLES - 1)], time);
+    }
+}
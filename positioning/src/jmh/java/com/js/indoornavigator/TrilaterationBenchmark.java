@@ -0,0 +1,67 @@
+package com.js.indoornavigator;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Measures TrilaterationSolver on noisy ranges from randomly placed visible beacons
+@State(Scope.Thread)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TrilaterationBenchmark {
+
+    private static final float AREA_METRES = 30;
+    private static final int SOLVES = 1 << 12;
+
+    @Param({"4", "8", "24"})
+    public int beaconCount;
+
+    private TrilaterationSolver solver;
+    private float[] beaconX;
+    private float[] beaconY;
+    private double[][] distances;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(1);
+        PathLossModel model = new PathLossModel();
+
+        beaconX = new float[beaconCount];
+        beaconY = new float[beaconCount];
+        for (int i = 0; i < beaconCount; i++) {
+            beaconX[i] = random.nextFloat() * AREA_METRES;
+            beaconY[i] = random.nextFloat() * AREA_METRES;
+        }
+
+        solver = new TrilaterationSolver(beaconCount);
+        distances = new double[SOLVES][beaconCount];
+        for (int i = 0; i < SOLVES; i++) {
+            double x = random.nextDouble() * AREA_METRES;
+            double y = random.nextDouble() * AREA_METRES;
+            for (int j = 0; j < beaconCount; j++) {
+                double rssi = model.rssiAtDistance(Math.hypot(x - beaconX[j], y - beaconY[j]))
+                        + random.nextGaussian() * 3;
+                distances[i][j] = model.distanceAtRssi(rssi);
+            }
+        }
+    }
+
+    @Benchmark
+    public float solve() {
+        solver.solve(beaconX, beaconY, distances[next++ & (SOLVES - 1)], beaconCount);
+        return solver.getX();
+    }
+
+    @Benchmark
+    public float solveWeightedCentroid() {
+        solver.solveWeightedCentroid(beaconX, beaconY, distances[next++ & (SOLVES - 1)],
+                beaconCount);
+        return solver.getX();
+    }
+}
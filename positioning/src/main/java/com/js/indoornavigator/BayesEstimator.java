@@ -0,0 +1,111 @@
+package com.js.indoornavigator;
+
+// BayesEstimator accepts the beacon with the highest RSSI only if it is the previously accepted
+// beacon or one of its neighbors in the beacon network
+public class BayesEstimator implements PositionEstimator {
+
+    private final BeaconNetwork network;
+
+    // Read by the UI thread for the debug overlay
+    private volatile int currentBeacon = -1;
+    private volatile int previousBeacon = -1;
+    private int quadrant;
+
+    public BayesEstimator(BeaconNetwork network) {
+        this.network = network;
+    }
+
+    @Override
+    public void reset() {
+        currentBeacon = -1;
+        previousBeacon = -1;
+    }
+
+    @Override
+    public void onSample(int beacon, int rssi, long timestampNanos) {
+    }
+
+    @Override
+    public boolean update(Observations observations) {
+        boolean validPosition = false;
+
+        if (currentBeacon < 0) {
+            previousBeacon = currentBeacon = getHighestRssiBeacon(observations);
+            validPosition = true;
+        }
+        else {
+            previousBeacon = currentBeacon;
+            currentBeacon = getHighestRssiBeacon(observations);
+
+            // If in same position or moved to a neighbor, then position is valid
+            if (currentBeacon >= 0) {
+                PipelineMetrics metrics = observations.getMetrics();
+                long start = metrics != null ? System.nanoTime() : 0;
+                if (currentBeacon == previousBeacon
+                        || network.isNeighbor(previousBeacon, currentBeacon)) {
+                    validPosition = true;
+                }
+                if (metrics != null) {
+                    metrics.record(PipelineMetrics.PLAUSIBILITY, System.nanoTime() - start);
+                }
+            }
+        }
+
+        if (!validPosition || currentBeacon < 0) {
+            return false;
+        }
+
+        quadrant = observations.getRegistry().getQuadrant(currentBeacon);
+        return true;
+    }
+
+    // Returns the index of the beacon with the highest Rssi; returns -1 if no beacons intercepted
+    private static int getHighestRssiBeacon(Observations observations) {
+
+        // result points to first beacon by default
+        int index = observations.getStrongestBeacon();
+        if (index < 0) {
+            index = 0;
+        }
+
+        if (observations.getRegistry().isActive(index)) {
+            return index;
+        }
+
+        return -1;
+    }
+
+    // Index of the accepted beacon, or -1
+    public int getCurrentBeacon() {
+        return currentBeacon;
+    }
+
+    // Index of the beacon accepted before the current one, or -1
+    public int getPreviousBeacon() {
+        return previousBeacon;
+    }
+
+    @Override
+    public int getQuadrant() {
+        return quadrant;
+    }
+
+    @Override
+    public boolean hasCoordinate() {
+        return false;
+    }
+
+    @Override
+    public float getX() {
+        return 0;
+    }
+
+    @Override
+    public float getY() {
+        return 0;
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,82 @@
+package com.js.indoornavigator;
+
+
+public class Beacon {
+
+    private int quadrant;
+    private String id;
+    private String uuid;
+
+    // Position of the beacon on the floor plan in metres
+    private float x;
+    private float y;
+
+    // RSSI of the beacon at one metre
+    private float txPower = (float) PathLossModel.DEFAULT_TX_POWER;
+
+    // The RSSI, active flag and sample count of a beacon are kept by BeaconRegistry
+
+    public Beacon(int quadrant, String id, String uuid) {
+        setQuadrant(quadrant);
+        setId(id);
+        setUuid(uuid);
+    }
+
+    public Beacon(int quadrant, String id, String uuid, float x, float y) {
+        this(quadrant, id, uuid);
+        setX(x);
+        setY(y);
+    }
+
+    public int getQuadrant() {
+        return quadrant;
+    }
+
+    public void setQuadrant(int quadrant) {
+        this.quadrant = quadrant;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getUuid() {
+        return uuid;
+    }
+
+    public void setUuid(String uuid) {
+        this.uuid = uuid;
+    }
+
+    public float getX() {
+        return x;
+    }
+
+    public void setX(float x) {
+        this.x = x;
+    }
+
+    public float getY() {
+        return y;
+    }
+
+    public void setY(float y) {
+        this.y = y;
+    }
+
+    public float getTxPower() {
+        return txPower;
+    }
+
+    public void setTxPower(float txPower) {
+        this.txPower = txPower;
+    }
+
+    public String toString() {
+        return "ID: " + id + ". ";
+    }
+}
@@ -0,0 +1,193 @@
+package com.js.indoornavigator;
+
+import java.util.Arrays;
+
+// BeaconNetwork stores which beacons neighbor each other. Nodes are identified by beacon index
+// (the index of the beacon in BeaconRegistry) and the adjacency is kept in compressed sparse row
+// form: the neighbors of node i are neighbors[offsets[i]] to neighbors[offsets[i + 1] - 1], in
+// ascending order. Lookups are O(1) by node index and iterating neighbors does not allocate.
+public class BeaconNetwork {
+
+    private final int[] offsets;
+    private final int[] neighbors;
+
+    // offsets must have nodeCount + 1 entries; the neighbors of each node must be sorted
+    public BeaconNetwork(int[] offsets, int[] neighbors) {
+        if (offsets.length == 0 || offsets[0] != 0 || offsets[offsets.length - 1] != neighbors.length) {
+            throw new IllegalArgumentException("Offsets do not match neighbors");
+        }
+
+        int nodeCount = offsets.length - 1;
+        for (int i = 0; i < nodeCount; i++) {
+            if (offsets[i] > offsets[i + 1]) {
+                throw new IllegalArgumentException("Offsets must not decrease at node " + i);
+            }
+            for (int j = offsets[i]; j < offsets[i + 1]; j++) {
+                if (neighbors[j] < 0 || neighbors[j] >= nodeCount) {
+                    throw new IllegalArgumentException("Invalid neighbor " + neighbors[j] + " of node " + i);
+                }
+                if (j > offsets[i] && neighbors[j] <= neighbors[j - 1]) {
+                    throw new IllegalArgumentException("Neighbors of node " + i + " are not sorted");
+                }
+            }
+        }
+
+        this.offsets = offsets;
+        this.neighbors = neighbors;
+    }
+
+    // Returns the network the app was originally built for: five beacons laid out as
+    //   1 2 3
+    //     4
+    //     5
+    public static BeaconNetwork createDefault() {
+        Builder builder = new Builder(5);
+
+        // Beacon 1 - connected to beacon 2
+        // Beacon 2 - connected to beacon 1, 3, and 4
+        // Beacon 3 - connected to beacon 2
+        // Beacon 4 - connected to beacon 2 and 5
+        // Beacon 5 - connected to beacon 4
+        builder.addEdge(0, 1);
+        builder.addEdge(1, 2);
+        builder.addEdge(1, 3);
+        builder.addEdge(3, 4);
+
+        return builder.build();
+    }
+
+    public int getNodeCount() {
+        return offsets.length - 1;
+    }
+
+    public int getEdgeCount() {
+        return neighbors.length;
+    }
+
+    public int getNeighborCount(int node) {
+        return offsets[node + 1] - offsets[node];
+    }
+
+    // Returns the k-th neighbor of node
+    public int getNeighbor(int node, int k) {
+        return neighbors[offsets[node] + k];
+    }
+
+    // Index of the first neighbor of node in getNeighbors()
+    public int getNeighborStart(int node) {
+        return offsets[node];
+    }
+
+    // Index after the last neighbor of node in getNeighbors()
+    public int getNeighborEnd(int node) {
+        return offsets[node + 1];
+    }
+
+    // Shared adjacency array; callers must not modify it
+    public int[] getNeighbors() {
+        return neighbors;
+    }
+
+    // Shared offset array; callers must not modify it
+    public int[] getOffsets() {
+        return offsets;
+    }
+
+    // Returns true if other is a neighbor of node
+    public boolean isNeighbor(int node, int other) {
+        int low = offsets[node];
+        int high = offsets[node + 1] - 1;
+
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int value = neighbors[middle];
+            if (value < other) {
+                low = middle + 1;
+            }
+            else if (value > other) {
+                high = middle - 1;
+            }
+            else {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    // Builder collects edges and packs them into compressed sparse row form
+    public static class Builder {
+
+        private final int nodeCount;
+        private int[] from;
+        private int[] to;
+        private int edgeCount;
+
+        public Builder(int nodeCount) {
+            this.nodeCount = nodeCount;
+            from = new int[16];
+            to = new int[16];
+        }
+
+        public int getNodeCount() {
+            return nodeCount;
+        }
+
+        // Adds an edge in both directions
+        public Builder addEdge(int a, int b) {
+            addDirectedEdge(a, b);
+            addDirectedEdge(b, a);
+            return this;
+        }
+
+        public Builder addDirectedEdge(int a, int b) {
+            if (a < 0 || a >= nodeCount || b < 0 || b >= nodeCount) {
+                throw new IllegalArgumentException("Edge " + a + " - " + b + " is outside of "
+                        + nodeCount + " nodes");
+            }
+
+            if (edgeCount == from.length) {
+                from = Arrays.copyOf(from, edgeCount * 2);
+                to = Arrays.copyOf(to, edgeCount * 2);
+            }
+            from[edgeCount] = a;
+            to[edgeCount] = b;
+            edgeCount++;
+            return this;
+        }
+
+        // Packs the edges; duplicate edges and self loops are dropped
+        public BeaconNetwork build() {
+            int[] offsets = new int[nodeCount + 1];
+            for (int i = 0; i < edgeCount; i++) {
+                offsets[from[i] + 1]++;
+            }
+            for (int i = 0; i < nodeCount; i++) {
+                offsets[i + 1] += offsets[i];
+            }
+
+            int[] next = Arrays.copyOf(offsets, nodeCount);
+            int[] packed = new int[edgeCount];
+            for (int i = 0; i < edgeCount; i++) {
+                packed[next[from[i]]++] = to[i];
+            }
+
+            // Sort each row and squeeze out duplicates and self loops
+            int[] compactOffsets = new int[nodeCount + 1];
+            int size = 0;
+            for (int node = 0; node < nodeCount; node++) {
+                Arrays.sort(packed, offsets[node], offsets[node + 1]);
+                for (int j = offsets[node]; j < offsets[node + 1]; j++) {
+                    int neighbor = packed[j];
+                    if (neighbor == node || (size > compactOffsets[node] && packed[size - 1] == neighbor)) {
+                        continue;
+                    }
+                    packed[size++] = neighbor;
+                }
+                compactOffsets[node + 1] = size;
+            }
+
+            return new BeaconNetwork(compactOffsets, Arrays.copyOf(packed, size));
+        }
+    }
+}
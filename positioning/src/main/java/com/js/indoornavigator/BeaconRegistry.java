@@ -0,0 +1,178 @@
+package com.js.indoornavigator;
+
+import java.util.Arrays;
+
+// BeaconRegistry maps packed MAC addresses to beacon indices with an open-addressing hash index.
+// The state of each beacon is stored in parallel primitive arrays indexed by the beacon index,
+// so neither lookups nor updates allocate. Indices are assigned in registration order.
+public class BeaconRegistry {
+
+    private static final long EMPTY = -1L;
+    private static final int DEFAULT_CAPACITY = 16;
+
+    // Hash index; keys holds packed MAC addresses and slots the matching beacon index
+    private long[] keys;
+    private int[] slots;
+    private int mask;
+
+    // Per beacon state
+    private long[] macs;
+    private int[] rssi;
+    private boolean[] active;
+    private long[] sampleCount;
+    private int[] quadrant;
+
+    private int size;
+
+    public BeaconRegistry() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public BeaconRegistry(int capacity) {
+        allocateState(Math.max(capacity, 1));
+        allocateIndex(tableSizeFor(macs.length));
+    }
+
+    // Registers a beacon and returns its index; returns the existing index if the MAC is known
+    public int register(long mac, int beaconQuadrant) {
+        if (mac < 0) {
+            throw new IllegalArgumentException("Invalid MAC address: " + mac);
+        }
+
+        int index = indexOf(mac);
+        if (index >= 0) {
+            quadrant[index] = beaconQuadrant;
+            return index;
+        }
+
+        if (size == macs.length) {
+            grow();
+        }
+
+        index = size++;
+        macs[index] = mac;
+        quadrant[index] = beaconQuadrant;
+        insert(mac, index);
+
+        return index;
+    }
+
+    // Returns the index of the beacon with the given MAC, or -1 if it is not registered or
+    // invalid; an invalid MAC would otherwise match the EMPTY marker of a free slot
+    public int indexOf(long mac) {
+        if (mac < 0) {
+            return -1;
+        }
+
+        int slot = hash(mac) & mask;
+        while (true) {
+            long key = keys[slot];
+            if (key == mac) {
+                return slots[slot];
+            }
+            if (key == EMPTY) {
+                return -1;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long getMac(int index) {
+        return macs[index];
+    }
+
+    public int getRssi(int index) {
+        return rssi[index];
+    }
+
+    public void setRssi(int index, int value) {
+        rssi[index] = value;
+    }
+
+    public boolean isActive(int index) {
+        return active[index];
+    }
+
+    public void setActive(int index, boolean value) {
+        active[index] = value;
+    }
+
+    // Counts a sample received from the beacon
+    public void addSample(int index) {
+        sampleCount[index]++;
+    }
+
+    // Number of samples received from the beacon since it was registered
+    public long getSampleCount(int index) {
+        return sampleCount[index];
+    }
+
+    public int getQuadrant(int index) {
+        return quadrant[index];
+    }
+
+    private void insert(long mac, int index) {
+        int slot = hash(mac) & mask;
+        while (keys[slot] != EMPTY) {
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = mac;
+        slots[slot] = index;
+    }
+
+    // Doubles the state arrays and rebuilds the hash index
+    private void grow() {
+        int capacity = macs.length * 2;
+
+        macs = Arrays.copyOf(macs, capacity);
+        rssi = Arrays.copyOf(rssi, capacity);
+        active = Arrays.copyOf(active, capacity);
+        sampleCount = Arrays.copyOf(sampleCount, capacity);
+        quadrant = Arrays.copyOf(quadrant, capacity);
+
+        allocateIndex(tableSizeFor(capacity));
+        for (int i = 0; i < size; i++) {
+            insert(macs[i], i);
+        }
+    }
+
+    private void allocateState(int capacity) {
+        macs = new long[capacity];
+        rssi = new int[capacity];
+        active = new boolean[capacity];
+        sampleCount = new long[capacity];
+        quadrant = new int[capacity];
+    }
+
+    private void allocateIndex(int tableSize) {
+        keys = new long[tableSize];
+        Arrays.fill(keys, EMPTY);
+        slots = new int[tableSize];
+        mask = tableSize - 1;
+    }
+
+    // The hash table is kept at most half full so that probe sequences stay short
+    private static int tableSizeFor(int capacity) {
+        int tableSize = 2;
+        while (tableSize < capacity * 2) {
+            tableSize <<= 1;
+        }
+
+        return tableSize;
+    }
+
+    // Mixes the bits of the address; the low bytes of a MAC alone cluster badly
+    static int hash(long mac) {
+        mac ^= mac >>> 33;
+        mac *= 0xff51afd7ed558ccdL;
+        mac ^= mac >>> 33;
+        mac *= 0xc4ceb9fe1a85ec53L;
+        mac ^= mac >>> 33;
+
+        return (int) mac;
+    }
+}
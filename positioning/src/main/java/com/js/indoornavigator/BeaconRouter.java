@@ -0,0 +1,445 @@
+package com.js.indoornavigator;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+// BeaconRouter plans routes over a BeaconNetwork whose edges are weighed by the distance walked
+// between their beacons. A route is found with A*, guided by the straight line distance to the
+// destination scaled down so that it never overestimates, which keeps the routes shortest.
+//
+// Destinations that are asked for often get a next-hop table: a single search backwards from the
+// destination gives every node the neighbour to walk to next and its distance to go, so routes
+// to it are then read off the table in O(route length) without searching. A destination gets its
+// table once it has been asked for promotionQueries times, up to maxTables tables of 8 bytes per
+// node each; precompute builds one straight away, as for the entrances of a building.
+//
+// The weights never change and tables are published atomically, so any number of threads may
+// query a router at once. A* needs working memory the size of the network, which is held in a
+// Search; each querying thread creates its own with newSearch.
+public class BeaconRouter {
+
+    public static final int NO_NODE = -1;
+
+    // Defaults for the next-hop tables
+    public static final int DEFAULT_MAX_TABLES = 16;
+    public static final int DEFAULT_PROMOTION_QUERIES = 64;
+
+    // Beacons at the same spot, or without positions, count as this far apart, so that routes
+    // between them take the fewest hops
+    private static final float MIN_EDGE_METRES = 0.01f;
+
+    private final BeaconNetwork network;
+    private final int[] offsets;
+    private final int[] neighbors;
+
+    // Weight of each edge, in the order of network.getNeighbors()
+    private final float[] weights;
+
+    // Node positions for the heuristic, which is heuristicScale times the straight line distance;
+    // a scale of 0 makes the search a Dijkstra search
+    private final float[] x;
+    private final float[] y;
+    private final float heuristicScale;
+
+    // Edges reversed, for the searches backwards from a destination
+    private final int[] reverseOffsets;
+    private final int[] reverseNeighbors;
+    private final float[] reverseWeights;
+
+    private final int maxTables;
+    private final int promotionQueries;
+    private final AtomicReferenceArray<NextHopTable> tables;
+    private final AtomicIntegerArray queryCounts;
+    private final AtomicInteger tableCount = new AtomicInteger();
+
+    // Next node and distance to the destination from every node; NO_NODE where it is unreachable
+    private static final class NextHopTable {
+        final int[] next;
+        final float[] distance;
+
+        NextHopTable(int nodeCount) {
+            next = new int[nodeCount];
+            distance = new float[nodeCount];
+        }
+    }
+
+    public BeaconRouter(BeaconNetwork network, float[] weights, float[] x, float[] y) {
+        this(network, weights, x, y, DEFAULT_MAX_TABLES, DEFAULT_PROMOTION_QUERIES);
+    }
+
+    // weights holds the weight of each edge in the order of network.getNeighbors(); x and y the
+    // position of each node in the same unit, or null to search without a heuristic
+    public BeaconRouter(BeaconNetwork network, float[] weights, float[] x, float[] y,
+            int maxTables, int promotionQueries) {
+        int nodeCount = network.getNodeCount();
+        if (weights.length != network.getEdgeCount()) {
+            throw new IllegalArgumentException(weights.length + " weights for "
+                    + network.getEdgeCount() + " edges");
+        }
+        if ((x == null) != (y == null) || (x != null && (x.length != nodeCount
+                || y.length != nodeCount))) {
+            throw new IllegalArgumentException("Need a position for each of " + nodeCount + " nodes");
+        }
+        if (maxTables < 0 || promotionQueries < 1) {
+            throw new IllegalArgumentException("Invalid table limits");
+        }
+
+        this.network = network;
+        offsets = network.getOffsets();
+        neighbors = network.getNeighbors();
+        this.weights = weights.clone();
+        this.x = x;
+        this.y = y;
+        this.maxTables = maxTables;
+        this.promotionQueries = promotionQueries;
+
+        // The straight line may only be scaled up to the cheapest weight per unit of length
+        float scale = x != null ? 1 : 0;
+        for (int node = 0; node < nodeCount; node++) {
+            for (int k = offsets[node]; k < offsets[node + 1]; k++) {
+                if (!(weights[k] >= 0)) {
+                    throw new IllegalArgumentException("Invalid weight " + weights[k] + " of node "
+                            + node);
+                }
+                if (x != null) {
+                    float length = distance(node, neighbors[k]);
+                    if (length > 0) {
+                        scale = Math.min(scale, weights[k] / length);
+                    }
+                }
+            }
+        }
+        heuristicScale = scale;
+
+        reverseOffsets = new int[nodeCount + 1];
+        reverseNeighbors = new int[neighbors.length];
+        reverseWeights = new float[neighbors.length];
+        for (int k = 0; k < neighbors.length; k++) {
+            reverseOffsets[neighbors[k] + 1]++;
+        }
+        for (int i = 0; i < nodeCount; i++) {
+            reverseOffsets[i + 1] += reverseOffsets[i];
+        }
+        int[] next = Arrays.copyOf(reverseOffsets, nodeCount);
+        for (int node = 0; node < nodeCount; node++) {
+            for (int k = offsets[node]; k < offsets[node + 1]; k++) {
+                int slot = next[neighbors[k]]++;
+                reverseNeighbors[slot] = node;
+                reverseWeights[slot] = weights[k];
+            }
+        }
+
+        tables = new AtomicReferenceArray<>(nodeCount);
+        queryCounts = new AtomicIntegerArray(nodeCount);
+    }
+
+    // Router over network that weighs each edge by the distance between its beacons in metres
+    public static BeaconRouter create(BeaconNetwork network, Beacon[] beacons) {
+        if (beacons.length != network.getNodeCount()) {
+            throw new IllegalArgumentException("Network has " + network.getNodeCount()
+                    + " nodes for " + beacons.length + " beacons");
+        }
+
+        float[] x = new float[beacons.length];
+        float[] y = new float[beacons.length];
+        for (int i = 0; i < beacons.length; i++) {
+            x[i] = beacons[i].getX();
+            y[i] = beacons[i].getY();
+        }
+
+        int[] neighbors = network.getNeighbors();
+        float[] weights = new float[neighbors.length];
+        for (int node = 0; node < beacons.length; node++) {
+            for (int k = network.getNeighborStart(node); k < network.getNeighborEnd(node); k++) {
+                float dx = x[neighbors[k]] - x[node];
+                float dy = y[neighbors[k]] - y[node];
+                weights[k] = Math.max(MIN_EDGE_METRES, (float) Math.sqrt(dx * dx + dy * dy));
+            }
+        }
+
+        return new BeaconRouter(network, weights, x, y);
+    }
+
+    public BeaconNetwork getNetwork() {
+        return network;
+    }
+
+    // Weight of edge k, in the order of getNetwork().getNeighbors()
+    public float getWeight(int k) {
+        return weights[k];
+    }
+
+    // Working memory for the searches of one thread
+    public Search newSearch() {
+        return new Search();
+    }
+
+    // Finds the shortest route from source to destination and stores it in route, using the
+    // next-hop table of destination if it has one. Returns false, leaving route empty, if
+    // destination cannot be reached. search must belong to the calling thread.
+    public boolean route(int source, int destination, Search search, Route route) {
+        checkNode(source);
+        checkNode(destination);
+
+        NextHopTable table = tables.get(destination);
+        if (table == null && queryCounts.incrementAndGet(destination) == promotionQueries) {
+            table = addTable(destination);
+        }
+        if (table != null) {
+            return readTable(table, source, route);
+        }
+
+        return search.find(source, destination, route);
+    }
+
+    // Builds the next-hop table of destination unless it has one or the tables are used up;
+    // returns false if it has none afterwards
+    public boolean precompute(int destination) {
+        checkNode(destination);
+        return tables.get(destination) != null || addTable(destination) != null;
+    }
+
+    public boolean hasTable(int destination) {
+        return tables.get(destination) != null;
+    }
+
+    public int getTableCount() {
+        return tableCount.get();
+    }
+
+    private NextHopTable addTable(int destination) {
+        if (tableCount.incrementAndGet() > maxTables) {
+            tableCount.decrementAndGet();
+            return null;
+        }
+
+        NextHopTable table = buildTable(destination);
+        if (!tables.compareAndSet(destination, null, table)) {
+            // Another thread got there first
+            tableCount.decrementAndGet();
+            return tables.get(destination);
+        }
+
+        return table;
+    }
+
+    // Dijkstra search backwards from destination over the whole network
+    private NextHopTable buildTable(int destination) {
+        int nodeCount = offsets.length - 1;
+        NextHopTable table = new NextHopTable(nodeCount);
+        Arrays.fill(table.next, NO_NODE);
+        Arrays.fill(table.distance, Float.POSITIVE_INFINITY);
+        boolean[] done = new boolean[nodeCount];
+        NodeHeap heap = new NodeHeap(neighbors.length + 1);
+
+        table.next[destination] = destination;
+        table.distance[destination] = 0;
+        heap.push(destination, 0);
+        while (!heap.isEmpty()) {
+            int node = heap.pop();
+            if (done[node]) {
+                continue;
+            }
+            done[node] = true;
+
+            // Nodes with an edge to node can walk to it
+            for (int k = reverseOffsets[node]; k < reverseOffsets[node + 1]; k++) {
+                int previous = reverseNeighbors[k];
+                float distance = table.distance[node] + reverseWeights[k];
+                if (distance < table.distance[previous]) {
+                    table.distance[previous] = distance;
+                    table.next[previous] = node;
+                    heap.push(previous, distance);
+                }
+            }
+        }
+
+        return table;
+    }
+
+    private static boolean readTable(NextHopTable table, int source, Route route) {
+        if (table.next[source] == NO_NODE) {
+            route.clear();
+            return false;
+        }
+
+        int count = 1;
+        for (int node = source; table.next[node] != node; node = table.next[node]) {
+            count++;
+        }
+
+        route.reset(count);
+        int node = source;
+        for (int i = 0; i < count; i++) {
+            route.set(i, node, table.distance[node]);
+            node = table.next[node];
+        }
+
+        return true;
+    }
+
+    private float distance(int a, int b) {
+        float dx = x[a] - x[b];
+        float dy = y[a] - y[b];
+        return (float) Math.sqrt(dx * dx + dy * dy);
+    }
+
+    private float heuristic(int node, int destination) {
+        return heuristicScale > 0 ? heuristicScale * distance(node, destination) : 0;
+    }
+
+    private void checkNode(int node) {
+        if (node < 0 || node >= offsets.length - 1) {
+            throw new IllegalArgumentException("Invalid node " + node);
+        }
+    }
+
+    // A* working memory. Per node scores are only valid where their stamp matches the search, so
+    // nothing is cleared between searches and a search does not allocate unless the route grows.
+    public class Search {
+
+        private final float[] cost;
+        private final int[] parent;
+        private final int[] seenStamp;
+        private final int[] doneStamp;
+        private final NodeHeap heap;
+        private int stamp;
+        private int expanded;
+
+        private Search() {
+            int nodeCount = offsets.length - 1;
+            cost = new float[nodeCount];
+            parent = new int[nodeCount];
+            seenStamp = new int[nodeCount];
+            doneStamp = new int[nodeCount];
+            heap = new NodeHeap(neighbors.length + 1);
+        }
+
+        // Nodes expanded by the last search
+        public int getExpandedCount() {
+            return expanded;
+        }
+
+        boolean find(int source, int destination, Route route) {
+            if (++stamp == 0) {
+                Arrays.fill(seenStamp, 0);
+                Arrays.fill(doneStamp, 0);
+                stamp = 1;
+            }
+            heap.clear();
+            expanded = 0;
+
+            cost[source] = 0;
+            parent[source] = NO_NODE;
+            seenStamp[source] = stamp;
+            heap.push(source, heuristic(source, destination));
+            while (!heap.isEmpty()) {
+                int node = heap.pop();
+                if (doneStamp[node] == stamp) {
+                    continue;
+                }
+                doneStamp[node] = stamp;
+                expanded++;
+                if (node == destination) {
+                    readPath(source, destination, route);
+                    return true;
+                }
+
+                for (int k = offsets[node]; k < offsets[node + 1]; k++) {
+                    int neighbor = neighbors[k];
+                    float neighborCost = cost[node] + weights[k];
+                    if (seenStamp[neighbor] != stamp || neighborCost < cost[neighbor]) {
+                        seenStamp[neighbor] = stamp;
+                        cost[neighbor] = neighborCost;
+                        parent[neighbor] = node;
+                        heap.push(neighbor, neighborCost + heuristic(neighbor, destination));
+                    }
+                }
+            }
+
+            route.clear();
+            return false;
+        }
+
+        private void readPath(int source, int destination, Route route) {
+            int count = 1;
+            for (int node = destination; node != source; node = parent[node]) {
+                count++;
+            }
+
+            route.reset(count);
+            float total = cost[destination];
+            int node = destination;
+            for (int i = count - 1; i >= 0; i--) {
+                route.set(i, node, total - cost[node]);
+                node = parent[node];
+            }
+        }
+    }
+
+    // Binary min-heap of nodes by key. Nodes are pushed again rather than decreased, and stale
+    // entries are skipped when popped, so it holds at most one entry per edge plus the start.
+    private static final class NodeHeap {
+
+        private final int[] nodes;
+        private final float[] keys;
+        private int size;
+
+        NodeHeap(int capacity) {
+            nodes = new int[capacity];
+            keys = new float[capacity];
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        void clear() {
+            size = 0;
+        }
+
+        void push(int node, float key) {
+            int i = size++;
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (keys[parent] <= key) {
+                    break;
+                }
+                nodes[i] = nodes[parent];
+                keys[i] = keys[parent];
+                i = parent;
+            }
+            nodes[i] = node;
+            keys[i] = key;
+        }
+
+        int pop() {
+            int top = nodes[0];
+            int lastNode = nodes[--size];
+            float lastKey = keys[size];
+
+            int i = 0;
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= size) {
+                    break;
+                }
+                if (child + 1 < size && keys[child + 1] < keys[child]) {
+                    child++;
+                }
+                if (keys[child] >= lastKey) {
+                    break;
+                }
+                nodes[i] = nodes[child];
+                keys[i] = keys[child];
+                i = child;
+            }
+            nodes[i] = lastNode;
+            keys[i] = lastKey;
+
+            return top;
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.js.indoornavigator;
+
+// DensityEstimator places the device in the quadrant of the beacon that was most often the
+// strongest over a window of the last seconds of scan timestamps. With a sample interval it takes
+// at most one sample per interval, so that a burst of scan results does not fill the window.
+public class DensityEstimator implements PositionEstimator {
+
+    private final SlidingWindowModeEstimator window;
+    private final long intervalNanos;
+
+    // Timestamp of the last sample taken, or 0
+    private long lastSampleNanos;
+    private int quadrant;
+
+    // The window holds the samples of the last windowNanos, at most maxSamples of them;
+    // intervalNanos of 0 samples every update
+    public DensityEstimator(int beaconCount, int maxSamples, long windowNanos,
+            long intervalNanos) {
+        window = new SlidingWindowModeEstimator(beaconCount, maxSamples);
+        window.setWindow(maxSamples, windowNanos);
+        this.intervalNanos = intervalNanos;
+    }
+
+    @Override
+    public void reset() {
+        window.clear();
+        lastSampleNanos = 0;
+    }
+
+    @Override
+    public void onSample(int beacon, int rssi, long timestampNanos) {
+    }
+
+    @Override
+    public boolean update(Observations observations) {
+        long timestampNanos = observations.getTimestampNanos();
+        if (lastSampleNanos != 0 && timestampNanos - lastSampleNanos < intervalNanos) {
+            return false;
+        }
+        lastSampleNanos = timestampNanos;
+
+        // The first beacon stands in when none is heard
+        int beacon = observations.getStrongestBeacon();
+        int mode = window.add(beacon >= 0 ? beacon : 0, timestampNanos);
+        quadrant = observations.getRegistry().getQuadrant(mode);
+        return true;
+    }
+
+    // How often each beacon was the strongest within the window
+    public SlidingWindowModeEstimator getWindow() {
+        return window;
+    }
+
+    @Override
+    public int getQuadrant() {
+        return quadrant;
+    }
+
+    @Override
+    public boolean hasCoordinate() {
+        return false;
+    }
+
+    @Override
+    public float getX() {
+        return 0;
+    }
+
+    @Override
+    public float getY() {
+        return 0;
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,97 @@
+package com.js.indoornavigator;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+// DeviceSampleBuffer is a single-producer/single-consumer ring buffer of scan samples tagged with
+// the device that heard them. It works like ScanSampleBuffer, but a full buffer pushes back on
+// the producer instead of dropping samples: PositioningService replays files and socket feeds
+// that must not lose samples, and the producer simply waits for the consumer to catch up.
+public class DeviceSampleBuffer {
+
+    // Receives drained samples on the consumer thread
+    public interface SampleHandler {
+        void onSample(long device, long mac, int rssi, long timestampNanos);
+    }
+
+    private final long[] devices;
+    private final long[] macs;
+    private final int[] rssis;
+    private final long[] timestamps;
+    private final int mask;
+
+    // head is the next index to read and is only written by the consumer; tail is the next index
+    // to write and is only written by the producer
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+
+    // Producer-side copy of head, refreshed only when the buffer looks full
+    private long cachedHead;
+
+    // capacity is rounded up to a power of two
+    public DeviceSampleBuffer(int capacity) {
+        int size = 1;
+        while (size < capacity) {
+            size <<= 1;
+        }
+
+        devices = new long[size];
+        macs = new long[size];
+        rssis = new int[size];
+        timestamps = new long[size];
+        mask = size - 1;
+    }
+
+    // Called by the producer; returns false if the buffer is full
+    public boolean offer(long device, long mac, int rssi, long timestampNanos) {
+        long currentTail = tail.get();
+        if (currentTail - cachedHead > mask) {
+            cachedHead = head.get();
+            if (currentTail - cachedHead > mask) {
+                return false;
+            }
+        }
+
+        int index = (int) currentTail & mask;
+        devices[index] = device;
+        macs[index] = mac;
+        rssis[index] = rssi;
+        timestamps[index] = timestampNanos;
+
+        // Full volatile write, so that a consumer that checks isEmpty() before parking cannot
+        // miss the sample
+        tail.set(currentTail + 1);
+        return true;
+    }
+
+    // Called by the consumer; passes up to maxSamples samples to handler and returns the number
+    // of samples drained
+    public int drain(SampleHandler handler, int maxSamples) {
+        long currentHead = head.get();
+        long available = tail.get() - currentHead;
+        if (available == 0) {
+            return 0;
+        }
+
+        int count = (int) Math.min(available, maxSamples);
+        for (int i = 0; i < count; i++) {
+            int index = (int) (currentHead + i) & mask;
+            handler.onSample(devices[index], macs[index], rssis[index], timestamps[index]);
+        }
+
+        // Releases the slots to the producer
+        head.lazySet(currentHead + count);
+        return count;
+    }
+
+    public boolean isEmpty() {
+        return head.get() == tail.get();
+    }
+
+    public int size() {
+        return (int) (tail.get() - head.get());
+    }
+
+    public int capacity() {
+        return mask + 1;
+    }
+}
@@ -0,0 +1,256 @@
+package com.js.indoornavigator;
+
+// EddystoneFrame decodes the Eddystone service data of a raw advertisement, as returned by
+// ScanRecord.getBytes(), in place. An instance is reused for every advertisement, so parsing
+// neither copies nor allocates; the getters describe the last advertisement parsed.
+//
+// Fields sit at fixed offsets of the service data:
+//   UID: frame type, tx power, 10 byte namespace, 6 byte instance
+//   TLM: frame type, version, battery mV, temperature (8.8 fixed point), advertisement count,
+//        uptime in tenths of a second, all big endian
+//   EID: frame type, tx power, 8 byte ephemeral id
+// The namespace is held as its first 2 bytes and last 8 bytes so that filtering by namespace
+// takes two comparisons.
+public class EddystoneFrame {
+
+    // Frame types
+    public static final int FRAME_NONE = -1;
+    public static final int FRAME_UID = 0x00;
+    public static final int FRAME_URL = 0x10;
+    public static final int FRAME_TLM = 0x20;
+    public static final int FRAME_EID = 0x30;
+
+    // Returned by getTemperature when the beacon has no sensor
+    public static final float NO_TEMPERATURE = Float.NaN;
+
+    // Advertising data type of service data with a 16 bit UUID, and the Eddystone UUID 0xFEAA as
+    // it appears in the data, little endian
+    private static final int AD_TYPE_SERVICE_DATA = 0x16;
+    private static final int EDDYSTONE_UUID_LOW = 0xAA;
+    private static final int EDDYSTONE_UUID_HIGH = 0xFE;
+
+    // Service data lengths after the UUID
+    private static final int UID_LENGTH = 18;
+    private static final int TLM_LENGTH = 14;
+    private static final int EID_LENGTH = 10;
+
+    public static final int NAMESPACE_LENGTH = 10;
+    private static final int TEMPERATURE_UNSUPPORTED = 0x8000;
+
+    private int frameType = FRAME_NONE;
+    private int txPower;
+    private long namespaceHigh;
+    private long namespaceLow;
+    private long instance;
+    private long ephemeralId;
+    private int tlmVersion;
+    private int batteryMillivolts;
+    private int temperatureFixed;
+    private long advertisementCount;
+    private long uptimeTenths;
+
+    // Parses a whole advertisement; returns false if it holds no complete Eddystone frame
+    public boolean parse(byte[] record) {
+        return record != null && parse(record, 0, record.length);
+    }
+
+    // Walks the advertising data structures of record[offset, offset + length) for Eddystone
+    // service data. Anything else is skipped after reading its length and type.
+    public boolean parse(byte[] record, int offset, int length) {
+        frameType = FRAME_NONE;
+
+        int end = offset + length;
+        int i = offset;
+        while (i < end) {
+            int structureLength = record[i] & 0xFF;
+            if (structureLength == 0) {
+                // Padding to the end of the advertisement
+                return false;
+            }
+
+            int next = i + 1 + structureLength;
+            if (next > end) {
+                return false;
+            }
+
+            // Type, 2 UUID bytes and the frame type
+            if (structureLength >= 4 && (record[i + 1] & 0xFF) == AD_TYPE_SERVICE_DATA
+                    && (record[i + 2] & 0xFF) == EDDYSTONE_UUID_LOW
+                    && (record[i + 3] & 0xFF) == EDDYSTONE_UUID_HIGH) {
+                return parseServiceData(record, i + 4, structureLength - 3);
+            }
+
+            i = next;
+        }
+
+        return false;
+    }
+
+    // data starts at the frame type
+    private boolean parseServiceData(byte[] data, int offset, int length) {
+        int type = data[offset] & 0xFF;
+        switch (type) {
+            case FRAME_UID:
+                if (length < UID_LENGTH) {
+                    return false;
+                }
+                txPower = data[offset + 1];
+                namespaceHigh = readLong(data, offset + 2, 2);
+                namespaceLow = readLong(data, offset + 4, 8);
+                instance = readLong(data, offset + 12, 6);
+                break;
+            case FRAME_TLM:
+                if (length < TLM_LENGTH) {
+                    return false;
+                }
+                tlmVersion = data[offset + 1] & 0xFF;
+                batteryMillivolts = (int) readLong(data, offset + 2, 2);
+                temperatureFixed = (int) readLong(data, offset + 4, 2);
+                advertisementCount = readLong(data, offset + 6, 4);
+                uptimeTenths = readLong(data, offset + 10, 4);
+                break;
+            case FRAME_EID:
+                if (length < EID_LENGTH) {
+                    return false;
+                }
+                txPower = data[offset + 1];
+                ephemeralId = readLong(data, offset + 2, 8);
+                break;
+            case FRAME_URL:
+                if (length < 2) {
+                    return false;
+                }
+                txPower = data[offset + 1];
+                break;
+            default:
+                return false;
+        }
+
+        frameType = type;
+        return true;
+    }
+
+    // Reads count bytes big endian
+    private static long readLong(byte[] data, int offset, int count) {
+        long value = 0;
+        for (int i = 0; i < count; i++) {
+            value = (value << 8) | (data[offset + i] & 0xFF);
+        }
+
+        return value;
+    }
+
+    public int getFrameType() {
+        return frameType;
+    }
+
+    // Calibrated tx power at 0 m in dBm of a UID, URL or EID frame
+    public int getTxPower() {
+        return txPower;
+    }
+
+    // First 2 and last 8 bytes of the namespace of a UID frame
+    public long getNamespaceHigh() {
+        return namespaceHigh;
+    }
+
+    public long getNamespaceLow() {
+        return namespaceLow;
+    }
+
+    // True if this is a UID frame in the namespace given by getNamespaceHigh and getNamespaceLow
+    // of parseNamespace
+    public boolean isInNamespace(long high, long low) {
+        return frameType == FRAME_UID && namespaceLow == low && namespaceHigh == high;
+    }
+
+    // Instance of a UID frame, packed like a MAC address into 48 bits
+    public long getInstance() {
+        return instance;
+    }
+
+    public long getEphemeralId() {
+        return ephemeralId;
+    }
+
+    public int getTlmVersion() {
+        return tlmVersion;
+    }
+
+    // Battery voltage of a TLM frame, 0 if not supported
+    public int getBatteryMillivolts() {
+        return batteryMillivolts;
+    }
+
+    // Beacon temperature of a TLM frame in degrees Celsius, or NO_TEMPERATURE
+    public float getTemperature() {
+        if (temperatureFixed == TEMPERATURE_UNSUPPORTED) {
+            return NO_TEMPERATURE;
+        }
+
+        return (short) temperatureFixed / 256f;
+    }
+
+    public long getAdvertisementCount() {
+        return advertisementCount;
+    }
+
+    // Time since the beacon powered up in tenths of a second
+    public long getUptimeTenths() {
+        return uptimeTenths;
+    }
+
+    // Parses a namespace of 20 hex digits; returns {high, low} as getNamespaceHigh and
+    // getNamespaceLow report them
+    public static long[] parseNamespace(String hex) {
+        if (hex == null || hex.length() != NAMESPACE_LENGTH * 2) {
+            throw new IllegalArgumentException("Namespace must have 20 hex digits: " + hex);
+        }
+
+        long high = Long.parseLong(hex.substring(0, 4), 16);
+        long low = (Long.parseLong(hex.substring(4, 12), 16) << 32)
+                | Long.parseLong(hex.substring(12), 16);
+        return new long[] {high, low};
+    }
+
+    // Packs an instance given as 6 characters, as beacons that use their ASCII unique id as the
+    // instance broadcast it
+    public static long instanceOf(String id) {
+        if (id == null || id.length() != 6) {
+            return MacAddress.INVALID;
+        }
+
+        long value = 0;
+        for (int i = 0; i < id.length(); i++) {
+            value = (value << 8) | (id.charAt(i) & 0xFF);
+        }
+
+        return value;
+    }
+
+    // Service data and mask for a ScanFilter that lets the controller pass only UID frames of
+    // one namespace
+    public static byte[] getUidFilterData(long namespaceHigh, long namespaceLow) {
+        byte[] data = new byte[2 + NAMESPACE_LENGTH];
+        data[0] = FRAME_UID;
+        for (int i = 0; i < 2; i++) {
+            data[2 + i] = (byte) (namespaceHigh >>> (8 * (1 - i)));
+        }
+        for (int i = 0; i < 8; i++) {
+            data[4 + i] = (byte) (namespaceLow >>> (8 * (7 - i)));
+        }
+
+        return data;
+    }
+
+    // Matches the frame type and namespace, but not the tx power
+    public static byte[] getUidFilterMask() {
+        byte[] mask = new byte[2 + NAMESPACE_LENGTH];
+        for (int i = 0; i < mask.length; i++) {
+            mask[i] = (byte) 0xFF;
+        }
+        mask[1] = 0;
+
+        return mask;
+    }
+}
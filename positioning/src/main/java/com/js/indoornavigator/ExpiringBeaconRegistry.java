@@ -0,0 +1,384 @@
+package com.js.indoornavigator;
+
+import java.util.Arrays;
+
+// ExpiringBeaconRegistry keeps track of every advertiser heard, known or not, in a fixed amount
+// of memory. An advertiser is registered the first time it is heard and removed once it has not
+// been heard for the TTL. When all entries are in use, the least recently heard advertiser is
+// evicted to make room.
+//
+// Expiry runs on a timing wheel of WHEEL_SIZE buckets of one tick each. An entry waits in the
+// bucket of the tick it expires at, and hearing it again only updates its last heard time. When
+// the wheel reaches the bucket, entries heard since are moved to the bucket of their new expiry
+// instead of being removed, so a tick costs the entries in its bucket rather than a scan of all
+// entries. Entries expiring beyond the wheel wait in its furthest bucket and are moved on again.
+//
+// Entries are numbered from 0 to capacity - 1 and numbers are reused, so a Listener is told of
+// every addition and removal to reset what is kept by entry number elsewhere. The hash index uses
+// linear probing with backward shift deletion, so removals leave no tombstones behind. Nothing
+// allocates after construction. Not thread safe; the TTL alone may be set from any thread.
+public class ExpiringBeaconRegistry {
+
+    // Told of the entries added and removed
+    public interface Listener {
+        void onAdded(int entry, long key);
+
+        // evicted is true if the entry made room for another one rather than expiring
+        void onRemoved(int entry, long key, boolean evicted);
+    }
+
+    static final int WHEEL_SIZE = 64;
+
+    private static final long EMPTY = -1L;
+    private static final int NONE = -1;
+
+    private final int capacity;
+    private final long tickNanos;
+    private volatile long ttlNanos;
+    private final Listener listener;
+
+    // Hash index; keys holds the keys and slots the matching entry
+    private final long[] keys;
+    private final int[] slots;
+    private final int mask;
+
+    // Per entry state
+    private final long[] entryKeys;
+    private final int[] rssi;
+    private final long[] lastHeardNanos;
+    private int size;
+
+    // Entries from the most recently heard at lruHead to the least at lruTail; free entries are
+    // chained through lruNext from freeHead
+    private final int[] lruPrev;
+    private final int[] lruNext;
+    private int lruHead = NONE;
+    private int lruTail = NONE;
+    private int freeHead;
+
+    // Timing wheel; each bucket is a doubly linked list of entries, and wheelBucket holds the
+    // bucket of each entry or NONE
+    private final int[] wheelHead = new int[WHEEL_SIZE];
+    private final int[] wheelPrev;
+    private final int[] wheelNext;
+    private final int[] wheelBucket;
+    private long currentTick;
+    private boolean started;
+
+    private long expiredCount;
+    private long evictedCount;
+
+    public ExpiringBeaconRegistry(int capacity, long ttlNanos, long tickNanos, Listener listener) {
+        if (capacity <= 0 || tickNanos <= 0) {
+            throw new IllegalArgumentException("Capacity and tick must be positive");
+        }
+        setTtl(ttlNanos);
+        this.capacity = capacity;
+        this.tickNanos = tickNanos;
+        this.listener = listener;
+
+        int tableSize = 2;
+        while (tableSize < capacity * 2) {
+            tableSize <<= 1;
+        }
+        keys = new long[tableSize];
+        Arrays.fill(keys, EMPTY);
+        slots = new int[tableSize];
+        mask = tableSize - 1;
+
+        entryKeys = new long[capacity];
+        rssi = new int[capacity];
+        lastHeardNanos = new long[capacity];
+        lruPrev = new int[capacity];
+        lruNext = new int[capacity];
+        wheelPrev = new int[capacity];
+        wheelNext = new int[capacity];
+        wheelBucket = new int[capacity];
+        Arrays.fill(wheelHead, NONE);
+        for (int i = 0; i < capacity; i++) {
+            lruNext[i] = i + 1 < capacity ? i + 1 : NONE;
+            wheelBucket[i] = NONE;
+        }
+        freeHead = 0;
+    }
+
+    // Time after which an advertiser that is not heard again is removed
+    public void setTtl(long ttlNanos) {
+        if (ttlNanos <= 0) {
+            throw new IllegalArgumentException("TTL must be positive: " + ttlNanos);
+        }
+        this.ttlNanos = ttlNanos;
+    }
+
+    public long getTtl() {
+        return ttlNanos;
+    }
+
+    // Records that key was heard with rssi and returns its entry, registering it if it is new
+    public int observe(long key, int rssiValue, long nowNanos) {
+        if (key < 0) {
+            throw new IllegalArgumentException("Invalid key: " + key);
+        }
+        start(nowNanos);
+
+        int entry = indexOf(key);
+        if (entry >= 0) {
+            lastHeardNanos[entry] = nowNanos;
+            rssi[entry] = rssiValue;
+            moveToFront(entry);
+            return entry;
+        }
+
+        if (size == capacity) {
+            evictedCount++;
+            remove(lruTail, true);
+        }
+
+        entry = freeHead;
+        freeHead = lruNext[entry];
+        entryKeys[entry] = key;
+        rssi[entry] = rssiValue;
+        lastHeardNanos[entry] = nowNanos;
+        insertKey(key, entry);
+        linkFront(entry);
+        schedule(entry, getExpiryTick(entry));
+        size++;
+
+        if (listener != null) {
+            listener.onAdded(entry, key);
+        }
+        return entry;
+    }
+
+    // Advances the wheel to nowNanos and removes the entries not heard within the TTL; returns
+    // the number removed
+    public int expire(long nowNanos) {
+        start(nowNanos);
+
+        long targetTick = nowNanos / tickNanos;
+        if (targetTick <= currentTick) {
+            return 0;
+        }
+
+        // A full turn visits every bucket, so older ticks need not be visited one by one
+        if (targetTick - currentTick > WHEEL_SIZE) {
+            currentTick = targetTick - WHEEL_SIZE;
+        }
+
+        int removed = 0;
+        while (currentTick < targetTick) {
+            currentTick++;
+            int bucket = (int) (currentTick % WHEEL_SIZE);
+            int entry = wheelHead[bucket];
+            wheelHead[bucket] = NONE;
+            while (entry != NONE) {
+                int next = wheelNext[entry];
+                wheelBucket[entry] = NONE;
+
+                long expiryTick = getExpiryTick(entry);
+                if (expiryTick <= currentTick) {
+                    expiredCount++;
+                    remove(entry, false);
+                    removed++;
+                }
+                else {
+                    schedule(entry, expiryTick);
+                }
+                entry = next;
+            }
+        }
+
+        return removed;
+    }
+
+    // Removes key; returns false if it is not registered
+    public boolean remove(long key) {
+        int entry = indexOf(key);
+        if (entry < 0) {
+            return false;
+        }
+
+        remove(entry, false);
+        return true;
+    }
+
+    // Entry of key, or -1 if it is not registered
+    public int indexOf(long key) {
+        int slot = BeaconRegistry.hash(key) & mask;
+        while (true) {
+            long k = keys[slot];
+            if (k == key) {
+                return slots[slot];
+            }
+            if (k == EMPTY) {
+                return -1;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public long getKey(int entry) {
+        return entryKeys[entry];
+    }
+
+    public int getRssi(int entry) {
+        return rssi[entry];
+    }
+
+    public long getLastHeardNanos(int entry) {
+        return lastHeardNanos[entry];
+    }
+
+    // Least recently heard entry, or -1 if empty
+    public int getLeastRecentlyHeard() {
+        return lruTail;
+    }
+
+    // Entries removed because their TTL passed
+    public long getExpiredCount() {
+        return expiredCount;
+    }
+
+    // Entries removed to make room
+    public long getEvictedCount() {
+        return evictedCount;
+    }
+
+    private void start(long nowNanos) {
+        if (!started) {
+            started = true;
+            currentTick = nowNanos / tickNanos;
+        }
+    }
+
+    private long getExpiryTick(int entry) {
+        return (lastHeardNanos[entry] + ttlNanos) / tickNanos;
+    }
+
+    // Puts entry in the bucket of expiryTick, or of the furthest tick the wheel reaches; never in
+    // the bucket of the current tick, which has been visited
+    private void schedule(int entry, long expiryTick) {
+        long tick = Math.max(currentTick + 1, Math.min(expiryTick, currentTick + WHEEL_SIZE - 1));
+        int bucket = (int) (tick % WHEEL_SIZE);
+
+        int head = wheelHead[bucket];
+        wheelPrev[entry] = NONE;
+        wheelNext[entry] = head;
+        if (head != NONE) {
+            wheelPrev[head] = entry;
+        }
+        wheelHead[bucket] = entry;
+        wheelBucket[entry] = bucket;
+    }
+
+    private void unschedule(int entry) {
+        int bucket = wheelBucket[entry];
+        if (bucket == NONE) {
+            return;
+        }
+
+        int prev = wheelPrev[entry];
+        int next = wheelNext[entry];
+        if (prev != NONE) {
+            wheelNext[prev] = next;
+        }
+        else {
+            wheelHead[bucket] = next;
+        }
+        if (next != NONE) {
+            wheelPrev[next] = prev;
+        }
+        wheelBucket[entry] = NONE;
+    }
+
+    private void remove(int entry, boolean evicted) {
+        long key = entryKeys[entry];
+        removeKey(key);
+        unlink(entry);
+        unschedule(entry);
+
+        lruNext[entry] = freeHead;
+        freeHead = entry;
+        size--;
+
+        if (listener != null) {
+            listener.onRemoved(entry, key, evicted);
+        }
+    }
+
+    private void linkFront(int entry) {
+        lruPrev[entry] = NONE;
+        lruNext[entry] = lruHead;
+        if (lruHead != NONE) {
+            lruPrev[lruHead] = entry;
+        }
+        lruHead = entry;
+        if (lruTail == NONE) {
+            lruTail = entry;
+        }
+    }
+
+    private void unlink(int entry) {
+        int prev = lruPrev[entry];
+        int next = lruNext[entry];
+        if (prev != NONE) {
+            lruNext[prev] = next;
+        }
+        else {
+            lruHead = next;
+        }
+        if (next != NONE) {
+            lruPrev[next] = prev;
+        }
+        else {
+            lruTail = prev;
+        }
+    }
+
+    private void moveToFront(int entry) {
+        if (entry != lruHead) {
+            unlink(entry);
+            linkFront(entry);
+        }
+    }
+
+    private void insertKey(long key, int entry) {
+        int slot = BeaconRegistry.hash(key) & mask;
+        while (keys[slot] != EMPTY) {
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        slots[slot] = entry;
+    }
+
+    // Removes key from the hash index and shifts back the keys after it that probed past its
+    // slot, so that every key stays reachable from its home slot
+    private void removeKey(long key) {
+        int hole = BeaconRegistry.hash(key) & mask;
+        while (keys[hole] != key) {
+            hole = (hole + 1) & mask;
+        }
+
+        int slot = (hole + 1) & mask;
+        while (keys[slot] != EMPTY) {
+            int home = BeaconRegistry.hash(keys[slot]) & mask;
+
+            // The key at slot may fill the hole unless its home lies between the hole and slot
+            if (((slot - home) & mask) >= ((slot - hole) & mask)) {
+                keys[hole] = keys[slot];
+                slots[hole] = slots[slot];
+                hole = slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[hole] = EMPTY;
+    }
+}
@@ -0,0 +1,156 @@
+package com.js.indoornavigator;
+
+import java.util.Arrays;
+
+// FingerprintEstimator matches the mean RSSI of the recently heard beacons against the radio map
+// of the engine and places the device at the distance weighted mean of the nearest reference
+// points. A survey averages several readings at each point, so the query averages a window of
+// raw readings rather than taking the last one.
+public class FingerprintEstimator implements PositionEstimator {
+
+    // Beacons heard within this interval before the update are matched, by their mean RSSI over
+    // the interval
+    private static final long MATCH_WINDOW_NANOS = 2000 * 1000000L;
+
+    // RSSI statistics are kept over RSSI_WINDOW_NANOS, holding up to RSSI_WINDOW_READINGS
+    // readings of each beacon
+    private static final long RSSI_WINDOW_NANOS = 10 * 1000000000L;
+    private static final int RSSI_WINDOW_READINGS = 128;
+
+    // Number of reference points the position is averaged over
+    private static final int NEIGHBORS = 4;
+
+    // Raw RSSI readings of each beacon; heard marks the beacons with readings
+    private final RssiWindowStatistics rssiStatistics;
+    private final boolean[] heard;
+
+    // Radio map the query was built for; radioMapBeacons maps each column of the map to a beacon
+    // index, or -1
+    private RadioMap radioMap;
+    private int[] radioMapBeacons;
+    private float[] query;
+    private final int[] neighborPoints = new int[NEIGHBORS];
+    private final float[] neighborDistances = new float[NEIGHBORS];
+
+    private float positionX;
+    private float positionY;
+    private int quadrant;
+
+    public FingerprintEstimator(int beaconCount) {
+        rssiStatistics = new RssiWindowStatistics(beaconCount, RSSI_WINDOW_READINGS,
+                RSSI_WINDOW_NANOS);
+        heard = new boolean[beaconCount];
+    }
+
+    @Override
+    public void reset() {
+        rssiStatistics.clear();
+        Arrays.fill(heard, false);
+    }
+
+    @Override
+    public void onSample(int beacon, int rssi, long timestampNanos) {
+        rssiStatistics.add(beacon, rssi, timestampNanos);
+        heard[beacon] = true;
+    }
+
+    // Returns false if there is no map or nothing was heard
+    @Override
+    public boolean update(Observations observations) {
+        BeaconRegistry registry = observations.getRegistry();
+
+        // A beacon that is no longer active starts over when it is heard again
+        for (int i = 0; i < heard.length; i++) {
+            if (heard[i] && !registry.isActive(i)) {
+                rssiStatistics.clear(i);
+                heard[i] = false;
+            }
+        }
+
+        RadioMap map = observations.getRadioMap();
+        if (map == null) {
+            return false;
+        }
+        if (map != radioMap) {
+            useRadioMap(map, registry);
+        }
+
+        long timestampNanos = observations.getTimestampNanos();
+        boolean matched = false;
+        for (int i = 0; i < radioMapBeacons.length; i++) {
+            int beacon = radioMapBeacons[i];
+            if (beacon >= 0 && registry.isActive(beacon) && timestampNanos
+                    - observations.getLastSeenNanos(beacon) <= MATCH_WINDOW_NANOS) {
+                double mean = rssiStatistics.getMean(beacon, MATCH_WINDOW_NANOS, timestampNanos);
+                query[i] = Double.isNaN(mean) ? registry.getRssi(beacon) : (float) mean;
+                matched = true;
+            }
+            else {
+                query[i] = RadioMap.RSSI_FLOOR;
+            }
+        }
+        if (!matched) {
+            return false;
+        }
+
+        int found = map.findNearest(query, NEIGHBORS, neighborPoints, neighborDistances);
+        if (found == 0) {
+            return false;
+        }
+
+        float sumWeight = 0;
+        float sumX = 0;
+        float sumY = 0;
+        for (int i = 0; i < found; i++) {
+            float weight = 1 / (neighborDistances[i] + 1);
+            sumWeight += weight;
+            sumX += weight * map.getX(neighborPoints[i]);
+            sumY += weight * map.getY(neighborPoints[i]);
+        }
+        positionX = sumX / sumWeight;
+        positionY = sumY / sumWeight;
+        quadrant = map.getQuadrant(neighborPoints[0]);
+
+        return true;
+    }
+
+    // Maps the columns of a new radio map to beacons
+    private void useRadioMap(RadioMap map, BeaconRegistry registry) {
+        radioMap = map;
+        radioMapBeacons = new int[map.getBeaconCount()];
+        for (int i = 0; i < radioMapBeacons.length; i++) {
+            radioMapBeacons[i] = registry.indexOf(map.getMac(i));
+        }
+        query = new float[map.getBeaconCount()];
+    }
+
+    // Raw RSSI readings of each beacon over the last 10 seconds; only used by the thread that
+    // processes samples
+    public RssiWindowStatistics getRssiStatistics() {
+        return rssiStatistics;
+    }
+
+    @Override
+    public int getQuadrant() {
+        return quadrant;
+    }
+
+    @Override
+    public boolean hasCoordinate() {
+        return true;
+    }
+
+    @Override
+    public float getX() {
+        return positionX;
+    }
+
+    @Override
+    public float getY() {
+        return positionY;
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,202 @@
+package com.js.indoornavigator;
+
+import java.nio.ByteBuffer;
+
+// FloorPlan is a tiled image pyramid of a site map, read directly from a FloorPlanFile buffer,
+// usually a memory-mapped file, so that only the tiles on screen are ever decoded. Level 0 is
+// the full resolution image; every further level halves the width and height. Each level is cut
+// into square tiles of tileSize pixels, stored as encoded images (PNG, JPEG or WebP) that the
+// app decodes on demand.
+//
+// The plan is placed in the positioning coordinate system by the position in metres of its top
+// left pixel and the size of a level 0 pixel in metres.
+public class FloorPlan {
+
+    private final ByteBuffer buffer;
+    private final int start;
+    private final int tileSize;
+    private final int levelCount;
+    private final int width;
+    private final int height;
+    private final float metresPerPixel;
+    private final float originX;
+    private final float originY;
+
+    // Offset of the tile index of each level in the buffer
+    private final int[] indexOffsets;
+
+    // buffer must start at the header of a FloorPlanFile
+    public FloorPlan(ByteBuffer buffer) {
+        this.buffer = buffer;
+        start = buffer.position();
+
+        if (buffer.limit() - start < FloorPlanFile.HEADER_SIZE
+                || buffer.getInt(start) != FloorPlanFile.MAGIC) {
+            throw new IllegalArgumentException("Not a floor plan");
+        }
+        int version = buffer.getInt(start + 4);
+        if (version != FloorPlanFile.VERSION) {
+            throw new IllegalArgumentException("Unsupported floor plan version " + version);
+        }
+        tileSize = buffer.getInt(start + 8);
+        levelCount = buffer.getInt(start + 12);
+        width = buffer.getInt(start + 16);
+        height = buffer.getInt(start + 20);
+        metresPerPixel = buffer.getFloat(start + 24);
+        originX = buffer.getFloat(start + 28);
+        originY = buffer.getFloat(start + 32);
+        if (tileSize < 1 || levelCount < 1 || levelCount > FloorPlanFile.MAX_LEVELS || width < 1
+                || height < 1 || !(metresPerPixel > 0)) {
+            throw new IllegalArgumentException("Corrupt floor plan header");
+        }
+
+        indexOffsets = new int[levelCount];
+        long offset = start + FloorPlanFile.HEADER_SIZE;
+        for (int level = 0; level < levelCount; level++) {
+            indexOffsets[level] = (int) Math.min(offset, Integer.MAX_VALUE);
+            offset += (long) getColumns(level) * getRows(level) * FloorPlanFile.INDEX_ENTRY_SIZE;
+        }
+        if (offset > buffer.limit()) {
+            throw new IllegalArgumentException("Truncated floor plan index");
+        }
+
+        // Every tile must lie within the buffer, so that reading a tile cannot fail later
+        for (int level = 0; level < levelCount; level++) {
+            int tiles = getColumns(level) * getRows(level);
+            for (int i = 0; i < tiles; i++) {
+                int entry = indexOffsets[level] + i * FloorPlanFile.INDEX_ENTRY_SIZE;
+                long tileOffset = buffer.getLong(entry);
+                int length = buffer.getInt(entry + 8);
+                if (length < 0 || (length > 0 && (tileOffset < 0
+                        || start + tileOffset + length > buffer.limit()))) {
+                    throw new IllegalArgumentException("Tile " + i + " of level " + level
+                            + " lies outside the floor plan");
+                }
+            }
+        }
+    }
+
+    // Packs a tile position into a single key for caches
+    public static long tileKey(int level, int column, int row) {
+        return ((long) level << 48) | ((long) row << 24) | column;
+    }
+
+    public static int getKeyLevel(long key) {
+        return (int) (key >>> 48);
+    }
+
+    public static int getKeyRow(long key) {
+        return (int) (key >>> 24) & 0xFFFFFF;
+    }
+
+    public static int getKeyColumn(long key) {
+        return (int) key & 0xFFFFFF;
+    }
+
+    // Width of a level in pixels
+    public int getWidth(int level) {
+        return (int) (((long) width + (1 << level) - 1) >> level);
+    }
+
+    public int getHeight(int level) {
+        return (int) (((long) height + (1 << level) - 1) >> level);
+    }
+
+    public int getColumns(int level) {
+        return (getWidth(level) + tileSize - 1) / tileSize;
+    }
+
+    public int getRows(int level) {
+        return (getHeight(level) + tileSize - 1) / tileSize;
+    }
+
+    // Length of the encoded tile; 0 if the tile is empty
+    public int getTileLength(int level, int column, int row) {
+        return buffer.getInt(getIndexEntry(level, column, row) + 8);
+    }
+
+    // Copies the encoded tile into data, which must hold getTileLength bytes; returns its length.
+    // Safe to call from several threads.
+    public int readTile(int level, int column, int row, byte[] data) {
+        int entry = getIndexEntry(level, column, row);
+        long offset = buffer.getLong(entry);
+        int length = buffer.getInt(entry + 8);
+        if (length == 0) {
+            return 0;
+        }
+
+        ByteBuffer tile = buffer.duplicate();
+        tile.position((int) (start + offset));
+        tile.get(data, 0, length);
+        return length;
+    }
+
+    private int getIndexEntry(int level, int column, int row) {
+        if (level < 0 || level >= levelCount || column < 0 || column >= getColumns(level)
+                || row < 0 || row >= getRows(level)) {
+            throw new IndexOutOfBoundsException("No tile " + column + ", " + row + " on level "
+                    + level);
+        }
+
+        return indexOffsets[level]
+                + (row * getColumns(level) + column) * FloorPlanFile.INDEX_ENTRY_SIZE;
+    }
+
+    // Coarsest level that still has at least one level pixel per screen pixel at the given zoom
+    public int selectLevel(float screenPixelsPerMetre) {
+        double screenPixelsPerPixel = screenPixelsPerMetre * metresPerPixel;
+        if (!(screenPixelsPerPixel > 0)) {
+            return levelCount - 1;
+        }
+
+        int level = (int) Math.floor(Math.log(1 / screenPixelsPerPixel) / Math.log(2));
+        return Math.max(0, Math.min(level, levelCount - 1));
+    }
+
+    // Position in metres of the left edge of a tile column
+    public float getTileX(int level, int column) {
+        return originX + (float) ((long) column * tileSize << level) * metresPerPixel;
+    }
+
+    public float getTileY(int level, int row) {
+        return originY + (float) ((long) row * tileSize << level) * metresPerPixel;
+    }
+
+    // Column of a level that contains the position x in metres, not clamped to the plan
+    public int getColumnAt(int level, float x) {
+        return (int) Math.floor((x - originX) / metresPerPixel / ((long) tileSize << level));
+    }
+
+    public int getRowAt(int level, float y) {
+        return (int) Math.floor((y - originY) / metresPerPixel / ((long) tileSize << level));
+    }
+
+    public int getTileSize() {
+        return tileSize;
+    }
+
+    public int getLevelCount() {
+        return levelCount;
+    }
+
+    public float getMetresPerPixel() {
+        return metresPerPixel;
+    }
+
+    public float getOriginX() {
+        return originX;
+    }
+
+    public float getOriginY() {
+        return originY;
+    }
+
+    // Size of the plan in metres
+    public float getWidthMetres() {
+        return width * metresPerPixel;
+    }
+
+    public float getHeightMetres() {
+        return height * metresPerPixel;
+    }
+}
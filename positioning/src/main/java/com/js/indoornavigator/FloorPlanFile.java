@@ -0,0 +1,128 @@
+package com.js.indoornavigator;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+// FloorPlanFile reads and writes FloorPlan tile pyramids. Like RadioMapFile the format is laid
+// out to be served straight from a memory-mapped file; all values are big endian:
+//
+//   int magic ("BFPL"), int version, int tileSize, int levelCount,
+//   int width, int height (of level 0 in pixels),
+//   float metresPerPixel, float originX, float originY (metres of the top left pixel),
+//   for every level, for every tile row by row: long offset from the magic, int length,
+//   tile data
+//
+// Level n is 2^n times smaller than level 0 and holds ceil(width / 2^n / tileSize) columns by
+// ceil(height / 2^n / tileSize) rows of tiles. Tiles are encoded images; tiles on the right and
+// bottom edges may be narrower than tileSize. A length of 0 marks an empty tile. Vector plans
+// are rasterized into the pyramid before they are written.
+public final class FloorPlanFile {
+
+    public static final int MAGIC = 0x4246504C;
+    public static final int VERSION = 1;
+    public static final int HEADER_SIZE = 36;
+    public static final int INDEX_ENTRY_SIZE = 12;
+
+    // Keeps tile keys within FloorPlan.tileKey's 16 bits of level
+    public static final int MAX_LEVELS = 24;
+
+    private FloorPlanFile() {
+
+    }
+
+    // Maps a floor plan file read only; the mapping stays valid after the file is closed
+    public static FloorPlan map(File file) throws IOException {
+        RandomAccessFile in = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = in.getChannel();
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return read(buffer);
+        } finally {
+            in.close();
+        }
+    }
+
+    public static FloorPlan read(ByteBuffer buffer) throws IOException {
+        try {
+            return new FloorPlan(buffer);
+        } catch (IllegalArgumentException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+    }
+
+    // Number of tiles of a pyramid, over all levels
+    public static int getTileCount(int tileSize, int levelCount, int width, int height) {
+        int count = 0;
+        for (int level = 0; level < levelCount; level++) {
+            int levelWidth = (int) (((long) width + (1 << level) - 1) >> level);
+            int levelHeight = (int) (((long) height + (1 << level) - 1) >> level);
+            count += ((levelWidth + tileSize - 1) / tileSize)
+                    * ((levelHeight + tileSize - 1) / tileSize);
+        }
+
+        return count;
+    }
+
+    // Writes a floor plan; tiles holds the encoded tiles of every level in file order, level by
+    // level and row by row, with null or empty arrays for empty tiles
+    public static void write(OutputStream out, int tileSize, int width, int height,
+            float metresPerPixel, float originX, float originY, byte[][] tiles)
+            throws IOException {
+        int levelCount = tiles.length == 0 ? 0 : getLevelCount(tileSize, width, height, tiles.length);
+        if (levelCount == 0 || levelCount > MAX_LEVELS || !(metresPerPixel > 0)) {
+            throw new IllegalArgumentException("Tiles do not form a pyramid of " + width + " x "
+                    + height + " pixels");
+        }
+
+        DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+        data.writeInt(MAGIC);
+        data.writeInt(VERSION);
+        data.writeInt(tileSize);
+        data.writeInt(levelCount);
+        data.writeInt(width);
+        data.writeInt(height);
+        data.writeFloat(metresPerPixel);
+        data.writeFloat(originX);
+        data.writeFloat(originY);
+
+        long offset = HEADER_SIZE + (long) tiles.length * INDEX_ENTRY_SIZE;
+        for (byte[] tile : tiles) {
+            int length = tile == null ? 0 : tile.length;
+            data.writeLong(length == 0 ? 0 : offset);
+            data.writeInt(length);
+            offset += length;
+        }
+        for (byte[] tile : tiles) {
+            if (tile != null) {
+                data.write(tile);
+            }
+        }
+        data.flush();
+    }
+
+    // Number of levels whose tiles add up to tileCount, or 0 if there is none
+    private static int getLevelCount(int tileSize, int width, int height, int tileCount) {
+        if (tileSize < 1 || width < 1 || height < 1) {
+            return 0;
+        }
+
+        for (int levels = 1; levels <= MAX_LEVELS; levels++) {
+            int count = getTileCount(tileSize, levels, width, height);
+            if (count == tileCount) {
+                return levels;
+            }
+            else if (count > tileCount) {
+                break;
+            }
+        }
+
+        return 0;
+    }
+}
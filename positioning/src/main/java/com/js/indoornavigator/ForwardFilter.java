@@ -0,0 +1,234 @@
+package com.js.indoornavigator;
+
+import java.util.Arrays;
+
+// ForwardFilter is a recursive Bayesian (hidden Markov model forward) filter over the nodes of a
+// BeaconNetwork. It keeps the probability of the device being at each beacon. Each update first
+// predicts movement: the device stays with STAY_PROBABILITY, otherwise it moves to one of the
+// neighbors of its node. Each observed beacon then weights the nodes by an RSSI likelihood.
+//
+// The RSSI of a beacon is modeled as a Gaussian whose mean depends on where the device is: at the
+// beacon, next to it, or further away. Only the beacon's node and its neighbors differ from the
+// far model, so an observation touches O(degree) entries. Prediction walks the adjacency once.
+// Observations add up log likelihoods, which are only turned into weights relative to the
+// largest one when the belief is normalized, so a batch of many strong readings cannot overflow.
+// All buffers are allocated up front and updates do not allocate.
+public class ForwardFilter {
+
+    // Transition model
+    private static final double STAY_PROBABILITY = 0.7;
+
+    // RSSI model; mean RSSI at the beacon, at a neighboring beacon, and elsewhere
+    private static final double NEAR_RSSI = -60;
+    private static final double ADJACENT_RSSI = -75;
+    private static final double FAR_RSSI = -90;
+    private static final double RSSI_SIGMA = 8;
+
+    // Keeps every node reachable so that the filter can recover from a wrong estimate
+    private static final double MIN_PROBABILITY = 1e-9;
+
+    private final int[] offsets;
+    private final int[] neighbors;
+    private final int nodeCount;
+
+    // Probability of moving from a node to each one of its neighbors
+    private final double[] moveProbability;
+    private final double[] stayProbability;
+
+    private double[] belief;
+    private double[] predicted;
+
+    // Log likelihood of the observations since the last normalize; observed lists the nodes
+    // whose log likelihood is not 0
+    private final double[] logLikelihood;
+    private final boolean[] isObserved;
+    private final int[] observed;
+    private int observedCount;
+
+    private int mostLikelyNode;
+
+    public ForwardFilter(BeaconNetwork network) {
+        offsets = network.getOffsets();
+        neighbors = network.getNeighbors();
+        nodeCount = network.getNodeCount();
+
+        moveProbability = new double[nodeCount];
+        stayProbability = new double[nodeCount];
+        for (int i = 0; i < nodeCount; i++) {
+            int degree = network.getNeighborCount(i);
+            if (degree == 0) {
+                stayProbability[i] = 1;
+            }
+            else {
+                stayProbability[i] = STAY_PROBABILITY;
+                moveProbability[i] = (1 - STAY_PROBABILITY) / degree;
+            }
+        }
+
+        belief = new double[nodeCount];
+        predicted = new double[nodeCount];
+        logLikelihood = new double[nodeCount];
+        isObserved = new boolean[nodeCount];
+        observed = new int[nodeCount];
+        reset();
+    }
+
+    // Resets the belief to a uniform distribution
+    public void reset() {
+        Arrays.fill(belief, 1.0 / nodeCount);
+        clearObservations();
+        mostLikelyNode = -1;
+    }
+
+    // Moves probability mass along the edges of the network
+    public void predict() {
+        double[] next = predicted;
+        Arrays.fill(next, 0);
+
+        for (int i = 0; i < nodeCount; i++) {
+            double p = belief[i];
+            if (p == 0) {
+                continue;
+            }
+
+            next[i] += p * stayProbability[i];
+            double move = p * moveProbability[i];
+            for (int j = offsets[i]; j < offsets[i + 1]; j++) {
+                next[neighbors[j]] += move;
+            }
+        }
+
+        predicted = belief;
+        belief = next;
+    }
+
+    // Weights the belief by the likelihood of observing beacon with rssi once normalized. Nodes
+    // that are neither the beacon nor its neighbors keep their weight, since normalization
+    // removes the common far likelihood factor.
+    public void observe(int beacon, int rssi) {
+        double far = logGaussian(rssi, FAR_RSSI);
+        addLogLikelihood(beacon, logGaussian(rssi, NEAR_RSSI) - far);
+
+        double adjacent = logGaussian(rssi, ADJACENT_RSSI) - far;
+        for (int j = offsets[beacon]; j < offsets[beacon + 1]; j++) {
+            addLogLikelihood(neighbors[j], adjacent);
+        }
+    }
+
+    // Applies the observations and normalizes the belief after an update; returns the most
+    // likely node
+    public int normalize() {
+        applyObservations();
+
+        double sum = 0;
+        for (int i = 0; i < nodeCount; i++) {
+            sum += belief[i];
+        }
+
+        // Cannot happen once the observations are applied relative to the largest, since a node
+        // then keeps at least its floor probability; kept so that a bug cannot divide by zero
+        if (!(sum > 0) || Double.isInfinite(sum)) {
+            int previous = mostLikelyNode;
+            reset();
+            mostLikelyNode = previous;
+            return mostLikelyNode;
+        }
+
+        double floorSum = 0;
+        double best = -1;
+        for (int i = 0; i < nodeCount; i++) {
+            double p = belief[i] / sum;
+            if (p < MIN_PROBABILITY) {
+                p = MIN_PROBABILITY;
+            }
+            belief[i] = p;
+            floorSum += p;
+            if (p > best) {
+                best = p;
+                mostLikelyNode = i;
+            }
+        }
+
+        if (floorSum != 1) {
+            for (int i = 0; i < nodeCount; i++) {
+                belief[i] /= floorSum;
+            }
+        }
+
+        return mostLikelyNode;
+    }
+
+    // Runs one full update with count observations
+    public int update(int[] beacons, int[] rssis, int count) {
+        predict();
+        for (int i = 0; i < count; i++) {
+            observe(beacons[i], rssis[i]);
+        }
+
+        return normalize();
+    }
+
+    public int getMostLikelyNode() {
+        return mostLikelyNode;
+    }
+
+    public double getProbability(int node) {
+        return belief[node];
+    }
+
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    private void addLogLikelihood(int node, double value) {
+        if (!isObserved[node]) {
+            isObserved[node] = true;
+            observed[observedCount++] = node;
+        }
+        logLikelihood[node] += value;
+    }
+
+    // Multiplies the belief by the likelihoods divided by the largest, so that no weight
+    // exceeds 1 and the most likely node keeps its weight
+    private void applyObservations() {
+        if (observedCount == 0) {
+            return;
+        }
+
+        // Nodes that were not observed have a log likelihood of 0
+        double maxLog = observedCount < nodeCount ? 0 : Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < observedCount; i++) {
+            maxLog = Math.max(maxLog, logLikelihood[observed[i]]);
+        }
+
+        if (maxLog != 0) {
+            double unobserved = Math.exp(-maxLog);
+            for (int i = 0; i < nodeCount; i++) {
+                if (!isObserved[i]) {
+                    belief[i] *= unobserved;
+                }
+            }
+        }
+        for (int i = 0; i < observedCount; i++) {
+            int node = observed[i];
+            belief[node] *= Math.exp(logLikelihood[node] - maxLog);
+        }
+
+        clearObservations();
+    }
+
+    private void clearObservations() {
+        for (int i = 0; i < observedCount; i++) {
+            int node = observed[i];
+            logLikelihood[node] = 0;
+            isObserved[node] = false;
+        }
+        observedCount = 0;
+    }
+
+    // Log of the Gaussian density without the constant term, which cancels in the ratios
+    private static double logGaussian(double rssi, double mean) {
+        double z = (rssi - mean) / RSSI_SIGMA;
+        return -0.5 * z * z;
+    }
+}
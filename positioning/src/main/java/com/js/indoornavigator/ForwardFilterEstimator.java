@@ -0,0 +1,64 @@
+package com.js.indoornavigator;
+
+// ForwardFilterEstimator runs a recursive Bayesian filter over the beacon network and places the
+// device at its most likely beacon
+public class ForwardFilterEstimator implements PositionEstimator {
+
+    private final ForwardFilter filter;
+    private int quadrant;
+
+    public ForwardFilterEstimator(BeaconNetwork network) {
+        filter = new ForwardFilter(network);
+    }
+
+    @Override
+    public void reset() {
+        filter.reset();
+    }
+
+    @Override
+    public void onSample(int beacon, int rssi, long timestampNanos) {
+    }
+
+    // Runs one filter step with the beacons observed since the last update
+    @Override
+    public boolean update(Observations observations) {
+        int node = filter.update(observations.getObservedBeacons(),
+                observations.getObservedRssis(), observations.getObservedCount());
+        if (node < 0) {
+            return false;
+        }
+
+        quadrant = observations.getRegistry().getQuadrant(node);
+        return true;
+    }
+
+    // Probability of each beacon; read by the UI thread for the debug overlay
+    public ForwardFilter getFilter() {
+        return filter;
+    }
+
+    @Override
+    public int getQuadrant() {
+        return quadrant;
+    }
+
+    @Override
+    public boolean hasCoordinate() {
+        return false;
+    }
+
+    @Override
+    public float getX() {
+        return 0;
+    }
+
+    @Override
+    public float getY() {
+        return 0;
+    }
+
+    @Override
+    public void close() {
+    }
+}
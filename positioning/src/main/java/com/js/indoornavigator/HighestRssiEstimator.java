@@ -0,0 +1,51 @@
+package com.js.indoornavigator;
+
+// HighestRssiEstimator places the device in the quadrant of the beacon heard with the highest
+// RSSI
+public class HighestRssiEstimator implements PositionEstimator {
+
+    private int quadrant;
+
+    @Override
+    public void reset() {
+    }
+
+    @Override
+    public void onSample(int beacon, int rssi, long timestampNanos) {
+    }
+
+    @Override
+    public boolean update(Observations observations) {
+        int beacon = observations.getStrongestBeacon();
+        if (beacon < 0) {
+            return false;
+        }
+
+        quadrant = observations.getRegistry().getQuadrant(beacon);
+        return true;
+    }
+
+    @Override
+    public int getQuadrant() {
+        return quadrant;
+    }
+
+    @Override
+    public boolean hasCoordinate() {
+        return false;
+    }
+
+    @Override
+    public float getX() {
+        return 0;
+    }
+
+    @Override
+    public float getY() {
+        return 0;
+    }
+
+    @Override
+    public void close() {
+    }
+}
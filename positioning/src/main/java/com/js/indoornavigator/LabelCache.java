@@ -0,0 +1,37 @@
+package com.js.indoornavigator;
+
+// LabelCache holds the text drawn for an integer value so that labels such as "RSSI: -60" are
+// built once per value instead of on every frame. Values outside of [min, max] are not cached.
+public class LabelCache {
+
+    private final String prefix;
+    private final String suffix;
+    private final int min;
+    private final String[] labels;
+
+    public LabelCache(String prefix, String suffix, int min, int max) {
+        this.prefix = prefix;
+        this.suffix = suffix;
+        this.min = min;
+        labels = new String[max - min + 1];
+    }
+
+    public LabelCache(String prefix, int min, int max) {
+        this(prefix, "", min, max);
+    }
+
+    public String get(int value) {
+        int index = value - min;
+        if (index < 0 || index >= labels.length) {
+            return prefix + value + suffix;
+        }
+
+        String label = labels[index];
+        if (label == null) {
+            label = prefix + value + suffix;
+            labels[index] = label;
+        }
+
+        return label;
+    }
+}
@@ -0,0 +1,125 @@
+package com.js.indoornavigator;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// LatencyHistogram counts durations in nanoseconds in a fixed set of log-linear buckets. Every
+// power of two is split into SUB_BUCKETS buckets, so a percentile is accurate to within one
+// eighth of its value over the whole range, and the histogram takes the same few kilobytes
+// however many values it holds.
+//
+// Recording is a handful of atomic operations; it neither locks nor allocates, so any number of
+// threads may record while another reads. A percentile read while values are being recorded may
+// not include the latest of them.
+public class LatencyHistogram {
+
+    // Each power of two is split into 2^SUB_BUCKET_BITS buckets; values below SUB_BUCKETS get a
+    // bucket each
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    // Buckets up to and including Long.MAX_VALUE
+    public static final int BUCKET_COUNT = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    // Records a duration; negative durations, from clocks that disagree, count as 0
+    public void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+
+        counts.incrementAndGet(getBucket(nanos));
+        count.incrementAndGet();
+        sum.addAndGet(nanos);
+
+        long current = max.get();
+        while (nanos > current && !max.compareAndSet(current, nanos)) {
+            current = max.get();
+        }
+    }
+
+    // Clears the histogram; values recorded during the reset may be partly kept
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts.set(i, 0);
+        }
+        count.set(0);
+        sum.set(0);
+        max.set(0);
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public double getMean() {
+        long n = count.get();
+        return n > 0 ? sum.get() / (double) n : 0;
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    // Value that percentile percent of the recorded durations do not exceed, rounded up to the
+    // end of its bucket; 0 if nothing was recorded
+    public long getPercentile(double percentile) {
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            total += counts.get(i);
+        }
+        if (total == 0) {
+            return 0;
+        }
+
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return Math.min(getUpperBound(i), max.get());
+            }
+        }
+
+        return max.get();
+    }
+
+    // Number of durations in bucket
+    public long getCount(int bucket) {
+        return counts.get(bucket);
+    }
+
+    // Smallest duration counted in bucket
+    public static long getLowerBound(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+
+        int shift = bucket / SUB_BUCKETS - 1;
+        long mantissa = bucket - shift * SUB_BUCKETS;
+        return mantissa << shift;
+    }
+
+    // Largest duration counted in bucket
+    public static long getUpperBound(int bucket) {
+        if (bucket == BUCKET_COUNT - 1) {
+            return Long.MAX_VALUE;
+        }
+
+        return getLowerBound(bucket + 1) - 1;
+    }
+
+    // Bucket counting a non-negative duration
+    static int getBucket(long nanos) {
+        if (nanos < SUB_BUCKETS) {
+            return (int) nanos;
+        }
+
+        int shift = 63 - Long.numberOfLeadingZeros(nanos) - SUB_BUCKET_BITS;
+        return shift * SUB_BUCKETS + (int) (nanos >>> shift);
+    }
+}
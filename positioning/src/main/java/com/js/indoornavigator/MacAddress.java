@@ -0,0 +1,71 @@
+package com.js.indoornavigator;
+
+import java.util.Arrays;
+
+// Converts Bluetooth MAC addresses such as "D5:00:25:D5:22:A9" to and from a packed 48 bit long
+public final class MacAddress {
+
+    // Returned by parse for malformed addresses; a packed address never has the high bits set
+    public static final long INVALID = -1L;
+
+    private static final int ADDRESS_LENGTH = 17;
+    private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+
+    // Value of each ASCII hex digit, -1 for other characters
+    private static final byte[] HEX_VALUES = new byte[128];
+
+    static {
+        Arrays.fill(HEX_VALUES, (byte) -1);
+        for (int i = 0; i < 16; i++) {
+            HEX_VALUES[HEX_DIGITS[i]] = (byte) i;
+            HEX_VALUES[Character.toLowerCase(HEX_DIGITS[i])] = (byte) i;
+        }
+    }
+
+    private MacAddress() {
+
+    }
+
+    // Parses an address in the form XX:XX:XX:XX:XX:XX without allocating
+    public static long parse(String address) {
+        if (address == null || address.length() != ADDRESS_LENGTH) {
+            return INVALID;
+        }
+
+        long result = 0;
+        for (int i = 0; i < ADDRESS_LENGTH; i += 3) {
+            int high = hexDigit(address.charAt(i));
+            int low = hexDigit(address.charAt(i + 1));
+            if ((high | low) < 0) {
+                return INVALID;
+            }
+            result = (result << 8) | (high << 4) | low;
+
+            // octets are separated by colons
+            if (i + 2 < ADDRESS_LENGTH && address.charAt(i + 2) != ':') {
+                return INVALID;
+            }
+        }
+
+        return result;
+    }
+
+    private static int hexDigit(char c) {
+        return c < HEX_VALUES.length ? HEX_VALUES[c] : -1;
+    }
+
+    public static String toString(long mac) {
+        char[] chars = new char[ADDRESS_LENGTH];
+        int shift = 44;
+        for (int i = 0; i < ADDRESS_LENGTH; i++) {
+            if (i % 3 == 2) {
+                chars[i] = ':';
+                continue;
+            }
+            chars[i] = HEX_DIGITS[(int) (mac >>> shift) & 0xF];
+            shift -= 4;
+        }
+
+        return new String(chars);
+    }
+}
@@ -0,0 +1,88 @@
+package com.js.indoornavigator;
+
+// MapViewport maps positions in metres, as used by the beacons and the positioning engine, to
+// screen pixels and back. Panning moves the map by screen pixels; zooming scales it around a
+// focus point that stays put on screen, within [minScale, maxScale] pixels per metre.
+public class MapViewport {
+
+    private float scale = 1;
+    private float offsetX;
+    private float offsetY;
+    private float minScale = Float.MIN_NORMAL;
+    private float maxScale = Float.MAX_VALUE;
+
+    // Screen position of the point at 0, 0 metres
+    public void set(float scale, float offsetX, float offsetY) {
+        this.scale = clampScale(scale);
+        this.offsetX = offsetX;
+        this.offsetY = offsetY;
+    }
+
+    public void setScaleLimits(float minScale, float maxScale) {
+        if (!(minScale > 0) || maxScale < minScale) {
+            throw new IllegalArgumentException("Invalid scale limits " + minScale + ", "
+                    + maxScale);
+        }
+
+        this.minScale = minScale;
+        this.maxScale = maxScale;
+        scale = clampScale(scale);
+    }
+
+    // Shows the area between left, top and right, bottom in metres as large as it fits into a
+    // view of width by height pixels, centred
+    public void fit(float left, float top, float right, float bottom, int width, int height) {
+        float areaWidth = Math.max(right - left, Float.MIN_NORMAL);
+        float areaHeight = Math.max(bottom - top, Float.MIN_NORMAL);
+        scale = clampScale(Math.min(width / areaWidth, height / areaHeight));
+        offsetX = (width - areaWidth * scale) / 2 - left * scale;
+        offsetY = (height - areaHeight * scale) / 2 - top * scale;
+    }
+
+    public void pan(float dx, float dy) {
+        offsetX += dx;
+        offsetY += dy;
+    }
+
+    // Multiplies the scale by factor, keeping the point under focusX, focusY in place
+    public void zoom(float factor, float focusX, float focusY) {
+        float newScale = clampScale(scale * factor);
+        float applied = newScale / scale;
+        offsetX = focusX - (focusX - offsetX) * applied;
+        offsetY = focusY - (focusY - offsetY) * applied;
+        scale = newScale;
+    }
+
+    public float toScreenX(float x) {
+        return offsetX + x * scale;
+    }
+
+    public float toScreenY(float y) {
+        return offsetY + y * scale;
+    }
+
+    public float toMapX(float screenX) {
+        return (screenX - offsetX) / scale;
+    }
+
+    public float toMapY(float screenY) {
+        return (screenY - offsetY) / scale;
+    }
+
+    // Pixels per metre
+    public float getScale() {
+        return scale;
+    }
+
+    public float getOffsetX() {
+        return offsetX;
+    }
+
+    public float getOffsetY() {
+        return offsetY;
+    }
+
+    private float clampScale(float value) {
+        return Math.max(minScale, Math.min(value, maxScale));
+    }
+}
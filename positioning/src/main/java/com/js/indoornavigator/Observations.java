@@ -0,0 +1,157 @@
+package com.js.indoornavigator;
+
+// Observations is what a PositionEstimator sees of the scan results at an update: the state of
+// every beacon in the registry, when each was last heard, and the beacons observed since the
+// previous update with their filtered RSSI. The engine owns one instance and refreshes it before
+// each update, so updates do not allocate; estimators only read it during update.
+public final class Observations {
+
+    // The strongest beacon must be heard above this RSSI
+    private static final int DEFAULT_RSSI = -100;
+
+    private final BeaconRegistry registry;
+    private final float[] beaconX;
+    private final float[] beaconY;
+    private final long[] lastSeenNanos;
+
+    // Beacons observed since the last update, without duplicates, and the latest RSSI of each in
+    // list order; observedStamp marks the beacons already in the list with the value of
+    // updateStamp, and observedSlot holds their position in it
+    private final int[] observedBeacons;
+    private final int[] observedRssis;
+    private final int[] observedStamp;
+    private final int[] observedSlot;
+    private int observedCount;
+    private int updateStamp = 1;
+
+    private long timestampNanos;
+    private PipelineMetrics metrics;
+    private RadioMap radioMap;
+
+    Observations(BeaconRegistry registry, Beacon[] beacons) {
+        this.registry = registry;
+        beaconX = new float[beacons.length];
+        beaconY = new float[beacons.length];
+        for (int i = 0; i < beacons.length; i++) {
+            beaconX[i] = beacons[i].getX();
+            beaconY[i] = beacons[i].getY();
+        }
+        lastSeenNanos = new long[beacons.length];
+
+        observedBeacons = new int[beacons.length];
+        observedRssis = new int[beacons.length];
+        observedStamp = new int[beacons.length];
+        observedSlot = new int[beacons.length];
+    }
+
+    // Records a sample of beacon with its filtered RSSI
+    void observe(int beacon, int rssi, long timestampNanos) {
+        lastSeenNanos[beacon] = timestampNanos;
+
+        // Remember the latest reading of each beacon observed in this batch
+        if (observedStamp[beacon] != updateStamp) {
+            observedStamp[beacon] = updateStamp;
+            observedSlot[beacon] = observedCount;
+            observedBeacons[observedCount++] = beacon;
+        }
+        observedRssis[observedSlot[beacon]] = rssi;
+    }
+
+    // Sets what the next update sees besides the beacons
+    void prepare(long timestampNanos, PipelineMetrics metrics, RadioMap radioMap) {
+        this.timestampNanos = timestampNanos;
+        this.metrics = metrics;
+        this.radioMap = radioMap;
+    }
+
+    // Starts a new list of observed beacons
+    void clearObserved() {
+        observedCount = 0;
+        updateStamp++;
+    }
+
+    // Timestamp of the update, in the clock of the sample timestamps
+    public long getTimestampNanos() {
+        return timestampNanos;
+    }
+
+    // Active flag, filtered RSSI and quadrant of every beacon
+    public BeaconRegistry getRegistry() {
+        return registry;
+    }
+
+    public int getBeaconCount() {
+        return beaconX.length;
+    }
+
+    // Timestamp of the last sample of beacon, or 0 if it was never heard
+    public long getLastSeenNanos(int beacon) {
+        return lastSeenNanos[beacon];
+    }
+
+    public int getObservedCount() {
+        return observedCount;
+    }
+
+    public int getObservedBeacon(int i) {
+        return observedBeacons[i];
+    }
+
+    public int getObservedRssi(int i) {
+        return observedRssis[i];
+    }
+
+    // The observed beacons and their RSSI as arrays of which the first getObservedCount() entries
+    // are valid, for methods that take them whole; must not be written to
+    public int[] getObservedBeacons() {
+        return observedBeacons;
+    }
+
+    public int[] getObservedRssis() {
+        return observedRssis;
+    }
+
+    // Stage timings of the engine, or null
+    public PipelineMetrics getMetrics() {
+        return metrics;
+    }
+
+    // Radio map set on the engine, or null
+    public RadioMap getRadioMap() {
+        return radioMap;
+    }
+
+    // Returns the index of the active beacon with the highest RSSI; returns -1 if no active
+    // beacon is above the default RSSI. Beacons that were never received are skipped, since
+    // their RSSI of 0 would otherwise beat every real reading.
+    public int getStrongestBeacon() {
+        int result = -1;
+
+        int highestRssi = DEFAULT_RSSI;
+        for (int i = 0; i < registry.size(); i++) {
+            if (registry.isActive(i) && registry.getRssi(i) > highestRssi) {
+                highestRssi = registry.getRssi(i);
+                result = i;
+            }
+        }
+
+        return result;
+    }
+
+    // Returns the quadrant of the beacon closest to (x, y), for methods that estimate metres
+    public int getQuadrantAt(float x, float y) {
+        int nearest = 0;
+        float nearestDistance = Float.MAX_VALUE;
+        for (int i = 0; i < beaconX.length; i++) {
+            float dx = x - beaconX[i];
+            float dy = y - beaconY[i];
+            float distance = dx * dx + dy * dy;
+            if (distance < nearestDistance) {
+                nearestDistance = distance;
+                nearest = i;
+            }
+        }
+
+        return registry.getQuadrant(nearest);
+    }
+}
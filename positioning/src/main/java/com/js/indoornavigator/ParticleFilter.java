@@ -0,0 +1,466 @@
+package com.js.indoornavigator;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+// ParticleFilter estimates a continuous (x, y) position in metres. Particles are stored as
+// structure-of-arrays primitive buffers. Each update moves every particle by a random walk and
+// weights it by how well the observed RSSI values match the path loss model at the particle's
+// distance to each beacon. The random walk spreads with the square root of the scan time elapsed
+// since the previous update, so the particles diffuse at walking pace however often beacons
+// advertise. Particles are resampled with low-variance (systematic) resampling
+// when the effective sample size drops below half the particle count.
+//
+// For large particle counts the move and weight step is split into chunks that run on worker
+// threads. The workers are started by the first update and handed work without locks, so later
+// updates do not allocate in either mode. close() stops them until the next update.
+public class ParticleFilter {
+
+    // Particle counts from which the move and weight step runs on several threads
+    public static final int PARALLEL_THRESHOLD = 4096;
+
+    // Random walk of an update without elapsed time, and per square root of a second otherwise
+    private static final double MOTION_SIGMA = 0.4;
+    private static final double MOTION_SIGMA_PER_SQRT_SECOND = 1.0;
+
+    // Longer gaps spread the particles no further than this
+    private static final double MAX_MOTION_SIGMA = 5;
+    private static final double RSSI_SIGMA = 6;
+    private static final double BOUNDS_MARGIN = 2;
+
+    private final int particleCount;
+    private float[] x;
+    private float[] y;
+    private float[] resampledX;
+    private float[] resampledY;
+    private final double[] weight;
+
+    // Beacon positions in metres, indexed by beacon index
+    private final float[] beaconX;
+    private final float[] beaconY;
+    private final PathLossModel pathLossModel;
+
+    // One metre power of each beacon relative to the model's
+    private final double[] txPowerOffset;
+
+    // Area particles are kept in
+    private final float minX;
+    private final float minY;
+    private final float maxX;
+    private final float maxY;
+
+    // Observations of the current update, read by the workers
+    private int[] observedBeacons;
+    private int[] observedRssis;
+    private int observedCount;
+    private double motionSigma;
+
+    // Chunks of particles; chunk k covers [chunkStart[k], chunkStart[k + 1])
+    private final int chunkCount;
+    private final int[] chunkStart;
+    private final double[] chunkMaxLog;
+    private final double[] chunkSum;
+    private final double[] logLikelihood;
+    private final long[] randomState;
+
+    // Worker coordination; generation is bumped to hand out a round of work
+    private final Thread[] workers;
+    private boolean workersStarted;
+    private final AtomicInteger pendingChunks = new AtomicInteger();
+    private volatile int generation;
+    private volatile Thread coordinator;
+    private volatile boolean closed;
+
+    private float estimateX;
+    private float estimateY;
+    private double effectiveSampleSize;
+    private long resampleCount;
+
+    // Uses one thread per core from PARALLEL_THRESHOLD particles on
+    public ParticleFilter(int particleCount, float[] beaconX, float[] beaconY,
+            PathLossModel pathLossModel, long seed) {
+        this(particleCount, beaconX, beaconY, null, pathLossModel, seed);
+    }
+
+    // beaconTxPower holds the one metre power of each beacon, or is null to use the model's
+    public ParticleFilter(int particleCount, float[] beaconX, float[] beaconY,
+            float[] beaconTxPower, PathLossModel pathLossModel, long seed) {
+        this(particleCount, beaconX, beaconY, beaconTxPower, pathLossModel, seed,
+                particleCount >= PARALLEL_THRESHOLD
+                        ? Math.max(1, Runtime.getRuntime().availableProcessors()) : 1);
+    }
+
+    public ParticleFilter(int particleCount, float[] beaconX, float[] beaconY,
+            PathLossModel pathLossModel, long seed, int threadCount) {
+        this(particleCount, beaconX, beaconY, null, pathLossModel, seed, threadCount);
+    }
+
+    public ParticleFilter(int particleCount, float[] beaconX, float[] beaconY,
+            float[] beaconTxPower, PathLossModel pathLossModel, long seed, int threadCount) {
+        this.particleCount = particleCount;
+        this.beaconX = beaconX;
+        this.beaconY = beaconY;
+        this.pathLossModel = pathLossModel;
+
+        txPowerOffset = new double[beaconX.length];
+        if (beaconTxPower != null) {
+            for (int i = 0; i < txPowerOffset.length; i++) {
+                txPowerOffset[i] = beaconTxPower[i] - pathLossModel.getTxPower();
+            }
+        }
+
+        float lowX = Float.MAX_VALUE;
+        float lowY = Float.MAX_VALUE;
+        float highX = -Float.MAX_VALUE;
+        float highY = -Float.MAX_VALUE;
+        for (int i = 0; i < beaconX.length; i++) {
+            lowX = Math.min(lowX, beaconX[i]);
+            lowY = Math.min(lowY, beaconY[i]);
+            highX = Math.max(highX, beaconX[i]);
+            highY = Math.max(highY, beaconY[i]);
+        }
+        minX = (float) (lowX - BOUNDS_MARGIN);
+        minY = (float) (lowY - BOUNDS_MARGIN);
+        maxX = (float) (highX + BOUNDS_MARGIN);
+        maxY = (float) (highY + BOUNDS_MARGIN);
+
+        x = new float[particleCount];
+        y = new float[particleCount];
+        resampledX = new float[particleCount];
+        resampledY = new float[particleCount];
+        weight = new double[particleCount];
+        logLikelihood = new double[particleCount];
+
+        chunkCount = Math.max(1, Math.min(threadCount, particleCount));
+        chunkStart = new int[chunkCount + 1];
+        for (int k = 0; k <= chunkCount; k++) {
+            chunkStart[k] = (int) ((long) particleCount * k / chunkCount);
+        }
+        chunkMaxLog = new double[chunkCount];
+        chunkSum = new double[chunkCount];
+        randomState = new long[chunkCount];
+        seedChunks(seed);
+
+        // The calling thread runs chunk 0; workers run the others
+        workers = new Thread[chunkCount - 1];
+
+        reset();
+    }
+
+    // Restarts the random number generators from seed and resets the particles, so that the same
+    // observations give the same estimates
+    public void setSeed(long seed) {
+        seedChunks(seed);
+        reset();
+    }
+
+    private void seedChunks(long seed) {
+        for (int k = 0; k < chunkCount; k++) {
+            randomState[k] = mix(seed + k * 0x9E3779B97F4A7C15L);
+        }
+    }
+
+    // Spreads the particles uniformly over the area
+    public void reset() {
+        long state = randomState[0];
+        for (int i = 0; i < particleCount; i++) {
+            state = next(state);
+            x[i] = minX + (maxX - minX) * toUnit(state);
+            state = next(state);
+            y[i] = minY + (maxY - minY) * toUnit(state);
+            weight[i] = 1.0 / particleCount;
+        }
+        randomState[0] = state;
+
+        estimateX = (minX + maxX) / 2;
+        estimateY = (minY + maxY) / 2;
+        effectiveSampleSize = particleCount;
+    }
+
+    // Runs one update with count observations, moving the particles by a fixed step; the arrays
+    // are only read during the call
+    public void update(int[] beacons, int[] rssis, int count) {
+        update(beacons, rssis, count, MOTION_SIGMA);
+    }
+
+    // Runs one update with count observations made elapsedNanos of scan time after the previous
+    // update
+    public void update(int[] beacons, int[] rssis, int count, long elapsedNanos) {
+        double seconds = Math.max(elapsedNanos, 0) / 1e9;
+        update(beacons, rssis, count,
+                Math.min(MOTION_SIGMA_PER_SQRT_SECOND * Math.sqrt(seconds), MAX_MOTION_SIGMA));
+    }
+
+    private void update(int[] beacons, int[] rssis, int count, double sigma) {
+        observedBeacons = beacons;
+        observedRssis = rssis;
+        observedCount = count;
+        motionSigma = sigma;
+
+        if (workers.length > 0) {
+            if (!workersStarted) {
+                startWorkers();
+            }
+            coordinator = Thread.currentThread();
+            pendingChunks.set(workers.length);
+            generation++;
+            for (Thread worker : workers) {
+                LockSupport.unpark(worker);
+            }
+
+            moveAndWeigh(0);
+
+            while (pendingChunks.get() > 0) {
+                LockSupport.park(this);
+            }
+        }
+        else {
+            moveAndWeigh(0);
+        }
+
+        normalizeAndEstimate();
+
+        if (effectiveSampleSize < particleCount / 2.0) {
+            resample();
+        }
+    }
+
+    // Moves the particles of a chunk and computes their log likelihood relative to the chunk
+    // maximum; weight[i] then holds the unnormalized weight scaled by exp(-chunkMaxLog[chunk])
+    private void moveAndWeigh(int chunk) {
+        int start = chunkStart[chunk];
+        int end = chunkStart[chunk + 1];
+        long state = randomState[chunk];
+        double sigma = motionSigma;
+
+        double maxLog = -Double.MAX_VALUE;
+        for (int i = start; i < end; i++) {
+
+            // Box-Muller transform for two normal samples
+            state = next(state);
+            double radius = Math.sqrt(-2 * Math.log(Math.max(toUnit(state), 1e-12)));
+            state = next(state);
+            double angle = 2 * Math.PI * toUnit(state);
+
+            float px = clamp((float) (x[i] + sigma * radius * Math.cos(angle)), minX, maxX);
+            float py = clamp((float) (y[i] + sigma * radius * Math.sin(angle)), minY, maxY);
+            x[i] = px;
+            y[i] = py;
+
+            double log = 0;
+            for (int j = 0; j < observedCount; j++) {
+                int beacon = observedBeacons[j];
+                double dx = px - beaconX[beacon];
+                double dy = py - beaconY[beacon];
+                double expected = pathLossModel.rssiAtSquaredDistance(dx * dx + dy * dy)
+                        + txPowerOffset[beacon];
+                double z = (observedRssis[j] - expected) / RSSI_SIGMA;
+                log -= 0.5 * z * z;
+            }
+            logLikelihood[i] = log;
+            if (log > maxLog) {
+                maxLog = log;
+            }
+        }
+
+        double sum = 0;
+        for (int i = start; i < end; i++) {
+            double w = weight[i] * Math.exp(logLikelihood[i] - maxLog);
+            weight[i] = w;
+            sum += w;
+        }
+
+        chunkMaxLog[chunk] = maxLog;
+        chunkSum[chunk] = sum;
+        randomState[chunk] = state;
+    }
+
+    // Brings the chunks to a common scale, normalizes the weights and computes the weighted mean
+    private void normalizeAndEstimate() {
+        double globalMax = -Double.MAX_VALUE;
+        for (int k = 0; k < chunkCount; k++) {
+            globalMax = Math.max(globalMax, chunkMaxLog[k]);
+        }
+
+        double total = 0;
+        for (int k = 0; k < chunkCount; k++) {
+            total += chunkSum[k] * Math.exp(chunkMaxLog[k] - globalMax);
+        }
+
+        // All weights vanished; start over
+        if (!(total > 0) || Double.isInfinite(total)) {
+            reset();
+            return;
+        }
+
+        double sumX = 0;
+        double sumY = 0;
+        double sumSquares = 0;
+        for (int k = 0; k < chunkCount; k++) {
+            double scale = Math.exp(chunkMaxLog[k] - globalMax) / total;
+            for (int i = chunkStart[k]; i < chunkStart[k + 1]; i++) {
+                double w = weight[i] * scale;
+                weight[i] = w;
+                sumX += w * x[i];
+                sumY += w * y[i];
+                sumSquares += w * w;
+            }
+        }
+
+        estimateX = (float) sumX;
+        estimateY = (float) sumY;
+        effectiveSampleSize = 1 / sumSquares;
+    }
+
+    // Low-variance resampling: one random offset, then particleCount evenly spaced pointers
+    // into the cumulative weights
+    private void resample() {
+        long state = next(randomState[0]);
+        randomState[0] = state;
+
+        double step = 1.0 / particleCount;
+        double pointer = toUnit(state) * step;
+        double cumulative = weight[0];
+        int source = 0;
+        for (int i = 0; i < particleCount; i++) {
+            while (pointer > cumulative && source < particleCount - 1) {
+                source++;
+                cumulative += weight[source];
+            }
+            resampledX[i] = x[source];
+            resampledY[i] = y[source];
+            pointer += step;
+        }
+
+        float[] swap = x;
+        x = resampledX;
+        resampledX = swap;
+        swap = y;
+        y = resampledY;
+        resampledY = swap;
+
+        for (int i = 0; i < particleCount; i++) {
+            weight[i] = step;
+        }
+        effectiveSampleSize = particleCount;
+        resampleCount++;
+    }
+
+    private void startWorkers() {
+        closed = false;
+        final int startGeneration = generation;
+        for (int k = 1; k < chunkCount; k++) {
+            final int chunk = k;
+            workers[k - 1] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    runWorker(chunk, startGeneration);
+                }
+            }, "ParticleFilter-" + k);
+            workers[k - 1].setDaemon(true);
+            workers[k - 1].start();
+        }
+        workersStarted = true;
+    }
+
+    // Runs the rounds of work handed out after startGeneration
+    private void runWorker(int chunk, int startGeneration) {
+        int seen = startGeneration;
+        while (!closed) {
+            if (generation == seen) {
+                LockSupport.park(this);
+                continue;
+            }
+            seen = generation;
+
+            moveAndWeigh(chunk);
+
+            if (pendingChunks.decrementAndGet() == 0) {
+                LockSupport.unpark(coordinator);
+            }
+        }
+    }
+
+    // Stops the worker threads and waits for them to exit; the next update starts new ones. Must
+    // not be called during an update.
+    public void close() {
+        if (!workersStarted) {
+            return;
+        }
+
+        closed = true;
+        for (Thread worker : workers) {
+            LockSupport.unpark(worker);
+        }
+        boolean interrupted = false;
+        for (Thread worker : workers) {
+            while (worker.isAlive()) {
+                try {
+                    worker.join();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        workersStarted = false;
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public float getX() {
+        return estimateX;
+    }
+
+    public float getY() {
+        return estimateY;
+    }
+
+    public int getParticleCount() {
+        return particleCount;
+    }
+
+    public int getThreadCount() {
+        return chunkCount;
+    }
+
+    public double getEffectiveSampleSize() {
+        return effectiveSampleSize;
+    }
+
+    public long getResampleCount() {
+        return resampleCount;
+    }
+
+    public float getParticleX(int i) {
+        return x[i];
+    }
+
+    public float getParticleY(int i) {
+        return y[i];
+    }
+
+    private static float clamp(float value, float min, float max) {
+        return value < min ? min : (value > max ? max : value);
+    }
+
+    // xorshift64* step
+    private static long next(long state) {
+        state ^= state >>> 12;
+        state ^= state << 25;
+        state ^= state >>> 27;
+        return state;
+    }
+
+    // Uniform value in [0, 1) from a generator state
+    private static float toUnit(long state) {
+        return ((state * 0x2545F4914F6CDD1DL) >>> 40) / (float) (1 << 24);
+    }
+
+    private static long mix(long value) {
+        value = (value ^ (value >>> 30)) * 0xBF58476D1CE4E5B9L;
+        value = (value ^ (value >>> 27)) * 0x94D049BB133111EBL;
+        value ^= value >>> 31;
+        return value == 0 ? 1 : value;
+    }
+}
@@ -0,0 +1,85 @@
+package com.js.indoornavigator;
+
+// ParticleFilterEstimator tracks a continuous position with a particle filter over the beacon
+// positions. The particles move with the scan time between updates rather than per update.
+public class ParticleFilterEstimator implements PositionEstimator {
+
+    private final PositioningEngine engine;
+    private final ParticleFilter filter;
+
+    // Timestamp of the previous update, or 0
+    private long lastUpdateNanos;
+    private int quadrant;
+
+    // Uses the particle count, random seed, beacons and path loss model of engine
+    public ParticleFilterEstimator(PositioningEngine engine) {
+        this.engine = engine;
+
+        int beaconCount = engine.getBeaconCount();
+        float[] beaconX = new float[beaconCount];
+        float[] beaconY = new float[beaconCount];
+        float[] beaconTxPower = new float[beaconCount];
+        for (int i = 0; i < beaconCount; i++) {
+            Beacon beacon = engine.getBeacon(i);
+            beaconX[i] = beacon.getX();
+            beaconY[i] = beacon.getY();
+            beaconTxPower[i] = beacon.getTxPower();
+        }
+        filter = new ParticleFilter(engine.getParticleCount(), beaconX, beaconY, beaconTxPower,
+                engine.getPathLossModel(), engine.getRandomSeed());
+    }
+
+    // Restarts the particles from the seed of the engine, so that runs can be reproduced
+    @Override
+    public void reset() {
+        filter.setSeed(engine.getRandomSeed());
+        lastUpdateNanos = 0;
+    }
+
+    @Override
+    public void onSample(int beacon, int rssi, long timestampNanos) {
+    }
+
+    // Runs one particle filter step over the scan time since the previous one
+    @Override
+    public boolean update(Observations observations) {
+        long timestampNanos = observations.getTimestampNanos();
+        long elapsed = lastUpdateNanos != 0 ? timestampNanos - lastUpdateNanos : 0;
+        lastUpdateNanos = timestampNanos;
+        filter.update(observations.getObservedBeacons(), observations.getObservedRssis(),
+                observations.getObservedCount(), elapsed);
+
+        quadrant = observations.getQuadrantAt(filter.getX(), filter.getY());
+        return true;
+    }
+
+    public ParticleFilter getFilter() {
+        return filter;
+    }
+
+    @Override
+    public int getQuadrant() {
+        return quadrant;
+    }
+
+    @Override
+    public boolean hasCoordinate() {
+        return true;
+    }
+
+    @Override
+    public float getX() {
+        return filter.getX();
+    }
+
+    @Override
+    public float getY() {
+        return filter.getY();
+    }
+
+    // Stops the worker threads of the filter
+    @Override
+    public void close() {
+        filter.close();
+    }
+}
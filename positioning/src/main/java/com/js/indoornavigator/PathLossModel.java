@@ -0,0 +1,89 @@
+package com.js.indoornavigator;
+
+// PathLossModel relates RSSI to distance with the log-distance path loss model:
+//
+//   rssi(d) = txPower - 10 * n * log10(d)
+//
+// where txPower is the RSSI measured at one metre and n is the path loss exponent (2 in free
+// space, higher indoors). A model for a site is fitted from surveyed (distance, RSSI) pairs with
+// calibrate; beacons that advertise their own one metre power can override txPower per call.
+public class PathLossModel {
+
+    public static final double DEFAULT_TX_POWER = -59;
+    public static final double DEFAULT_EXPONENT = 2.0;
+
+    // Distances below this are treated as this distance, since log10 diverges at 0
+    private static final double MIN_DISTANCE = 0.1;
+
+    // Ranges are capped here; weaker readings carry almost no distance information
+    public static final double MAX_DISTANCE = 100;
+
+    private final double txPower;
+    private final double exponent;
+
+    public PathLossModel() {
+        this(DEFAULT_TX_POWER, DEFAULT_EXPONENT);
+    }
+
+    public PathLossModel(double txPower, double exponent) {
+        this.txPower = txPower;
+        this.exponent = exponent;
+    }
+
+    // Expected RSSI at distance metres from the beacon
+    public double rssiAtDistance(double distance) {
+        return txPower - 10 * exponent * Math.log10(Math.max(distance, MIN_DISTANCE));
+    }
+
+    // Expected RSSI at the given squared distance; saves a square root per call
+    public double rssiAtSquaredDistance(double squaredDistance) {
+        double minSquared = MIN_DISTANCE * MIN_DISTANCE;
+        return txPower - 5 * exponent * Math.log10(Math.max(squaredDistance, minSquared));
+    }
+
+    // Distance in metres at which the model predicts rssi
+    public double distanceAtRssi(double rssi) {
+        return distanceAtRssi(rssi, txPower);
+    }
+
+    // Distance in metres at which a beacon with the given one metre power is received with rssi
+    public double distanceAtRssi(double rssi, double beaconTxPower) {
+        double distance = Math.pow(10, (beaconTxPower - rssi) / (10 * exponent));
+        return Math.max(MIN_DISTANCE, Math.min(distance, MAX_DISTANCE));
+    }
+
+    // Fits txPower and the exponent to count surveyed readings by least squares on log10(d).
+    // Needs readings from at least two different distances.
+    public static PathLossModel calibrate(double[] distances, double[] rssis, int count) {
+        double sumX = 0;
+        double sumY = 0;
+        double sumXX = 0;
+        double sumXY = 0;
+        for (int i = 0; i < count; i++) {
+            double x = Math.log10(Math.max(distances[i], MIN_DISTANCE));
+            sumX += x;
+            sumY += rssis[i];
+            sumXX += x * x;
+            sumXY += x * rssis[i];
+        }
+
+        double denominator = count * sumXX - sumX * sumX;
+        if (count < 2 || Math.abs(denominator) < 1e-12) {
+            throw new IllegalArgumentException("Calibration needs readings at two or more distances");
+        }
+
+        // rssi = txPower + slope * log10(d), with slope = -10 * n
+        double slope = (count * sumXY - sumX * sumY) / denominator;
+        double intercept = (sumY - slope * sumX) / count;
+
+        return new PathLossModel(intercept, -slope / 10);
+    }
+
+    public double getTxPower() {
+        return txPower;
+    }
+
+    public double getExponent() {
+        return exponent;
+    }
+}
@@ -0,0 +1,145 @@
+package com.js.indoornavigator;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.atomic.AtomicLong;
+
+// PipelineMetrics times the path of an advertisement from the scan callback to the frame that
+// moves the marker. Each stage and the inter-arrival time of each beacon has a LatencyHistogram,
+// so the stages can be recorded by the Bluetooth, positioning and drawing threads at once
+// without locking. Set it on a PositioningEngine with setMetrics; an engine without metrics
+// does not time anything.
+public class PipelineMetrics {
+
+    // Stages, all in nanoseconds
+    public static final int CALLBACK_INTERVAL = 0;  // between scan callbacks
+    public static final int DELIVERY = 1;           // advertisement received to scan callback
+    public static final int FILTER = 2;             // RSSI filter of one sample
+    public static final int ESTIMATE = 3;           // positioning method of one update
+    public static final int PLAUSIBILITY = 4;       // BeaconNetwork checks within the estimate
+    public static final int UPDATE = 5;             // whole update, listeners included
+    public static final int FRAME = 6;              // drawing one frame
+    public static final int SCAN_TO_RENDER = 7;     // advertisement to the frame showing it
+    public static final int STAGE_COUNT = 8;
+
+    private static final String[] STAGE_NAMES = {"callback interval", "delivery", "filter",
+            "estimate", "plausibility", "update", "frame", "scan to render"};
+
+    private final LatencyHistogram[] stages = new LatencyHistogram[STAGE_COUNT];
+    private final LatencyHistogram[] beaconIntervals;
+    private final AtomicLong lastCallbackNanos = new AtomicLong();
+
+    public PipelineMetrics(int beaconCount) {
+        for (int i = 0; i < STAGE_COUNT; i++) {
+            stages[i] = new LatencyHistogram();
+        }
+        beaconIntervals = new LatencyHistogram[beaconCount];
+        for (int i = 0; i < beaconCount; i++) {
+            beaconIntervals[i] = new LatencyHistogram();
+        }
+    }
+
+    public void record(int stage, long nanos) {
+        stages[stage].record(nanos);
+    }
+
+    // Called at the start of every scan callback; records the time since the previous one
+    public void recordCallback(long nowNanos) {
+        long last = lastCallbackNanos.getAndSet(nowNanos);
+        if (last != 0) {
+            stages[CALLBACK_INTERVAL].record(nowNanos - last);
+        }
+    }
+
+    // Records the time between two samples of the beacon at index beacon
+    public void recordBeaconInterval(int beacon, long nanos) {
+        beaconIntervals[beacon].record(nanos);
+    }
+
+    public LatencyHistogram getStage(int stage) {
+        return stages[stage];
+    }
+
+    public static String getStageName(int stage) {
+        return STAGE_NAMES[stage];
+    }
+
+    public LatencyHistogram getBeaconInterval(int beacon) {
+        return beaconIntervals[beacon];
+    }
+
+    public int getBeaconCount() {
+        return beaconIntervals.length;
+    }
+
+    // Scan callbacks per second, from the mean interval between them
+    public double getCallbacksPerSecond() {
+        double mean = stages[CALLBACK_INTERVAL].getMean();
+        return mean > 0 ? 1e9 / mean : 0;
+    }
+
+    public void reset() {
+        for (LatencyHistogram stage : stages) {
+            stage.reset();
+        }
+        for (LatencyHistogram interval : beaconIntervals) {
+            interval.reset();
+        }
+        lastCallbackNanos.set(0);
+    }
+
+    // One line summary of a stage in milliseconds
+    public String summarize(int stage) {
+        return summarize(STAGE_NAMES[stage], stages[stage]);
+    }
+
+    public static String summarize(String name, LatencyHistogram histogram) {
+        return String.format("%s: p50 %.2f p90 %.2f p99 %.2f max %.2f ms (%d)", name,
+                histogram.getPercentile(50) / 1e6, histogram.getPercentile(90) / 1e6,
+                histogram.getPercentile(99) / 1e6, histogram.getMax() / 1e6, histogram.getCount());
+    }
+
+    // Writes the percentiles of every histogram followed by their non-empty buckets as CSV, so
+    // that deployments can be compared and other percentiles computed later
+    public void writeCsv(Writer out) throws IOException {
+        out.write("histogram,count,mean_ns,p50_ns,p90_ns,p99_ns,p999_ns,max_ns\n");
+        for (int i = 0; i < STAGE_COUNT; i++) {
+            writeSummary(out, STAGE_NAMES[i], stages[i]);
+        }
+        for (int i = 0; i < beaconIntervals.length; i++) {
+            writeSummary(out, getBeaconName(i), beaconIntervals[i]);
+        }
+
+        out.write("\nhistogram,lower_ns,upper_ns,count\n");
+        for (int i = 0; i < STAGE_COUNT; i++) {
+            writeBuckets(out, STAGE_NAMES[i], stages[i]);
+        }
+        for (int i = 0; i < beaconIntervals.length; i++) {
+            writeBuckets(out, getBeaconName(i), beaconIntervals[i]);
+        }
+        out.flush();
+    }
+
+    private static String getBeaconName(int beacon) {
+        return "beacon " + beacon + " interval";
+    }
+
+    private static void writeSummary(Writer out, String name, LatencyHistogram histogram)
+            throws IOException {
+        out.write(name + "," + histogram.getCount() + "," + Math.round(histogram.getMean()) + ","
+                + histogram.getPercentile(50) + "," + histogram.getPercentile(90) + ","
+                + histogram.getPercentile(99) + "," + histogram.getPercentile(99.9) + ","
+                + histogram.getMax() + "\n");
+    }
+
+    private static void writeBuckets(Writer out, String name, LatencyHistogram histogram)
+            throws IOException {
+        for (int i = 0; i < LatencyHistogram.BUCKET_COUNT; i++) {
+            long count = histogram.getCount(i);
+            if (count > 0) {
+                out.write(name + "," + LatencyHistogram.getLowerBound(i) + ","
+                        + LatencyHistogram.getUpperBound(i) + "," + count + "\n");
+            }
+        }
+    }
+}
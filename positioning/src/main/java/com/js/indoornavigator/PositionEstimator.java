@@ -0,0 +1,34 @@
+package com.js.indoornavigator;
+
+// PositionEstimator is one positioning method. The engine keeps the beacons up to date from the
+// scan results and calls update once per batch of samples; the estimator reads what it needs
+// from the Observations and reports the quadrant it estimates, and coordinate methods also a
+// position in metres. Apart from the getters, an estimator is only called by the thread that
+// processes samples.
+public interface PositionEstimator {
+
+    // Forgets what was learned from earlier samples; called whenever the method is selected
+    void reset();
+
+    // Called with the unfiltered RSSI of every sample of a beacon, before the update that
+    // includes it; most methods only need the filtered RSSI in the Observations
+    void onSample(int beacon, int rssi, long timestampNanos);
+
+    // Estimates the position from observations; returns false if there is no new estimate, and
+    // the engine then keeps its previous position
+    boolean update(Observations observations);
+
+    // Quadrant of the last estimate
+    int getQuadrant();
+
+    // Whether the last estimate includes a position in metres
+    boolean hasCoordinate();
+
+    float getX();
+
+    float getY();
+
+    // Releases threads the method started; called when the method is deselected or the engine
+    // stops, and the next update starts them again
+    void close();
+}
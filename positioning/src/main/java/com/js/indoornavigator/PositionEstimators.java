@@ -0,0 +1,125 @@
+package com.js.indoornavigator;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// PositionEstimators is the table of positioning methods. A mode of PositioningEngine is the
+// index of its method in the table: the engine builds the estimator of a mode from it, and the
+// configuration screen lists the methods with their names and preference keys from it, so a new
+// method only needs a PositionEstimator and an entry here.
+public final class PositionEstimators {
+
+    // Builds the estimator of a method for engine; called on the thread that processes samples
+    // the first time the method is selected
+    public interface Factory {
+        PositionEstimator create(PositioningEngine engine);
+    }
+
+    // Density methods take the mode of the samples of the last WINDOW_NANOS, at most MAX_SAMPLES
+    // of them; density 2 takes at most one sample every TIME_INTERVAL_NANOS
+    private static final int MAX_SAMPLES = 64;
+    private static final long WINDOW_NANOS = 5 * 1000000000L;
+    private static final long TIME_INTERVAL_NANOS = 500 * 1000000L;
+
+    private static final List<String> names = new ArrayList<>();
+    private static final List<String> keys = new ArrayList<>();
+    private static final List<Factory> factories = new ArrayList<>();
+
+    // Registered in the order of the PositioningEngine.MODE_ constants
+    static {
+        register("None", null, null);
+        register("Highest RSSI", "highestRssi", new Factory() {
+            @Override
+            public PositionEstimator create(PositioningEngine engine) {
+                return new HighestRssiEstimator();
+            }
+        });
+        register("Density 1", "density1", new Factory() {
+            @Override
+            public PositionEstimator create(PositioningEngine engine) {
+                return new DensityEstimator(engine.getBeaconCount(), MAX_SAMPLES, WINDOW_NANOS,
+                        0);
+            }
+        });
+        register("Density 2", "density2", new Factory() {
+            @Override
+            public PositionEstimator create(PositioningEngine engine) {
+                return new DensityEstimator(engine.getBeaconCount(), MAX_SAMPLES, WINDOW_NANOS,
+                        TIME_INTERVAL_NANOS);
+            }
+        });
+        register("Bayes", "bayes", new Factory() {
+            @Override
+            public PositionEstimator create(PositioningEngine engine) {
+                return new BayesEstimator(engine.getBeaconNetwork());
+            }
+        });
+        register("Forward Filter", "forwardFilter", new Factory() {
+            @Override
+            public PositionEstimator create(PositioningEngine engine) {
+                return new ForwardFilterEstimator(engine.getBeaconNetwork());
+            }
+        });
+        register("Particle Filter", "particleFilter", new Factory() {
+            @Override
+            public PositionEstimator create(PositioningEngine engine) {
+                return new ParticleFilterEstimator(engine);
+            }
+        });
+        register("Weighted Centroid", "weightedCentroid", new Factory() {
+            @Override
+            public PositionEstimator create(PositioningEngine engine) {
+                return new RangingEstimator(engine, true);
+            }
+        });
+        register("Trilateration", "trilateration", new Factory() {
+            @Override
+            public PositionEstimator create(PositioningEngine engine) {
+                return new RangingEstimator(engine, false);
+            }
+        });
+        register("Fingerprint", "fingerprint", new Factory() {
+            @Override
+            public PositionEstimator create(PositioningEngine engine) {
+                return new FingerprintEstimator(engine.getBeaconCount());
+            }
+        });
+    }
+
+    private PositionEstimators() {
+    }
+
+    // Adds a method and returns its mode. key is the preference that selects it, or null if it
+    // cannot be selected; a method without a factory never estimates. Methods are registered
+    // before the engines and ensembles that run them are created.
+    public static synchronized int register(String name, String key, Factory factory) {
+        names.add(name);
+        keys.add(key);
+        factories.add(factory);
+        return names.size() - 1;
+    }
+
+    // Number of modes, MODE_NONE included
+    public static synchronized int getCount() {
+        return names.size();
+    }
+
+    public static synchronized String getName(int mode) {
+        return names.get(mode);
+    }
+
+    // Preference key of mode, or null
+    public static synchronized String getKey(int mode) {
+        return keys.get(mode);
+    }
+
+    // Builds the estimator of mode for engine, or returns null if the mode never estimates
+    public static PositionEstimator create(int mode, PositioningEngine engine) {
+        Factory factory;
+        synchronized (PositionEstimators.class) {
+            factory = factories.get(mode);
+        }
+
+        return factory != null ? factory.create(engine) : null;
+    }
+}
@@ -0,0 +1,143 @@
+package com.js.indoornavigator;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+// PositionStreamWriter writes the positions of a PositioningService as text, one position per
+// line:
+//
+//   timestampNanos device quadrant [x y]
+//
+// with the device as a MAC address and x and y in metres when the mode estimates coordinates.
+// Every shard formats into its own buffer, which is written to the stream when it fills up or
+// the shard goes idle, so shards only contend for the stream once per buffer.
+public class PositionStreamWriter implements PositioningService.PositionListener {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    // Longest line: 19 digit timestamp, 17 character MAC, quadrant and two coordinates
+    private static final int MAX_LINE_LENGTH = 128;
+
+    private static final byte[] HEX_DIGITS = "0123456789ABCDEF".getBytes();
+
+    private final OutputStream out;
+    private final byte[][] buffers;
+    private final int[] lengths;
+    private volatile IOException error;
+
+    public PositionStreamWriter(OutputStream out, int shardCount) {
+        this.out = out;
+        buffers = new byte[shardCount][BUFFER_SIZE];
+        lengths = new int[shardCount];
+    }
+
+    @Override
+    public void onPosition(int shard, long device, PositioningEngine engine, long timestampNanos) {
+        if (lengths[shard] + MAX_LINE_LENGTH > BUFFER_SIZE) {
+            flush(shard);
+        }
+
+        byte[] buffer = buffers[shard];
+        int length = lengths[shard];
+        length = putLong(buffer, length, timestampNanos);
+        buffer[length++] = ' ';
+        length = putMac(buffer, length, device);
+        buffer[length++] = ' ';
+        length = putLong(buffer, length, engine.getCurrentPosition());
+        if (engine.hasCoordinate()) {
+            buffer[length++] = ' ';
+            length = putCentimetres(buffer, length, engine.getX());
+            buffer[length++] = ' ';
+            length = putCentimetres(buffer, length, engine.getY());
+        }
+        buffer[length++] = '\n';
+        lengths[shard] = length;
+    }
+
+    @Override
+    public void onShardIdle(int shard) {
+        flush(shard);
+    }
+
+    // Writes the buffered lines of shard; called on the shard thread
+    private void flush(int shard) {
+        if (lengths[shard] == 0) {
+            return;
+        }
+
+        try {
+            synchronized (out) {
+                out.write(buffers[shard], 0, lengths[shard]);
+                out.flush();
+            }
+        } catch (IOException e) {
+            error = e;
+        }
+        lengths[shard] = 0;
+    }
+
+    // Writes what is left in every buffer; only call once the service has stopped
+    public void close() throws IOException {
+        for (int i = 0; i < buffers.length; i++) {
+            flush(i);
+        }
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    // First error writing to the stream, or null
+    public IOException getError() {
+        return error;
+    }
+
+    private static int putLong(byte[] buffer, int length, long value) {
+        if (value < 0) {
+            buffer[length++] = '-';
+            value = -value;
+        }
+
+        int start = length;
+        do {
+            buffer[length++] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value > 0);
+
+        // Digits were written least significant first
+        for (int i = start, j = length - 1; i < j; i++, j--) {
+            byte digit = buffer[i];
+            buffer[i] = buffer[j];
+            buffer[j] = digit;
+        }
+
+        return length;
+    }
+
+    // Writes metres with two decimals
+    private static int putCentimetres(byte[] buffer, int length, float metres) {
+        long centimetres = Math.round(metres * 100.0);
+        if (centimetres < 0) {
+            buffer[length++] = '-';
+            centimetres = -centimetres;
+        }
+
+        length = putLong(buffer, length, centimetres / 100);
+        buffer[length++] = '.';
+        buffer[length++] = (byte) ('0' + centimetres / 10 % 10);
+        buffer[length++] = (byte) ('0' + centimetres % 10);
+        return length;
+    }
+
+    private static int putMac(byte[] buffer, int length, long mac) {
+        for (int shift = 40; shift >= 0; shift -= 8) {
+            int b = (int) (mac >>> shift) & 0xFF;
+            buffer[length++] = HEX_DIGITS[b >>> 4];
+            buffer[length++] = HEX_DIGITS[b & 0xF];
+            if (shift > 0) {
+                buffer[length++] = ':';
+            }
+        }
+
+        return length;
+    }
+}
@@ -0,0 +1,791 @@
+package com.js.indoornavigator;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.LockSupport;
+
+// PositioningEngine computes the position of the device from scan results. The position is
+// recomputed only when a scan result arrives, and listeners are only notified when the
+// estimated quadrant actually changes. Each positioning mode is a PositionEstimator from the
+// PositionEstimators table, built the first time the mode is selected, so an engine only holds
+// what its modes use. After that, an update does not allocate.
+//
+// The particle filter, weighted centroid, trilateration and fingerprint modes also estimate a
+// continuous position in metres. Listeners are then notified when the quadrant changes or when
+// the position moves by at least MIN_MOVE_METRES.
+//
+// Scan results can either be passed to onScanResult on a single thread, or submitted from the
+// Bluetooth thread and processed on the engine's positioning thread once start() is called. In
+// the latter case listeners are notified on the positioning thread, and may be added or removed
+// from any thread meanwhile.
+//
+// A beacon not heard for the beacon TTL is no longer active. Without samples the positioning
+// thread still wakes every LIVENESS_TICK_NANOS while advertisers are live to expire them, reading
+// the Clock of the sample timestamps if one is set and otherwise extrapolating it from the last
+// sample; single threaded callers call expireBeacons themselves. Once no beacon is active the engine has no position.
+public class PositioningEngine implements PositioningStrategy {
+
+    // Positioning modes, the indices of the built-in methods in PositionEstimators
+    public static final int MODE_NONE = 0;
+    public static final int MODE_HIGHEST_RSSI = 1;
+    public static final int MODE_DENSITY1 = 2;
+    public static final int MODE_DENSITY2 = 3;
+    public static final int MODE_BAYES = 4;
+    public static final int MODE_FORWARD_FILTER = 5;
+    public static final int MODE_PARTICLE_FILTER = 6;
+    public static final int MODE_WEIGHTED_CENTROID = 7;
+    public static final int MODE_TRILATERATION = 8;
+    public static final int MODE_FINGERPRINT = 9;
+
+    // Particle count used unless one is given to the constructor
+    public static final int DEFAULT_PARTICLE_COUNT = 2000;
+
+    // Listener that is notified when the estimated position changes
+    public interface OnPositionChangedListener {
+        void onPositionChanged(PositioningEngine engine);
+    }
+
+    // Clock of the sample timestamps
+    public interface Clock {
+        long nowNanos();
+    }
+
+    // Constants
+    private static final long RATE_WINDOW_NANOS = 1000 * 1000000L;
+    private static final int SCAN_BUFFER_CAPACITY = 4096;
+    private static final int DRAIN_BATCH_SIZE = 256;
+    private static final float MIN_MOVE_METRES = 0.05f;
+
+    // Every advertiser heard is tracked, the beacons in a pool of their own and up to
+    // FOREIGN_ADVERTISERS others in a pool where the least recently heard makes room; a beacon
+    // not heard for its TTL is no longer active
+    private static final int FOREIGN_ADVERTISERS = 64;
+    public static final long DEFAULT_BEACON_TTL_NANOS = 10 * 1000000000L;
+    private static final long LIVENESS_TICK_NANOS = 250 * 1000000L;
+
+    // mode and its estimator are only changed by the thread that processes samples;
+    // requestedMode is the mode set through setMode
+    private int mode;
+    private PositionEstimator estimator;
+    private volatile int requestedMode;
+
+    // Estimators of the modes selected so far, by mode; replaced as a whole when one is added
+    private volatile PositionEstimator[] estimators;
+
+    // Smooths the RSSI of every sample before the positioning methods see it; like the mode,
+    // the filter is replaced by the thread that processes samples
+    private RssiFilterBank rssiFilter;
+    private volatile int requestedRssiFilter;
+
+    // Samples submitted by the Bluetooth thread wait here for the positioning thread
+    private final ScanSampleBuffer scanBuffer;
+    private final ScanSampleBuffer.SampleHandler sampleHandler;
+    private volatile Thread positioningThread;
+    private volatile boolean waiting;
+
+    // Set while draining when a sample of the batch belonged to a known beacon
+    private boolean batchApplied;
+    private long batchTimestamp;
+
+    // Fields used to store the Beacon objects; beacons[i] is registered at index i
+    private final Beacon[] beacons;
+    private final BeaconRegistry registry;
+    private final BeaconNetwork beaconNetwork;
+
+    // Beacons heard within the TTL, with the beacon index of each entry in liveBeaconIndex, and
+    // the other advertisers heard within the TTL. liveBeacons has room for every beacon, so
+    // foreign traffic never evicts one.
+    private final ExpiringBeaconRegistry liveBeacons;
+    private final int[] liveBeaconIndex;
+    private final ExpiringBeaconRegistry foreignAdvertisers;
+
+    // Set when a beacon expired since the last update
+    private boolean beaconsExpired;
+
+    // Timestamp of the last sample, and how far the sample clock is ahead of System.nanoTime()
+    private long lastSampleNanos;
+    private long sampleClockOffset;
+    private boolean hasSampleClock;
+    private volatile Clock sampleClock;
+
+    // holds the current quadrant of the device; read by the UI thread
+    private volatile int currentPosition;
+    private volatile boolean hasPosition;
+
+    // Particle count and random seed of the particle filter mode
+    private final int particleCount;
+    private long particleSeed;
+
+    // Converts RSSI to distance for the ranging modes
+    private final PathLossModel pathLossModel;
+
+    // Surveyed radio map of the fingerprint mode, swapped in by the thread that processes
+    // samples
+    private volatile RadioMap requestedRadioMap;
+    private RadioMap radioMap;
+
+    // Continuous position in metres; only valid in coordinate modes
+    private volatile float positionX;
+    private volatile float positionY;
+    private volatile boolean hasCoordinate;
+
+    // Timestamp of the newest sample of the update that last changed the position
+    private volatile long positionTimestamp;
+
+    // What the estimators see of the beacons at an update
+    private final Observations observations;
+
+    // Update rate statistics
+    private long sampleCount;
+    private long updateCount;
+    private long positionChangeCount;
+    private long rateWindowStart;
+    private int rateWindowCount;
+    private float updatesPerSecond;
+
+    // Stage timings; null unless set with setMetrics
+    private volatile PipelineMetrics metrics;
+
+    // Copied on write under listenerLock, so that notifying needs neither a lock nor an iterator
+    private final Object listenerLock = new Object();
+    private volatile OnPositionChangedListener[] listeners = new OnPositionChangedListener[0];
+
+    // network holds the neighbors of each beacon by index in beacons
+    public PositioningEngine(Beacon[] beacons, BeaconNetwork network) {
+        this(beacons, network, DEFAULT_PARTICLE_COUNT);
+    }
+
+    public PositioningEngine(Beacon[] beacons, BeaconNetwork network, int particleCount) {
+        this(beacons, network, particleCount, new PathLossModel());
+    }
+
+    // pathLossModel converts RSSI to distance, for example a model from PathLossModel.calibrate
+    public PositioningEngine(Beacon[] beacons, BeaconNetwork network, int particleCount,
+            PathLossModel pathLossModel) {
+        this(beacons, network, particleCount, pathLossModel, SCAN_BUFFER_CAPACITY);
+    }
+
+    // scanBufferCapacity bounds the samples queued for the positioning thread; an engine that is
+    // only fed through onScanResult, as PositioningService does for each device, can make it 1
+    public PositioningEngine(Beacon[] beacons, BeaconNetwork network, int particleCount,
+            PathLossModel pathLossModel, int scanBufferCapacity) {
+        if (network.getNodeCount() != beacons.length) {
+            throw new IllegalArgumentException("Network has " + network.getNodeCount()
+                    + " nodes for " + beacons.length + " beacons");
+        }
+        this.beacons = beacons;
+
+        registry = new BeaconRegistry(beacons.length);
+        for (Beacon beacon : beacons) {
+            registry.register(MacAddress.parse(beacon.getUuid()), beacon.getQuadrant());
+        }
+
+        beaconNetwork = network;
+
+        liveBeaconIndex = new int[beacons.length];
+        liveBeacons = new ExpiringBeaconRegistry(beacons.length, DEFAULT_BEACON_TTL_NANOS,
+                LIVENESS_TICK_NANOS, new ExpiringBeaconRegistry.Listener() {
+                    @Override
+                    public void onAdded(int entry, long key) {
+                        liveBeaconIndex[entry] = registry.indexOf(key);
+                    }
+
+                    @Override
+                    public void onRemoved(int entry, long key, boolean evicted) {
+                        registry.setActive(liveBeaconIndex[entry], false);
+                        beaconsExpired = true;
+                    }
+                });
+        foreignAdvertisers = new ExpiringBeaconRegistry(FOREIGN_ADVERTISERS,
+                DEFAULT_BEACON_TTL_NANOS, LIVENESS_TICK_NANOS, null);
+
+        this.pathLossModel = pathLossModel;
+        this.particleCount = particleCount;
+        particleSeed = System.nanoTime();
+        estimators = new PositionEstimator[PositionEstimators.getCount()];
+        observations = new Observations(registry, beacons);
+
+
+        scanBuffer = new ScanSampleBuffer(scanBufferCapacity);
+        sampleHandler = new ScanSampleBuffer.SampleHandler() {
+            @Override
+            public void onSample(long mac, int rssi, long timestampNanos) {
+                applySample(mac, rssi, timestampNanos);
+            }
+        };
+
+        // Initial current position is quadrant 1
+        currentPosition = 1;
+        mode = requestedMode = MODE_NONE;
+        rssiFilter = new RssiFilterBank(beacons.length, RssiFilterBank.FILTER_NONE);
+        requestedRssiFilter = RssiFilterBank.FILTER_NONE;
+    }
+
+    // Starts the positioning thread that processes submitted samples
+    public synchronized void start() {
+        if (positioningThread != null) {
+            return;
+        }
+
+        positioningThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                processSamples();
+            }
+        }, "PositioningEngine");
+        positioningThread.setDaemon(true);
+        positioningThread.start();
+    }
+
+    // Stops the positioning thread and the threads of the estimators; samples that are still
+    // buffered are discarded, so a restarted engine does not see them
+    public synchronized void stop() {
+        Thread thread = positioningThread;
+        if (thread != null) {
+            positioningThread = null;
+            LockSupport.unpark(thread);
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        // The positioning thread is gone, so this thread is now the only consumer
+        scanBuffer.clear();
+
+        for (PositionEstimator built : estimators) {
+            if (built != null) {
+                built.close();
+            }
+        }
+    }
+
+    // Called by the Bluetooth thread; queues a sample for the positioning thread without locking.
+    // Returns false if the sample was dropped because the buffer is full.
+    public boolean submit(long mac, int rssi, long timestampNanos) {
+        boolean accepted = enqueue(mac, rssi, timestampNanos);
+        wakeUp();
+        return accepted;
+    }
+
+    // Queues a sample without waking the positioning thread; used to deliver a batch of scan
+    // results with a single wakeUp() at the end
+    public boolean enqueue(long mac, int rssi, long timestampNanos) {
+        return scanBuffer.offer(mac, rssi, timestampNanos);
+    }
+
+    // Wakes the positioning thread if it is parked
+    public void wakeUp() {
+        if (waiting) {
+            Thread thread = positioningThread;
+            if (thread != null) {
+                LockSupport.unpark(thread);
+            }
+        }
+    }
+
+    // Positioning thread loop; drains the scan buffer in batches and parks when it is empty. All
+    // samples of a batch are applied before the position is computed once for the batch. The
+    // thread parks for at most LIVENESS_TICK_NANOS, so beacons expire while nothing is heard.
+    private void processSamples() {
+        Thread self = Thread.currentThread();
+        while (positioningThread == self) {
+            applyRequestedMode();
+
+            batchApplied = false;
+            if (scanBuffer.drain(sampleHandler, DRAIN_BATCH_SIZE) > 0) {
+                sampleClockOffset = lastSampleNanos - System.nanoTime();
+                hasSampleClock = true;
+                if (batchApplied) {
+                    update(batchTimestamp);
+                }
+                else if (beaconsExpired) {
+                    updateAfterExpiry(lastSampleNanos);
+                }
+                continue;
+            }
+
+            waiting = true;
+
+            // Re-check after publishing waiting so that a sample offered in between is not missed
+            if (scanBuffer.isEmpty() && requestedMode == mode
+                    && requestedRssiFilter == rssiFilter.getType()
+                    && requestedRadioMap == radioMap && positioningThread == self) {
+
+                // Once every advertiser expired there is nothing to wake up for
+                if (liveBeacons.size() > 0 || foreignAdvertisers.size() > 0) {
+                    LockSupport.parkNanos(this, LIVENESS_TICK_NANOS);
+                }
+                else {
+                    LockSupport.park(this);
+                }
+            }
+            waiting = false;
+
+            Clock clock = sampleClock;
+            if (clock != null) {
+                expireBeacons(clock.nowNanos());
+            }
+            else if (hasSampleClock) {
+                expireBeacons(System.nanoTime() + sampleClockOffset);
+            }
+        }
+    }
+
+    public void addOnPositionChangedListener(OnPositionChangedListener listener) {
+        synchronized (listenerLock) {
+            OnPositionChangedListener[] updated = Arrays.copyOf(listeners, listeners.length + 1);
+            updated[listeners.length] = listener;
+            listeners = updated;
+        }
+    }
+
+    // A removed listener is not called after this returns, unless a notification on the
+    // positioning thread is already under way
+    public void removeOnPositionChangedListener(OnPositionChangedListener listener) {
+        synchronized (listenerLock) {
+            for (int i = 0; i < listeners.length; i++) {
+                if (listeners[i] == listener) {
+                    OnPositionChangedListener[] updated =
+                            new OnPositionChangedListener[listeners.length - 1];
+                    System.arraycopy(listeners, 0, updated, 0, i);
+                    System.arraycopy(listeners, i + 1, updated, i, updated.length - i);
+                    listeners = updated;
+                    return;
+                }
+            }
+        }
+    }
+
+    // Switches the positioning mode, one of the modes of PositionEstimators, and clears the state
+    // of the previous mode. When the positioning thread is running, the switch happens on that
+    // thread.
+    public void setMode(int mode) {
+        if (mode < MODE_NONE || mode >= PositionEstimators.getCount()) {
+            throw new IllegalArgumentException("Unknown mode: " + mode);
+        }
+        requestedMode = mode;
+
+        Thread thread = positioningThread;
+        if (thread == null) {
+            applyRequestedMode();
+        }
+        else {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    // Selects the RssiFilterBank filter type applied to incoming samples; the filter starts
+    // without history
+    public void setRssiFilter(int type) {
+        if (type < RssiFilterBank.FILTER_NONE || type > RssiFilterBank.FILTER_MEDIAN) {
+            throw new IllegalArgumentException("Unknown filter type: " + type);
+        }
+        requestedRssiFilter = type;
+
+        Thread thread = positioningThread;
+        if (thread == null) {
+            applyRequestedMode();
+        }
+        else {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    public int getRssiFilter() {
+        return requestedRssiFilter;
+    }
+
+    // Seeds the random numbers of the particle filter so that runs can be reproduced; the filter
+    // restarts from the seed whenever its mode is selected. Must not be called while the
+    // positioning thread is running.
+    public void setRandomSeed(long seed) {
+        particleSeed = seed;
+    }
+
+    public long getRandomSeed() {
+        return particleSeed;
+    }
+
+    public int getParticleCount() {
+        return particleCount;
+    }
+
+    // Sets the radio map of the fingerprint mode; the map is then only queried by the thread that
+    // processes samples
+    public void setRadioMap(RadioMap map) {
+        requestedRadioMap = map;
+
+        Thread thread = positioningThread;
+        if (thread == null) {
+            applyRequestedMode();
+        }
+        else {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    public RadioMap getRadioMap() {
+        return requestedRadioMap;
+    }
+
+    // Time after which a beacon that is not heard again is no longer active; may be called from
+    // any thread
+    public void setBeaconTtl(long ttlNanos) {
+        liveBeacons.setTtl(ttlNanos);
+        foreignAdvertisers.setTtl(ttlNanos);
+    }
+
+    public long getBeaconTtl() {
+        return liveBeacons.getTtl();
+    }
+
+    // Sets the clock the sample timestamps are taken from, so that the positioning thread expires
+    // beacons in the same time as whoever starts and stops the scanner; may be called from any
+    // thread. Without a clock the thread extrapolates from System.nanoTime(), which does not
+    // advance while the device sleeps.
+    public void setClock(Clock clock) {
+        sampleClock = clock;
+    }
+
+    // Times the filter, estimate and plausibility stages of every update in metrics, which must
+    // have a histogram for each beacon; null stops timing
+    public void setMetrics(PipelineMetrics metrics) {
+        if (metrics != null && metrics.getBeaconCount() != beacons.length) {
+            throw new IllegalArgumentException("Metrics have " + metrics.getBeaconCount()
+                    + " beacons, expected " + beacons.length);
+        }
+        this.metrics = metrics;
+    }
+
+    public PipelineMetrics getMetrics() {
+        return metrics;
+    }
+
+    private void applyRequestedMode() {
+        int newFilter = requestedRssiFilter;
+        if (newFilter != rssiFilter.getType()) {
+            rssiFilter = new RssiFilterBank(beacons.length, newFilter);
+        }
+
+        radioMap = requestedRadioMap;
+
+        int newMode = requestedMode;
+        if (newMode == mode) {
+            return;
+        }
+        if (estimator != null) {
+            estimator.close();
+        }
+        mode = newMode;
+
+        estimator = getEstimator(newMode);
+        if (estimator == null) {
+            estimator = createEstimator(newMode);
+        }
+        if (estimator != null) {
+            estimator.reset();
+        }
+
+        hasPosition = false;
+        hasCoordinate = false;
+        notifyPositionChanged();
+    }
+
+    // Builds the estimator of mode from PositionEstimators and keeps it for when the mode is
+    // selected again; returns null for a mode that never estimates
+    private PositionEstimator createEstimator(int mode) {
+        PositionEstimator created = PositionEstimators.create(mode, this);
+        if (created != null) {
+            PositionEstimator[] built = Arrays.copyOf(estimators,
+                    Math.max(estimators.length, mode + 1));
+            built[mode] = created;
+            estimators = built;
+        }
+
+        return created;
+    }
+
+    public int getMode() {
+        return requestedMode;
+    }
+
+    public static String getModeName(int mode) {
+        return PositionEstimators.getName(mode);
+    }
+
+    // Name of the selected mode
+    @Override
+    public String getName() {
+        return PositionEstimators.getName(requestedMode);
+    }
+
+    public ScanSampleBuffer getScanBuffer() {
+        return scanBuffer;
+    }
+
+    // Called for every scan result; updates the beacon and recomputes the position. Must not be
+    // called while the positioning thread is running.
+    public void onScanResult(String address, int rssi, long timestampNanos) {
+        onScanResult(MacAddress.parse(address), rssi, timestampNanos);
+    }
+
+    public void onScanResult(long mac, int rssi, long timestampNanos) {
+        if (applySample(mac, rssi, timestampNanos)) {
+            update(timestampNanos);
+        }
+        else if (beaconsExpired) {
+            updateAfterExpiry(timestampNanos);
+        }
+    }
+
+    // Expires the beacons not heard by nowNanos, in the clock of the sample timestamps, and
+    // updates the position from the beacons still heard. The positioning thread does this on
+    // its own; single threaded callers call it while no samples arrive. Must not be called while
+    // the positioning thread is running.
+    public void expireBeacons(long nowNanos) {
+        liveBeacons.expire(nowNanos);
+        foreignAdvertisers.expire(nowNanos);
+        if (beaconsExpired) {
+            updateAfterExpiry(nowNanos);
+        }
+    }
+
+    // Recomputes the position once beacons expired without a sample of a beacon to update with;
+    // without any active beacon the position is cleared
+    private void updateAfterExpiry(long nowNanos) {
+        for (int i = 0; i < registry.size(); i++) {
+            if (registry.isActive(i)) {
+                update(nowNanos);
+                return;
+            }
+        }
+
+        beaconsExpired = false;
+        if (hasPosition || hasCoordinate) {
+            hasPosition = false;
+            hasCoordinate = false;
+            positionTimestamp = nowNanos;
+            positionChangeCount++;
+            notifyPositionChanged();
+        }
+    }
+
+    // Updates the beacon of a sample with its filtered RSSI; returns false if the beacon is
+    // unknown
+    private boolean applySample(long mac, int rssi, long timestampNanos) {
+        sampleCount++;
+        if (mac < 0) {
+            return false;
+        }
+        lastSampleNanos = timestampNanos;
+
+        // Time advances with the samples, so replays expire beacons as they did live
+        liveBeacons.expire(timestampNanos);
+        foreignAdvertisers.expire(timestampNanos);
+        int index = registry.indexOf(mac);
+        if (index < 0) {
+            foreignAdvertisers.observe(mac, rssi, timestampNanos);
+            return false;
+        }
+        liveBeacons.observe(mac, rssi, timestampNanos);
+
+        if (estimator != null) {
+            estimator.onSample(index, rssi, timestampNanos);
+        }
+
+        PipelineMetrics metrics = this.metrics;
+        long start = metrics != null ? System.nanoTime() : 0;
+        rssi = rssiFilter.filter(index, rssi, timestampNanos);
+        if (metrics != null) {
+            metrics.record(PipelineMetrics.FILTER, System.nanoTime() - start);
+            long lastSeen = observations.getLastSeenNanos(index);
+            if (lastSeen != 0) {
+                metrics.recordBeaconInterval(index, timestampNanos - lastSeen);
+            }
+        }
+
+        registry.setActive(index, true);
+        registry.setRssi(index, rssi);
+        registry.addSample(index);
+        observations.observe(index, rssi, timestampNanos);
+
+        batchApplied = true;
+        batchTimestamp = timestampNanos;
+        return true;
+    }
+
+    private void update(long timestampNanos) {
+        beaconsExpired = false;
+        PipelineMetrics metrics = this.metrics;
+        if (metrics == null) {
+            updatePosition(timestampNanos, null);
+            return;
+        }
+
+        long start = System.nanoTime();
+        updatePosition(timestampNanos, metrics);
+        metrics.record(PipelineMetrics.UPDATE, System.nanoTime() - start);
+    }
+
+    private void updatePosition(long timestampNanos, PipelineMetrics metrics) {
+        updateRate(timestampNanos);
+        long estimateStart = metrics != null ? System.nanoTime() : 0;
+
+        PositionEstimator estimator = this.estimator;
+        boolean valid = false;
+        if (estimator != null) {
+            observations.prepare(timestampNanos, metrics, radioMap);
+            valid = estimator.update(observations);
+        }
+
+        if (metrics != null) {
+            metrics.record(PipelineMetrics.ESTIMATE, System.nanoTime() - estimateStart);
+        }
+
+        observations.clearObserved();
+        if (!valid) {
+            return;
+        }
+
+        int position = estimator.getQuadrant();
+        boolean moved = estimator.hasCoordinate()
+                && moveCoordinate(estimator.getX(), estimator.getY());
+        if (!hasPosition || position != currentPosition || moved) {
+            currentPosition = position;
+            hasPosition = true;
+            positionTimestamp = timestampNanos;
+            positionChangeCount++;
+            notifyPositionChanged();
+        }
+    }
+
+    // Moves the coordinate estimate to (x, y); returns true if it moved by at least
+    // MIN_MOVE_METRES or is the first estimate
+    private boolean moveCoordinate(float x, float y) {
+        float dx = x - positionX;
+        float dy = y - positionY;
+        if (hasCoordinate && dx * dx + dy * dy < MIN_MOVE_METRES * MIN_MOVE_METRES) {
+            return false;
+        }
+
+        positionX = x;
+        positionY = y;
+        hasCoordinate = true;
+        return true;
+    }
+
+    // Keeps track of the number of updates received over the last second
+    private void updateRate(long timestampNanos) {
+        updateCount++;
+        rateWindowCount++;
+
+        long elapsed = timestampNanos - rateWindowStart;
+        if (elapsed >= RATE_WINDOW_NANOS) {
+            if (rateWindowStart != 0) {
+                updatesPerSecond = rateWindowCount * 1e9f / elapsed;
+            }
+            rateWindowStart = timestampNanos;
+            rateWindowCount = 0;
+        }
+    }
+
+    private void notifyPositionChanged() {
+        OnPositionChangedListener[] listeners = this.listeners;
+        for (int i = 0; i < listeners.length; i++) {
+            listeners[i].onPositionChanged(this);
+        }
+    }
+
+    @Override
+    public boolean hasPosition() {
+        return hasPosition;
+    }
+
+    @Override
+    public int getCurrentPosition() {
+        return currentPosition;
+    }
+
+    // Estimator of mode, or null until the mode is first selected; read by the UI thread for the
+    // debug overlay of the mode
+    public PositionEstimator getEstimator(int mode) {
+        PositionEstimator[] built = estimators;
+        return mode < built.length ? built[mode] : null;
+    }
+
+    public PathLossModel getPathLossModel() {
+        return pathLossModel;
+    }
+
+    // True once a coordinate mode has produced a position in metres
+    @Override
+    public boolean hasCoordinate() {
+        return hasCoordinate;
+    }
+
+    // Estimated position in metres; only meaningful when hasCoordinate() is true
+    @Override
+    public float getX() {
+        return positionX;
+    }
+
+    @Override
+    public float getY() {
+        return positionY;
+    }
+
+    // Timestamp of the newest scan sample behind the current position, in the clock of the
+    // submitted timestamps; 0 before the first position
+    @Override
+    public long getPositionTimestamp() {
+        return positionTimestamp;
+    }
+
+    public BeaconNetwork getBeaconNetwork() {
+        return beaconNetwork;
+    }
+
+    public BeaconRegistry getRegistry() {
+        return registry;
+    }
+
+    // Beacons heard within the TTL; only used by the thread that processes samples
+    public ExpiringBeaconRegistry getLiveBeacons() {
+        return liveBeacons;
+    }
+
+    // Advertisers other than the beacons heard within the TTL, up to FOREIGN_ADVERTISERS; only
+    // used by the thread that processes samples
+    public ExpiringBeaconRegistry getForeignAdvertisers() {
+        return foreignAdvertisers;
+    }
+
+    public Beacon getBeacon(int index) {
+        return beacons[index];
+    }
+
+    public int getBeaconCount() {
+        return beacons.length;
+    }
+
+    // Number of scan samples processed
+    public long getSampleCount() {
+        return sampleCount;
+    }
+
+    // Number of position computations; a batch of samples causes a single update
+    public long getUpdateCount() {
+        return updateCount;
+    }
+
+    // Number of updates that changed the estimated position
+    public long getPositionChangeCount() {
+        return positionChangeCount;
+    }
+
+    // Update rate measured over the last full second of scan results
+    public float getUpdatesPerSecond() {
+        return updatesPerSecond;
+    }
+}
@@ -0,0 +1,462 @@
+package com.js.indoornavigator;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// PositioningEnsemble runs several positioning modes at once on the same scan stream and
+// combines their estimates, so that modes can be compared live. Every selected mode runs on its
+// own PositioningEngine and so on its own positioning thread; the modes estimate in parallel and
+// the thread that submits samples only queues each sample once per mode.
+//
+// The first selected mode runs on the primary engine, which stays the same object whatever is
+// selected. Engines for the other modes are created the first time their mode is selected and
+// kept by mode after that. A RadioMap can only be queried from one thread, so only the primary
+// engine holds the radio map and the fingerprint mode always runs on it, wherever it was
+// selected.
+//
+// Whenever the position of a member changes, the members vote: the quadrant estimated by the most
+// members wins, ties going to the member selected first, and the position in metres is the mean
+// of the members with a coordinate in that quadrant. The ensemble counts how often each member
+// disagrees with the vote, and each member times its updates in its own PipelineMetrics.
+public class PositioningEnsemble implements PositioningStrategy {
+
+    // Listener that is notified when the combined position changes, on the positioning thread of
+    // the member whose change caused it
+    public interface OnPositionChangedListener {
+        void onPositionChanged(PositioningEnsemble ensemble);
+    }
+
+    private static final float MIN_MOVE_METRES = 0.05f;
+
+    private final Beacon[] beacons;
+    private final BeaconNetwork network;
+    private final PositioningEngine primary;
+
+    // Engines of the other modes by mode, created when first selected; guarded by this
+    private PositioningEngine[] engines = new PositioningEngine[PositionEstimators.getCount()];
+
+    private final PositioningEngine.OnPositionChangedListener memberListener;
+    private final List<OnPositionChangedListener> listeners = new ArrayList<>();
+
+    // Selected engines in selection order; replaced as a whole so that submitting needs no lock
+    private volatile PositioningEngine[] members;
+
+    // Settings applied to every member
+    private int rssiFilter = RssiFilterBank.FILTER_NONE;
+    private long beaconTtlNanos = PositioningEngine.DEFAULT_BEACON_TTL_NANOS;
+    private PositioningEngine.Clock clock;
+    private boolean started;
+
+    // Votes each member took part in and disagreed with, by position in members; guarded by this
+    private long[] memberVotes = new long[1];
+    private long[] disagreements = new long[1];
+    private long voteCount;
+
+    // Member positions read once per vote, so that a vote sees each member consistently; sized
+    // for the members when the modes are selected and guarded by this
+    private boolean[] votedPosition = new boolean[1];
+    private int[] votedQuadrant = new int[1];
+    private boolean[] votedCoordinate = new boolean[1];
+    private float[] votedX = new float[1];
+    private float[] votedY = new float[1];
+
+    // Combined position
+    private volatile boolean hasPosition;
+    private volatile int currentPosition;
+    private volatile boolean hasCoordinate;
+    private volatile float positionX;
+    private volatile float positionY;
+    private volatile long positionTimestamp;
+
+    // network holds the neighbors of each beacon by index in beacons
+    public PositioningEnsemble(Beacon[] beacons, BeaconNetwork network) {
+        this.beacons = beacons;
+        this.network = network;
+
+        memberListener = new PositioningEngine.OnPositionChangedListener() {
+            @Override
+            public void onPositionChanged(PositioningEngine engine) {
+                combine();
+            }
+        };
+
+        primary = new PositioningEngine(beacons, network);
+        primary.setMetrics(new PipelineMetrics(beacons.length));
+        primary.addOnPositionChangedListener(memberListener);
+        members = new PositioningEngine[] {primary};
+    }
+
+    // Selects the modes to run, in order of preference; members follow that order, so ties go
+    // to the mode selected first. The fingerprint mode runs on the primary engine, and otherwise
+    // the first mode does. No modes leaves the primary engine in MODE_NONE. Resets the agreement
+    // counts.
+    public void setModes(int[] modes) {
+        int primaryMode = modes.length > 0 ? modes[0] : PositioningEngine.MODE_NONE;
+        for (int i = 0; i < modes.length; i++) {
+            if (modes[i] <= PositioningEngine.MODE_NONE
+                    || modes[i] >= PositionEstimators.getCount()) {
+                throw new IllegalArgumentException("Unknown mode: " + modes[i]);
+            }
+            for (int j = 0; j < i; j++) {
+                if (modes[j] == modes[i]) {
+                    throw new IllegalArgumentException("Mode selected twice: " + modes[i]);
+                }
+            }
+
+            // The fingerprint mode needs the radio map of the primary engine
+            if (modes[i] == PositioningEngine.MODE_FINGERPRINT) {
+                primaryMode = PositioningEngine.MODE_FINGERPRINT;
+            }
+        }
+
+        PositioningEngine[] previous;
+        PositioningEngine[] selected = new PositioningEngine[Math.max(1, modes.length)];
+        synchronized (this) {
+            primary.setMode(primaryMode);
+            selected[0] = primary;
+            for (int i = 0; i < modes.length; i++) {
+                if (modes[i] == primaryMode) {
+                    selected[i] = primary;
+                    continue;
+                }
+                selected[i] = getEngine(modes[i]);
+                selected[i].setMode(modes[i]);
+                if (started) {
+                    selected[i].start();
+                }
+            }
+
+            previous = members;
+            members = selected;
+            memberVotes = new long[selected.length];
+            disagreements = new long[selected.length];
+            votedPosition = new boolean[selected.length];
+            votedQuadrant = new int[selected.length];
+            votedCoordinate = new boolean[selected.length];
+            votedX = new float[selected.length];
+            votedY = new float[selected.length];
+            voteCount = 0;
+            combine();
+        }
+
+        // Engines that are no longer selected stop estimating. Their threads may be waiting to
+        // vote, so they are joined without holding the lock.
+        for (PositioningEngine engine : previous) {
+            if (engine != primary && !contains(selected, engine)) {
+                engine.stop();
+            }
+        }
+    }
+
+    private PositioningEngine getEngine(int mode) {
+        if (mode >= engines.length) {
+            engines = Arrays.copyOf(engines, mode + 1);
+        }
+        PositioningEngine engine = engines[mode];
+        if (engine == null) {
+            engine = new PositioningEngine(beacons, network);
+            engine.setMetrics(new PipelineMetrics(beacons.length));
+            engine.setRssiFilter(rssiFilter);
+            engine.setBeaconTtl(beaconTtlNanos);
+            engine.setClock(clock);
+            engine.addOnPositionChangedListener(memberListener);
+            engines[mode] = engine;
+        }
+
+        return engine;
+    }
+
+    private static boolean contains(PositioningEngine[] engines, PositioningEngine engine) {
+        for (PositioningEngine e : engines) {
+            if (e == engine) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    // Starts the positioning threads of the selected engines
+    public synchronized void start() {
+        started = true;
+        for (PositioningEngine engine : members) {
+            engine.start();
+        }
+    }
+
+    // Stops every positioning thread; samples that are still buffered are discarded
+    public void stop() {
+        synchronized (this) {
+            started = false;
+        }
+        for (PositioningEngine engine : members) {
+            engine.stop();
+        }
+    }
+
+    // Called by the Bluetooth thread; queues a sample for every selected engine without locking.
+    // Returns false if any of them dropped it because its buffer is full.
+    public boolean submit(long mac, int rssi, long timestampNanos) {
+        boolean accepted = enqueue(mac, rssi, timestampNanos);
+        wakeUp();
+        return accepted;
+    }
+
+    // Queues a sample without waking the positioning threads, as PositioningEngine.enqueue
+    public boolean enqueue(long mac, int rssi, long timestampNanos) {
+        boolean accepted = true;
+        for (PositioningEngine engine : members) {
+            if (!engine.enqueue(mac, rssi, timestampNanos)) {
+                accepted = false;
+            }
+        }
+
+        return accepted;
+    }
+
+    public void wakeUp() {
+        for (PositioningEngine engine : members) {
+            engine.wakeUp();
+        }
+    }
+
+    // Passes a sample to every selected engine on the calling thread, as
+    // PositioningEngine.onScanResult; for engines that were not started
+    public void onScanResult(long mac, int rssi, long timestampNanos) {
+        for (PositioningEngine engine : members) {
+            engine.onScanResult(mac, rssi, timestampNanos);
+        }
+    }
+
+    public synchronized void setRssiFilter(int type) {
+        rssiFilter = type;
+        primary.setRssiFilter(type);
+        for (PositioningEngine engine : engines) {
+            if (engine != null) {
+                engine.setRssiFilter(type);
+            }
+        }
+    }
+
+    public synchronized void setBeaconTtl(long ttlNanos) {
+        beaconTtlNanos = ttlNanos;
+        primary.setBeaconTtl(ttlNanos);
+        for (PositioningEngine engine : engines) {
+            if (engine != null) {
+                engine.setBeaconTtl(ttlNanos);
+            }
+        }
+    }
+
+    public synchronized void setClock(PositioningEngine.Clock clock) {
+        this.clock = clock;
+        primary.setClock(clock);
+        for (PositioningEngine engine : engines) {
+            if (engine != null) {
+                engine.setClock(clock);
+            }
+        }
+    }
+
+    // Radio map of the fingerprint mode, which always runs on the primary engine
+    public void setRadioMap(RadioMap map) {
+        primary.setRadioMap(map);
+    }
+
+    public synchronized void addOnPositionChangedListener(OnPositionChangedListener listener) {
+        listeners.add(listener);
+    }
+
+    public synchronized void removeOnPositionChangedListener(OnPositionChangedListener listener) {
+        listeners.remove(listener);
+    }
+
+    // Takes the vote of the members and notifies the listeners if the combined position changed
+    private synchronized void combine() {
+        PositioningEngine[] members = this.members;
+
+        // Newest timestamp of the members with a position, and of any member for a loss
+        long timestamp = 0;
+        long latestTimestamp = 0;
+        for (int i = 0; i < members.length; i++) {
+            PositioningEngine engine = members[i];
+            votedPosition[i] = engine.hasPosition();
+            votedQuadrant[i] = engine.getCurrentPosition();
+            votedCoordinate[i] = engine.hasCoordinate();
+            votedX[i] = engine.getX();
+            votedY[i] = engine.getY();
+            long memberTimestamp = engine.getPositionTimestamp();
+            if (votedPosition[i]) {
+                timestamp = Math.max(timestamp, memberTimestamp);
+            }
+            latestTimestamp = Math.max(latestTimestamp, memberTimestamp);
+        }
+
+        // Quadrant with the most votes; members are few, so counting for each is cheap
+        int winner = -1;
+        int winnerVotes = 0;
+        for (int i = 0; i < members.length; i++) {
+            if (!votedPosition[i]) {
+                continue;
+            }
+            int votes = 0;
+            for (int j = 0; j < members.length; j++) {
+                if (votedPosition[j] && votedQuadrant[j] == votedQuadrant[i]) {
+                    votes++;
+                }
+            }
+            if (votes > winnerVotes) {
+                winner = votedQuadrant[i];
+                winnerVotes = votes;
+            }
+        }
+
+        if (winner < 0) {
+            if (hasPosition) {
+                hasPosition = false;
+                hasCoordinate = false;
+                positionTimestamp = latestTimestamp;
+                notifyPositionChanged();
+            }
+            return;
+        }
+
+        voteCount++;
+        int coordinates = 0;
+        float sumX = 0;
+        float sumY = 0;
+        for (int i = 0; i < members.length; i++) {
+            if (!votedPosition[i]) {
+                continue;
+            }
+            memberVotes[i]++;
+            if (votedQuadrant[i] != winner) {
+                disagreements[i]++;
+            }
+            else if (votedCoordinate[i]) {
+                sumX += votedX[i];
+                sumY += votedY[i];
+                coordinates++;
+            }
+        }
+
+        float x = coordinates > 0 ? sumX / coordinates : 0;
+        float y = coordinates > 0 ? sumY / coordinates : 0;
+        boolean changed = !hasPosition || winner != currentPosition
+                || (coordinates > 0) != hasCoordinate
+                || Math.abs(x - positionX) >= MIN_MOVE_METRES
+                || Math.abs(y - positionY) >= MIN_MOVE_METRES;
+        if (!changed) {
+            return;
+        }
+
+        positionX = x;
+        positionY = y;
+        hasCoordinate = coordinates > 0;
+        currentPosition = winner;
+        positionTimestamp = timestamp;
+        hasPosition = true;
+        notifyPositionChanged();
+    }
+
+    private void notifyPositionChanged() {
+        for (int i = 0; i < listeners.size(); i++) {
+            listeners.get(i).onPositionChanged(this);
+        }
+    }
+
+    // Engine of the fingerprint mode if it is selected and of the first selected mode otherwise;
+    // it also holds the radio map
+    public PositioningEngine getPrimary() {
+        return primary;
+    }
+
+    public int getMemberCount() {
+        return members.length;
+    }
+
+    // Engine of the member at index in selection order
+    public PositioningEngine getMember(int index) {
+        return members[index];
+    }
+
+    // Number of votes taken since the modes were selected
+    public synchronized long getVoteCount() {
+        return voteCount;
+    }
+
+    // Fraction of the votes member took part in where it estimated another quadrant
+    public synchronized double getDisagreementRate(int member) {
+        if (member >= memberVotes.length || memberVotes[member] == 0) {
+            return 0;
+        }
+
+        return disagreements[member] / (double) memberVotes[member];
+    }
+
+    // Fraction of one core the updates of member take at its current update rate
+    public double getCpuShare(int member) {
+        PositioningEngine engine = members[member];
+        PipelineMetrics metrics = engine.getMetrics();
+        if (metrics == null) {
+            return 0;
+        }
+
+        return metrics.getStage(PipelineMetrics.UPDATE).getMean() * engine.getUpdatesPerSecond()
+                / 1e9;
+    }
+
+    // One line comparison of member: update time, CPU share and disagreement with the vote
+    public String summarize(int member) {
+        PositioningEngine engine = members[member];
+        PipelineMetrics metrics = engine.getMetrics();
+        LatencyHistogram update = metrics != null
+                ? metrics.getStage(PipelineMetrics.UPDATE) : new LatencyHistogram();
+        return String.format("%s: update p50 %.2f p99 %.2f ms, %.1f%% cpu, disagrees %.0f%%",
+                engine.getName(), update.getPercentile(50) / 1e6, update.getPercentile(99) / 1e6,
+                getCpuShare(member) * 100, getDisagreementRate(member) * 100);
+    }
+
+    // Names of the selected modes
+    @Override
+    public String getName() {
+        PositioningEngine[] members = this.members;
+        StringBuilder name = new StringBuilder(members[0].getName());
+        for (int i = 1; i < members.length; i++) {
+            name.append(" + ").append(members[i].getName());
+        }
+
+        return name.toString();
+    }
+
+    @Override
+    public boolean hasPosition() {
+        return hasPosition;
+    }
+
+    @Override
+    public int getCurrentPosition() {
+        return currentPosition;
+    }
+
+    @Override
+    public boolean hasCoordinate() {
+        return hasCoordinate;
+    }
+
+    @Override
+    public float getX() {
+        return positionX;
+    }
+
+    @Override
+    public float getY() {
+        return positionY;
+    }
+
+    @Override
+    public long getPositionTimestamp() {
+        return positionTimestamp;
+    }
+}
@@ -0,0 +1,535 @@
+package com.js.indoornavigator;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.concurrent.locks.LockSupport;
+
+// PositioningService runs the positioning methods headless for many tracked devices at once, for
+// RSSI reported to a backend by fixed gateways and phones. Devices are sharded across worker
+// threads by a hash of their id. Each shard owns a PositioningEngine per device and is the only
+// thread that touches it, so the sample path takes no locks and shares no per-device state.
+// Devices are kept in an ExpiringBeaconRegistry keyed by device id: a device that sends nothing
+// for the device TTL of sample time is dropped with its engine, and when a shard is full the
+// device heard least recently makes room, so memory stays bounded as devices come and go.
+//
+// Samples enter through Producers, one per feed thread. A producer holds a DeviceSampleBuffer
+// for every shard, so every buffer has a single producer and a single consumer; a full buffer
+// makes the producer wait rather than drop samples. Position changes are reported to a
+// PositionListener on the thread of the shard that owns the device.
+//
+// It also runs as a standalone service that reads a ScanFeedReader feed from a file, standard
+// input or a TCP port and writes a PositionStreamWriter stream to standard output:
+//
+//   java com.js.indoornavigator.PositioningService <beacons> <topology|-> <file|-|:port>
+//           [mode] [shards]
+public class PositioningService {
+
+    // Receives the positions of the devices
+    public interface PositionListener {
+
+        // Called on the thread of shard whenever the position of device changes
+        void onPosition(int shard, long device, PositioningEngine engine, long timestampNanos);
+
+        // Called on the thread of shard when it has drained its input, before it waits for more
+        void onShardIdle(int shard);
+    }
+
+    // Samples buffered per producer and shard
+    private static final int BUFFER_CAPACITY = 4096;
+    private static final int DRAIN_BATCH_SIZE = 256;
+
+    // Devices tracked at once unless set otherwise, split evenly across the shards
+    public static final int DEFAULT_MAX_DEVICES = 65536;
+
+    // Devices not heard for this long are dropped unless set otherwise
+    public static final long DEFAULT_DEVICE_TTL_NANOS = 5 * 60 * 1000000000L;
+    private static final long DEVICE_TICK_NANOS = 1000000000L;
+
+    private final Beacon[] beacons;
+    private final BeaconNetwork network;
+    private final PositionListener listener;
+    private final Shard[] shards;
+
+    // Engine settings; fixed once the service starts
+    private int mode = PositioningEngine.MODE_HIGHEST_RSSI;
+    private int rssiFilter = RssiFilterBank.FILTER_NONE;
+    private int particleCount;
+    private PathLossModel pathLossModel = new PathLossModel();
+    private int maxDevices = DEFAULT_MAX_DEVICES;
+    private long deviceTtlNanos = DEFAULT_DEVICE_TTL_NANOS;
+
+    private boolean started;
+    private volatile boolean running;
+
+    public PositioningService(Beacon[] beacons, BeaconNetwork network, int shardCount,
+            PositionListener listener) {
+        if (network.getNodeCount() != beacons.length) {
+            throw new IllegalArgumentException("Network has " + network.getNodeCount()
+                    + " nodes for " + beacons.length + " beacons");
+        }
+        if (shardCount < 1) {
+            throw new IllegalArgumentException("Need at least one shard");
+        }
+        this.beacons = beacons;
+        this.network = network;
+        this.listener = listener;
+
+        shards = new Shard[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = new Shard(i);
+        }
+    }
+
+    // Positioning method of every device; the fingerprint method is not supported since a
+    // RadioMap cannot be shared between threads
+    public synchronized void setMode(int mode) {
+        checkNotStarted();
+        if (mode < PositioningEngine.MODE_HIGHEST_RSSI || mode >= PositioningEngine.MODE_FINGERPRINT) {
+            throw new IllegalArgumentException("Unsupported mode: " + mode);
+        }
+        this.mode = mode;
+    }
+
+    public synchronized void setRssiFilter(int type) {
+        checkNotStarted();
+        if (type < RssiFilterBank.FILTER_NONE || type > RssiFilterBank.FILTER_MEDIAN) {
+            throw new IllegalArgumentException("Unknown filter type: " + type);
+        }
+        rssiFilter = type;
+    }
+
+    // Particles per device in the particle filter mode, PositioningEngine.DEFAULT_PARTICLE_COUNT
+    // by default; engines only build the filter in that mode
+    public synchronized void setParticleCount(int particleCount) {
+        checkNotStarted();
+        if (particleCount < 1) {
+            throw new IllegalArgumentException("Need at least one particle");
+        }
+        this.particleCount = particleCount;
+    }
+
+    public synchronized void setPathLossModel(PathLossModel pathLossModel) {
+        checkNotStarted();
+        this.pathLossModel = pathLossModel;
+    }
+
+    // Devices tracked at once over all shards; beyond it the least recently heard device of a
+    // shard is dropped
+    public synchronized void setMaxDevices(int maxDevices) {
+        checkNotStarted();
+        if (maxDevices < shards.length) {
+            throw new IllegalArgumentException("Need at least one device per shard");
+        }
+        this.maxDevices = maxDevices;
+    }
+
+    // Sample time after which a device that sends nothing is dropped with its engine
+    public synchronized void setDeviceTtl(long ttlNanos) {
+        checkNotStarted();
+        if (ttlNanos <= 0) {
+            throw new IllegalArgumentException("TTL must be positive: " + ttlNanos);
+        }
+        deviceTtlNanos = ttlNanos;
+    }
+
+    private void checkNotStarted() {
+        if (started) {
+            throw new IllegalStateException("Service already started");
+        }
+    }
+
+    public synchronized void start() {
+        checkNotStarted();
+        started = true;
+        running = true;
+
+        int devicesPerShard = (maxDevices + shards.length - 1) / shards.length;
+        for (final Shard shard : shards) {
+            shard.createDevices(devicesPerShard);
+            shard.thread = new Thread(shard, "PositioningShard-" + shard.index);
+            shard.thread.setDaemon(true);
+            shard.thread.start();
+        }
+    }
+
+    // Stops the shards once they have processed every sample submitted so far
+    public void stop() {
+        synchronized (this) {
+            if (!running) {
+                return;
+            }
+            running = false;
+        }
+
+        for (Shard shard : shards) {
+            LockSupport.unpark(shard.thread);
+        }
+        for (Shard shard : shards) {
+            try {
+                shard.thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    // Creates a producer for one feed thread
+    public synchronized Producer newProducer() {
+        Producer producer = new Producer();
+        for (Shard shard : shards) {
+            Producer[] producers = Arrays.copyOf(shard.producers, shard.producers.length + 1);
+            producers[producers.length - 1] = producer;
+            shard.producers = producers;
+        }
+
+        return producer;
+    }
+
+    // Called by a shard once a closed producer has no samples left for it
+    private synchronized void removeProducer(Shard shard, Producer producer) {
+        Producer[] producers = shard.producers;
+        for (int i = 0; i < producers.length; i++) {
+            if (producers[i] == producer) {
+                Producer[] remaining = new Producer[producers.length - 1];
+                System.arraycopy(producers, 0, remaining, 0, i);
+                System.arraycopy(producers, i + 1, remaining, i, remaining.length - i);
+                shard.producers = remaining;
+                return;
+            }
+        }
+    }
+
+    // Shard that owns device
+    public int getShard(long device) {
+        long hash = device * 0x9E3779B97F4A7C15L;
+        return (int) ((hash >>> 33) % shards.length);
+    }
+
+    public int getShardCount() {
+        return shards.length;
+    }
+
+    // Number of devices heard within the device TTL
+    public int getDeviceCount() {
+        int count = 0;
+        for (Shard shard : shards) {
+            count += shard.deviceCount;
+        }
+
+        return count;
+    }
+
+    // Number of samples the shards have processed
+    public long getSampleCount() {
+        long count = 0;
+        for (Shard shard : shards) {
+            count += shard.sampleCount;
+        }
+
+        return count;
+    }
+
+    // Number of position changes reported
+    public long getPositionCount() {
+        long count = 0;
+        for (Shard shard : shards) {
+            count += shard.positionCount;
+        }
+
+        return count;
+    }
+
+    // Number of devices dropped, because they fell silent or to make room
+    public long getDroppedDeviceCount() {
+        long count = 0;
+        for (Shard shard : shards) {
+            count += shard.droppedCount;
+        }
+
+        return count;
+    }
+
+    private int getEngineParticleCount() {
+        return particleCount > 0 ? particleCount : PositioningEngine.DEFAULT_PARTICLE_COUNT;
+    }
+
+    // Producer submits the samples of one feed thread; it must only be used by that thread
+    public final class Producer {
+
+        private final DeviceSampleBuffer[] buffers;
+        private volatile boolean closed;
+        private long submittedCount;
+
+        private Producer() {
+            buffers = new DeviceSampleBuffer[shards.length];
+            for (int i = 0; i < buffers.length; i++) {
+                buffers[i] = new DeviceSampleBuffer(BUFFER_CAPACITY);
+            }
+        }
+
+        // Queues a sample for the shard of device, waiting while its buffer is full; device ids
+        // must not be negative
+        public void submit(long device, long mac, int rssi, long timestampNanos) {
+            if (closed) {
+                throw new IllegalStateException("Producer is closed");
+            }
+            if (device < 0) {
+                throw new IllegalArgumentException("Invalid device: " + device);
+            }
+
+            Shard shard = shards[getShard(device)];
+            DeviceSampleBuffer buffer = buffers[shard.index];
+            while (!buffer.offer(device, mac, rssi, timestampNanos)) {
+                if (!running) {
+                    throw new IllegalStateException("Service is stopped");
+                }
+                LockSupport.unpark(shard.thread);
+                Thread.yield();
+            }
+            submittedCount++;
+
+            if (shard.waiting) {
+                LockSupport.unpark(shard.thread);
+            }
+        }
+
+        public long getSubmittedCount() {
+            return submittedCount;
+        }
+
+        // Ends the feed; the shards still process the samples already submitted
+        public void close() {
+            closed = true;
+            for (Shard shard : shards) {
+                LockSupport.unpark(shard.thread);
+            }
+        }
+    }
+
+    // Shard owns the engines of the devices that hash to it and runs on its own thread
+    private final class Shard implements Runnable, DeviceSampleBuffer.SampleHandler,
+            ExpiringBeaconRegistry.Listener {
+
+        final int index;
+        Thread thread;
+        volatile Producer[] producers = new Producer[0];
+        volatile boolean waiting;
+
+        // Devices heard within the TTL; engines holds the engine of each entry. Time is the
+        // newest sample timestamp of the shard, so a replayed feed drops devices as live.
+        private ExpiringBeaconRegistry devices;
+        private PositioningEngine[] engines;
+        private long clockNanos;
+
+        // Written by the shard thread only
+        volatile int deviceCount;
+        volatile long droppedCount;
+        volatile long sampleCount;
+        volatile long positionCount;
+
+        Shard(int index) {
+            this.index = index;
+        }
+
+        // Called before the shard thread starts
+        void createDevices(int capacity) {
+            devices = new ExpiringBeaconRegistry(capacity, deviceTtlNanos, DEVICE_TICK_NANOS, this);
+            engines = new PositioningEngine[capacity];
+        }
+
+        @Override
+        public void run() {
+            Thread self = Thread.currentThread();
+            while (true) {
+                Producer[] current = producers;
+                int drained = 0;
+                for (Producer producer : current) {
+                    drained += producer.buffers[index].drain(this, DRAIN_BATCH_SIZE);
+                }
+                if (drained > 0) {
+                    continue;
+                }
+
+                // Closed is read before the buffer, so an empty buffer of a closed producer
+                // stays empty
+                for (Producer producer : current) {
+                    if (producer.closed && producer.buffers[index].isEmpty()) {
+                        removeProducer(this, producer);
+                    }
+                }
+
+                listener.onShardIdle(index);
+                if (!running) {
+                    if (isEmpty(producers)) {
+                        return;
+                    }
+                    continue;
+                }
+
+                waiting = true;
+
+                // Re-check after publishing waiting so that a sample or producer added in
+                // between is not missed
+                if (isEmpty(current) && producers == current && running) {
+                    LockSupport.park(this);
+                }
+                waiting = false;
+
+                if (self.isInterrupted()) {
+                    return;
+                }
+            }
+        }
+
+        private boolean isEmpty(Producer[] current) {
+            for (Producer producer : current) {
+                if (!producer.buffers[index].isEmpty()) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+
+        @Override
+        public void onSample(long device, long mac, int rssi, long timestampNanos) {
+            sampleCount++;
+
+            PositioningEngine engine = getEngine(device, timestampNanos);
+            long changes = engine.getPositionChangeCount();
+            engine.onScanResult(mac, rssi, timestampNanos);
+            if (engine.getPositionChangeCount() != changes) {
+                positionCount++;
+                listener.onPosition(index, device, engine, timestampNanos);
+            }
+        }
+
+        // Returns the engine of device, creating it on its first sample, after dropping the
+        // devices that fell silent
+        private PositioningEngine getEngine(long device, long timestampNanos) {
+            if (timestampNanos > clockNanos) {
+                clockNanos = timestampNanos;
+                devices.expire(clockNanos);
+            }
+
+            int entry = devices.observe(device, 0, clockNanos);
+            PositioningEngine engine = engines[entry];
+            if (engine == null) {
+                engine = new PositioningEngine(beacons, network, getEngineParticleCount(),
+                        pathLossModel, 1);
+                engine.setRssiFilter(rssiFilter);
+                engine.setMode(mode);
+                engines[entry] = engine;
+                deviceCount = devices.size();
+            }
+
+            return engine;
+        }
+
+        @Override
+        public void onAdded(int entry, long device) {
+
+        }
+
+        @Override
+        public void onRemoved(int entry, long device, boolean evicted) {
+            engines[entry].stop();
+            engines[entry] = null;
+            deviceCount = devices.size();
+            droppedCount++;
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 3) {
+            System.err.println("Usage: PositioningService <beacons> <topology|-> <file|-|:port> "
+                    + "[mode] [shards]");
+            System.exit(2);
+        }
+
+        Beacon[] beacons;
+        Reader beaconReader = new InputStreamReader(new FileInputStream(args[0]), "UTF-8");
+        try {
+            beacons = ReplayDriver.readBeacons(beaconReader);
+        } finally {
+            beaconReader.close();
+        }
+
+        BeaconNetwork network;
+        if (args[1].equals("-")) {
+            network = new BeaconNetwork.Builder(beacons.length).build();
+        }
+        else {
+            InputStream in = new FileInputStream(args[1]);
+            try {
+                network = TopologyFile.read(in);
+            } finally {
+                in.close();
+            }
+        }
+
+        int shardCount = args.length > 4 ? Integer.parseInt(args[4])
+                : Runtime.getRuntime().availableProcessors();
+        final PositionStreamWriter writer = new PositionStreamWriter(System.out, shardCount);
+        final PositioningService service = new PositioningService(beacons, network, shardCount,
+                writer);
+        if (args.length > 3) {
+            service.setMode(Integer.parseInt(args[3]));
+        }
+        service.start();
+
+        String feed = args[2];
+        if (feed.startsWith(":")) {
+            ServerSocket server = new ServerSocket(Integer.parseInt(feed.substring(1)));
+            while (true) {
+                final Socket socket = server.accept();
+                new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        readFeed(service, socket);
+                    }
+                }, "Feed-" + socket.getRemoteSocketAddress()).start();
+            }
+        }
+
+        InputStream in = feed.equals("-") ? System.in : new FileInputStream(feed);
+        Producer producer = service.newProducer();
+        ScanFeedReader reader = new ScanFeedReader();
+        try {
+            reader.read(in, producer);
+        } finally {
+            producer.close();
+            in.close();
+        }
+        service.stop();
+        writer.close();
+
+        System.err.println(reader.getSampleCount() + " samples, " + reader.getMalformedCount()
+                + " malformed lines, " + service.getDeviceCount() + " devices, "
+                + service.getDroppedDeviceCount() + " dropped, "
+                + service.getPositionCount() + " positions");
+    }
+
+    private static void readFeed(PositioningService service, Socket socket) {
+        Producer producer = service.newProducer();
+        try {
+            new ScanFeedReader().read(socket.getInputStream(), producer);
+        } catch (IOException e) {
+            System.err.println("Feed " + socket.getRemoteSocketAddress() + " failed: " + e);
+        } finally {
+            producer.close();
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // Nothing left to do with the socket
+            }
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package com.js.indoornavigator;
+
+// PositioningStrategy is anything that estimates the position of the device: a PositioningEngine
+// running one positioning mode, or a PositioningEnsemble combining several. The getters may be
+// called from any thread while the estimate is updated.
+public interface PositioningStrategy {
+
+    // Name shown next to the estimate
+    String getName();
+
+    boolean hasPosition();
+
+    // Estimated quadrant
+    int getCurrentPosition();
+
+    // Whether getX and getY hold a position in metres
+    boolean hasCoordinate();
+
+    float getX();
+
+    float getY();
+
+    // Scan timestamp of the newest sample of the update that last changed the position
+    long getPositionTimestamp();
+}
@@ -0,0 +1,364 @@
+package com.js.indoornavigator;
+
+import java.nio.ByteBuffer;
+
+// RadioMap is a surveyed set of reference points, each with a position on the floor plan and the
+// RSSI of every beacon measured there. The map is read directly from a RadioMapFile buffer,
+// usually a memory-mapped file, so the fingerprints are never copied onto the heap.
+//
+// Nearest neighbour queries go through a vantage point tree over the fingerprints, using the
+// Euclidean distance between RSSI vectors. Beacons that were not heard, at a reference point or
+// in a query, count as RSSI_FLOOR. The tree is stored implicitly in two arrays: the node for the
+// range [lo, hi) of order has its vantage point at order[lo], the points closer than
+// threshold[lo] in [lo + 1, mid) and the others in [mid, hi), with mid halfway through the
+// range. Queries reuse preallocated buffers and do not allocate, so a RadioMap must only be
+// queried from one thread.
+public class RadioMap {
+
+    // RSSI used for beacons that were not heard
+    public static final int RSSI_FLOOR = -100;
+
+    // Ranges of at most this many points are scanned instead of split
+    private static final int LEAF_SIZE = 8;
+
+    // Enough for any tree depth that an int point count can produce
+    private static final int MAX_STACK = 128;
+
+    private final ByteBuffer buffer;
+    private final int pointCount;
+    private final int beaconCount;
+    private final long[] macs;
+
+    // Offsets of the sections of the buffer
+    private final int xOffset;
+    private final int yOffset;
+    private final int quadrantOffset;
+    private final int rssiOffset;
+
+    // Vantage point tree
+    private final int[] order;
+    private final float[] threshold;
+
+    // Query buffers; the stack holds ranges still to visit and a lower bound on their distance
+    private final int[] stackLo = new int[MAX_STACK];
+    private final int[] stackHi = new int[MAX_STACK];
+    private final float[] stackBound = new float[MAX_STACK];
+    private int[] heapPoints = new int[0];
+    private float[] heapDistances = new float[0];
+    private int heapSize;
+    private long distanceCount;
+
+    // buffer must start at the header of a RadioMapFile. A short or corrupt buffer is rejected
+    // with an IllegalArgumentException before anything is allocated from its header.
+    public RadioMap(ByteBuffer buffer) {
+        this.buffer = buffer;
+        int start = buffer.position();
+
+        if (buffer.limit() - start < RadioMapFile.HEADER_SIZE) {
+            throw new IllegalArgumentException("Truncated radio map: " + (buffer.limit() - start)
+                    + " bytes, expected a header of " + RadioMapFile.HEADER_SIZE);
+        }
+        if (buffer.getInt(start) != RadioMapFile.MAGIC) {
+            throw new IllegalArgumentException("Not a radio map");
+        }
+        int version = buffer.getInt(start + 4);
+        if (version != RadioMapFile.VERSION) {
+            throw new IllegalArgumentException("Unsupported radio map version " + version);
+        }
+        pointCount = buffer.getInt(start + 8);
+        beaconCount = buffer.getInt(start + 12);
+        if (pointCount < 0 || beaconCount < 0) {
+            throw new IllegalArgumentException("Corrupt radio map header");
+        }
+
+        // Counts are checked against the buffer in long arithmetic, so that none of the int
+        // offsets below can overflow
+        long end = start + RadioMapFile.HEADER_SIZE + 8L * beaconCount + 12L * pointCount
+                + (long) pointCount * beaconCount;
+        if (end > buffer.limit()) {
+            throw new IllegalArgumentException("Truncated radio map: " + (buffer.limit() - start)
+                    + " bytes, expected " + (end - start));
+        }
+
+        int offset = start + RadioMapFile.HEADER_SIZE;
+        macs = new long[beaconCount];
+        for (int i = 0; i < beaconCount; i++) {
+            macs[i] = buffer.getLong(offset);
+            offset += 8;
+        }
+        xOffset = offset;
+        yOffset = xOffset + 4 * pointCount;
+        quadrantOffset = yOffset + 4 * pointCount;
+        rssiOffset = quadrantOffset + 4 * pointCount;
+
+        order = new int[pointCount];
+        threshold = new float[pointCount];
+        for (int i = 0; i < pointCount; i++) {
+            order[i] = i;
+        }
+        build(new float[pointCount]);
+    }
+
+    // Builds the tree top down; scratch holds distances to the vantage point of a range
+    private void build(float[] scratch) {
+        int[] lo = new int[MAX_STACK];
+        int[] hi = new int[MAX_STACK];
+        int top = 0;
+        lo[top] = 0;
+        hi[top] = pointCount;
+        top++;
+
+        while (top > 0) {
+            top--;
+            int from = lo[top];
+            int to = hi[top];
+            if (to - from <= LEAF_SIZE) {
+                continue;
+            }
+
+            // The first point of the range is the vantage point
+            int vantage = order[from];
+            for (int i = from + 1; i < to; i++) {
+                scratch[i] = pointDistance(vantage, order[i]);
+            }
+
+            int mid = (from + 1 + to) >>> 1;
+            select(scratch, from + 1, to - 1, mid);
+            threshold[from] = scratch[mid];
+
+            lo[top] = from + 1;
+            hi[top] = mid;
+            top++;
+            lo[top] = mid;
+            hi[top] = to;
+            top++;
+        }
+    }
+
+    // Quickselect on scratch[left..right] that moves order along with it and leaves the k-th
+    // smallest distance at k
+    private void select(float[] scratch, int left, int right, int k) {
+        while (right > left) {
+            float pivot = scratch[(left + right) >>> 1];
+            int i = left;
+            int j = right;
+            while (i <= j) {
+                while (scratch[i] < pivot) {
+                    i++;
+                }
+                while (scratch[j] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    swap(scratch, i, j);
+                    i++;
+                    j--;
+                }
+            }
+
+            if (k <= j) {
+                right = j;
+            }
+            else if (k >= i) {
+                left = i;
+            }
+            else {
+                return;
+            }
+        }
+    }
+
+    private void swap(float[] scratch, int i, int j) {
+        float distance = scratch[i];
+        scratch[i] = scratch[j];
+        scratch[j] = distance;
+        int point = order[i];
+        order[i] = order[j];
+        order[j] = point;
+    }
+
+    // Finds the k reference points closest to query, which holds an RSSI for each beacon column
+    // of the map (RSSI_FLOOR if not heard). points and distances receive the neighbours, closest
+    // first; returns how many were found.
+    public int findNearest(float[] query, int k, int[] points, float[] distances) {
+        if (query.length < beaconCount) {
+            throw new IllegalArgumentException("Query has " + query.length + " beacons, map has "
+                    + beaconCount);
+        }
+        k = Math.min(k, pointCount);
+        if (k <= 0) {
+            return 0;
+        }
+        if (heapPoints.length < k) {
+            heapPoints = new int[k];
+            heapDistances = new float[k];
+        }
+        heapSize = 0;
+
+        int top = 0;
+        stackLo[top] = 0;
+        stackHi[top] = pointCount;
+        stackBound[top] = 0;
+        top++;
+
+        while (top > 0) {
+            top--;
+            int from = stackLo[top];
+            int to = stackHi[top];
+            if (heapSize == k && stackBound[top] >= heapDistances[0]) {
+                continue;
+            }
+
+            if (to - from <= LEAF_SIZE) {
+                for (int i = from; i < to; i++) {
+                    offer(order[i], queryDistance(query, order[i]), k);
+                }
+                continue;
+            }
+
+            int vantage = order[from];
+            float d = queryDistance(query, vantage);
+            offer(vantage, d, k);
+
+            // Push the far side first so that the near side is searched first
+            int mid = (from + 1 + to) >>> 1;
+            float mu = threshold[from];
+            if (d < mu) {
+                push(top++, mid, to, mu - d);
+                push(top++, from + 1, mid, 0);
+            }
+            else {
+                push(top++, from + 1, mid, d - mu);
+                push(top++, mid, to, 0);
+            }
+        }
+
+        // Heap sort the neighbours into ascending order
+        int found = heapSize;
+        while (heapSize > 0) {
+            int last = --heapSize;
+            points[last] = heapPoints[0];
+            distances[last] = heapDistances[0];
+            heapPoints[0] = heapPoints[last];
+            heapDistances[0] = heapDistances[last];
+            siftDown(0);
+        }
+
+        return found;
+    }
+
+    private void push(int index, int from, int to, float bound) {
+        stackLo[index] = from;
+        stackHi[index] = to;
+        stackBound[index] = bound;
+    }
+
+    // Adds a candidate to the max-heap of the k best points found so far
+    private void offer(int point, float distance, int k) {
+        if (heapSize < k) {
+            int i = heapSize++;
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (heapDistances[parent] >= distance) {
+                    break;
+                }
+                heapPoints[i] = heapPoints[parent];
+                heapDistances[i] = heapDistances[parent];
+                i = parent;
+            }
+            heapPoints[i] = point;
+            heapDistances[i] = distance;
+        }
+        else if (distance < heapDistances[0]) {
+            heapPoints[0] = point;
+            heapDistances[0] = distance;
+            siftDown(0);
+        }
+    }
+
+    private void siftDown(int i) {
+        int point = heapPoints[i];
+        float distance = heapDistances[i];
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= heapSize) {
+                break;
+            }
+            if (child + 1 < heapSize && heapDistances[child + 1] > heapDistances[child]) {
+                child++;
+            }
+            if (heapDistances[child] <= distance) {
+                break;
+            }
+            heapPoints[i] = heapPoints[child];
+            heapDistances[i] = heapDistances[child];
+            i = child;
+        }
+        heapPoints[i] = point;
+        heapDistances[i] = distance;
+    }
+
+    private float queryDistance(float[] query, int point) {
+        distanceCount++;
+        int base = rssiOffset + point * beaconCount;
+        float sum = 0;
+        for (int j = 0; j < beaconCount; j++) {
+            float difference = query[j] - getRssiAt(base + j);
+            sum += difference * difference;
+        }
+
+        return (float) Math.sqrt(sum);
+    }
+
+    private float pointDistance(int a, int b) {
+        int baseA = rssiOffset + a * beaconCount;
+        int baseB = rssiOffset + b * beaconCount;
+        float sum = 0;
+        for (int j = 0; j < beaconCount; j++) {
+            int difference = getRssiAt(baseA + j) - getRssiAt(baseB + j);
+            sum += difference * difference;
+        }
+
+        return (float) Math.sqrt(sum);
+    }
+
+    private int getRssiAt(int index) {
+        int rssi = buffer.get(index);
+        return rssi < RSSI_FLOOR ? RSSI_FLOOR : rssi;
+    }
+
+    public int getPointCount() {
+        return pointCount;
+    }
+
+    public int getBeaconCount() {
+        return beaconCount;
+    }
+
+    // MAC address of the beacon in the given column
+    public long getMac(int column) {
+        return macs[column];
+    }
+
+    public float getX(int point) {
+        return buffer.getFloat(xOffset + 4 * point);
+    }
+
+    public float getY(int point) {
+        return buffer.getFloat(yOffset + 4 * point);
+    }
+
+    public int getQuadrant(int point) {
+        return buffer.getInt(quadrantOffset + 4 * point);
+    }
+
+    // RSSI of the beacon in column at a reference point; RSSI_FLOOR if it was not heard there
+    public int getRssi(int point, int column) {
+        return getRssiAt(rssiOffset + point * beaconCount + column);
+    }
+
+    // Number of fingerprint distances computed by queries, to compare against a linear scan
+    public long getDistanceCount() {
+        return distanceCount;
+    }
+}
@@ -0,0 +1,85 @@
+package com.js.indoornavigator;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+// RadioMapFile reads and writes RadioMap files. The format is laid out so that a RadioMap can be
+// served straight from a memory-mapped file; all values are big endian:
+//
+//   int magic ("BRMP"), int version, int pointCount, int beaconCount,
+//   long[beaconCount] beacon MAC addresses,
+//   float[pointCount] x, float[pointCount] y, int[pointCount] quadrant,
+//   byte[pointCount * beaconCount] RSSI of each beacon at each point, one row per point
+//
+// An RSSI of MISSING_RSSI marks a beacon that was not heard at the point.
+public final class RadioMapFile {
+
+    public static final int MAGIC = 0x42524D50;
+    public static final int VERSION = 1;
+    public static final int HEADER_SIZE = 16;
+    public static final int MISSING_RSSI = Byte.MIN_VALUE;
+
+    private RadioMapFile() {
+
+    }
+
+    // Maps a radio map file read only; the mapping stays valid after the file is closed
+    public static RadioMap map(File file) throws IOException {
+        RandomAccessFile in = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = in.getChannel();
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return read(buffer);
+        } finally {
+            in.close();
+        }
+    }
+
+    public static RadioMap read(ByteBuffer buffer) throws IOException {
+        try {
+            return new RadioMap(buffer);
+        } catch (IllegalArgumentException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+    }
+
+    // Writes a radio map; rssis holds pointCount rows of macs.length values, with MISSING_RSSI
+    // (or anything below -127) for beacons that were not heard
+    public static void write(OutputStream out, long[] macs, float[] x, float[] y, int[] quadrants,
+            int[] rssis) throws IOException {
+        int pointCount = x.length;
+        if (y.length != pointCount || quadrants.length != pointCount
+                || rssis.length != pointCount * macs.length) {
+            throw new IllegalArgumentException("Radio map arrays do not match");
+        }
+
+        DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+        data.writeInt(MAGIC);
+        data.writeInt(VERSION);
+        data.writeInt(pointCount);
+        data.writeInt(macs.length);
+        for (long mac : macs) {
+            data.writeLong(mac);
+        }
+        for (float value : x) {
+            data.writeFloat(value);
+        }
+        for (float value : y) {
+            data.writeFloat(value);
+        }
+        for (int quadrant : quadrants) {
+            data.writeInt(quadrant);
+        }
+        for (int rssi : rssis) {
+            data.writeByte(Math.max(MISSING_RSSI, Math.min(rssi, 0)));
+        }
+        data.flush();
+    }
+}
@@ -0,0 +1,109 @@
+package com.js.indoornavigator;
+
+// RangingEstimator converts the RSSI of the recently heard beacons to distances with the path
+// loss model and solves for the position, either by trilateration or as a weighted centroid
+public class RangingEstimator implements PositionEstimator {
+
+    // Beacons heard within this interval before the update are ranged
+    private static final long RANGING_WINDOW_NANOS = 2000 * 1000000L;
+
+    private final boolean weightedCentroid;
+    private final PathLossModel pathLossModel;
+    private final TrilaterationSolver solver;
+    private final float[] beaconX;
+    private final float[] beaconY;
+    private final float[] beaconTxPower;
+
+    // Beacons of the current solve
+    private final float[] rangingX;
+    private final float[] rangingY;
+    private final double[] rangingDistances;
+    private int quadrant;
+
+    // Uses the beacons and path loss model of engine
+    public RangingEstimator(PositioningEngine engine, boolean weightedCentroid) {
+        this.weightedCentroid = weightedCentroid;
+        pathLossModel = engine.getPathLossModel();
+
+        int beaconCount = engine.getBeaconCount();
+        beaconX = new float[beaconCount];
+        beaconY = new float[beaconCount];
+        beaconTxPower = new float[beaconCount];
+        for (int i = 0; i < beaconCount; i++) {
+            Beacon beacon = engine.getBeacon(i);
+            beaconX[i] = beacon.getX();
+            beaconY[i] = beacon.getY();
+            beaconTxPower[i] = beacon.getTxPower();
+        }
+
+        rangingX = new float[beaconCount];
+        rangingY = new float[beaconCount];
+        rangingDistances = new double[beaconCount];
+        solver = new TrilaterationSolver(beaconCount);
+    }
+
+    @Override
+    public void reset() {
+    }
+
+    @Override
+    public void onSample(int beacon, int rssi, long timestampNanos) {
+    }
+
+    // Returns false if no beacon was heard within RANGING_WINDOW_NANOS
+    @Override
+    public boolean update(Observations observations) {
+        BeaconRegistry registry = observations.getRegistry();
+        long timestampNanos = observations.getTimestampNanos();
+        int count = 0;
+        for (int i = 0; i < beaconX.length; i++) {
+            if (registry.isActive(i)
+                    && timestampNanos - observations.getLastSeenNanos(i) <= RANGING_WINDOW_NANOS) {
+                rangingX[count] = beaconX[i];
+                rangingY[count] = beaconY[i];
+                rangingDistances[count] = pathLossModel.distanceAtRssi(registry.getRssi(i),
+                        beaconTxPower[i]);
+                count++;
+            }
+        }
+
+        boolean solved = weightedCentroid
+                ? solver.solveWeightedCentroid(rangingX, rangingY, rangingDistances, count)
+                : solver.solve(rangingX, rangingY, rangingDistances, count);
+        if (!solved) {
+            return false;
+        }
+
+        quadrant = observations.getQuadrantAt(solver.getX(), solver.getY());
+        return true;
+    }
+
+    // Reports iterations and residuals of the last solve
+    public TrilaterationSolver getSolver() {
+        return solver;
+    }
+
+    @Override
+    public int getQuadrant() {
+        return quadrant;
+    }
+
+    @Override
+    public boolean hasCoordinate() {
+        return true;
+    }
+
+    @Override
+    public float getX() {
+        return solver.getX();
+    }
+
+    @Override
+    public float getY() {
+        return solver.getY();
+    }
+
+    @Override
+    public void close() {
+    }
+}
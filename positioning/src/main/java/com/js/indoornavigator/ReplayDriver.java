@@ -0,0 +1,263 @@
+package com.js.indoornavigator;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// ReplayDriver streams a recorded scan log through the positioning modes as fast as the CPU
+// allows. The log is loaded into primitive arrays once and every run feeds it to a fresh
+// PositioningEngine on the calling thread with a fixed random seed, so runs are deterministic.
+// Each run reports the share of samples with a known ground truth quadrant at which the engine's
+// quadrant was right, the number of position changes and the processing rate.
+//
+// It runs on a plain JVM:
+//
+//   java com.js.indoornavigator.ReplayDriver <scan log> <beacons> [topology] [radio map]
+//
+// where the beacons file lists one beacon per line as "quadrant id mac [x y [txPower]]".
+public class ReplayDriver {
+
+    // Modes replayed by default
+    public static final int[] MODES = {PositioningEngine.MODE_HIGHEST_RSSI,
+            PositioningEngine.MODE_DENSITY1, PositioningEngine.MODE_DENSITY2,
+            PositioningEngine.MODE_BAYES, PositioningEngine.MODE_FORWARD_FILTER,
+            PositioningEngine.MODE_PARTICLE_FILTER, PositioningEngine.MODE_WEIGHTED_CENTROID,
+            PositioningEngine.MODE_TRILATERATION, PositioningEngine.MODE_FINGERPRINT};
+
+    private static final long SEED = 1;
+
+    // Outcome of replaying a log through one mode
+    public static class Result {
+        public final int mode;
+        public final int rssiFilter;
+        public final long samples;
+        public final long updates;
+        public final long positionChanges;
+        public final long scoredSamples;
+        public final long correctSamples;
+        public final long elapsedNanos;
+
+        Result(int mode, int rssiFilter, long samples, long updates, long positionChanges,
+                long scoredSamples, long correctSamples, long elapsedNanos) {
+            this.mode = mode;
+            this.rssiFilter = rssiFilter;
+            this.samples = samples;
+            this.updates = updates;
+            this.positionChanges = positionChanges;
+            this.scoredSamples = scoredSamples;
+            this.correctSamples = correctSamples;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        // Share of samples with ground truth at which the quadrant was right; NaN without
+        // ground truth
+        public double getAccuracy() {
+            return scoredSamples == 0 ? Double.NaN : (double) correctSamples / scoredSamples;
+        }
+
+        public double getSamplesPerSecond() {
+            return elapsedNanos == 0 ? 0 : samples * 1e9 / elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%-17s accuracy %6.2f%%, %6d position changes, %10.0f samples/s",
+                    getModeName(mode), getAccuracy() * 100, positionChanges,
+                    getSamplesPerSecond());
+        }
+    }
+
+    private final Beacon[] beacons;
+    private final BeaconNetwork network;
+    private RadioMap radioMap;
+
+    // The loaded log
+    private long[] timestamps = new long[0];
+    private long[] macs = new long[0];
+    private int[] rssis = new int[0];
+    private int[] groundTruth = new int[0];
+    private int sampleCount;
+
+    public ReplayDriver(Beacon[] beacons, BeaconNetwork network) {
+        this.beacons = beacons;
+        this.network = network;
+    }
+
+    // Radio map used by the fingerprint mode
+    public void setRadioMap(RadioMap radioMap) {
+        this.radioMap = radioMap;
+    }
+
+    // Loads the samples of a scan log, replacing any loaded before
+    public void load(InputStream in) throws IOException {
+        ScanLogReader reader = new ScanLogReader(in);
+        sampleCount = 0;
+        while (reader.next()) {
+            if (sampleCount == timestamps.length) {
+                int capacity = Math.max(1024, sampleCount * 2);
+                timestamps = Arrays.copyOf(timestamps, capacity);
+                macs = Arrays.copyOf(macs, capacity);
+                rssis = Arrays.copyOf(rssis, capacity);
+                groundTruth = Arrays.copyOf(groundTruth, capacity);
+            }
+            timestamps[sampleCount] = reader.getTimestampNanos();
+            macs[sampleCount] = reader.getMac();
+            rssis[sampleCount] = reader.getRssi();
+            groundTruth[sampleCount] = reader.getGroundTruthQuadrant();
+            sampleCount++;
+        }
+    }
+
+    public int getSampleCount() {
+        return sampleCount;
+    }
+
+    public Result run(int mode) {
+        return run(mode, RssiFilterBank.FILTER_NONE);
+    }
+
+    // Replays the loaded log through mode with the given RSSI filter
+    public Result run(int mode, int rssiFilter) {
+        PositioningEngine engine = new PositioningEngine(beacons, network);
+        engine.setRandomSeed(SEED);
+        engine.setRadioMap(radioMap);
+        engine.setRssiFilter(rssiFilter);
+        engine.setMode(mode);
+
+        long scored = 0;
+        long correct = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < sampleCount; i++) {
+            engine.onScanResult(macs[i], rssis[i], timestamps[i]);
+
+            if (groundTruth[i] != ScanLogWriter.NO_GROUND_TRUTH) {
+                scored++;
+                if (engine.hasPosition() && engine.getCurrentPosition() == groundTruth[i]) {
+                    correct++;
+                }
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+
+        return new Result(mode, rssiFilter, engine.getSampleCount(), engine.getUpdateCount(),
+                engine.getPositionChangeCount(), scored, correct, elapsed);
+    }
+
+    // Replays the loaded log through every mode in MODES
+    public List<Result> runAll(int rssiFilter) {
+        List<Result> results = new ArrayList<>();
+        for (int mode : MODES) {
+            if (mode == PositioningEngine.MODE_FINGERPRINT && radioMap == null) {
+                continue;
+            }
+            results.add(run(mode, rssiFilter));
+        }
+
+        return results;
+    }
+
+    public static String getModeName(int mode) {
+        return PositionEstimators.getName(mode);
+    }
+
+    // Reads beacons, one per line as "quadrant id mac [x y [txPower]]"; # starts a comment
+    public static Beacon[] readBeacons(Reader in) throws IOException {
+        BufferedReader reader = new BufferedReader(in);
+        List<Beacon> beacons = new ArrayList<>();
+
+        String line;
+        int lineNumber = 0;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+
+            int comment = line.indexOf('#');
+            if (comment >= 0) {
+                line = line.substring(0, comment);
+            }
+            line = line.trim();
+            if (line.isEmpty()) {
+                continue;
+            }
+
+            String[] tokens = line.split("\\s+");
+            if (tokens.length != 3 && tokens.length != 5 && tokens.length != 6) {
+                throw new IOException("Line " + lineNumber
+                        + ": expected \"quadrant id mac [x y [txPower]]\"");
+            }
+            try {
+                Beacon beacon = new Beacon(Integer.parseInt(tokens[0]), tokens[1], tokens[2]);
+                if (tokens.length >= 5) {
+                    beacon.setX(Float.parseFloat(tokens[3]));
+                    beacon.setY(Float.parseFloat(tokens[4]));
+                }
+                if (tokens.length == 6) {
+                    beacon.setTxPower(Float.parseFloat(tokens[5]));
+                }
+                if (MacAddress.parse(tokens[2]) < 0) {
+                    throw new IOException("Line " + lineNumber + ": invalid MAC " + tokens[2]);
+                }
+                beacons.add(beacon);
+            } catch (NumberFormatException e) {
+                throw new IOException("Line " + lineNumber + ": " + e.getMessage());
+            }
+        }
+
+        return beacons.toArray(new Beacon[beacons.size()]);
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: ReplayDriver <scan log> <beacons> [topology] [radio map]");
+            System.exit(2);
+        }
+
+        Beacon[] beacons;
+        Reader beaconReader = new InputStreamReader(new FileInputStream(args[1]), "UTF-8");
+        try {
+            beacons = readBeacons(beaconReader);
+        } finally {
+            beaconReader.close();
+        }
+
+        BeaconNetwork network;
+        if (args.length > 2) {
+            InputStream in = new FileInputStream(args[2]);
+            try {
+                network = TopologyFile.read(in);
+            } finally {
+                in.close();
+            }
+        }
+        else {
+            network = new BeaconNetwork.Builder(beacons.length).build();
+        }
+
+        ReplayDriver driver = new ReplayDriver(beacons, network);
+        if (args.length > 3) {
+            driver.setRadioMap(RadioMapFile.map(new File(args[3])));
+        }
+
+        InputStream in = new FileInputStream(args[0]);
+        try {
+            driver.load(in);
+        } finally {
+            in.close();
+        }
+
+        System.out.println(driver.getSampleCount() + " samples");
+        for (int filter = RssiFilterBank.FILTER_NONE; filter <= RssiFilterBank.FILTER_MEDIAN;
+                filter++) {
+            System.out.println("RSSI filter " + filter);
+            for (Result result : driver.runAll(filter)) {
+                System.out.println("  " + result);
+            }
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.js.indoornavigator;
+
+import java.util.Arrays;
+
+// Route is a path through a BeaconNetwork from the node the user is at to their destination,
+// together with the distance left to walk from each node on it. The nodes are kept from start
+// onwards in a reusable array with room in front, so a route can be cut at a node further along
+// or start one node earlier without copying. It only allocates when it has to grow.
+public class Route {
+
+    private int[] nodes = new int[32];
+    private float[] remaining = new float[32];
+    private int start;
+    private int length;
+
+    // Number of nodes, the current one and the destination included; 0 if there is no route
+    public int getLength() {
+        return length;
+    }
+
+    public boolean isEmpty() {
+        return length == 0;
+    }
+
+    // index-th node from the current one
+    public int getNode(int index) {
+        return nodes[start + index];
+    }
+
+    // Distance left to walk from the index-th node
+    public float getRemaining(int index) {
+        return remaining[start + index];
+    }
+
+    // Distance from the current node to the destination
+    public float getDistance() {
+        return length > 0 ? remaining[start] : 0;
+    }
+
+    // Node to walk to next, or the destination once there; -1 if there is no route
+    public int getNextNode() {
+        return length > 1 ? nodes[start + 1] : length == 1 ? nodes[start] : -1;
+    }
+
+    public int getDestination() {
+        return length > 0 ? nodes[start + length - 1] : -1;
+    }
+
+    // Position of node on the route, or -1
+    public int indexOf(int node) {
+        for (int i = 0; i < length; i++) {
+            if (nodes[start + i] == node) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    public void clear() {
+        start = 0;
+        length = 0;
+    }
+
+    // Makes room for a route of count nodes, to be filled with set
+    void reset(int count) {
+        if (count > nodes.length) {
+            int capacity = Math.max(count, nodes.length * 2);
+            nodes = new int[capacity];
+            remaining = new float[capacity];
+        }
+
+        // Leave a quarter in front for nodes prepended later
+        start = (nodes.length - count) / 4;
+        length = count;
+    }
+
+    void set(int index, int node, float remainingDistance) {
+        nodes[start + index] = node;
+        remaining[start + index] = remainingDistance;
+    }
+
+    // Drops the nodes before index, as the user has walked past them
+    void cut(int index) {
+        start += index;
+        length -= index;
+    }
+
+    // Puts node in front, remainingDistance from the destination
+    void prepend(int node, float remainingDistance) {
+        if (start == 0) {
+            int capacity = nodes.length - length < 4 ? nodes.length * 2 : nodes.length;
+            int newStart = (capacity - length) / 4 + 1;
+            int[] newNodes = capacity == nodes.length ? nodes : new int[capacity];
+            float[] newRemaining = capacity == nodes.length ? remaining : new float[capacity];
+            System.arraycopy(nodes, start, newNodes, newStart, length);
+            System.arraycopy(remaining, start, newRemaining, newStart, length);
+            nodes = newNodes;
+            remaining = newRemaining;
+            start = newStart;
+        }
+
+        start--;
+        length++;
+        nodes[start] = node;
+        remaining[start] = remainingDistance;
+    }
+
+    // Nodes of the route, for display and logging
+    public int[] toArray() {
+        return Arrays.copyOfRange(nodes, start, start + length);
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(toArray()) + " " + getDistance();
+    }
+}
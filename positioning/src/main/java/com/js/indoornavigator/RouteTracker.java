@@ -0,0 +1,111 @@
+package com.js.indoornavigator;
+
+// RouteTracker keeps the route of one user to their destination up to date as their position
+// moves from beacon to beacon. Positions jitter between neighbouring beacons and people stray
+// from a route one beacon at a time, so most moves are absorbed without a search:
+//   - a position further along the route cuts the route to start there,
+//   - a position next to the route joins it at the neighbour that leaves the least to walk,
+//   - anything else is routed again, from the next-hop table of the destination if it has one.
+// Joining keeps the rest of the route rather than looking for a shorter one, so after a join the
+// route may be slightly longer than the shortest until the next full reroute.
+//
+// Not thread safe; each user, or each thread serving users, gets its own tracker.
+public class RouteTracker {
+
+    private final BeaconRouter router;
+    private final BeaconRouter.Search search;
+    private final int[] offsets;
+    private final int[] neighbors;
+    private final Route route = new Route();
+
+    private int destination = BeaconRouter.NO_NODE;
+    private long cutCount;
+    private long joinCount;
+    private long rerouteCount;
+
+    public RouteTracker(BeaconRouter router) {
+        this.router = router;
+        search = router.newSearch();
+        offsets = router.getNetwork().getOffsets();
+        neighbors = router.getNetwork().getNeighbors();
+    }
+
+    // Routes from position to destination; returns false if it cannot be reached
+    public boolean setDestination(int position, int destination) {
+        this.destination = destination;
+        rerouteCount++;
+        return router.route(position, destination, search, route);
+    }
+
+    public void clearDestination() {
+        destination = BeaconRouter.NO_NODE;
+        route.clear();
+    }
+
+    public int getDestination() {
+        return destination;
+    }
+
+    // Updates the route for a new position; returns true if it changed. A position that is not a
+    // node, such as NO_NODE when the position is lost, leaves the route as it is.
+    public boolean onPosition(int position) {
+        if (destination == BeaconRouter.NO_NODE || position < 0
+                || position >= offsets.length - 1) {
+            return false;
+        }
+
+        int index = route.indexOf(position);
+        if (index == 0) {
+            return false;
+        }
+        if (index > 0) {
+            route.cut(index);
+            cutCount++;
+            return true;
+        }
+
+        // Join the route from a neighbour of position, where the least is left to walk
+        int best = -1;
+        float bestDistance = Float.POSITIVE_INFINITY;
+        for (int k = offsets[position]; k < offsets[position + 1]; k++) {
+            int joined = route.indexOf(neighbors[k]);
+            if (joined >= 0) {
+                float distance = router.getWeight(k) + route.getRemaining(joined);
+                if (distance < bestDistance) {
+                    best = joined;
+                    bestDistance = distance;
+                }
+            }
+        }
+        if (best >= 0) {
+            route.cut(best);
+            route.prepend(position, bestDistance);
+            joinCount++;
+            return true;
+        }
+
+        rerouteCount++;
+        router.route(position, destination, search, route);
+        return true;
+    }
+
+    // Current route; empty without a destination or when it cannot be reached
+    public Route getRoute() {
+        return route;
+    }
+
+    // Moves absorbed by cutting the route
+    public long getCutCount() {
+        return cutCount;
+    }
+
+    // Moves absorbed by joining the route from a neighbour
+    public long getJoinCount() {
+        return joinCount;
+    }
+
+    // Full routes, the first one included
+    public long getRerouteCount() {
+        return rerouteCount;
+    }
+}
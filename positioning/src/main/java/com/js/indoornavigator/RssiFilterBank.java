@@ -0,0 +1,147 @@
+package com.js.indoornavigator;
+
+import java.util.Arrays;
+
+// RssiFilterBank smooths the RSSI readings of each beacon before they reach the positioning
+// methods. It offers an exponential moving average, a one-dimensional Kalman filter and a
+// rolling median. The state of every beacon is kept in contiguous primitive arrays indexed by
+// the beacon index, and filtering does not allocate.
+public class RssiFilterBank {
+
+    // Filter types
+    public static final int FILTER_NONE = 0;
+    public static final int FILTER_EMA = 1;
+    public static final int FILTER_KALMAN = 2;
+    public static final int FILTER_MEDIAN = 3;
+
+    // Weight of a new reading in the moving average
+    private static final float EMA_ALPHA = 0.3f;
+
+    // Kalman model; the RSSI drifts by KALMAN_PROCESS_NOISE dB^2 per second while a reading has
+    // a variance of KALMAN_MEASUREMENT_NOISE dB^2
+    private static final float KALMAN_PROCESS_NOISE = 4;
+    private static final float KALMAN_MEASUREMENT_NOISE = 16;
+
+    // Number of readings the median is taken over
+    public static final int MEDIAN_WINDOW = 5;
+
+    private final int type;
+    private final int beaconCount;
+
+    // Number of readings filtered for each beacon
+    private final int[] readingCount;
+
+    // Filtered value of each beacon; the EMA and Kalman state
+    private final float[] value;
+
+    // Kalman error variance and time of the last reading of each beacon
+    private final float[] variance;
+    private final long[] lastTimestamp;
+
+    // Last MEDIAN_WINDOW readings of beacon i start at i * MEDIAN_WINDOW
+    private final int[] medianWindow;
+    private final int[] scratch;
+
+    public RssiFilterBank(int beaconCount, int type) {
+        if (type < FILTER_NONE || type > FILTER_MEDIAN) {
+            throw new IllegalArgumentException("Unknown filter type: " + type);
+        }
+        this.type = type;
+        this.beaconCount = beaconCount;
+
+        readingCount = new int[beaconCount];
+        value = new float[beaconCount];
+        variance = new float[beaconCount];
+        lastTimestamp = new long[beaconCount];
+        medianWindow = new int[type == FILTER_MEDIAN ? beaconCount * MEDIAN_WINDOW : 0];
+        scratch = new int[MEDIAN_WINDOW];
+    }
+
+    // Filters a reading of beacon and returns the smoothed RSSI
+    public int filter(int beacon, int rssi, long timestampNanos) {
+        int n = readingCount[beacon]++;
+
+        switch (type) {
+            case FILTER_EMA:
+                value[beacon] = n == 0 ? rssi : value[beacon] + EMA_ALPHA * (rssi - value[beacon]);
+                break;
+            case FILTER_KALMAN:
+                filterKalman(beacon, rssi, timestampNanos, n == 0);
+                break;
+            case FILTER_MEDIAN:
+                value[beacon] = filterMedian(beacon, rssi, n);
+                break;
+            default:
+                value[beacon] = rssi;
+                break;
+        }
+
+        return Math.round(value[beacon]);
+    }
+
+    // Filters count readings in one pass; rssis[i] is replaced by the smoothed value
+    public void filter(int[] beacons, int[] rssis, long[] timestamps, int count) {
+        for (int i = 0; i < count; i++) {
+            rssis[i] = filter(beacons[i], rssis[i], timestamps[i]);
+        }
+    }
+
+    private void filterKalman(int beacon, int rssi, long timestampNanos, boolean first) {
+        if (first) {
+            value[beacon] = rssi;
+            variance[beacon] = KALMAN_MEASUREMENT_NOISE;
+        }
+        else {
+            // Predict: the uncertainty grows with the time since the last reading
+            float elapsedSeconds = Math.max(0, timestampNanos - lastTimestamp[beacon]) / 1e9f;
+            float p = variance[beacon] + KALMAN_PROCESS_NOISE * elapsedSeconds;
+
+            // Correct
+            float gain = p / (p + KALMAN_MEASUREMENT_NOISE);
+            value[beacon] += gain * (rssi - value[beacon]);
+            variance[beacon] = (1 - gain) * p;
+        }
+        lastTimestamp[beacon] = timestampNanos;
+    }
+
+    // n is the number of readings of the beacon before this one
+    private float filterMedian(int beacon, int rssi, int n) {
+        int start = beacon * MEDIAN_WINDOW;
+        medianWindow[start + n % MEDIAN_WINDOW] = rssi;
+
+        // Insertion sort of the window; it is small enough that this beats anything cleverer
+        int size = Math.min(n + 1, MEDIAN_WINDOW);
+        for (int i = 0; i < size; i++) {
+            int reading = medianWindow[start + i];
+            int j = i - 1;
+            while (j >= 0 && scratch[j] > reading) {
+                scratch[j + 1] = scratch[j];
+                j--;
+            }
+            scratch[j + 1] = reading;
+        }
+
+        if ((size & 1) == 1) {
+            return scratch[size / 2];
+        }
+        return (scratch[size / 2 - 1] + scratch[size / 2]) / 2f;
+    }
+
+    // Forgets the readings of every beacon
+    public void reset() {
+        Arrays.fill(readingCount, 0);
+    }
+
+    public int getType() {
+        return type;
+    }
+
+    public int getBeaconCount() {
+        return beaconCount;
+    }
+
+    // Smoothed RSSI after the last reading of beacon; only meaningful once it has a reading
+    public float getValue(int beacon) {
+        return value[beacon];
+    }
+}
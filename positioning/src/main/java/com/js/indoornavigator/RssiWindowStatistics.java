@@ -0,0 +1,237 @@
+package com.js.indoornavigator;
+
+import java.util.Arrays;
+
+// RssiWindowStatistics keeps the RSSI readings of each beacon over a sliding time window and
+// answers count, mean, variance and percentile queries about them. Windows are measured in the
+// scan timestamps of the readings, so the statistics do not depend on when they are asked for or
+// on the wall clock.
+//
+// The readings of each beacon sit in a primitive ring buffer together with the running sum and
+// sum of squares before them, so the count, mean and variance of any window up to the configured
+// one take a binary search for its first reading. Each beacon also has a Fenwick tree counting
+// the readings of the configured window by RSSI level, which makes adding, expiring and finding a
+// percentile O(log levels). A beacon holds at most capacity readings; when it is full the oldest
+// is dropped even if it is still within the window. Nothing allocates after construction.
+//
+// Not thread safe.
+public class RssiWindowStatistics {
+
+    // Readings outside this range are clamped to it
+    public static final int MIN_RSSI = -127;
+    public static final int MAX_RSSI = 20;
+
+    // Returned by getPercentile when the window is empty
+    public static final int NO_RSSI = Integer.MIN_VALUE;
+
+    private static final int LEVELS = MAX_RSSI - MIN_RSSI + 1;
+
+    // Highest power of two not above LEVELS, where the percentile search starts
+    private static final int TOP_STEP = Integer.highestOneBit(LEVELS);
+
+    private final int beaconCount;
+    private final int capacity;
+    private long windowNanos;
+
+    // Readings of beacon b start at b * capacity; head is the oldest and size the number held
+    private final long[] timestamps;
+    private final int[] values;
+    private final long[] sumBefore;
+    private final long[] squaresBefore;
+    private final int[] head;
+    private final int[] size;
+
+    // Sum and sum of squares of every reading ever added for each beacon
+    private final long[] sum;
+    private final long[] squares;
+
+    // Fenwick tree of beacon b at b * (LEVELS + 1), indexed from 1 by RSSI level
+    private final int[] tree;
+
+    public RssiWindowStatistics(int beaconCount, int capacity, long windowNanos) {
+        if (beaconCount <= 0 || capacity <= 0) {
+            throw new IllegalArgumentException("beaconCount and capacity must be positive");
+        }
+        this.beaconCount = beaconCount;
+        this.capacity = capacity;
+        setWindow(windowNanos);
+
+        timestamps = new long[beaconCount * capacity];
+        values = new int[beaconCount * capacity];
+        sumBefore = new long[beaconCount * capacity];
+        squaresBefore = new long[beaconCount * capacity];
+        head = new int[beaconCount];
+        size = new int[beaconCount];
+        sum = new long[beaconCount];
+        squares = new long[beaconCount];
+        tree = new int[beaconCount * (LEVELS + 1)];
+    }
+
+    // Sets the window percentiles are taken over, and the longest window the other queries
+    // reach; readings older than a new, shorter window are dropped as readings arrive
+    public void setWindow(long windowNanos) {
+        if (windowNanos <= 0) {
+            throw new IllegalArgumentException("Window must be positive: " + windowNanos);
+        }
+        this.windowNanos = windowNanos;
+    }
+
+    public long getWindow() {
+        return windowNanos;
+    }
+
+    public int getBeaconCount() {
+        return beaconCount;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    // Adds a reading of beacon taken at timestampNanos. Readings of a beacon are expected in
+    // timestamp order; one older than the previous reading counts as taken with it.
+    public void add(int beacon, int rssi, long timestampNanos) {
+        int n = size[beacon];
+        if (n > 0) {
+            timestampNanos = Math.max(timestampNanos, timestamps[slot(beacon, n - 1)]);
+        }
+        expire(beacon, timestampNanos);
+        if (size[beacon] == capacity) {
+            removeOldest(beacon);
+        }
+
+        int value = Math.max(MIN_RSSI, Math.min(rssi, MAX_RSSI));
+        int slot = slot(beacon, size[beacon]);
+        timestamps[slot] = timestampNanos;
+        values[slot] = value;
+        sumBefore[slot] = sum[beacon];
+        squaresBefore[slot] = squares[beacon];
+        sum[beacon] += value;
+        squares[beacon] += value * value;
+        size[beacon]++;
+        updateTree(beacon, value, 1);
+    }
+
+    // Drops the readings of beacon older than the window at nowNanos
+    public void expire(int beacon, long nowNanos) {
+        long oldest = nowNanos - windowNanos;
+        while (size[beacon] > 0 && timestamps[beacon * capacity + head[beacon]] <= oldest) {
+            removeOldest(beacon);
+        }
+    }
+
+    // Drops every reading of beacon, as when it is no longer heard
+    public void clear(int beacon) {
+        head[beacon] = 0;
+        size[beacon] = 0;
+        sum[beacon] = 0;
+        squares[beacon] = 0;
+        Arrays.fill(tree, beacon * (LEVELS + 1), (beacon + 1) * (LEVELS + 1), 0);
+    }
+
+    public void clear() {
+        for (int i = 0; i < beaconCount; i++) {
+            clear(i);
+        }
+    }
+
+    // Number of readings of beacon within windowNanos before nowNanos
+    public int getCount(int beacon, long windowNanos, long nowNanos) {
+        return size[beacon] - firstInWindow(beacon, windowNanos, nowNanos);
+    }
+
+    // Mean RSSI of beacon within windowNanos before nowNanos, or NaN if it was not heard
+    public double getMean(int beacon, long windowNanos, long nowNanos) {
+        int first = firstInWindow(beacon, windowNanos, nowNanos);
+        int n = size[beacon] - first;
+        if (n == 0) {
+            return Double.NaN;
+        }
+
+        return (sum[beacon] - sumBefore[slot(beacon, first)]) / (double) n;
+    }
+
+    // Population variance of the RSSI of beacon within windowNanos before nowNanos, or NaN if it
+    // was not heard. The sums are exact integers, so there is no cancellation.
+    public double getVariance(int beacon, long windowNanos, long nowNanos) {
+        int first = firstInWindow(beacon, windowNanos, nowNanos);
+        int n = size[beacon] - first;
+        if (n == 0) {
+            return Double.NaN;
+        }
+
+        int slot = slot(beacon, first);
+        long s = sum[beacon] - sumBefore[slot];
+        long q = squares[beacon] - squaresBefore[slot];
+        return (n * q - s * s) / ((double) n * n);
+    }
+
+    public double getStandardDeviation(int beacon, long windowNanos, long nowNanos) {
+        return Math.sqrt(getVariance(beacon, windowNanos, nowNanos));
+    }
+
+    // RSSI that percentile percent of the readings of beacon within the window at nowNanos do
+    // not exceed, or NO_RSSI if it was not heard. Drops the readings older than the window.
+    public int getPercentile(int beacon, double percentile, long nowNanos) {
+        expire(beacon, nowNanos);
+        int n = size[beacon];
+        if (n == 0) {
+            return NO_RSSI;
+        }
+
+        // Walks down the tree to the last level with fewer than rank readings at or below it
+        int rank = Math.max(1, (int) Math.ceil(percentile / 100 * n));
+        int base = beacon * (LEVELS + 1);
+        int level = 0;
+        for (int step = TOP_STEP; step > 0; step >>= 1) {
+            int next = level + step;
+            if (next <= LEVELS && tree[base + next] < rank) {
+                level = next;
+                rank -= tree[base + next];
+            }
+        }
+
+        return MIN_RSSI + level;
+    }
+
+    // Offset in the ring of the first reading of beacon after nowNanos - windowNanos, or the
+    // number held if there is none
+    private int firstInWindow(int beacon, long windowNanos, long nowNanos) {
+        long oldest = nowNanos - windowNanos;
+        int low = 0;
+        int high = size[beacon];
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (timestamps[slot(beacon, middle)] <= oldest) {
+                low = middle + 1;
+            }
+            else {
+                high = middle;
+            }
+        }
+
+        return low;
+    }
+
+    private int slot(int beacon, int offset) {
+        int i = head[beacon] + offset;
+        if (i >= capacity) {
+            i -= capacity;
+        }
+        return beacon * capacity + i;
+    }
+
+    private void removeOldest(int beacon) {
+        int slot = beacon * capacity + head[beacon];
+        updateTree(beacon, values[slot], -1);
+        head[beacon] = head[beacon] + 1 == capacity ? 0 : head[beacon] + 1;
+        size[beacon]--;
+    }
+
+    private void updateTree(int beacon, int value, int delta) {
+        int base = beacon * (LEVELS + 1);
+        for (int i = value - MIN_RSSI + 1; i <= LEVELS; i += i & -i) {
+            tree[base + i] += delta;
+        }
+    }
+}
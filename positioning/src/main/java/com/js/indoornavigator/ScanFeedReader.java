@@ -0,0 +1,190 @@
+package com.js.indoornavigator;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+// ScanFeedReader parses a text feed of scan samples for PositioningService, one sample per line:
+//
+//   timestampNanos device beacon rssi
+//
+// where device and beacon are MAC addresses, either as AA:BB:CC:DD:EE:FF or as 12 hex digits.
+// Fields are separated by spaces, tabs or commas, and # starts a comment. Lines are parsed
+// straight from a byte buffer without creating strings, so reading does not allocate. Malformed
+// lines are counted and skipped rather than failing the feed.
+public class ScanFeedReader {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+
+    // Parse cursor in buffer
+    private int position;
+    private int end;
+
+    private long sampleCount;
+    private long malformedCount;
+
+    // Reads samples until the end of the stream and submits them to producer; returns the number
+    // of samples read
+    public long read(InputStream in, PositioningService.Producer producer) throws IOException {
+        long start = sampleCount;
+        int length = 0;
+        boolean skipping = false;
+
+        int read;
+        while ((read = in.read(buffer, length, buffer.length - length)) != -1) {
+            length += read;
+
+            // Parse the complete lines in the buffer
+            int lineStart = 0;
+            for (int i = length - read; i < length; i++) {
+                if (buffer[i] != '\n') {
+                    continue;
+                }
+                if (skipping) {
+                    skipping = false;
+                }
+                else {
+                    parseLine(lineStart, i, producer);
+                }
+                lineStart = i + 1;
+            }
+
+            // Keep the partial line at the end for the next read
+            length -= lineStart;
+            System.arraycopy(buffer, lineStart, buffer, 0, length);
+
+            if (length == buffer.length) {
+                // A line that does not fit is skipped up to its end
+                if (!skipping) {
+                    malformedCount++;
+                    skipping = true;
+                }
+                length = 0;
+            }
+        }
+
+        if (length > 0 && !skipping) {
+            parseLine(0, length, producer);
+        }
+
+        return sampleCount - start;
+    }
+
+    private void parseLine(int start, int lineEnd, PositioningService.Producer producer) {
+        // Drop the comment and surrounding whitespace
+        for (int i = start; i < lineEnd; i++) {
+            if (buffer[i] == '#') {
+                lineEnd = i;
+                break;
+            }
+        }
+        position = start;
+        end = lineEnd;
+        skipSeparators();
+        if (position == end) {
+            return;
+        }
+
+        long timestamp = parseNumber();
+        long device = parseMac();
+        long mac = parseMac();
+        long rssi = parseNumber();
+        skipSeparators();
+
+        if (timestamp == Long.MIN_VALUE || device < 0 || mac < 0 || rssi == Long.MIN_VALUE
+                || rssi < Byte.MIN_VALUE || rssi > Byte.MAX_VALUE || position != end) {
+            malformedCount++;
+            return;
+        }
+
+        producer.submit(device, mac, (int) rssi, timestamp);
+        sampleCount++;
+    }
+
+    private void skipSeparators() {
+        while (position < end) {
+            byte b = buffer[position];
+            if (b != ' ' && b != '\t' && b != ',' && b != '\r') {
+                break;
+            }
+            position++;
+        }
+    }
+
+    // Parses a signed decimal field; returns Long.MIN_VALUE if malformed
+    private long parseNumber() {
+        skipSeparators();
+
+        boolean negative = false;
+        if (position < end && buffer[position] == '-') {
+            negative = true;
+            position++;
+        }
+
+        int digits = 0;
+        long value = 0;
+        while (position < end) {
+            int digit = buffer[position] - '0';
+            if (digit < 0 || digit > 9) {
+                break;
+            }
+            if (++digits > 18) {
+                return Long.MIN_VALUE;
+            }
+            value = value * 10 + digit;
+            position++;
+        }
+
+        if (digits == 0 || !isFieldEnd()) {
+            return Long.MIN_VALUE;
+        }
+
+        return negative ? -value : value;
+    }
+
+    // Parses a MAC address field; returns -1 if malformed
+    private long parseMac() {
+        skipSeparators();
+
+        int digits = 0;
+        long value = 0;
+        while (position < end) {
+            byte b = buffer[position];
+            int digit = Character.digit(b, 16);
+            if (digit >= 0) {
+                value = (value << 4) | digit;
+                digits++;
+            }
+            else if (b != ':' || (digits & 1) != 0) {
+                break;
+            }
+            position++;
+        }
+
+        if (digits != 12 || !isFieldEnd()) {
+            return -1;
+        }
+
+        return value;
+    }
+
+    private boolean isFieldEnd() {
+        if (position == end) {
+            return true;
+        }
+
+        byte b = buffer[position];
+        return b == ' ' || b == '\t' || b == ',' || b == '\r';
+    }
+
+    // Number of samples read
+    public long getSampleCount() {
+        return sampleCount;
+    }
+
+    // Number of lines that were not valid samples
+    public long getMalformedCount() {
+        return malformedCount;
+    }
+}
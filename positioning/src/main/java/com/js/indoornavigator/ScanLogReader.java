@@ -0,0 +1,88 @@
+package com.js.indoornavigator;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+// ScanLogReader reads the records of a ScanLogWriter log one at a time. next() advances to the
+// next record and the getters return its fields, so reading does not allocate per record. A
+// partial record at the end of the log is ignored.
+public class ScanLogReader {
+
+    private final DataInputStream in;
+    private final byte[] record = new byte[ScanLogWriter.RECORD_SIZE];
+
+    private long timestampNanos;
+    private long mac;
+    private int rssi;
+    private int groundTruthQuadrant;
+
+    public ScanLogReader(InputStream in) throws IOException {
+        this.in = new DataInputStream(new BufferedInputStream(in));
+
+        int magic;
+        int version;
+        try {
+            magic = this.in.readInt();
+            version = this.in.readInt();
+        } catch (EOFException e) {
+            throw new IOException("Scan log has no header");
+        }
+        if (magic != ScanLogWriter.MAGIC) {
+            throw new IOException("Not a scan log");
+        }
+        if (version != ScanLogWriter.VERSION) {
+            throw new IOException("Unsupported scan log version " + version);
+        }
+    }
+
+    // Reads the next record; returns false at the end of the log
+    public boolean next() throws IOException {
+        int read = 0;
+        while (read < record.length) {
+            int count = in.read(record, read, record.length - read);
+            if (count < 0) {
+                return false;
+            }
+            read += count;
+        }
+
+        timestampNanos = getLong(0);
+        mac = getLong(8);
+        rssi = record[16];
+        groundTruthQuadrant = record[17];
+        return true;
+    }
+
+    public long getTimestampNanos() {
+        return timestampNanos;
+    }
+
+    public long getMac() {
+        return mac;
+    }
+
+    public int getRssi() {
+        return rssi;
+    }
+
+    // Quadrant the device was in, or ScanLogWriter.NO_GROUND_TRUTH
+    public int getGroundTruthQuadrant() {
+        return groundTruthQuadrant;
+    }
+
+    public void close() throws IOException {
+        in.close();
+    }
+
+    private long getLong(int offset) {
+        long value = 0;
+        for (int i = 0; i < 8; i++) {
+            value = (value << 8) | (record[offset + i] & 0xFF);
+        }
+
+        return value;
+    }
+}
@@ -0,0 +1,105 @@
+package com.js.indoornavigator;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+// ScanLogWriter appends scan samples to a binary log for ScanLogReader and ReplayDriver. The log
+// is an 8 byte header, int magic ("BSCN") and int version, followed by fixed size big endian
+// records:
+//
+//   long timestampNanos, long mac, byte rssi, byte groundTruthQuadrant
+//
+// where a ground truth quadrant of NO_GROUND_TRUTH means the position was not known. Records are
+// collected in a fixed buffer and written when it fills up, so appending does not allocate. A
+// log cut short by a crash loses at most the partial record at its end. The methods are
+// synchronized since samples arrive on the Bluetooth thread while the log is closed from the UI.
+public class ScanLogWriter {
+
+    public static final int MAGIC = 0x4253434E;
+    public static final int VERSION = 1;
+    public static final int HEADER_SIZE = 8;
+    public static final int RECORD_SIZE = 18;
+    public static final int NO_GROUND_TRUTH = 0;
+
+    private static final int BUFFER_RECORDS = 1024;
+
+    private final OutputStream out;
+    private final byte[] buffer = new byte[RECORD_SIZE * BUFFER_RECORDS];
+    private int length;
+    private long recordCount;
+    private boolean closed;
+
+    // Appends to file, writing the header if the file is new or empty
+    public ScanLogWriter(File file) throws IOException {
+        this(new FileOutputStream(file, true), file.length() == 0);
+    }
+
+    public ScanLogWriter(OutputStream out, boolean writeHeader) throws IOException {
+        this.out = out;
+        if (writeHeader) {
+            putInt(MAGIC);
+            putInt(VERSION);
+            flush();
+        }
+    }
+
+    public synchronized void append(long timestampNanos, long mac, int rssi,
+            int groundTruthQuadrant) throws IOException {
+        if (closed) {
+            throw new IOException("Scan log is closed");
+        }
+        if (length + RECORD_SIZE > buffer.length) {
+            writeBuffer();
+        }
+
+        putLong(timestampNanos);
+        putLong(mac);
+        buffer[length++] = (byte) rssi;
+        buffer[length++] = (byte) groundTruthQuadrant;
+        recordCount++;
+    }
+
+    // Writes the buffered records to the underlying stream
+    public synchronized void flush() throws IOException {
+        writeBuffer();
+        out.flush();
+    }
+
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        try {
+            flush();
+        } finally {
+            closed = true;
+            out.close();
+        }
+    }
+
+    // Number of records appended through this writer
+    public synchronized long getRecordCount() {
+        return recordCount;
+    }
+
+    private void writeBuffer() throws IOException {
+        if (length > 0) {
+            out.write(buffer, 0, length);
+            length = 0;
+        }
+    }
+
+    private void putInt(int value) {
+        buffer[length++] = (byte) (value >>> 24);
+        buffer[length++] = (byte) (value >>> 16);
+        buffer[length++] = (byte) (value >>> 8);
+        buffer[length++] = (byte) value;
+    }
+
+    private void putLong(long value) {
+        putInt((int) (value >>> 32));
+        putInt((int) value);
+    }
+}
@@ -0,0 +1,144 @@
+package com.js.indoornavigator;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+// ScanSampleBuffer is a single-producer/single-consumer ring buffer of scan samples. The
+// Bluetooth callback thread offers samples and the positioning thread drains them in batches.
+// Samples are stored in primitive arrays, and neither side takes a lock or allocates.
+public class ScanSampleBuffer {
+
+    // Receives drained samples on the consumer thread
+    public interface SampleHandler {
+        void onSample(long mac, int rssi, long timestampNanos);
+    }
+
+    private final long[] macs;
+    private final int[] rssis;
+    private final long[] timestamps;
+    private final int mask;
+
+    // head is the next index to read and is only written by the consumer; tail is the next index
+    // to write and is only written by the producer
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+
+    // Producer-side copy of head, refreshed only when the buffer looks full
+    private long cachedHead;
+
+    // Counters written by the producer only
+    private volatile long offeredCount;
+    private volatile long droppedCount;
+    private volatile long overflowCount;
+    private boolean overflowing;
+
+    // Written by the consumer only
+    private volatile int highWaterMark;
+
+    // capacity is rounded up to a power of two
+    public ScanSampleBuffer(int capacity) {
+        int size = 1;
+        while (size < capacity) {
+            size <<= 1;
+        }
+
+        macs = new long[size];
+        rssis = new int[size];
+        timestamps = new long[size];
+        mask = size - 1;
+    }
+
+    // Called by the producer; returns false and counts the sample as dropped if the buffer is full
+    public boolean offer(long mac, int rssi, long timestampNanos) {
+        long currentTail = tail.get();
+        offeredCount++;
+
+        if (currentTail - cachedHead > mask) {
+            cachedHead = head.get();
+            if (currentTail - cachedHead > mask) {
+                droppedCount++;
+
+                // An overflow is a run of consecutive drops
+                if (!overflowing) {
+                    overflowing = true;
+                    overflowCount++;
+                }
+                return false;
+            }
+        }
+        overflowing = false;
+
+        int index = (int) currentTail & mask;
+        macs[index] = mac;
+        rssis[index] = rssi;
+        timestamps[index] = timestampNanos;
+
+        // Publishes the sample to the consumer. This is a full volatile write so that a consumer
+        // that checks isEmpty() before parking cannot miss it.
+        tail.set(currentTail + 1);
+        return true;
+    }
+
+    // Called by the consumer; passes up to maxSamples samples to handler and returns the number
+    // of samples drained
+    public int drain(SampleHandler handler, int maxSamples) {
+        long currentHead = head.get();
+        long available = tail.get() - currentHead;
+        if (available == 0) {
+            return 0;
+        }
+
+        if (available > highWaterMark) {
+            highWaterMark = (int) available;
+        }
+
+        int count = (int) Math.min(available, maxSamples);
+        for (int i = 0; i < count; i++) {
+            int index = (int) (currentHead + i) & mask;
+            handler.onSample(macs[index], rssis[index], timestamps[index]);
+        }
+
+        // Releases the slots to the producer
+        head.lazySet(currentHead + count);
+        return count;
+    }
+
+    // Called by the consumer; discards the samples waiting in the buffer and returns how many
+    public int clear() {
+        long currentHead = head.get();
+        long currentTail = tail.get();
+        head.set(currentTail);
+        return (int) (currentTail - currentHead);
+    }
+
+    public boolean isEmpty() {
+        return head.get() == tail.get();
+    }
+
+    public int size() {
+        return (int) (tail.get() - head.get());
+    }
+
+    public int capacity() {
+        return mask + 1;
+    }
+
+    // Number of samples offered, including dropped samples
+    public long getOfferedCount() {
+        return offeredCount;
+    }
+
+    // Number of samples dropped because the buffer was full
+    public long getDroppedCount() {
+        return droppedCount;
+    }
+
+    // Number of times the buffer filled up and started dropping samples
+    public long getOverflowCount() {
+        return overflowCount;
+    }
+
+    // Largest number of samples that were waiting when the consumer drained the buffer
+    public int getHighWaterMark() {
+        return highWaterMark;
+    }
+}
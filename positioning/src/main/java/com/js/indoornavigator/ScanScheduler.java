@@ -0,0 +1,225 @@
+package com.js.indoornavigator;
+
+// ScanScheduler decides how hard to scan from how stable the position is, since continuous low
+// latency scanning is what drains the battery of a device carried all day.
+//
+// While there is no position, and for SETTLE_NANOS after the position last left the area it
+// had settled in, the scheduler is ACTIVE and scans continuously in the fastest configured mode.
+// Once the position has stayed in that area for SETTLE_NANOS it is SETTLING and scans one mode
+// slower, and after STATIONARY_NANOS it is STATIONARY and scans in low power mode for
+// STATIONARY_SCAN_NANOS, then pauses for STATIONARY_PAUSE_NANOS, or for half the beacon TTL if
+// that is shorter, so that the beacons heard in one scan are still active when the next starts.
+// A position outside the area makes it ACTIVE again at once. The area is STATIONARY_RADIUS_METRES around the first settled position
+// in the coordinate modes, and the settled quadrant otherwise.
+//
+// Positions are reported by the positioning thread and callbacks by the Bluetooth thread while
+// the UI thread applies the schedule, so all methods are synchronized. Times are in
+// nanoseconds of the clock of the scan timestamps, which the engines expire beacons in too.
+public class ScanScheduler {
+
+    // Levels, from the most to the least scanning
+    public static final int LEVEL_ACTIVE = 0;
+    public static final int LEVEL_SETTLING = 1;
+    public static final int LEVEL_STATIONARY = 2;
+
+    // Scan modes as defined by ScanSettings.SCAN_MODE_LOW_POWER, BALANCED and LOW_LATENCY
+    public static final int SCAN_MODE_LOW_POWER = 0;
+    public static final int SCAN_MODE_LOW_LATENCY = 2;
+
+    private static final long SETTLE_NANOS = 10 * 1000000000L;
+    private static final long STATIONARY_NANOS = 60 * 1000000000L;
+    private static final long STATIONARY_SCAN_NANOS = 2 * 1000000000L;
+    private static final long STATIONARY_PAUSE_NANOS = 8 * 1000000000L;
+    private static final float STATIONARY_RADIUS_METRES = 1.5f;
+
+    private static final String[] LEVEL_NAMES = {"active", "settling", "stationary"};
+
+    // Area the position has stayed in since stableSinceNanos
+    private boolean hasAnchor;
+    private boolean anchorCoordinate;
+    private int anchorQuadrant;
+    private float anchorX;
+    private float anchorY;
+    private long stableSinceNanos;
+
+    // Length of a STATIONARY cycle, scan and pause
+    private long stationaryPeriodNanos =
+            getStationaryPeriodNanos(PositioningEngine.DEFAULT_BEACON_TTL_NANOS);
+
+    // Time spent resumed and scanning, and the callbacks received, since the first resume
+    private boolean running;
+    private long runStartNanos;
+    private long runNanos;
+    private boolean scanning;
+    private long scanStartNanos;
+    private long scanNanos;
+    private long callbackCount;
+
+    // Sets the time after which the engines expire a beacon that is not heard, which limits how
+    // long the scanner may pause
+    public synchronized void setBeaconTtl(long ttlNanos) {
+        stationaryPeriodNanos = getStationaryPeriodNanos(ttlNanos);
+    }
+
+    private static long getStationaryPeriodNanos(long ttlNanos) {
+        return STATIONARY_SCAN_NANOS + Math.min(STATIONARY_PAUSE_NANOS, ttlNanos / 2);
+    }
+
+    // Called when the app resumes; the device may have moved while paused, so scanning starts
+    // ACTIVE
+    public synchronized void resume(long nowNanos) {
+        hasAnchor = false;
+        stableSinceNanos = nowNanos;
+        if (!running) {
+            running = true;
+            runStartNanos = nowNanos;
+        }
+    }
+
+    // Called when the app pauses; time spent paused does not count towards the achieved rates
+    public synchronized void pause(long nowNanos) {
+        setScanning(false, nowNanos);
+        if (running) {
+            running = false;
+            runNanos += nowNanos - runStartNanos;
+        }
+    }
+
+    // Reports a position estimate, or its loss when hasPosition is false. Returns true if the
+    // level changed, so that the schedule must be applied again.
+    public synchronized boolean onPosition(boolean hasPosition, int quadrant, boolean hasCoordinate,
+            float x, float y, long nowNanos) {
+        int level = getLevel(nowNanos);
+
+        if (!hasPosition) {
+            hasAnchor = false;
+            stableSinceNanos = nowNanos;
+        }
+        else if (!hasAnchor || hasCoordinate != anchorCoordinate || !isInAnchor(quadrant, x, y)) {
+            hasAnchor = true;
+            anchorCoordinate = hasCoordinate;
+            anchorQuadrant = quadrant;
+            anchorX = x;
+            anchorY = y;
+            stableSinceNanos = nowNanos;
+        }
+
+        return getLevel(nowNanos) != level;
+    }
+
+    private boolean isInAnchor(int quadrant, float x, float y) {
+        if (!anchorCoordinate) {
+            return quadrant == anchorQuadrant;
+        }
+
+        float dx = x - anchorX;
+        float dy = y - anchorY;
+        return dx * dx + dy * dy <= STATIONARY_RADIUS_METRES * STATIONARY_RADIUS_METRES;
+    }
+
+    public synchronized int getLevel(long nowNanos) {
+        if (!hasAnchor) {
+            return LEVEL_ACTIVE;
+        }
+
+        long stable = nowNanos - stableSinceNanos;
+        if (stable < SETTLE_NANOS) {
+            return LEVEL_ACTIVE;
+        }
+        if (stable < STATIONARY_NANOS) {
+            return LEVEL_SETTLING;
+        }
+        return LEVEL_STATIONARY;
+    }
+
+    // Whether the scanner should run now; only STATIONARY pauses it
+    public synchronized boolean isScanning(long nowNanos) {
+        if (getLevel(nowNanos) != LEVEL_STATIONARY) {
+            return true;
+        }
+
+        return getStationaryPhase(nowNanos) < STATIONARY_SCAN_NANOS;
+    }
+
+    // Time at which the level or isScanning next changes unless a position arrives first, or
+    // Long.MAX_VALUE if it does not change by itself
+    public synchronized long getNextChangeNanos(long nowNanos) {
+        if (!hasAnchor) {
+            return Long.MAX_VALUE;
+        }
+
+        switch (getLevel(nowNanos)) {
+            case LEVEL_ACTIVE:
+                return stableSinceNanos + SETTLE_NANOS;
+            case LEVEL_SETTLING:
+                return stableSinceNanos + STATIONARY_NANOS;
+            default:
+                long phase = getStationaryPhase(nowNanos);
+                if (phase < STATIONARY_SCAN_NANOS) {
+                    return nowNanos + STATIONARY_SCAN_NANOS - phase;
+                }
+                return nowNanos + stationaryPeriodNanos - phase;
+        }
+    }
+
+    // Cycles start when the position became STATIONARY
+    private long getStationaryPhase(long nowNanos) {
+        return (nowNanos - stableSinceNanos - STATIONARY_NANOS) % stationaryPeriodNanos;
+    }
+
+    // Scan mode for a level when fastestMode is the mode configured for moving
+    public static int getScanMode(int level, int fastestMode) {
+        if (level == LEVEL_STATIONARY) {
+            return SCAN_MODE_LOW_POWER;
+        }
+
+        return Math.max(SCAN_MODE_LOW_POWER, fastestMode - level);
+    }
+
+    public static String getLevelName(int level) {
+        return LEVEL_NAMES[level];
+    }
+
+    // Called when the scanner is started or stopped, to measure the duty cycle achieved
+    public synchronized void setScanning(boolean scanning, long nowNanos) {
+        if (scanning == this.scanning) {
+            return;
+        }
+
+        this.scanning = scanning;
+        if (scanning) {
+            scanStartNanos = nowNanos;
+        }
+        else {
+            scanNanos += nowNanos - scanStartNanos;
+        }
+    }
+
+    // Called for every scan callback
+    public synchronized void recordCallback() {
+        callbackCount++;
+    }
+
+    // Fraction of the resumed time spent scanning
+    public synchronized double getDutyCycle(long nowNanos) {
+        long run = getRunNanos(nowNanos);
+        long scan = scanNanos + (scanning ? nowNanos - scanStartNanos : 0);
+        return run > 0 ? Math.min(1, scan / (double) run) : 0;
+    }
+
+    // Scan callbacks per second of resumed time, pauses of the duty cycle included
+    public synchronized double getCallbacksPerSecond(long nowNanos) {
+        long run = getRunNanos(nowNanos);
+        return run > 0 ? callbackCount * 1e9 / run : 0;
+    }
+
+    private long getRunNanos(long nowNanos) {
+        return runNanos + (running ? nowNanos - runStartNanos : 0);
+    }
+
+    public synchronized String summarize(long nowNanos) {
+        return String.format("scan: %s, %.0f%% duty cycle, %.1f callbacks/s",
+                LEVEL_NAMES[getLevel(nowNanos)], getDutyCycle(nowNanos) * 100,
+                getCallbacksPerSecond(nowNanos));
+    }
+}
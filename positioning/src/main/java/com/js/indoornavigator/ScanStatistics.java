@@ -0,0 +1,110 @@
+package com.js.indoornavigator;
+
+// ScanStatistics keeps throughput and delivery latency figures for each scan mode. Latency is
+// the time between the controller receiving an advertisement and the app receiving it in a
+// callback, so it includes the report delay of batched scans. Callbacks and latencies are recorded
+// by the Bluetooth thread while the UI thread starts and stops the modes, so each record reads the
+// current mode once; other threads may read slightly stale values.
+public class ScanStatistics {
+
+    // Scan modes as defined by ScanSettings.SCAN_MODE_LOW_POWER, BALANCED and LOW_LATENCY
+    public static final int MODE_COUNT = 3;
+
+    private final long[] callbackCount = new long[MODE_COUNT];
+    private final long[] sampleCount = new long[MODE_COUNT];
+    private final long[] activeNanos = new long[MODE_COUNT];
+    private final long[] latencySumNanos = new long[MODE_COUNT];
+    private final long[] maxLatencyNanos = new long[MODE_COUNT];
+
+    private volatile int currentMode = -1;
+    private volatile long modeStartNanos;
+
+    // Called when scanning starts in a mode, or stops when mode is -1
+    public void setMode(int mode, long nowNanos) {
+        int previous = currentMode;
+        if (previous >= 0) {
+            activeNanos[previous] += nowNanos - modeStartNanos;
+        }
+
+        // The start is set first so that a reader seeing the new mode also sees its start
+        modeStartNanos = nowNanos;
+        currentMode = mode >= 0 && mode < MODE_COUNT ? mode : -1;
+    }
+
+    public int getMode() {
+        return currentMode;
+    }
+
+    // Records one callback delivering sampleCount samples
+    public void recordCallback(int samples) {
+        int mode = currentMode;
+        if (mode < 0) {
+            return;
+        }
+
+        callbackCount[mode]++;
+        sampleCount[mode] += samples;
+    }
+
+    // Records the delivery latency of one sample
+    public void recordLatency(long latencyNanos) {
+        int mode = currentMode;
+        if (mode < 0 || latencyNanos < 0) {
+            return;
+        }
+
+        latencySumNanos[mode] += latencyNanos;
+        if (latencyNanos > maxLatencyNanos[mode]) {
+            maxLatencyNanos[mode] = latencyNanos;
+        }
+    }
+
+    public long getCallbackCount(int mode) {
+        return callbackCount[mode];
+    }
+
+    public long getSampleCount(int mode) {
+        return sampleCount[mode];
+    }
+
+    // Samples per second received while scanning in mode
+    public double getSamplesPerSecond(int mode, long nowNanos) {
+        long nanos = getActiveNanos(mode, nowNanos);
+        return nanos > 0 ? sampleCount[mode] * 1e9 / nanos : 0;
+    }
+
+    // Callbacks per second received while scanning in mode
+    public double getCallbacksPerSecond(int mode, long nowNanos) {
+        long nanos = getActiveNanos(mode, nowNanos);
+        return nanos > 0 ? callbackCount[mode] * 1e9 / nanos : 0;
+    }
+
+    // Average number of samples delivered per callback
+    public double getAverageBatchSize(int mode) {
+        return callbackCount[mode] > 0 ? sampleCount[mode] / (double) callbackCount[mode] : 0;
+    }
+
+    public double getAverageLatencyMillis(int mode) {
+        return sampleCount[mode] > 0 ? latencySumNanos[mode] / 1e6 / sampleCount[mode] : 0;
+    }
+
+    public double getMaxLatencyMillis(int mode) {
+        return maxLatencyNanos[mode] / 1e6;
+    }
+
+    private long getActiveNanos(int mode, long nowNanos) {
+        long nanos = activeNanos[mode];
+        if (mode == currentMode) {
+            nanos += nowNanos - modeStartNanos;
+        }
+
+        return nanos;
+    }
+
+    public String toString(int mode, long nowNanos) {
+        return String.format("mode %d: %.1f samples/s, %.1f callbacks/s, %.1f samples/callback, "
+                        + "latency avg %.1f ms max %.1f ms", mode, getSamplesPerSecond(mode, nowNanos),
+                getCallbacksPerSecond(mode, nowNanos), getAverageBatchSize(mode),
+                getAverageLatencyMillis(mode), getMaxLatencyMillis(mode));
+    }
+}
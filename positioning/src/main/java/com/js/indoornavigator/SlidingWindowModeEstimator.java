@@ -0,0 +1,216 @@
+package com.js.indoornavigator;
+
+import java.util.Arrays;
+
+// SlidingWindowModeEstimator returns the most frequent key (the mode) among the samples of a
+// sliding window. Keys are small non-negative ints such as beacon indices. The window can be
+// limited by sample count, by age, or both.
+//
+// Samples are kept in a primitive ring buffer. Each key with a non-zero count sits in the list
+// of its count bucket, so adding or evicting a sample moves one key between adjacent buckets and
+// the mode is the head of the highest non-empty bucket. Every operation is O(1) amortized and
+// nothing is allocated after construction.
+//
+// Ties go to the key that reached the count first, so the mode does not flip between keys that
+// are equally frequent.
+public class SlidingWindowModeEstimator {
+
+    private static final int NONE = -1;
+
+    private final int keyCount;
+
+    // Ring buffer of samples, starting at head
+    private final int[] keys;
+    private final long[] timestamps;
+    private int head;
+    private int size;
+
+    // Window limits; windowNanos of 0 disables the age limit
+    private int maxSamples;
+    private long windowNanos;
+
+    // count[key] is the number of samples of key in the window. Keys with the same count form a
+    // doubly linked list starting at bucketHead[count] and ending at bucketTail[count].
+    private final int[] count;
+    private final int[] next;
+    private final int[] previous;
+    private final int[] bucketHead;
+    private final int[] bucketTail;
+    private int maxCount;
+
+    // capacity bounds the number of samples the window can hold
+    public SlidingWindowModeEstimator(int keyCount, int capacity) {
+        if (keyCount <= 0 || capacity <= 0) {
+            throw new IllegalArgumentException("keyCount and capacity must be positive");
+        }
+        this.keyCount = keyCount;
+
+        keys = new int[capacity];
+        timestamps = new long[capacity];
+
+        count = new int[keyCount];
+        next = new int[keyCount];
+        previous = new int[keyCount];
+        bucketHead = new int[capacity + 1];
+        bucketTail = new int[capacity + 1];
+        Arrays.fill(bucketHead, NONE);
+        Arrays.fill(bucketTail, NONE);
+
+        maxSamples = capacity;
+    }
+
+    // Sets the window limits; maxSamples is capped at the capacity and windowNanos of 0 disables
+    // the age limit. Samples outside the new window are evicted on the next add or expire.
+    public void setWindow(int maxSamples, long windowNanos) {
+        if (maxSamples <= 0 || windowNanos < 0) {
+            throw new IllegalArgumentException("Invalid window: " + maxSamples + " samples, "
+                    + windowNanos + " ns");
+        }
+        this.maxSamples = Math.min(maxSamples, keys.length);
+        this.windowNanos = windowNanos;
+
+        while (size > this.maxSamples) {
+            evictOldest();
+        }
+    }
+
+    // Adds a sample taken at timestampNanos and returns the mode of the window
+    public int add(int key, long timestampNanos) {
+        if (key < 0 || key >= keyCount) {
+            throw new IllegalArgumentException("Key out of range: " + key);
+        }
+
+        expire(timestampNanos);
+        if (size == maxSamples) {
+            evictOldest();
+        }
+
+        int tail = head + size;
+        if (tail >= keys.length) {
+            tail -= keys.length;
+        }
+        keys[tail] = key;
+        timestamps[tail] = timestampNanos;
+        size++;
+
+        increment(key);
+        return getMode();
+    }
+
+    // Evicts the samples that are older than the window at nowNanos
+    public void expire(long nowNanos) {
+        if (windowNanos == 0) {
+            return;
+        }
+
+        while (size > 0 && nowNanos - timestamps[head] > windowNanos) {
+            evictOldest();
+        }
+    }
+
+    // Returns the most frequent key in the window, or -1 if the window is empty
+    public int getMode() {
+        return maxCount == 0 ? NONE : bucketHead[maxCount];
+    }
+
+    // Number of samples of the mode
+    public int getModeCount() {
+        return maxCount;
+    }
+
+    public int getCount(int key) {
+        return count[key];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getCapacity() {
+        return keys.length;
+    }
+
+    public int getMaxSamples() {
+        return maxSamples;
+    }
+
+    public long getWindowNanos() {
+        return windowNanos;
+    }
+
+    public void clear() {
+        while (size > 0) {
+            evictOldest();
+        }
+    }
+
+    private void evictOldest() {
+        int key = keys[head];
+        head++;
+        if (head == keys.length) {
+            head = 0;
+        }
+        size--;
+
+        decrement(key);
+    }
+
+    private void increment(int key) {
+        int c = count[key];
+        if (c > 0) {
+            unlink(key, c);
+        }
+        c++;
+        count[key] = c;
+        append(key, c);
+
+        if (c > maxCount) {
+            maxCount = c;
+        }
+    }
+
+    private void decrement(int key) {
+        int c = count[key];
+        unlink(key, c);
+        c--;
+        count[key] = c;
+        if (c > 0) {
+            append(key, c);
+        }
+
+        // A key only moves down by one, so the highest non-empty bucket drops by at most one
+        if (bucketHead[maxCount] == NONE) {
+            maxCount--;
+        }
+    }
+
+    private void append(int key, int bucket) {
+        int tail = bucketTail[bucket];
+        previous[key] = tail;
+        next[key] = NONE;
+        if (tail == NONE) {
+            bucketHead[bucket] = key;
+        }
+        else {
+            next[tail] = key;
+        }
+        bucketTail[bucket] = key;
+    }
+
+    private void unlink(int key, int bucket) {
+        int before = previous[key];
+        int after = next[key];
+        if (before == NONE) {
+            bucketHead[bucket] = after;
+        }
+        else {
+            next[before] = after;
+        }
+        if (after == NONE) {
+            bucketTail[bucket] = before;
+        }
+        else {
+            previous[after] = before;
+        }
+    }
+}
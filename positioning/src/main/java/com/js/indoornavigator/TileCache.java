@@ -0,0 +1,226 @@
+package com.js.indoornavigator;
+
+import java.util.Arrays;
+
+// TileCache is a least recently used cache of decoded tiles bounded by the bytes they occupy.
+// Tiles are looked up by a long key, such as FloorPlan.tileKey, in a chained hash table whose
+// entries also form the recency list, all held in preallocated arrays, so lookups and
+// insertions do not allocate. That keeps the draw path, which looks up every visible tile on
+// every frame, free of garbage.
+//
+// All methods are synchronized: tiles are put by a decoder thread while the UI thread draws.
+// A null value can be put to remember a tile that could not be decoded; get returns null for it
+// as for a missing tile, but contains reports it so that it is not requested again.
+public class TileCache<V> {
+
+    // Called with the cache lock held whenever a tile leaves the cache, whether evicted,
+    // replaced, removed or cleared
+    public interface EvictionListener<V> {
+        void onEvicted(long key, V value);
+    }
+
+    private static final int NONE = -1;
+
+    private final long maxBytes;
+    private final EvictionListener<V> listener;
+
+    private final int[] buckets;
+    private final long[] keys;
+    private final Object[] values;
+    private final int[] sizes;
+    private final int[] chain;
+    private final int[] newer;
+    private final int[] older;
+
+    // Most and least recently used entries, and the head of the list of free entries
+    private int newest = NONE;
+    private int oldest = NONE;
+    private int free;
+
+    private int count;
+    private long bytes;
+    private long hitCount;
+    private long missCount;
+    private long evictionCount;
+
+    // maxEntries bounds the number of tiles regardless of their size
+    public TileCache(long maxBytes, int maxEntries, EvictionListener<V> listener) {
+        if (maxBytes < 1 || maxEntries < 1) {
+            throw new IllegalArgumentException("Cache must hold at least one tile");
+        }
+
+        this.maxBytes = maxBytes;
+        this.listener = listener;
+
+        int bucketCount = Integer.highestOneBit(Math.max(1, maxEntries - 1)) << 1;
+        buckets = new int[bucketCount];
+        Arrays.fill(buckets, NONE);
+        keys = new long[maxEntries];
+        values = new Object[maxEntries];
+        sizes = new int[maxEntries];
+        chain = new int[maxEntries];
+        newer = new int[maxEntries];
+        older = new int[maxEntries];
+        for (int i = 0; i < maxEntries; i++) {
+            chain[i] = i + 1 < maxEntries ? i + 1 : NONE;
+        }
+        free = 0;
+    }
+
+    // Returns the tile and marks it as most recently used, or null if it is not cached
+    @SuppressWarnings("unchecked")
+    public synchronized V get(long key) {
+        int entry = find(key);
+        if (entry == NONE) {
+            missCount++;
+            return null;
+        }
+
+        hitCount++;
+        unlink(entry);
+        linkNewest(entry);
+        return (V) values[entry];
+    }
+
+    public synchronized boolean contains(long key) {
+        return find(key) != NONE;
+    }
+
+    // Adds or replaces a tile of the given size in bytes, evicting the least recently used tiles
+    // until the cache is within its bounds. A tile larger than the whole cache is not kept.
+    public synchronized void put(long key, V value, int size) {
+        remove(key);
+        if (size > maxBytes) {
+            if (listener != null) {
+                listener.onEvicted(key, value);
+            }
+            return;
+        }
+
+        while (oldest != NONE && (bytes + size > maxBytes || free == NONE)) {
+            evictionCount++;
+            removeEntry(oldest);
+        }
+
+        int entry = free;
+        free = chain[entry];
+        int bucket = bucket(key);
+        keys[entry] = key;
+        values[entry] = value;
+        sizes[entry] = size;
+        chain[entry] = buckets[bucket];
+        buckets[bucket] = entry;
+        linkNewest(entry);
+        count++;
+        bytes += size;
+    }
+
+    public synchronized boolean remove(long key) {
+        int entry = find(key);
+        if (entry == NONE) {
+            return false;
+        }
+
+        removeEntry(entry);
+        return true;
+    }
+
+    public synchronized void clear() {
+        while (oldest != NONE) {
+            removeEntry(oldest);
+        }
+    }
+
+    public synchronized int size() {
+        return count;
+    }
+
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    public synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+
+    private int find(long key) {
+        int entry = buckets[bucket(key)];
+        while (entry != NONE && keys[entry] != key) {
+            entry = chain[entry];
+        }
+
+        return entry;
+    }
+
+    private int bucket(long key) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash >>> 32) & (buckets.length - 1);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void removeEntry(int entry) {
+        long key = keys[entry];
+        int bucket = bucket(key);
+        if (buckets[bucket] == entry) {
+            buckets[bucket] = chain[entry];
+        }
+        else {
+            int previous = buckets[bucket];
+            while (chain[previous] != entry) {
+                previous = chain[previous];
+            }
+            chain[previous] = chain[entry];
+        }
+        unlink(entry);
+
+        V value = (V) values[entry];
+        values[entry] = null;
+        count--;
+        bytes -= sizes[entry];
+        chain[entry] = free;
+        free = entry;
+
+        if (listener != null) {
+            listener.onEvicted(key, value);
+        }
+    }
+
+    private void linkNewest(int entry) {
+        newer[entry] = NONE;
+        older[entry] = newest;
+        if (newest != NONE) {
+            newer[newest] = entry;
+        }
+        else {
+            oldest = entry;
+        }
+        newest = entry;
+    }
+
+    private void unlink(int entry) {
+        if (newer[entry] != NONE) {
+            older[newer[entry]] = older[entry];
+        }
+        else {
+            newest = older[entry];
+        }
+        if (older[entry] != NONE) {
+            newer[older[entry]] = newer[entry];
+        }
+        else {
+            oldest = newer[entry];
+        }
+    }
+}
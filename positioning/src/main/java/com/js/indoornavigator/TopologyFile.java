@@ -0,0 +1,191 @@
+package com.js.indoornavigator;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.Arrays;
+
+// TopologyFile reads and writes BeaconNetwork topologies. The text format is meant for authoring:
+//
+//   # comment
+//   nodes 5
+//   0 1
+//   1 2 3
+//
+// Every line after the node count lists a beacon index followed by the beacons it neighbors;
+// edges are added in both directions. The binary format is meant for deployment and holds the
+// compressed sparse row arrays as they are kept in memory:
+//
+//   int magic ("BTOP"), int version, int nodeCount, int edgeCount,
+//   int[nodeCount + 1] offsets, int[edgeCount] neighbors
+public final class TopologyFile {
+
+    public static final int MAGIC = 0x42544F50;
+    public static final int VERSION = 1;
+
+    // Largest node count accepted from a file, far above any building; a text file can declare
+    // nodes without listing them, so the count alone has to be bounded
+    public static final int MAX_NODE_COUNT = 1 << 16;
+
+    // Arrays of the binary format are read in chunks of this many values, so a corrupt count
+    // fails at the end of the file instead of allocating what the file cannot hold
+    private static final int READ_CHUNK = 1024;
+
+    private TopologyFile() {
+
+    }
+
+    // Reads either format, detected by the magic number of the binary format
+    public static BeaconNetwork read(InputStream in) throws IOException {
+        BufferedInputStream buffered = new BufferedInputStream(in);
+        buffered.mark(4);
+        DataInputStream data = new DataInputStream(buffered);
+        int magic;
+        try {
+            magic = data.readInt();
+        } catch (IOException e) {
+            magic = 0;
+        }
+        buffered.reset();
+
+        if (magic == MAGIC) {
+            return readBinary(buffered);
+        }
+
+        return readText(new InputStreamReader(buffered, "UTF-8"));
+    }
+
+    public static BeaconNetwork readText(Reader in) throws IOException {
+        BufferedReader reader = new BufferedReader(in);
+        BeaconNetwork.Builder builder = null;
+
+        String line;
+        int lineNumber = 0;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+
+            int comment = line.indexOf('#');
+            if (comment >= 0) {
+                line = line.substring(0, comment);
+            }
+            line = line.trim();
+            if (line.isEmpty()) {
+                continue;
+            }
+
+            String[] tokens = line.split("\\s+");
+            try {
+                if (builder == null) {
+                    if (tokens.length != 2 || !tokens[0].equals("nodes")) {
+                        throw new IOException("Line " + lineNumber + ": expected \"nodes <count>\"");
+                    }
+                    int nodeCount = Integer.parseInt(tokens[1]);
+                    if (nodeCount < 0 || nodeCount > MAX_NODE_COUNT) {
+                        throw new IOException("Line " + lineNumber + ": invalid node count "
+                                + nodeCount);
+                    }
+                    builder = new BeaconNetwork.Builder(nodeCount);
+                    continue;
+                }
+
+                int node = Integer.parseInt(tokens[0]);
+                for (int i = 1; i < tokens.length; i++) {
+                    builder.addEdge(node, Integer.parseInt(tokens[i]));
+                }
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Line " + lineNumber + ": " + e.getMessage());
+            }
+        }
+
+        if (builder == null) {
+            throw new IOException("Missing node count");
+        }
+
+        return builder.build();
+    }
+
+    public static void writeText(BeaconNetwork network, Writer out) throws IOException {
+        out.write("nodes " + network.getNodeCount() + "\n");
+
+        // Each edge is written once, from the lower index
+        for (int node = 0; node < network.getNodeCount(); node++) {
+            StringBuilder line = new StringBuilder().append(node);
+            boolean hasEdges = false;
+            for (int k = 0; k < network.getNeighborCount(node); k++) {
+                int neighbor = network.getNeighbor(node, k);
+                if (neighbor > node) {
+                    line.append(' ').append(neighbor);
+                    hasEdges = true;
+                }
+            }
+            if (hasEdges) {
+                out.write(line.append('\n').toString());
+            }
+        }
+        out.flush();
+    }
+
+    public static BeaconNetwork readBinary(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(new BufferedInputStream(in));
+        if (data.readInt() != MAGIC) {
+            throw new IOException("Not a binary topology file");
+        }
+        int version = data.readInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported topology version " + version);
+        }
+
+        int nodeCount = data.readInt();
+        int edgeCount = data.readInt();
+        if (nodeCount < 0 || nodeCount > MAX_NODE_COUNT || edgeCount < 0) {
+            throw new IOException("Invalid topology size: " + nodeCount + " nodes, " + edgeCount
+                    + " edges");
+        }
+
+        int[] offsets = readInts(data, nodeCount + 1);
+        int[] neighbors = readInts(data, edgeCount);
+
+        try {
+            return new BeaconNetwork(offsets, neighbors);
+        } catch (IllegalArgumentException e) {
+            throw new IOException(e.getMessage());
+        }
+    }
+
+    // Reads count ints, growing the array as they arrive; throws EOFException if the stream ends
+    // first
+    private static int[] readInts(DataInputStream data, int count) throws IOException {
+        int[] values = new int[Math.min(count, READ_CHUNK)];
+        for (int i = 0; i < count; i++) {
+            if (i == values.length) {
+                values = Arrays.copyOf(values, (int) Math.min(count, 2L * values.length));
+            }
+            values[i] = data.readInt();
+        }
+
+        return values;
+    }
+
+    public static void writeBinary(BeaconNetwork network, OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+        data.writeInt(MAGIC);
+        data.writeInt(VERSION);
+        data.writeInt(network.getNodeCount());
+        data.writeInt(network.getEdgeCount());
+        for (int offset : network.getOffsets()) {
+            data.writeInt(offset);
+        }
+        for (int neighbor : network.getNeighbors()) {
+            data.writeInt(neighbor);
+        }
+        data.flush();
+    }
+}
@@ -0,0 +1,221 @@
+package com.js.indoornavigator;
+
+// TrilaterationSolver estimates a position in metres from ranges to beacons at known positions.
+//
+// solveWeightedCentroid averages the beacon positions weighted by 1 / distance^2. It is cheap and
+// always lies inside the beacons, but is pulled towards the middle of them.
+//
+// solve minimizes the weighted squared range residuals sum w_i (|p - b_i| - d_i)^2 with
+// Levenberg-Marquardt iterations that start from the weighted centroid. The 2x2 normal equations
+// are solved in closed form and the residual and Jacobian buffers are allocated up front for
+// capacity beacons, so solving does not allocate.
+public class TrilaterationSolver {
+
+    public static final int MAX_ITERATIONS = 20;
+
+    // Iterations stop once a step is shorter than this, in metres
+    private static final double CONVERGENCE_METRES = 1e-3;
+
+    private static final double INITIAL_DAMPING = 1e-3;
+
+    private final int capacity;
+
+    // Residual, weight and Jacobian row of each range in the current solve
+    private final double[] residual;
+    private final double[] weight;
+    private final double[] jacobianX;
+    private final double[] jacobianY;
+
+    private double x;
+    private double y;
+
+    // Metrics of the last solve and running totals
+    private int iterations;
+    private double rmsResidual;
+    private long solveCount;
+    private long totalIterations;
+
+    public TrilaterationSolver(int capacity) {
+        this.capacity = capacity;
+        residual = new double[capacity];
+        weight = new double[capacity];
+        jacobianX = new double[capacity];
+        jacobianY = new double[capacity];
+    }
+
+    // Weighted centroid of the first count beacons; returns false if count is 0
+    public boolean solveWeightedCentroid(float[] beaconX, float[] beaconY, double[] distances,
+            int count) {
+        if (!centroid(beaconX, beaconY, distances, count)) {
+            return false;
+        }
+
+        finishSolve(beaconX, beaconY, distances, count);
+        return true;
+    }
+
+    // Least squares position from the first count ranges; needs at least three beacons and falls
+    // back to the weighted centroid with fewer. Returns false if count is 0.
+    public boolean solve(float[] beaconX, float[] beaconY, double[] distances, int count) {
+        if (!centroid(beaconX, beaconY, distances, count)) {
+            return false;
+        }
+        if (count >= 3) {
+            leastSquares(beaconX, beaconY, distances, count);
+        }
+
+        finishSolve(beaconX, beaconY, distances, count);
+        return true;
+    }
+
+    // Sets the position to the weighted centroid; returns false if count is 0
+    private boolean centroid(float[] beaconX, float[] beaconY, double[] distances, int count) {
+        checkCount(count);
+        iterations = 0;
+        if (count == 0) {
+            return false;
+        }
+
+        double sumWeight = 0;
+        double sumX = 0;
+        double sumY = 0;
+        for (int i = 0; i < count; i++) {
+            double w = 1 / (distances[i] * distances[i]);
+            sumWeight += w;
+            sumX += w * beaconX[i];
+            sumY += w * beaconY[i];
+        }
+        x = sumX / sumWeight;
+        y = sumY / sumWeight;
+        return true;
+    }
+
+    // Levenberg-Marquardt iterations from the current position
+    private void leastSquares(float[] beaconX, float[] beaconY, double[] distances, int count) {
+        for (int i = 0; i < count; i++) {
+            weight[i] = 1 / (distances[i] * distances[i]);
+        }
+
+        double cost = evaluate(beaconX, beaconY, distances, count, x, y);
+        double damping = INITIAL_DAMPING;
+        while (iterations < MAX_ITERATIONS) {
+            iterations++;
+
+            // Normal equations (J^T W J + damping * diag) step = -J^T W r
+            double a = 0;
+            double b = 0;
+            double c = 0;
+            double gx = 0;
+            double gy = 0;
+            for (int i = 0; i < count; i++) {
+                double w = weight[i];
+                double jx = jacobianX[i];
+                double jy = jacobianY[i];
+                a += w * jx * jx;
+                b += w * jx * jy;
+                c += w * jy * jy;
+                gx += w * jx * residual[i];
+                gy += w * jy * residual[i];
+            }
+            a += damping * a;
+            c += damping * c;
+
+            double determinant = a * c - b * b;
+            if (Math.abs(determinant) < 1e-18) {
+                break;
+            }
+            double stepX = -(c * gx - b * gy) / determinant;
+            double stepY = -(a * gy - b * gx) / determinant;
+
+            double newCost = evaluate(beaconX, beaconY, distances, count, x + stepX, y + stepY);
+            if (newCost < cost) {
+                x += stepX;
+                y += stepY;
+                cost = newCost;
+                damping *= 0.1;
+                if (stepX * stepX + stepY * stepY < CONVERGENCE_METRES * CONVERGENCE_METRES) {
+                    break;
+                }
+            }
+            else {
+                // Rejected; restore the residuals at the current position and damp harder
+                evaluate(beaconX, beaconY, distances, count, x, y);
+                damping *= 10;
+            }
+        }
+    }
+
+    // Fills the residuals and Jacobian at (px, py); returns the weighted squared residual sum
+    private double evaluate(float[] beaconX, float[] beaconY, double[] distances, int count,
+            double px, double py) {
+        double cost = 0;
+        for (int i = 0; i < count; i++) {
+            double dx = px - beaconX[i];
+            double dy = py - beaconY[i];
+            double range = Math.sqrt(dx * dx + dy * dy);
+            if (range < 1e-9) {
+                jacobianX[i] = 0;
+                jacobianY[i] = 0;
+            }
+            else {
+                jacobianX[i] = dx / range;
+                jacobianY[i] = dy / range;
+            }
+            residual[i] = range - distances[i];
+            cost += weight[i] * residual[i] * residual[i];
+        }
+
+        return cost;
+    }
+
+    // Records the unweighted RMS range residual of the final position
+    private void finishSolve(float[] beaconX, float[] beaconY, double[] distances, int count) {
+        double sum = 0;
+        for (int i = 0; i < count; i++) {
+            double dx = x - beaconX[i];
+            double dy = y - beaconY[i];
+            double r = Math.sqrt(dx * dx + dy * dy) - distances[i];
+            sum += r * r;
+        }
+        rmsResidual = Math.sqrt(sum / count);
+
+        solveCount++;
+        totalIterations += iterations;
+    }
+
+    private void checkCount(int count) {
+        if (count > capacity) {
+            throw new IllegalArgumentException(count + " ranges exceed capacity " + capacity);
+        }
+    }
+
+    public float getX() {
+        return (float) x;
+    }
+
+    public float getY() {
+        return (float) y;
+    }
+
+    // Least squares iterations of the last solve; 0 for a weighted centroid
+    public int getIterations() {
+        return iterations;
+    }
+
+    // Root mean square of the range residuals at the last position, in metres
+    public double getRmsResidual() {
+        return rmsResidual;
+    }
+
+    public long getSolveCount() {
+        return solveCount;
+    }
+
+    public long getTotalIterations() {
+        return totalIterations;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+}
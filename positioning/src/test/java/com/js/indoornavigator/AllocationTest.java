@@ -0,0 +1,185 @@
+package com.js.indoornavigator;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+// Verifies that the steady-state update path does not allocate. Allocation is measured with the
+// per-thread allocation counter of the HotSpot JVM.
+public class AllocationTest {
+
+    private static final String[] UUIDS = {"D5:00:25:D5:22:A9", "FF:48:85:91:B0:0D",
+            "E7:4E:95:C8:62:A3", "DE:38:78:85:1C:6D", "D1:07:0C:8F:45:90"};
+
+    private static final int WARM_UP_UPDATES = 20000;
+    private static final int MEASURED_UPDATES = 20000;
+
+    @Test
+    public void highestRssiUpdateDoesNotAllocate() {
+        assertUpdatesDoNotAllocate(PositioningEngine.MODE_HIGHEST_RSSI);
+    }
+
+    @Test
+    public void density1UpdateDoesNotAllocate() {
+        assertUpdatesDoNotAllocate(PositioningEngine.MODE_DENSITY1);
+    }
+
+    @Test
+    public void density2UpdateDoesNotAllocate() {
+        assertUpdatesDoNotAllocate(PositioningEngine.MODE_DENSITY2);
+    }
+
+    @Test
+    public void bayesUpdateDoesNotAllocate() {
+        assertUpdatesDoNotAllocate(PositioningEngine.MODE_BAYES);
+    }
+
+    @Test
+    public void forwardFilterUpdateDoesNotAllocate() {
+        assertUpdatesDoNotAllocate(PositioningEngine.MODE_FORWARD_FILTER);
+    }
+
+    @Test
+    public void particleFilterUpdateDoesNotAllocate() {
+        assertUpdatesDoNotAllocate(PositioningEngine.MODE_PARTICLE_FILTER);
+    }
+
+    @Test
+    public void trilaterationUpdateDoesNotAllocate() {
+        assertUpdatesDoNotAllocate(PositioningEngine.MODE_WEIGHTED_CENTROID);
+        assertUpdatesDoNotAllocate(PositioningEngine.MODE_TRILATERATION);
+    }
+
+    @Test
+    public void fingerprintUpdateDoesNotAllocate() throws IOException {
+        assertUpdatesDoNotAllocate(PositioningEngine.MODE_FINGERPRINT, RssiFilterBank.FILTER_NONE,
+                createRadioMap());
+    }
+
+    @Test
+    public void filteredUpdatesDoNotAllocate() {
+        assertUpdatesDoNotAllocate(PositioningEngine.MODE_DENSITY1, RssiFilterBank.FILTER_EMA);
+        assertUpdatesDoNotAllocate(PositioningEngine.MODE_DENSITY1, RssiFilterBank.FILTER_KALMAN);
+        assertUpdatesDoNotAllocate(PositioningEngine.MODE_DENSITY1, RssiFilterBank.FILTER_MEDIAN);
+    }
+
+    @Test
+    public void labelCacheReusesLabels() {
+        LabelCache labels = new LabelCache("RSSI: ", -128, 127);
+
+        assertEquals("RSSI: -60", labels.get(-60));
+        assertSame(labels.get(-60), labels.get(-60));
+    }
+
+    @Test
+    public void eddystoneParsingDoesNotAllocate() {
+        com.sun.management.ThreadMXBean threadBean =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+
+        EddystoneFrame frame = new EddystoneFrame();
+        byte[] record = EddystoneFrameTest.uid("F7826DA6BC5B71E0893E", "J8Afaf", -20);
+        long[] namespace = EddystoneFrame.parseNamespace("F7826DA6BC5B71E0893F");
+        int matches = 0;
+        for (int i = 0; i < WARM_UP_UPDATES; i++) {
+            if (frame.parse(record) && frame.isInNamespace(namespace[0], namespace[1])) {
+                matches++;
+            }
+        }
+
+        long before = threadBean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < MEASURED_UPDATES; i++) {
+            if (frame.parse(record) && frame.isInNamespace(namespace[0], namespace[1])) {
+                matches++;
+            }
+        }
+        long allocated = threadBean.getThreadAllocatedBytes(threadId) - before;
+
+        assertEquals(0, matches);
+        assertTrue("allocated " + allocated + " bytes", allocated < MEASURED_UPDATES);
+    }
+
+    private void assertUpdatesDoNotAllocate(int mode) {
+        assertUpdatesDoNotAllocate(mode, RssiFilterBank.FILTER_NONE);
+    }
+
+    private void assertUpdatesDoNotAllocate(int mode, int rssiFilter) {
+        assertUpdatesDoNotAllocate(mode, rssiFilter, null);
+    }
+
+    private void assertUpdatesDoNotAllocate(int mode, int rssiFilter, RadioMap radioMap) {
+        com.sun.management.ThreadMXBean threadBean =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+
+        PositioningEngine engine = new PositioningEngine(createBeacons(),
+                BeaconNetwork.createDefault());
+        engine.setRadioMap(radioMap);
+        engine.setMode(mode);
+        engine.setRssiFilter(rssiFilter);
+
+        long time = runUpdates(engine, 0, WARM_UP_UPDATES);
+
+        long before = threadBean.getThreadAllocatedBytes(threadId);
+        runUpdates(engine, time, MEASURED_UPDATES);
+        long allocated = threadBean.getThreadAllocatedBytes(threadId) - before;
+
+        // Anything allocated per update would add up to at least one byte per update
+        assertTrue("allocated " + allocated + " bytes", allocated < MEASURED_UPDATES);
+        assertTrue(engine.hasPosition());
+    }
+
+    // Walks the device back and forth along the beacons
+    private long runUpdates(PositioningEngine engine, long time, int updates) {
+        for (int i = 0; i < updates; i++) {
+            time += 50 * 1000000L;
+            int strongest = (i / 40) % UUIDS.length;
+            engine.onScanResult(UUIDS[i % UUIDS.length], i % UUIDS.length == strongest ? -50 : -80,
+                    time);
+        }
+
+        return time;
+    }
+
+    // Survey of reference points every half metre along the beacons, with path loss RSSI values
+    private RadioMap createRadioMap() throws IOException {
+        PathLossModel model = new PathLossModel(-59, 2.5);
+        long[] macs = new long[UUIDS.length];
+        for (int j = 0; j < macs.length; j++) {
+            macs[j] = MacAddress.parse(UUIDS[j]);
+        }
+
+        int pointCount = 25;
+        float[] x = new float[pointCount];
+        float[] y = new float[pointCount];
+        int[] quadrants = new int[pointCount];
+        int[] rssis = new int[pointCount * macs.length];
+        for (int i = 0; i < pointCount; i++) {
+            x[i] = i * 0.5f;
+            y[i] = 1;
+            quadrants[i] = 1 + i / 5;
+            for (int j = 0; j < macs.length; j++) {
+                rssis[i * macs.length + j] = (int) Math.round(
+                        model.rssiAtDistance(Math.hypot(x[i] - 3 * j, y[i])));
+            }
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        RadioMapFile.write(out, macs, x, y, quadrants, rssis);
+        return RadioMapFile.read(ByteBuffer.wrap(out.toByteArray()));
+    }
+
+    private Beacon[] createBeacons() {
+        Beacon[] beacons = new Beacon[UUIDS.length];
+        for (int i = 0; i < beacons.length; i++) {
+            beacons[i] = new Beacon(i + 1, "beacon" + i, UUIDS[i], 3 * i, 0);
+        }
+
+        return beacons;
+    }
+}
@@ -0,0 +1,113 @@
+package com.js.indoornavigator;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+
+import static org.junit.Assert.*;
+
+public class BeaconNetworkTest {
+
+    @Test
+    public void defaultNetworkMatchesLayout() {
+        BeaconNetwork network = BeaconNetwork.createDefault();
+
+        assertEquals(5, network.getNodeCount());
+        assertEquals(8, network.getEdgeCount());
+        assertEquals(3, network.getNeighborCount(1));
+        assertEquals(0, network.getNeighbor(1, 0));
+        assertEquals(3, network.getNeighbor(1, 2));
+        assertTrue(network.isNeighbor(3, 4));
+        assertTrue(network.isNeighbor(4, 3));
+        assertFalse(network.isNeighbor(0, 2));
+        assertFalse(network.isNeighbor(2, 2));
+    }
+
+    @Test
+    public void builderDropsDuplicatesAndSelfLoops() {
+        BeaconNetwork network = new BeaconNetwork.Builder(3)
+                .addEdge(0, 1).addEdge(1, 0).addEdge(2, 2).addDirectedEdge(2, 0).build();
+
+        assertEquals(1, network.getNeighborCount(0));
+        assertEquals(1, network.getNeighborCount(1));
+        assertEquals(1, network.getNeighborCount(2));
+        assertTrue(network.isNeighbor(2, 0));
+        assertFalse(network.isNeighbor(0, 2));
+    }
+
+    @Test
+    public void readsTextTopology() throws IOException {
+        BeaconNetwork network = TopologyFile.readText(new StringReader(
+                "# test\nnodes 4\n0 1 2  # star\n\n3 0\n"));
+
+        assertEquals(4, network.getNodeCount());
+        assertArrayEquals(new int[]{1, 2, 3}, neighborsOf(network, 0));
+        assertArrayEquals(new int[]{0}, neighborsOf(network, 3));
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsEdgesOutsideOfNodes() throws IOException {
+        TopologyFile.readText(new StringReader("nodes 2\n0 2\n"));
+    }
+
+    @Test
+    public void roundTripsBothFormats() throws IOException {
+        BeaconNetwork network = BeaconNetwork.createDefault();
+
+        StringWriter text = new StringWriter();
+        TopologyFile.writeText(network, text);
+        BeaconNetwork fromText = TopologyFile.read(new ByteArrayInputStream(
+                text.toString().getBytes("UTF-8")));
+
+        ByteArrayOutputStream binary = new ByteArrayOutputStream();
+        TopologyFile.writeBinary(network, binary);
+        BeaconNetwork fromBinary = TopologyFile.read(new ByteArrayInputStream(binary.toByteArray()));
+
+        for (BeaconNetwork copy : new BeaconNetwork[]{fromText, fromBinary}) {
+            assertArrayEquals(network.getOffsets(), copy.getOffsets());
+            assertArrayEquals(network.getNeighbors(), copy.getNeighbors());
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsNegativeNodeCount() throws IOException {
+        TopologyFile.readText(new StringReader("nodes -1\n"));
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsNegativeBinaryNodeCount() throws IOException {
+        TopologyFile.readBinary(new ByteArrayInputStream(binaryHeader(-1, 0)));
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsCountsLargerThanTheFile() throws IOException {
+        // Would need gigabytes if allocated up front
+        TopologyFile.readBinary(new ByteArrayInputStream(binaryHeader(1, Integer.MAX_VALUE)));
+    }
+
+    private byte[] binaryHeader(int nodeCount, int edgeCount) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream data = new DataOutputStream(bytes);
+        data.writeInt(TopologyFile.MAGIC);
+        data.writeInt(TopologyFile.VERSION);
+        data.writeInt(nodeCount);
+        data.writeInt(edgeCount);
+        data.writeInt(0);
+        data.writeInt(0);
+        return bytes.toByteArray();
+    }
+
+    private int[] neighborsOf(BeaconNetwork network, int node) {
+        int[] result = new int[network.getNeighborCount(node)];
+        for (int k = 0; k < result.length; k++) {
+            result[k] = network.getNeighbor(node, k);
+        }
+
+        return result;
+    }
+}
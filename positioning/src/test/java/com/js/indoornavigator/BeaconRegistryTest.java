@@ -0,0 +1,69 @@
+package com.js.indoornavigator;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class BeaconRegistryTest {
+
+    @Test
+    public void parsesMacAddresses() {
+        assertEquals(0xD50025D522A9L, MacAddress.parse("D5:00:25:D5:22:A9"));
+        assertEquals(0xD50025D522A9L, MacAddress.parse("d5:00:25:d5:22:a9"));
+        assertEquals("D5:00:25:D5:22:A9", MacAddress.toString(0xD50025D522A9L));
+        assertEquals(MacAddress.INVALID, MacAddress.parse("D5:00:25:D5:22"));
+        assertEquals(MacAddress.INVALID, MacAddress.parse("D5-00-25-D5-22-A9"));
+        assertEquals(MacAddress.INVALID, MacAddress.parse(null));
+    }
+
+    @Test
+    public void registersAndFindsBeacons() {
+        BeaconRegistry registry = new BeaconRegistry(2);
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(i, registry.register(0xAABB00000000L + i * 7919L, i % 5 + 1));
+        }
+
+        assertEquals(1000, registry.size());
+        for (int i = 0; i < 1000; i++) {
+            int index = registry.indexOf(0xAABB00000000L + i * 7919L);
+            assertEquals(i, index);
+            assertEquals(i % 5 + 1, registry.getQuadrant(index));
+        }
+        assertEquals(-1, registry.indexOf(0x123456L));
+    }
+
+    @Test
+    public void invalidAddressesAreNotFound() {
+        BeaconRegistry registry = new BeaconRegistry();
+        registry.register(42L, 1);
+
+        assertEquals(-1, registry.indexOf(MacAddress.INVALID));
+        assertEquals(-1, registry.indexOf(MacAddress.parse("not a mac")));
+    }
+
+    @Test
+    public void countsSamplesOfEachBeacon() {
+        BeaconRegistry registry = new BeaconRegistry(1);
+        int first = registry.register(42L, 1);
+        registry.addSample(first);
+        registry.addSample(first);
+
+        // Counts survive the registry growing
+        int second = registry.register(43L, 2);
+        registry.addSample(second);
+        assertEquals(2, registry.getSampleCount(first));
+        assertEquals(1, registry.getSampleCount(second));
+    }
+
+    @Test
+    public void registeringTwiceKeepsIndex() {
+        BeaconRegistry registry = new BeaconRegistry();
+        int index = registry.register(42L, 1);
+        registry.setRssi(index, -60);
+
+        assertEquals(index, registry.register(42L, 3));
+        assertEquals(1, registry.size());
+        assertEquals(-60, registry.getRssi(index));
+        assertEquals(3, registry.getQuadrant(index));
+    }
+}
@@ -0,0 +1,188 @@
+package com.js.indoornavigator;
+
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class BeaconRouterTest {
+
+    // 1 2 3
+    //   4
+    //   5
+    private static Beacon[] createDefaultBeacons() {
+        return new Beacon[] {new Beacon(1, "b1", "00:00:00:00:00:01", 0, 0),
+                new Beacon(2, "b2", "00:00:00:00:00:02", 3, 0),
+                new Beacon(3, "b3", "00:00:00:00:00:03", 6, 0),
+                new Beacon(4, "b4", "00:00:00:00:00:04", 3, 3),
+                new Beacon(5, "b5", "00:00:00:00:00:05", 3, 6)};
+    }
+
+    // Grid with random weights of at least the distance between the nodes
+    private static BeaconRouter createGridRouter(int size, long seed, int maxTables,
+            int promotionQueries) {
+        BeaconNetwork network = createGrid(size);
+        float[] x = new float[size * size];
+        float[] y = new float[size * size];
+        for (int i = 0; i < x.length; i++) {
+            x[i] = i % size;
+            y[i] = i / size;
+        }
+
+        Random random = new Random(seed);
+        float[] weights = new float[network.getEdgeCount()];
+        for (int k = 0; k < weights.length; k++) {
+            weights[k] = 1 + random.nextInt(4);
+        }
+
+        return new BeaconRouter(network, weights, x, y, maxTables, promotionQueries);
+    }
+
+    private static BeaconNetwork createGrid(int size) {
+        BeaconNetwork.Builder builder = new BeaconNetwork.Builder(size * size);
+        for (int row = 0; row < size; row++) {
+            for (int column = 0; column < size; column++) {
+                int node = row * size + column;
+                if (column + 1 < size) {
+                    builder.addEdge(node, node + 1);
+                }
+                if (row + 1 < size) {
+                    builder.addEdge(node, node + size);
+                }
+            }
+        }
+
+        return builder.build();
+    }
+
+    // Checks that route follows edges and that its distances add up
+    private static void assertValidRoute(BeaconRouter router, Route route) {
+        BeaconNetwork network = router.getNetwork();
+        assertEquals(0, route.getRemaining(route.getLength() - 1), 0);
+        for (int i = 0; i + 1 < route.getLength(); i++) {
+            int from = route.getNode(i);
+            int to = route.getNode(i + 1);
+            int edge = -1;
+            for (int k = network.getNeighborStart(from); k < network.getNeighborEnd(from); k++) {
+                if (network.getNeighbors()[k] == to) {
+                    edge = k;
+                }
+            }
+            assertTrue("no edge " + from + " - " + to, edge >= 0);
+            assertEquals(route.getRemaining(i),
+                    route.getRemaining(i + 1) + router.getWeight(edge), 1e-3);
+        }
+    }
+
+    @Test
+    public void routesAlongTheBeacons() {
+        BeaconRouter router = BeaconRouter.create(BeaconNetwork.createDefault(),
+                createDefaultBeacons());
+        Route route = new Route();
+
+        assertTrue(router.route(0, 4, router.newSearch(), route));
+        assertArrayEquals(new int[] {0, 1, 3, 4}, route.toArray());
+        assertEquals(9, route.getDistance(), 1e-4);
+        assertEquals(1, route.getNextNode());
+        assertEquals(4, route.getDestination());
+
+        assertTrue(router.route(2, 2, router.newSearch(), route));
+        assertArrayEquals(new int[] {2}, route.toArray());
+    }
+
+    @Test
+    public void searchAndTablesAgreeOnTheShortestDistance() {
+        BeaconRouter searched = createGridRouter(20, 1, 0, 1);
+        BeaconRouter tabled = createGridRouter(20, 1, 400, 1);
+        BeaconRouter.Search search = searched.newSearch();
+        BeaconRouter.Search tableSearch = tabled.newSearch();
+        Route route = new Route();
+        Random random = new Random(2);
+
+        for (int i = 0; i < 200; i++) {
+            int source = random.nextInt(400);
+            int destination = random.nextInt(400);
+            assertTrue(searched.route(source, destination, search, route));
+            assertValidRoute(searched, route);
+            float distance = route.getDistance();
+
+            assertTrue(tabled.route(source, destination, tableSearch, route));
+            assertTrue(tabled.hasTable(destination));
+            assertValidRoute(tabled, route);
+            assertEquals(source, route.getNode(0));
+            assertEquals(distance, route.getDistance(), 1e-3);
+        }
+        assertEquals(0, searched.getTableCount());
+    }
+
+    @Test
+    public void promotesFrequentDestinationsUpToTheLimit() {
+        BeaconRouter router = createGridRouter(10, 1, 2, 3);
+        BeaconRouter.Search search = router.newSearch();
+        Route route = new Route();
+
+        router.route(0, 99, search, route);
+        router.route(5, 99, search, route);
+        assertFalse(router.hasTable(99));
+        router.route(9, 99, search, route);
+        assertTrue(router.hasTable(99));
+
+        assertTrue(router.precompute(50));
+        assertFalse(router.precompute(51));
+        assertEquals(2, router.getTableCount());
+    }
+
+    @Test
+    public void reportsUnreachableDestinations() {
+        BeaconNetwork network = new BeaconNetwork.Builder(4).addEdge(0, 1).addEdge(2, 3).build();
+        BeaconRouter router = new BeaconRouter(network, new float[] {1, 1, 1, 1}, null, null, 1, 1);
+        Route route = new Route();
+
+        assertFalse(router.route(0, 3, router.newSearch(), route));
+        assertTrue(route.isEmpty());
+        assertEquals(-1, route.getNextNode());
+
+        // Answered from a table this time
+        assertFalse(router.route(1, 3, router.newSearch(), route));
+        assertTrue(router.hasTable(3));
+    }
+
+    @Test
+    public void answersConcurrentQueries() throws InterruptedException {
+        final BeaconRouter router = createGridRouter(30, 3, 4, 20);
+        final BeaconRouter reference = createGridRouter(30, 3, 0, 1);
+        final AtomicInteger failures = new AtomicInteger();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            final long seed = t;
+            threads[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    BeaconRouter.Search search = router.newSearch();
+                    BeaconRouter.Search referenceSearch = reference.newSearch();
+                    Route route = new Route();
+                    Route expected = new Route();
+                    Random random = new Random(seed);
+                    for (int i = 0; i < 500; i++) {
+                        int source = random.nextInt(900);
+                        int destination = random.nextInt(8);
+                        router.route(source, destination, search, route);
+                        reference.route(source, destination, referenceSearch, expected);
+                        if (Math.abs(route.getDistance() - expected.getDistance()) > 1e-3) {
+                            failures.incrementAndGet();
+                        }
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(0, failures.get());
+        assertEquals(4, router.getTableCount());
+    }
+}
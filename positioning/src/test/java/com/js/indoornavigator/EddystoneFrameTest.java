@@ -0,0 +1,114 @@
+package com.js.indoornavigator;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class EddystoneFrameTest {
+
+    // Flags, the complete list of 16 bit service UUIDs with 0xFEAA, then the service data
+    private static final byte[] HEADER = {0x02, 0x01, 0x06, 0x03, 0x03, (byte) 0xAA, (byte) 0xFE};
+
+    static byte[] advertisement(int... serviceData) {
+        byte[] record = new byte[HEADER.length + 4 + serviceData.length];
+        System.arraycopy(HEADER, 0, record, 0, HEADER.length);
+        int i = HEADER.length;
+        record[i++] = (byte) (3 + serviceData.length);
+        record[i++] = 0x16;
+        record[i++] = (byte) 0xAA;
+        record[i++] = (byte) 0xFE;
+        for (int value : serviceData) {
+            record[i++] = (byte) value;
+        }
+
+        return record;
+    }
+
+    static byte[] uid(String namespace, String instance, int txPower) {
+        int[] data = new int[20];
+        data[0] = EddystoneFrame.FRAME_UID;
+        data[1] = txPower;
+        for (int i = 0; i < 10; i++) {
+            data[2 + i] = Integer.parseInt(namespace.substring(2 * i, 2 * i + 2), 16);
+        }
+        for (int i = 0; i < 6; i++) {
+            data[12 + i] = instance.charAt(i);
+        }
+
+        return advertisement(data);
+    }
+
+    @Test
+    public void decodesUidFrames() {
+        EddystoneFrame frame = new EddystoneFrame();
+        long[] namespace = EddystoneFrame.parseNamespace("F7826DA6BC5B71E0893E");
+
+        assertTrue(frame.parse(uid("F7826DA6BC5B71E0893E", "J8Afaf", -20)));
+        assertEquals(EddystoneFrame.FRAME_UID, frame.getFrameType());
+        assertEquals(-20, frame.getTxPower());
+        assertEquals(0xF782L, frame.getNamespaceHigh());
+        assertEquals(0x6DA6BC5B71E0893EL, frame.getNamespaceLow());
+        assertTrue(frame.isInNamespace(namespace[0], namespace[1]));
+        assertEquals(EddystoneFrame.instanceOf("J8Afaf"), frame.getInstance());
+        assertEquals(0x4A3841666166L, frame.getInstance());
+
+        assertTrue(frame.parse(uid("F7826DA6BC5B71E0893F", "J8Afaf", -20)));
+        assertFalse(frame.isInNamespace(namespace[0], namespace[1]));
+    }
+
+    @Test
+    public void decodesTlmFrames() {
+        EddystoneFrame frame = new EddystoneFrame();
+
+        assertTrue(frame.parse(advertisement(0x20, 0x00, 0x0B, 0xB8, 0x17, 0x80,
+                0x00, 0x00, 0x01, 0x00, 0x00, 0x00, 0x27, 0x10)));
+        assertEquals(EddystoneFrame.FRAME_TLM, frame.getFrameType());
+        assertEquals(3000, frame.getBatteryMillivolts());
+        assertEquals(23.5f, frame.getTemperature(), 0);
+        assertEquals(256, frame.getAdvertisementCount());
+        assertEquals(10000, frame.getUptimeTenths());
+
+        assertTrue(frame.parse(advertisement(0x20, 0x00, 0x00, 0x00, 0x80, 0x00,
+                0, 0, 0, 0, 0, 0, 0, 0)));
+        assertTrue(Float.isNaN(frame.getTemperature()));
+        assertFalse(frame.isInNamespace(0, 0));
+
+        assertTrue(frame.parse(advertisement(0x20, 0x00, 0x00, 0x00, 0xFF, 0x00,
+                0, 0, 0, 0, 0, 0, 0, 0)));
+        assertEquals(-1f, frame.getTemperature(), 0);
+    }
+
+    @Test
+    public void rejectsOtherAndMalformedAdvertisements() {
+        EddystoneFrame frame = new EddystoneFrame();
+
+        // iBeacon manufacturer data
+        assertFalse(frame.parse(new byte[] {0x02, 0x01, 0x06, 0x1A, (byte) 0xFF, 0x4C, 0x00,
+                0x02, 0x15, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0,
+                (byte) 0xC5}));
+        assertEquals(EddystoneFrame.FRAME_NONE, frame.getFrameType());
+
+        // Truncated UID frame, a structure running past the end, unknown frame type
+        assertFalse(frame.parse(advertisement(0x00, 0xEC, 1, 2, 3)));
+        byte[] cut = uid("F7826DA6BC5B71E0893E", "J8Afaf", -20);
+        assertFalse(frame.parse(cut, 0, cut.length - 1));
+        assertFalse(frame.parse(advertisement(0x50, 0x00)));
+        assertFalse(frame.parse(null));
+        assertFalse(frame.parse(new byte[31]));
+    }
+
+    @Test
+    public void filterDataMatchesUidFramesOfTheNamespace() {
+        long[] namespace = EddystoneFrame.parseNamespace("F7826DA6BC5B71E0893E");
+        byte[] data = EddystoneFrame.getUidFilterData(namespace[0], namespace[1]);
+        byte[] mask = EddystoneFrame.getUidFilterMask();
+        byte[] record = uid("F7826DA6BC5B71E0893E", "J8Afaf", -20);
+
+        // Service data of the advertisement starts after the UUID
+        int start = HEADER.length + 4;
+        for (int i = 0; i < data.length; i++) {
+            assertEquals((byte) (record[start + i] & mask[i]), data[i]);
+        }
+        assertEquals(0, mask[1]);
+    }
+}
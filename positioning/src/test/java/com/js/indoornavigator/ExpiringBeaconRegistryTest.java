@@ -0,0 +1,122 @@
+package com.js.indoornavigator;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ExpiringBeaconRegistryTest {
+
+    private static final long SECOND = 1000000000L;
+    private static final long TICK = 250 * 1000000L;
+
+    private final List<String> events = new ArrayList<String>();
+
+    private final ExpiringBeaconRegistry.Listener listener = new ExpiringBeaconRegistry.Listener() {
+        @Override
+        public void onAdded(int entry, long key) {
+            events.add("added " + key);
+        }
+
+        @Override
+        public void onRemoved(int entry, long key, boolean evicted) {
+            events.add((evicted ? "evicted " : "expired ") + key);
+        }
+    };
+
+    @Test
+    public void registersAdvertisersTheFirstTimeTheyAreHeard() {
+        ExpiringBeaconRegistry registry = new ExpiringBeaconRegistry(4, 10 * SECOND, TICK, listener);
+
+        int entry = registry.observe(0xAABBCCDDEEFFL, -60, SECOND);
+        assertEquals(entry, registry.observe(0xAABBCCDDEEFFL, -55, 2 * SECOND));
+        assertEquals(entry, registry.indexOf(0xAABBCCDDEEFFL));
+        assertEquals(-1, registry.indexOf(0x112233445566L));
+        assertEquals(1, registry.size());
+        assertEquals(-55, registry.getRssi(entry));
+        assertEquals(2 * SECOND, registry.getLastHeardNanos(entry));
+        assertEquals(1, events.size());
+    }
+
+    @Test
+    public void expiresOnlyAdvertisersNotHeardWithinTheTtl() {
+        ExpiringBeaconRegistry registry = new ExpiringBeaconRegistry(4, 10 * SECOND, TICK, listener);
+        registry.observe(1, -60, 0);
+        registry.observe(2, -60, 0);
+
+        // 2 is heard again, so only 1 expires
+        registry.observe(2, -60, 6 * SECOND);
+        assertEquals(0, registry.expire(9 * SECOND));
+        assertEquals(1, registry.expire(10 * SECOND + TICK));
+        assertEquals(-1, registry.indexOf(1));
+        assertTrue(registry.indexOf(2) >= 0);
+
+        assertEquals(1, registry.expire(16 * SECOND + TICK));
+        assertEquals(0, registry.size());
+        assertEquals(2, registry.getExpiredCount());
+        assertEquals("expired 2", events.get(events.size() - 1));
+    }
+
+    @Test
+    public void expiresAfterTtlsBeyondTheWheel() {
+        long ttl = 3 * ExpiringBeaconRegistry.WHEEL_SIZE * TICK;
+        ExpiringBeaconRegistry registry = new ExpiringBeaconRegistry(4, ttl, TICK, listener);
+        registry.observe(7, -60, 0);
+
+        for (long now = 0; now < ttl; now += SECOND) {
+            assertEquals(0, registry.expire(now));
+        }
+        assertEquals(1, registry.expire(ttl + TICK));
+
+        // Long pauses skip ahead without losing anyone heard since
+        registry.observe(8, -60, ttl + TICK);
+        assertEquals(1, registry.expire(100 * ttl));
+    }
+
+    @Test
+    public void evictsTheLeastRecentlyHeardWhenFull() {
+        ExpiringBeaconRegistry registry = new ExpiringBeaconRegistry(3, 10 * SECOND, TICK, listener);
+        int first = registry.observe(1, -60, 0);
+        registry.observe(2, -60, SECOND);
+        registry.observe(3, -60, 2 * SECOND);
+        registry.observe(1, -60, 3 * SECOND);
+        assertEquals(registry.indexOf(2), registry.getLeastRecentlyHeard());
+
+        registry.observe(4, -60, 4 * SECOND);
+        assertEquals(-1, registry.indexOf(2));
+        assertEquals(first, registry.indexOf(1));
+        assertEquals(3, registry.size());
+        assertEquals(1, registry.getEvictedCount());
+        assertEquals("evicted 2", events.get(3));
+        assertEquals("added 4", events.get(4));
+    }
+
+    @Test
+    public void keepsKeysReachableAfterRemovals() {
+        ExpiringBeaconRegistry registry = new ExpiringBeaconRegistry(64, 10 * SECOND, TICK, null);
+        for (int round = 0; round < 20; round++) {
+            for (long key = 0; key < 64; key++) {
+                registry.observe(round * 1000 + key, -60, 0);
+            }
+            for (long key = 0; key < 64; key += 2) {
+                assertTrue(registry.remove(round * 1000 + key));
+            }
+            for (long key = 1; key < 64; key += 2) {
+                assertTrue(registry.remove(round * 1000 + key));
+            }
+            assertEquals(0, registry.size());
+        }
+
+        for (long key = 0; key < 64; key++) {
+            registry.observe(key * 0x10000000L, -60, 0);
+        }
+        for (long key = 0; key < 64; key += 3) {
+            registry.remove(key * 0x10000000L);
+        }
+        for (long key = 0; key < 64; key++) {
+            assertEquals(key % 3 != 0, registry.indexOf(key * 0x10000000L) >= 0);
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.js.indoornavigator;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class FloorPlanTest {
+
+    @Test
+    public void tilesRoundTrip() throws IOException {
+        // 1000 x 600 pixels in 256 pixel tiles: 4 x 3, 2 x 2 and 1 x 1 tiles
+        byte[] file = createPlan(256, 1000, 600, 3);
+        FloorPlan plan = FloorPlanFile.read(ByteBuffer.wrap(file));
+
+        assertEquals(3, plan.getLevelCount());
+        assertEquals(4, plan.getColumns(0));
+        assertEquals(3, plan.getRows(0));
+        assertEquals(500, plan.getWidth(1));
+        assertEquals(2, plan.getColumns(1));
+        assertEquals(2, plan.getRows(1));
+        assertEquals(1, plan.getColumns(2));
+        assertEquals(10f, plan.getWidthMetres(), 1e-4);
+
+        byte[] data = new byte[64];
+        for (int level = 0; level < plan.getLevelCount(); level++) {
+            for (int row = 0; row < plan.getRows(level); row++) {
+                for (int column = 0; column < plan.getColumns(level); column++) {
+                    int length = plan.readTile(level, column, row, data);
+                    if (column == 1 && row == 1 && level == 0) {
+                        // Left empty by createPlan
+                        assertEquals(0, length);
+                        continue;
+                    }
+                    assertEquals(plan.getTileLength(level, column, row), length);
+                    assertArrayEquals(tile(level, column, row), Arrays.copyOf(data, length));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void mappedFileMatches() throws IOException {
+        File file = File.createTempFile("floorplan", ".bin");
+        file.deleteOnExit();
+        FileOutputStream out = new FileOutputStream(file);
+        out.write(createPlan(64, 300, 200, 4));
+        out.close();
+
+        FloorPlan plan = FloorPlanFile.map(file);
+        byte[] data = new byte[64];
+        int length = plan.readTile(3, 0, 0, data);
+        assertArrayEquals(tile(3, 0, 0), Arrays.copyOf(data, length));
+    }
+
+    @Test
+    public void levelFollowsZoom() throws IOException {
+        // 0.01 metres per pixel: 100 pixels per metre at level 0
+        FloorPlan plan = FloorPlanFile.read(ByteBuffer.wrap(createPlan(256, 1000, 600, 3)));
+
+        assertEquals(0, plan.selectLevel(200));
+        assertEquals(0, plan.selectLevel(100));
+        assertEquals(0, plan.selectLevel(60));
+        assertEquals(1, plan.selectLevel(50));
+        assertEquals(1, plan.selectLevel(30));
+        assertEquals(2, plan.selectLevel(25));
+        assertEquals(2, plan.selectLevel(1));
+    }
+
+    @Test
+    public void tilesArePlacedInMetres() throws IOException {
+        FloorPlan plan = FloorPlanFile.read(ByteBuffer.wrap(createPlan(256, 1000, 600, 3)));
+
+        // Origin at -1, 2 metres
+        assertEquals(-1 + 2.56f, plan.getTileX(0, 1), 1e-4);
+        assertEquals(2 + 5.12f, plan.getTileY(1, 1), 1e-4);
+        assertEquals(1, plan.getColumnAt(0, 2f));
+        assertEquals(-1, plan.getColumnAt(0, -1.5f));
+        assertEquals(0, plan.getRowAt(2, 7f));
+    }
+
+    @Test
+    public void tileKeysRoundTrip() {
+        long key = FloorPlan.tileKey(5, 1234, 98765);
+        assertEquals(5, FloorPlan.getKeyLevel(key));
+        assertEquals(1234, FloorPlan.getKeyColumn(key));
+        assertEquals(98765, FloorPlan.getKeyRow(key));
+        assertNotEquals(key, FloorPlan.tileKey(5, 98765, 1234));
+    }
+
+    @Test(expected = IOException.class)
+    public void truncatedPlanIsRejected() throws IOException {
+        byte[] file = createPlan(256, 1000, 600, 3);
+        FloorPlanFile.read(ByteBuffer.wrap(Arrays.copyOf(file, file.length - 1)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void incompletePyramidIsRejected() throws IOException {
+        FloorPlanFile.write(new ByteArrayOutputStream(), 256, 1000, 600, 0.01f, 0, 0,
+                new byte[13][]);
+    }
+
+    // Pyramid whose tiles hold their own position, except for tile 1, 1 of level 0
+    private static byte[] createPlan(int tileSize, int width, int height, int levels)
+            throws IOException {
+        byte[][] tiles = new byte[FloorPlanFile.getTileCount(tileSize, levels, width, height)][];
+        int i = 0;
+        for (int level = 0; level < levels; level++) {
+            int levelWidth = (width + (1 << level) - 1) >> level;
+            int levelHeight = (height + (1 << level) - 1) >> level;
+            for (int row = 0; row < (levelHeight + tileSize - 1) / tileSize; row++) {
+                for (int column = 0; column < (levelWidth + tileSize - 1) / tileSize; column++) {
+                    tiles[i++] = level == 0 && column == 1 && row == 1 ? null
+                            : tile(level, column, row);
+                }
+            }
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        FloorPlanFile.write(out, tileSize, width, height, 0.01f, -1, 2, tiles);
+        return out.toByteArray();
+    }
+
+    private static byte[] tile(int level, int column, int row) {
+        return ("tile " + level + " " + column + " " + row).getBytes();
+    }
+}
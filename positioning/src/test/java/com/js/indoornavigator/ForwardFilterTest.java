@@ -0,0 +1,82 @@
+package com.js.indoornavigator;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ForwardFilterTest {
+
+    @Test
+    public void convergesOnObservedBeacon() {
+        ForwardFilter filter = new ForwardFilter(BeaconNetwork.createDefault());
+
+        for (int i = 0; i < 5; i++) {
+            filter.update(new int[]{1, 0}, new int[]{-58, -80}, 2);
+        }
+
+        assertEquals(1, filter.getMostLikelyNode());
+        assertTrue(filter.getProbability(1) > 0.9);
+
+        double sum = 0;
+        for (int i = 0; i < filter.getNodeCount(); i++) {
+            sum += filter.getProbability(i);
+        }
+        assertEquals(1, sum, 1e-9);
+    }
+
+    @Test
+    public void doesNotJumpAcrossTheNetworkOnOneReading() {
+        ForwardFilter filter = new ForwardFilter(BeaconNetwork.createDefault());
+        for (int i = 0; i < 10; i++) {
+            filter.update(new int[]{0}, new int[]{-60}, 1);
+        }
+
+        // Beacon 5 is three hops away from beacon 1, so one reading cannot reach it
+        filter.update(new int[]{4}, new int[]{-62}, 1);
+        assertTrue(filter.getMostLikelyNode() != 4);
+
+        // Repeated readings move the estimate along the network
+        for (int i = 0; i < 30; i++) {
+            filter.update(new int[]{4}, new int[]{-62}, 1);
+        }
+        assertEquals(4, filter.getMostLikelyNode());
+    }
+
+    @Test
+    public void predictionFollowsEdges() {
+        BeaconNetwork network = new BeaconNetwork.Builder(3).addEdge(0, 1).build();
+        ForwardFilter filter = new ForwardFilter(network);
+        for (int i = 0; i < 20; i++) {
+            filter.update(new int[]{0}, new int[]{-55}, 1);
+        }
+        double isolated = filter.getProbability(2);
+
+        filter.predict();
+
+        // Node 2 has no edges, so no probability flows into it
+        assertEquals(isolated, filter.getProbability(2), 1e-15);
+        assertTrue(filter.getProbability(1) > isolated);
+    }
+
+    @Test
+    public void survivesManyStrongReadingsInOneUpdate() {
+        ForwardFilter filter = new ForwardFilter(BeaconNetwork.createDefault());
+
+        // Each reading weighs beacon 1 by about e^25, beyond a double after a few dozen
+        int[] beacons = new int[200];
+        int[] rssis = new int[200];
+        for (int i = 0; i < beacons.length; i++) {
+            beacons[i] = 1;
+            rssis[i] = -20;
+        }
+
+        assertEquals(1, filter.update(beacons, rssis, beacons.length));
+        assertEquals(1, filter.update(beacons, rssis, beacons.length));
+
+        double sum = 0;
+        for (int i = 0; i < filter.getNodeCount(); i++) {
+            sum += filter.getProbability(i);
+        }
+        assertEquals(1, sum, 1e-9);
+    }
+}
@@ -0,0 +1,104 @@
+package com.js.indoornavigator;
+
+import org.junit.Test;
+
+import java.io.StringWriter;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void bucketsCoverEveryValueWithoutGaps() {
+        assertEquals(0, LatencyHistogram.getLowerBound(0));
+        for (int i = 1; i < LatencyHistogram.BUCKET_COUNT; i++) {
+            assertEquals(LatencyHistogram.getUpperBound(i - 1) + 1, LatencyHistogram.getLowerBound(i));
+            assertEquals(i, LatencyHistogram.getBucket(LatencyHistogram.getLowerBound(i)));
+            assertEquals(i, LatencyHistogram.getBucket(LatencyHistogram.getUpperBound(i)));
+        }
+        assertEquals(Long.MAX_VALUE, LatencyHistogram.getUpperBound(LatencyHistogram.BUCKET_COUNT - 1));
+    }
+
+    @Test
+    public void percentilesAreWithinBucketPrecision() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 10000; i++) {
+            histogram.record(i * 1000L);
+        }
+
+        assertEquals(10000, histogram.getCount());
+        assertEquals(10000000, histogram.getMax());
+        assertEquals(5000500, histogram.getMean(), 1);
+        assertEquals(5000000, histogram.getPercentile(50), 5000000 / 8.0);
+        assertEquals(9900000, histogram.getPercentile(99), 9900000 / 8.0);
+        assertTrue(histogram.getPercentile(50) >= 5000000);
+        assertEquals(10000000, histogram.getPercentile(100));
+
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getPercentile(50));
+    }
+
+    @Test
+    public void concurrentRecordingKeepsEveryValue() throws InterruptedException {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        final int perThread = 20000;
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            final long seed = t;
+            threads[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Random random = new Random(seed);
+                    for (int i = 0; i < perThread; i++) {
+                        histogram.record(random.nextInt(1000000));
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        long total = 0;
+        for (int i = 0; i < LatencyHistogram.BUCKET_COUNT; i++) {
+            total += histogram.getCount(i);
+        }
+        assertEquals(threads.length * perThread, histogram.getCount());
+        assertEquals(threads.length * perThread, total);
+    }
+
+    @Test
+    public void engineRecordsStagesAndExportsThem() throws Exception {
+        String[] uuids = {"D5:00:25:D5:22:A9", "FF:48:85:91:B0:0D", "E7:4E:95:C8:62:A3",
+                "DE:38:78:85:1C:6D", "D1:07:0C:8F:45:90"};
+        Beacon[] beacons = new Beacon[uuids.length];
+        for (int i = 0; i < beacons.length; i++) {
+            beacons[i] = new Beacon(i + 1, "beacon" + i, uuids[i]);
+        }
+        PositioningEngine engine = new PositioningEngine(beacons, BeaconNetwork.createDefault());
+        PipelineMetrics metrics = new PipelineMetrics(beacons.length);
+        engine.setMetrics(metrics);
+        engine.setMode(PositioningEngine.MODE_BAYES);
+
+        for (int i = 1; i <= 10; i++) {
+            engine.onScanResult(uuids[0], -60, i * 100000000L);
+        }
+
+        assertEquals(10, metrics.getStage(PipelineMetrics.FILTER).getCount());
+        assertEquals(10, metrics.getStage(PipelineMetrics.ESTIMATE).getCount());
+        assertEquals(10, metrics.getStage(PipelineMetrics.UPDATE).getCount());
+        assertEquals(9, metrics.getStage(PipelineMetrics.PLAUSIBILITY).getCount());
+        assertEquals(9, metrics.getBeaconInterval(0).getCount());
+        assertEquals(100000000L, metrics.getBeaconInterval(0).getMax());
+        assertEquals(100000000L, engine.getPositionTimestamp());
+
+        StringWriter out = new StringWriter();
+        metrics.writeCsv(out);
+        String csv = out.toString();
+        assertTrue(csv.startsWith("histogram,count,"));
+        assertTrue(csv.contains("\nbeacon 0 interval,9,100000000,"));
+    }
+}
@@ -0,0 +1,52 @@
+package com.js.indoornavigator;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class MapViewportTest {
+
+    @Test
+    public void zoomKeepsFocusInPlace() {
+        MapViewport viewport = new MapViewport();
+        viewport.set(20, 100, 50);
+        float x = viewport.toMapX(300);
+        float y = viewport.toMapY(400);
+
+        viewport.zoom(2.5f, 300, 400);
+        assertEquals(50, viewport.getScale(), 1e-4);
+        assertEquals(300, viewport.toScreenX(x), 1e-3);
+        assertEquals(400, viewport.toScreenY(y), 1e-3);
+    }
+
+    @Test
+    public void zoomIsLimited() {
+        MapViewport viewport = new MapViewport();
+        viewport.setScaleLimits(10, 100);
+        viewport.set(50, 0, 0);
+        float x = viewport.toMapX(200);
+
+        viewport.zoom(10, 200, 0);
+        assertEquals(100, viewport.getScale(), 1e-4);
+        assertEquals(200, viewport.toScreenX(x), 1e-3);
+
+        viewport.zoom(0.001f, 200, 0);
+        assertEquals(10, viewport.getScale(), 1e-4);
+    }
+
+    @Test
+    public void panAndFit() {
+        MapViewport viewport = new MapViewport();
+        viewport.fit(0, 0, 12, 6, 1200, 1000);
+
+        // Limited by the width: 100 pixels per metre, centred vertically
+        assertEquals(100, viewport.getScale(), 1e-4);
+        assertEquals(0, viewport.toScreenX(0), 1e-3);
+        assertEquals(200, viewport.toScreenY(0), 1e-3);
+        assertEquals(800, viewport.toScreenY(6), 1e-3);
+
+        viewport.pan(-100, 50);
+        assertEquals(1, viewport.toMapX(0), 1e-4);
+        assertEquals(-0.5f, viewport.toMapY(200), 1e-4);
+    }
+}
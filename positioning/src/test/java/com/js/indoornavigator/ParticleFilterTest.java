@@ -0,0 +1,126 @@
+package com.js.indoornavigator;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ParticleFilterTest {
+
+    // Four beacons in the corners of a 10 m square
+    private static final float[] BEACON_X = {0, 10, 0, 10};
+    private static final float[] BEACON_Y = {0, 0, 10, 10};
+    private static final int[] BEACONS = {0, 1, 2, 3};
+
+    @Test
+    public void convergesOnPositionBetweenBeacons() {
+        assertConverges(new ParticleFilter(1000, BEACON_X, BEACON_Y, new PathLossModel(), 42));
+    }
+
+    @Test
+    public void parallelUpdateConverges() {
+        ParticleFilter filter = new ParticleFilter(ParticleFilter.PARALLEL_THRESHOLD * 2,
+                BEACON_X, BEACON_Y, new PathLossModel(), 7, 4);
+        assertEquals(4, filter.getThreadCount());
+        try {
+            assertConverges(filter);
+        } finally {
+            filter.close();
+        }
+    }
+
+    @Test
+    public void workersRestartAfterClose() {
+        ParticleFilter filter = new ParticleFilter(ParticleFilter.PARALLEL_THRESHOLD,
+                BEACON_X, BEACON_Y, new PathLossModel(), 7, 2);
+        filter.update(BEACONS, expectedRssis(3, 6), BEACONS.length);
+        filter.close();
+
+        assertConverges(filter);
+        filter.close();
+    }
+
+    @Test
+    public void spreadsWithElapsedTimeRatherThanUpdates() {
+        ParticleFilter filter = new ParticleFilter(1000, BEACON_X, BEACON_Y, new PathLossModel(), 3);
+        assertConverges(filter);
+        double before = getSpread(filter);
+
+        // A second of updates at 100 per second spreads like a single one second step
+        for (int i = 0; i < 100; i++) {
+            filter.update(BEACONS, new int[0], 0, 10 * 1000000L);
+        }
+
+        double spread = getSpread(filter);
+        assertEquals(Math.sqrt(before * before + 1), spread, 0.3);
+    }
+
+    @Test
+    public void usesTheTxPowerOfEachBeacon() {
+        float[] txPower = {-50, -50, -70, -70};
+        ParticleFilter filter = new ParticleFilter(1000, BEACON_X, BEACON_Y, txPower,
+                new PathLossModel(), 42);
+
+        int[] rssis = expectedRssis(3, 6);
+        for (int i = 0; i < rssis.length; i++) {
+            rssis[i] += Math.round(txPower[i] - PathLossModel.DEFAULT_TX_POWER);
+        }
+        for (int i = 0; i < 30; i++) {
+            filter.update(BEACONS, rssis, BEACONS.length);
+        }
+
+        assertEquals(3, filter.getX(), 1);
+        assertEquals(6, filter.getY(), 1);
+    }
+
+    @Test
+    public void resamplesWhenWeightsDegenerate() {
+        ParticleFilter filter = new ParticleFilter(500, BEACON_X, BEACON_Y, new PathLossModel(), 1);
+        filter.update(BEACONS, expectedRssis(2, 2), BEACONS.length);
+
+        assertTrue(filter.getResampleCount() > 0);
+        assertTrue(filter.getEffectiveSampleSize() <= filter.getParticleCount());
+    }
+
+    private void assertConverges(ParticleFilter filter) {
+        int[] rssis = expectedRssis(3, 6);
+        for (int i = 0; i < 30; i++) {
+            filter.update(BEACONS, rssis, BEACONS.length);
+        }
+
+        assertEquals(3, filter.getX(), 1);
+        assertEquals(6, filter.getY(), 1);
+    }
+
+    // Root mean square distance of the particles from their mean, per axis
+    private double getSpread(ParticleFilter filter) {
+        double meanX = 0;
+        double meanY = 0;
+        for (int i = 0; i < filter.getParticleCount(); i++) {
+            meanX += filter.getParticleX(i);
+            meanY += filter.getParticleY(i);
+        }
+        meanX /= filter.getParticleCount();
+        meanY /= filter.getParticleCount();
+
+        double sum = 0;
+        for (int i = 0; i < filter.getParticleCount(); i++) {
+            double dx = filter.getParticleX(i) - meanX;
+            double dy = filter.getParticleY(i) - meanY;
+            sum += dx * dx + dy * dy;
+        }
+        return Math.sqrt(sum / filter.getParticleCount() / 2);
+    }
+
+    // RSSI values the path loss model predicts for a device at (x, y)
+    private int[] expectedRssis(float x, float y) {
+        PathLossModel model = new PathLossModel();
+        int[] rssis = new int[BEACON_X.length];
+        for (int i = 0; i < rssis.length; i++) {
+            double dx = x - BEACON_X[i];
+            double dy = y - BEACON_Y[i];
+            rssis[i] = (int) Math.round(model.rssiAtDistance(Math.sqrt(dx * dx + dy * dy)));
+        }
+
+        return rssis;
+    }
+}
@@ -0,0 +1,306 @@
+package com.js.indoornavigator;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+public class PositioningEngineTest {
+
+    private static final String[] UUIDS = {"D5:00:25:D5:22:A9", "FF:48:85:91:B0:0D",
+            "E7:4E:95:C8:62:A3", "DE:38:78:85:1C:6D", "D1:07:0C:8F:45:90"};
+
+    private PositioningEngine engine;
+    private int notifications;
+
+    @Before
+    public void setUp() {
+        Beacon[] beacons = new Beacon[UUIDS.length];
+        for (int i = 0; i < beacons.length; i++) {
+            beacons[i] = new Beacon(i + 1, "beacon" + i, UUIDS[i]);
+        }
+
+        engine = new PositioningEngine(beacons, BeaconNetwork.createDefault());
+        engine.setMode(PositioningEngine.MODE_HIGHEST_RSSI);
+        engine.addOnPositionChangedListener(new PositioningEngine.OnPositionChangedListener() {
+            @Override
+            public void onPositionChanged(PositioningEngine engine) {
+                notifications++;
+            }
+        });
+    }
+
+    @Test
+    public void notifiesOnlyWhenPositionChanges() {
+        engine.onScanResult(UUIDS[1], -60, 1);
+        engine.onScanResult(UUIDS[1], -58, 2);
+        engine.onScanResult(UUIDS[0], -70, 3);
+
+        assertEquals(2, engine.getCurrentPosition());
+        assertEquals(1, notifications);
+
+        engine.onScanResult(UUIDS[2], -40, 4);
+
+        assertEquals(3, engine.getCurrentPosition());
+        assertEquals(2, notifications);
+        assertEquals(4, engine.getUpdateCount());
+        assertEquals(2, engine.getPositionChangeCount());
+    }
+
+    @Test
+    public void listenerCanRemoveItselfWhileNotified() {
+        final int[] calls = new int[1];
+        engine.addOnPositionChangedListener(new PositioningEngine.OnPositionChangedListener() {
+            @Override
+            public void onPositionChanged(PositioningEngine engine) {
+                calls[0]++;
+                engine.removeOnPositionChangedListener(this);
+            }
+        });
+
+        engine.onScanResult(UUIDS[1], -60, 1);
+        engine.onScanResult(UUIDS[2], -40, 2);
+
+        // The other listener keeps being called
+        assertEquals(1, calls[0]);
+        assertEquals(2, notifications);
+    }
+
+    @Test
+    public void densityWindowKeepsOnlyRecentSamples() {
+        long millisecond = 1000000L;
+        engine.setMode(PositioningEngine.MODE_DENSITY1);
+        for (int i = 1; i <= 20; i++) {
+            engine.onScanResult(UUIDS[1], -50, i * millisecond);
+        }
+        assertEquals(2, engine.getCurrentPosition());
+
+        // The earlier samples have left the window, however many there were
+        engine.onScanResult(UUIDS[2], -40, 6000 * millisecond);
+        assertEquals(3, engine.getCurrentPosition());
+    }
+
+    @Test
+    public void ignoresUnknownBeacons() {
+        engine.onScanResult("00:00:00:00:00:00", -30, 1);
+
+        assertFalse(engine.hasPosition());
+        assertEquals(0, notifications);
+    }
+
+    @Test
+    public void beaconsNotHeardWithinTheTtlAreNoLongerActive() {
+        long second = 1000000000L;
+        engine.setBeaconTtl(5 * second);
+        engine.onScanResult(UUIDS[1], -50, second);
+        engine.onScanResult(UUIDS[0], -70, 2 * second);
+        assertEquals(2, engine.getCurrentPosition());
+
+        // Beacon 1 falls silent, so the weaker beacon 0 is now the strongest heard
+        engine.onScanResult(UUIDS[0], -70, 7 * second);
+        assertFalse(engine.getRegistry().isActive(1));
+        assertEquals(1, engine.getCurrentPosition());
+        assertEquals(1, engine.getLiveBeacons().size());
+    }
+
+    @Test
+    public void processesSubmittedSamplesOnItsThread() throws Exception {
+        final CountDownLatch changed = new CountDownLatch(1);
+        engine.addOnPositionChangedListener(new PositioningEngine.OnPositionChangedListener() {
+            @Override
+            public void onPositionChanged(PositioningEngine engine) {
+                if (engine.hasPosition() && engine.getCurrentPosition() == 2) {
+                    changed.countDown();
+                }
+            }
+        });
+
+        engine.start();
+        try {
+            engine.submit(MacAddress.parse(UUIDS[0]), -80, 1);
+            engine.submit(MacAddress.parse(UUIDS[1]), -50, 2);
+
+            assertTrue(changed.await(5, TimeUnit.SECONDS));
+        } finally {
+            engine.stop();
+        }
+    }
+
+    @Test
+    public void computesPositionOncePerBatch() throws Exception {
+        final CountDownLatch changed = new CountDownLatch(1);
+        engine.addOnPositionChangedListener(new PositioningEngine.OnPositionChangedListener() {
+            @Override
+            public void onPositionChanged(PositioningEngine engine) {
+                changed.countDown();
+            }
+        });
+
+        // The batch is queued before the positioning thread runs, so it is drained at once
+        for (int i = 0; i < UUIDS.length; i++) {
+            engine.enqueue(MacAddress.parse(UUIDS[i]), -90 + i * 10, i + 1);
+        }
+
+        engine.start();
+        try {
+            assertTrue(changed.await(5, TimeUnit.SECONDS));
+        } finally {
+            engine.stop();
+        }
+
+        assertEquals(5, engine.getSampleCount());
+        assertEquals(1, engine.getUpdateCount());
+        assertEquals(5, engine.getCurrentPosition());
+    }
+
+    @Test
+    public void losesThePositionWhenEveryBeaconFallsSilent() {
+        long second = 1000000000L;
+        engine.setBeaconTtl(5 * second);
+        engine.onScanResult(UUIDS[1], -50, second);
+        engine.onScanResult(UUIDS[0], -70, 2 * second);
+        assertTrue(engine.hasPosition());
+
+        // Nothing more is heard; only time passes
+        engine.expireBeacons(4 * second);
+        assertTrue(engine.hasPosition());
+        engine.expireBeacons(6 * second + second / 2);
+        assertTrue(engine.hasPosition());
+        assertEquals(1, engine.getCurrentPosition());
+        engine.expireBeacons(8 * second);
+        assertFalse(engine.hasPosition());
+        assertFalse(engine.getRegistry().isActive(0));
+        assertEquals(3, notifications);
+    }
+
+    @Test
+    public void positioningThreadExpiresSilentBeacons() throws Exception {
+        final CountDownLatch lost = new CountDownLatch(1);
+        engine.addOnPositionChangedListener(new PositioningEngine.OnPositionChangedListener() {
+            @Override
+            public void onPositionChanged(PositioningEngine engine) {
+                if (!engine.hasPosition() && engine.getPositionTimestamp() != 0) {
+                    lost.countDown();
+                }
+            }
+        });
+        engine.setBeaconTtl(200 * 1000000L);
+
+        engine.start();
+        try {
+            engine.submit(MacAddress.parse(UUIDS[1]), -50, System.nanoTime());
+            assertTrue(lost.await(5, TimeUnit.SECONDS));
+        } finally {
+            engine.stop();
+        }
+        assertFalse(engine.getRegistry().isActive(1));
+    }
+
+    @Test
+    public void positioningThreadExpiresBeaconsInTheSampleClock() throws Exception {
+        final long second = 1000000000L;
+        final AtomicLong now = new AtomicLong(second);
+        engine.setClock(new PositioningEngine.Clock() {
+            @Override
+            public long nowNanos() {
+                return now.get();
+            }
+        });
+        final CountDownLatch lost = new CountDownLatch(1);
+        engine.addOnPositionChangedListener(new PositioningEngine.OnPositionChangedListener() {
+            @Override
+            public void onPositionChanged(PositioningEngine engine) {
+                if (!engine.hasPosition() && engine.getPositionTimestamp() != 0) {
+                    lost.countDown();
+                }
+            }
+        });
+
+        engine.start();
+        try {
+            // The clock stands still, so the beacon outlives several liveness ticks
+            engine.submit(MacAddress.parse(UUIDS[1]), -50, second);
+            assertFalse(lost.await(1, TimeUnit.SECONDS));
+            assertTrue(engine.hasPosition());
+
+            now.set(20 * second);
+            assertTrue(lost.await(5, TimeUnit.SECONDS));
+        } finally {
+            engine.stop();
+        }
+        assertEquals(20 * second, engine.getPositionTimestamp());
+    }
+
+    @Test
+    public void foreignAdvertisersDoNotEvictBeacons() {
+        engine.onScanResult(UUIDS[1], -50, 1);
+        for (int i = 0; i < 1000; i++) {
+            engine.onScanResult(0xA0000000L + i, -40, 2 + i);
+        }
+
+        assertTrue(engine.getRegistry().isActive(1));
+        assertEquals(2, engine.getCurrentPosition());
+        assertEquals(1, engine.getLiveBeacons().size());
+        assertEquals(0, engine.getLiveBeacons().getEvictedCount());
+        assertEquals(64, engine.getForeignAdvertisers().size());
+    }
+
+    @Test
+    public void keepsRssiStatisticsOnlyForTheFingerprintMode() {
+        engine.onScanResult(UUIDS[1], -50, 1);
+        assertNull(engine.getEstimator(PositioningEngine.MODE_FINGERPRINT));
+
+        engine.setMode(PositioningEngine.MODE_FINGERPRINT);
+        engine.onScanResult(UUIDS[1], -50, 2);
+        engine.onScanResult(UUIDS[1], -54, 3);
+        RssiWindowStatistics statistics = ((FingerprintEstimator) engine.getEstimator(
+                PositioningEngine.MODE_FINGERPRINT)).getRssiStatistics();
+        assertEquals(2, statistics.getCount(1, 10, 3));
+        assertEquals(-52, statistics.getMean(1, 10, 3), 1e-9);
+
+        // Other modes leave the statistics alone
+        engine.setMode(PositioningEngine.MODE_HIGHEST_RSSI);
+        engine.onScanResult(UUIDS[1], -60, 4);
+        assertEquals(2, statistics.getCount(1, 10, 4));
+    }
+
+    @Test
+    public void runsMethodsRegisteredInTheTable() {
+        int mode = PositionEstimators.register("Fixed", null, new PositionEstimators.Factory() {
+            @Override
+            public PositionEstimator create(PositioningEngine engine) {
+                return new HighestRssiEstimator() {
+                    @Override
+                    public boolean update(Observations observations) {
+                        return observations.getObservedCount() > 0;
+                    }
+
+                    @Override
+                    public int getQuadrant() {
+                        return 3;
+                    }
+                };
+            }
+        });
+
+        engine.setMode(mode);
+        engine.onScanResult(UUIDS[0], -60, 1);
+        assertEquals("Fixed", engine.getName());
+        assertTrue(engine.hasPosition());
+        assertEquals(3, engine.getCurrentPosition());
+    }
+
+    @Test
+    public void measuresUpdateRate() {
+        long interval = 100 * 1000000L;
+        for (int i = 1; i <= 25; i++) {
+            engine.onScanResult(UUIDS[0], -60, i * interval);
+        }
+
+        assertEquals(10, engine.getUpdatesPerSecond(), 0.5);
+    }
+}
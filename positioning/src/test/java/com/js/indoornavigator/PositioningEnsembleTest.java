@@ -0,0 +1,196 @@
+package com.js.indoornavigator;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+public class PositioningEnsembleTest {
+
+    private static final String[] UUIDS = {"D5:00:25:D5:22:A9", "FF:48:85:91:B0:0D",
+            "E7:4E:95:C8:62:A3", "DE:38:78:85:1C:6D", "D1:07:0C:8F:45:90"};
+    private static final long MILLISECOND = 1000000L;
+
+    private PositioningEnsemble ensemble;
+    private int notifications;
+    private long time;
+
+    @Before
+    public void setUp() {
+        Beacon[] beacons = new Beacon[UUIDS.length];
+        for (int i = 0; i < beacons.length; i++) {
+            beacons[i] = new Beacon(i + 1, "beacon" + i, UUIDS[i]);
+        }
+
+        ensemble = new PositioningEnsemble(beacons, BeaconNetwork.createDefault());
+        ensemble.addOnPositionChangedListener(new PositioningEnsemble.OnPositionChangedListener() {
+            @Override
+            public void onPositionChanged(PositioningEnsemble ensemble) {
+                notifications++;
+            }
+        });
+    }
+
+    private void hear(int beacon, int rssi) {
+        time += 50 * MILLISECOND;
+        ensemble.onScanResult(MacAddress.parse(UUIDS[beacon]), rssi, time);
+    }
+
+    @Test
+    public void followsASingleMode() {
+        ensemble.setModes(new int[] {PositioningEngine.MODE_HIGHEST_RSSI});
+        hear(1, -60);
+        hear(0, -70);
+
+        assertTrue(ensemble.hasPosition());
+        assertEquals(2, ensemble.getCurrentPosition());
+        assertEquals(1, notifications);
+        assertEquals(1, ensemble.getMemberCount());
+        assertEquals("Highest RSSI", ensemble.getName());
+    }
+
+    @Test
+    public void timestampsTheLossOfThePosition() {
+        ensemble.setModes(new int[] {PositioningEngine.MODE_HIGHEST_RSSI});
+        hear(1, -60);
+        assertEquals(time, ensemble.getPositionTimestamp());
+
+        long lost = time + PositioningEngine.DEFAULT_BEACON_TTL_NANOS + MILLISECOND;
+        ensemble.getPrimary().expireBeacons(lost);
+        assertFalse(ensemble.hasPosition());
+        assertEquals(lost, ensemble.getPositionTimestamp());
+        assertEquals(2, notifications);
+    }
+
+    @Test
+    public void majorityOutvotesAModeThatDisagrees() {
+        ensemble.setModes(new int[] {PositioningEngine.MODE_HIGHEST_RSSI,
+                PositioningEngine.MODE_DENSITY1, PositioningEngine.MODE_DENSITY2});
+        assertEquals(3, ensemble.getMemberCount());
+
+        for (int i = 0; i < 10; i++) {
+            hear(0, -50);
+        }
+        assertEquals(1, ensemble.getCurrentPosition());
+        assertEquals(0, ensemble.getDisagreementRate(0), 0);
+
+        // A single strong reading moves highest RSSI, but not the windowed density modes
+        hear(1, -40);
+        assertEquals(2, ensemble.getMember(0).getCurrentPosition());
+        assertEquals(1, ensemble.getMember(1).getCurrentPosition());
+        assertEquals(1, ensemble.getCurrentPosition());
+        assertTrue(ensemble.getDisagreementRate(0) > 0);
+        assertEquals(0, ensemble.getDisagreementRate(1), 0);
+        assertTrue(ensemble.summarize(0).startsWith("Highest RSSI: update"));
+    }
+
+    @Test
+    public void averagesTheCoordinatesOfTheWinningModes() {
+        ensemble.setModes(new int[] {PositioningEngine.MODE_WEIGHTED_CENTROID,
+                PositioningEngine.MODE_TRILATERATION});
+        for (int i = 0; i < 20; i++) {
+            hear(i % UUIDS.length, i % UUIDS.length == 2 ? -50 : -75);
+        }
+
+        PositioningEngine centroid = ensemble.getMember(0);
+        PositioningEngine trilateration = ensemble.getMember(1);
+        if (centroid.getCurrentPosition() == trilateration.getCurrentPosition()) {
+            assertTrue(ensemble.hasCoordinate());
+            assertEquals((centroid.getX() + trilateration.getX()) / 2, ensemble.getX(), 0.05f);
+            assertEquals((centroid.getY() + trilateration.getY()) / 2, ensemble.getY(), 0.05f);
+        }
+        else {
+            assertEquals(centroid.getCurrentPosition(), ensemble.getCurrentPosition());
+            assertEquals(centroid.getX(), ensemble.getX(), 0.05f);
+        }
+    }
+
+    @Test
+    public void runsFingerprintOnThePrimaryEngine() {
+        ensemble.setModes(new int[] {PositioningEngine.MODE_HIGHEST_RSSI,
+                PositioningEngine.MODE_FINGERPRINT});
+
+        assertSame(ensemble.getPrimary(), ensemble.getMember(1));
+        assertEquals(PositioningEngine.MODE_FINGERPRINT, ensemble.getPrimary().getMode());
+        assertEquals(PositioningEngine.MODE_HIGHEST_RSSI, ensemble.getMember(0).getMode());
+    }
+
+    @Test
+    public void tiesGoToTheModeSelectedFirst() throws IOException {
+        long[] macs = new long[4];
+        for (int i = 0; i < macs.length; i++) {
+            macs[i] = MacAddress.parse(UUIDS[i]);
+        }
+
+        // The survey puts the point next to beacon 0 in quadrant 3, so the modes disagree
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        RadioMapFile.write(out, macs, new float[] {1, 8}, new float[] {1, 8}, new int[] {3, 4},
+                new int[] {-50, -80, -80, RadioMapFile.MISSING_RSSI,
+                        RadioMapFile.MISSING_RSSI, -80, -80, -50});
+        ensemble.setRadioMap(RadioMapFile.read(ByteBuffer.wrap(out.toByteArray())));
+
+        ensemble.setModes(new int[] {PositioningEngine.MODE_HIGHEST_RSSI,
+                PositioningEngine.MODE_FINGERPRINT});
+        hear(0, -52);
+        hear(1, -79);
+        assertEquals(1, ensemble.getMember(0).getCurrentPosition());
+        assertEquals(3, ensemble.getMember(1).getCurrentPosition());
+        assertEquals(1, ensemble.getCurrentPosition());
+
+        ensemble.setModes(new int[] {PositioningEngine.MODE_FINGERPRINT,
+                PositioningEngine.MODE_HIGHEST_RSSI});
+        hear(0, -52);
+        hear(1, -79);
+        assertEquals(3, ensemble.getCurrentPosition());
+    }
+
+    @Test
+    public void deselectedModesDropTheirBufferedSamples() {
+        ensemble.setModes(new int[] {PositioningEngine.MODE_HIGHEST_RSSI,
+                PositioningEngine.MODE_DENSITY1});
+        PositioningEngine density = ensemble.getMember(1);
+        for (int i = 0; i < 5; i++) {
+            time += 50 * MILLISECOND;
+            assertTrue(ensemble.enqueue(MacAddress.parse(UUIDS[3]), -45, time));
+        }
+        assertEquals(5, density.getScanBuffer().size());
+
+        // Selecting the mode again later must not replay what was heard before it was dropped
+        ensemble.setModes(new int[] {PositioningEngine.MODE_HIGHEST_RSSI});
+        assertTrue(density.getScanBuffer().isEmpty());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsModesSelectedTwice() {
+        ensemble.setModes(new int[] {PositioningEngine.MODE_BAYES, PositioningEngine.MODE_BAYES});
+    }
+
+    @Test
+    public void estimatesOnTheEngineThreads() throws InterruptedException {
+        ensemble.setModes(new int[] {PositioningEngine.MODE_HIGHEST_RSSI,
+                PositioningEngine.MODE_DENSITY1});
+        ensemble.start();
+        try {
+            for (int i = 0; i < 20; i++) {
+                time += 50 * MILLISECOND;
+                assertTrue(ensemble.submit(MacAddress.parse(UUIDS[3]), -45, time));
+            }
+
+            long deadline = System.currentTimeMillis() + 5000;
+            while (ensemble.getCurrentPosition() != 4 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(5);
+            }
+            assertEquals(4, ensemble.getCurrentPosition());
+
+            // Dropping a mode stops its thread, and the remaining mode carries on
+            ensemble.setModes(new int[] {PositioningEngine.MODE_HIGHEST_RSSI});
+            assertEquals(1, ensemble.getMemberCount());
+        } finally {
+            ensemble.stop();
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package com.js.indoornavigator;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.Assert.*;
+
+public class PositioningServiceTest {
+
+    private static final String[] UUIDS = {"D5:00:25:D5:22:A9", "FF:48:85:91:B0:0D",
+            "E7:4E:95:C8:62:A3", "DE:38:78:85:1C:6D", "D1:07:0C:8F:45:90"};
+
+    private static final long INTERVAL_NANOS = 50 * 1000000L;
+
+    // Records the last position reported for each device and which shard reported it
+    private static class LastPositions implements PositioningService.PositionListener {
+        final Map<Long, Integer> positions = new ConcurrentHashMap<>();
+        final Map<Long, Integer> shards = new ConcurrentHashMap<>();
+        volatile boolean shardMismatch;
+
+        @Override
+        public void onPosition(int shard, long device, PositioningEngine engine,
+                long timestampNanos) {
+            positions.put(device, engine.getCurrentPosition());
+            Integer previous = shards.put(device, shard);
+            if (previous != null && previous != shard) {
+                shardMismatch = true;
+            }
+        }
+
+        @Override
+        public void onShardIdle(int shard) {
+
+        }
+    }
+
+    @Test
+    public void devicesMatchStandaloneEngines() {
+        Beacon[] beacons = createBeacons();
+        LastPositions listener = new LastPositions();
+        PositioningService service = new PositioningService(beacons,
+                BeaconNetwork.createDefault(), 3, listener);
+        service.setMode(PositioningEngine.MODE_DENSITY1);
+        service.start();
+
+        // Every device walks along the beacons with its own phase
+        int deviceCount = 50;
+        Map<Long, PositioningEngine> expected = new HashMap<>();
+        PositioningService.Producer producer = service.newProducer();
+        Random random = new Random(3);
+        for (int i = 0; i < 20000; i++) {
+            long device = 0x10000 + random.nextInt(deviceCount);
+            int beacon = random.nextInt(UUIDS.length);
+            int nearest = (int) ((i / 200 + device) % UUIDS.length);
+            int rssi = (beacon == nearest ? -55 : -80) + random.nextInt(5);
+            long mac = MacAddress.parse(UUIDS[beacon]);
+
+            producer.submit(device, mac, rssi, i * INTERVAL_NANOS);
+
+            PositioningEngine engine = expected.get(device);
+            if (engine == null) {
+                engine = new PositioningEngine(beacons, BeaconNetwork.createDefault());
+                engine.setMode(PositioningEngine.MODE_DENSITY1);
+                expected.put(device, engine);
+            }
+            engine.onScanResult(mac, rssi, i * INTERVAL_NANOS);
+        }
+        producer.close();
+        service.stop();
+
+        assertEquals(20000, service.getSampleCount());
+        assertEquals(deviceCount, service.getDeviceCount());
+        assertFalse(listener.shardMismatch);
+        for (Map.Entry<Long, PositioningEngine> entry : expected.entrySet()) {
+            assertEquals(Integer.valueOf(entry.getValue().getCurrentPosition()),
+                    listener.positions.get(entry.getKey()));
+            assertEquals(Integer.valueOf(service.getShard(entry.getKey())),
+                    listener.shards.get(entry.getKey()));
+        }
+    }
+
+    @Test
+    public void producersOnSeveralThreadsLoseNoSamples() throws InterruptedException {
+        final PositioningService service = new PositioningService(createBeacons(),
+                BeaconNetwork.createDefault(), 4, new LastPositions());
+        service.start();
+
+        Thread[] feeds = new Thread[3];
+        for (int t = 0; t < feeds.length; t++) {
+            final int feed = t;
+            feeds[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    PositioningService.Producer producer = service.newProducer();
+                    for (int i = 0; i < 50000; i++) {
+                        producer.submit(feed * 1000 + i % 100,
+                                MacAddress.parse(UUIDS[i % UUIDS.length]), -60, i * INTERVAL_NANOS);
+                    }
+                    producer.close();
+                }
+            });
+            feeds[t].start();
+        }
+        for (Thread feed : feeds) {
+            feed.join();
+        }
+        service.stop();
+
+        assertEquals(150000, service.getSampleCount());
+        assertEquals(300, service.getDeviceCount());
+    }
+
+    @Test
+    public void feedIsParsedAndPositionsAreWritten() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        PositionStreamWriter writer = new PositionStreamWriter(out, 2);
+        PositioningService service = new PositioningService(createBeacons(),
+                BeaconNetwork.createDefault(), 2, writer);
+        service.setMode(PositioningEngine.MODE_WEIGHTED_CENTROID);
+        service.start();
+
+        String feed = "# timestamp device beacon rssi\n"
+                + "1000 AA:BB:CC:00:00:01 D5:00:25:D5:22:A9 -50\n"
+                + "2000\tAABBCC000001\tFF:48:85:91:B0:0D\t-80\r\n"
+                + "3000 AA:BB:CC:00:00:01 not-a-mac -60\n"
+                + "4000 AA:BB:CC:00:00:01 D5:00:25:D5:22:A9 -500\n"
+                + "\n"
+                + "5000,AA:BB:CC:00:00:02,E7:4E:95:C8:62:A3,-55";
+        ScanFeedReader reader = new ScanFeedReader();
+        PositioningService.Producer producer = service.newProducer();
+        assertEquals(3, reader.read(new ByteArrayInputStream(feed.getBytes("UTF-8")), producer));
+        producer.close();
+        service.stop();
+        writer.close();
+
+        assertEquals(2, reader.getMalformedCount());
+        assertEquals(2, service.getDeviceCount());
+
+        String[] lines = out.toString("UTF-8").split("\n");
+        assertEquals(service.getPositionCount(), lines.length);
+        boolean found = false;
+        for (String line : lines) {
+            String[] fields = line.split(" ");
+            assertEquals(5, fields.length);
+            if (fields[0].equals("5000")) {
+                assertEquals("AA:BB:CC:00:00:02", fields[1]);
+                assertEquals("3", fields[2]);
+                assertEquals("6.00", fields[3]);
+                assertEquals("0.00", fields[4]);
+                found = true;
+            }
+        }
+        assertTrue(found);
+    }
+
+    @Test
+    public void dropsSilentDevicesAndBoundsTheirNumber() {
+        PositioningService service = new PositioningService(createBeacons(),
+                BeaconNetwork.createDefault(), 1, new LastPositions());
+        service.setDeviceTtl(10 * 1000000000L);
+        service.setMaxDevices(3);
+        service.start();
+
+        PositioningService.Producer producer = service.newProducer();
+        long mac = MacAddress.parse(UUIDS[0]);
+        for (int device = 1; device <= 5; device++) {
+            producer.submit(device, mac, -60, device * INTERVAL_NANOS);
+        }
+
+        // Device 1 alone keeps sending for a minute, long past the TTL of the others
+        for (int i = 1; i <= 60; i++) {
+            producer.submit(1, mac, -60, i * 1000000000L);
+        }
+        producer.close();
+        service.stop();
+
+        assertEquals(1, service.getDeviceCount());
+        assertEquals(5, service.getDroppedDeviceCount());
+        assertEquals(65, service.getSampleCount());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void settingsAreFixedOnceStarted() {
+        PositioningService service = new PositioningService(createBeacons(),
+                BeaconNetwork.createDefault(), 1, new LastPositions());
+        service.start();
+        try {
+            service.setMode(PositioningEngine.MODE_BAYES);
+        } finally {
+            service.stop();
+        }
+    }
+
+    private Beacon[] createBeacons() {
+        Beacon[] beacons = new Beacon[UUIDS.length];
+        for (int i = 0; i < beacons.length; i++) {
+            beacons[i] = new Beacon(i + 1, "beacon" + i, UUIDS[i], 3 * i, 0);
+        }
+
+        return beacons;
+    }
+}
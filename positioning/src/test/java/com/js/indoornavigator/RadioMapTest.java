@@ -0,0 +1,180 @@
+package com.js.indoornavigator;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class RadioMapTest {
+
+    @Test
+    public void nearestNeighborsMatchLinearScan() throws IOException {
+        RadioMap map = RadioMapFile.read(ByteBuffer.wrap(createSurvey(40, 12, 2)));
+        Random random = new Random(9);
+        int k = 5;
+        int[] points = new int[k];
+        float[] distances = new float[k];
+        float[] query = new float[map.getBeaconCount()];
+
+        for (int q = 0; q < 200; q++) {
+            for (int j = 0; j < query.length; j++) {
+                // Some beacons are missing from the query
+                query[j] = random.nextInt(4) == 0 ? RadioMap.RSSI_FLOOR : -40 - random.nextInt(60);
+            }
+
+            assertEquals(k, map.findNearest(query, k, points, distances));
+
+            float[] expected = new float[map.getPointCount()];
+            for (int i = 0; i < expected.length; i++) {
+                float sum = 0;
+                for (int j = 0; j < query.length; j++) {
+                    float difference = query[j] - map.getRssi(i, j);
+                    sum += difference * difference;
+                }
+                expected[i] = (float) Math.sqrt(sum);
+            }
+            Arrays.sort(expected);
+
+            for (int i = 0; i < k; i++) {
+                assertEquals(expected[i], distances[i], 1e-3);
+            }
+        }
+    }
+
+    @Test
+    public void prunesMostOfTheMap() throws IOException {
+        RadioMap map = RadioMapFile.read(ByteBuffer.wrap(createSurvey(100, 16, 3)));
+        int[] points = new int[4];
+        float[] distances = new float[4];
+        float[] query = new float[map.getBeaconCount()];
+        for (int j = 0; j < query.length; j++) {
+            query[j] = map.getRssi(5050, j);
+        }
+
+        map.findNearest(query, 4, points, distances);
+
+        assertEquals(5050, points[0]);
+        assertEquals(0, distances[0], 0);
+        assertTrue(map.getDistanceCount() < map.getPointCount() / 4);
+    }
+
+    @Test
+    public void mapsFile() throws IOException {
+        File file = File.createTempFile("radiomap", ".bin");
+        file.deleteOnExit();
+        FileOutputStream out = new FileOutputStream(file);
+        out.write(createSurvey(10, 4, 1));
+        out.close();
+
+        RadioMap map = RadioMapFile.map(file);
+
+        assertEquals(100, map.getPointCount());
+        assertEquals(4, map.getBeaconCount());
+        assertEquals(1.5f, map.getX(11), 0);
+        assertEquals(1.5f, map.getY(11), 0);
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsTruncatedMap() throws IOException {
+        byte[] survey = createSurvey(10, 4, 1);
+        RadioMapFile.read(ByteBuffer.wrap(Arrays.copyOf(survey, survey.length - 1)));
+    }
+
+    @Test
+    public void rejectsShortAndCorruptHeaders() throws IOException {
+        byte[] survey = createSurvey(10, 4, 1);
+        ByteBuffer huge = ByteBuffer.wrap(Arrays.copyOf(survey, 64));
+        huge.putInt(8, Integer.MAX_VALUE);
+        huge.putInt(12, Integer.MAX_VALUE);
+
+        ByteBuffer[] corrupt = {ByteBuffer.wrap(new byte[0]),
+                ByteBuffer.wrap(Arrays.copyOf(survey, 10)),
+                ByteBuffer.wrap(Arrays.copyOf(survey, RadioMapFile.HEADER_SIZE + 12)), huge};
+        for (ByteBuffer buffer : corrupt) {
+            try {
+                RadioMapFile.read(buffer);
+                fail("Read a radio map of " + buffer.limit() + " bytes");
+            } catch (IOException expected) {
+                // A corrupt file is an I/O error for the caller rather than a crash
+            }
+        }
+    }
+
+    @Test
+    public void fingerprintModeFindsSurveyedPoint() throws IOException {
+        String[] uuids = {"D5:00:25:D5:22:A9", "FF:48:85:91:B0:0D", "E7:4E:95:C8:62:A3",
+                "DE:38:78:85:1C:6D"};
+        long[] macs = new long[uuids.length];
+        Beacon[] beacons = new Beacon[uuids.length];
+        for (int i = 0; i < uuids.length; i++) {
+            macs[i] = MacAddress.parse(uuids[i]);
+            beacons[i] = new Beacon(i + 1, "beacon" + i, uuids[i]);
+        }
+
+        // Two reference points; the device hears beacon 0 strongly at the first one
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        RadioMapFile.write(out, macs, new float[]{1, 8}, new float[]{1, 8}, new int[]{1, 4},
+                new int[]{-50, -80, -80, RadioMapFile.MISSING_RSSI,
+                        RadioMapFile.MISSING_RSSI, -80, -80, -50});
+
+        PositioningEngine engine = new PositioningEngine(beacons,
+                new BeaconNetwork.Builder(uuids.length).build());
+        engine.setRadioMap(RadioMapFile.read(ByteBuffer.wrap(out.toByteArray())));
+        engine.setMode(PositioningEngine.MODE_FINGERPRINT);
+
+        engine.onScanResult(uuids[0], -52, 1);
+        engine.onScanResult(uuids[1], -79, 2);
+
+        assertTrue(engine.hasPosition());
+        assertEquals(1, engine.getCurrentPosition());
+        assertTrue(engine.getX() < 4.5f);
+
+        engine.onScanResult(uuids[3], -50, 1000000000L);
+        engine.onScanResult(uuids[0], -100, 1000000001L);
+        assertEquals(4, engine.getCurrentPosition());
+    }
+
+    // Survey of a size x size grid of reference points one metre apart, with beacons at random
+    // positions and noisy path loss RSSI values
+    static byte[] createSurvey(int size, int beaconCount, long seed) throws IOException {
+        Random random = new Random(seed);
+        PathLossModel model = new PathLossModel(-59, 2.5);
+
+        long[] macs = new long[beaconCount];
+        double[] beaconX = new double[beaconCount];
+        double[] beaconY = new double[beaconCount];
+        for (int j = 0; j < beaconCount; j++) {
+            macs[j] = j + 1;
+            beaconX[j] = random.nextDouble() * size;
+            beaconY[j] = random.nextDouble() * size;
+        }
+
+        int pointCount = size * size;
+        float[] x = new float[pointCount];
+        float[] y = new float[pointCount];
+        int[] quadrants = new int[pointCount];
+        int[] rssis = new int[pointCount * beaconCount];
+        for (int i = 0; i < pointCount; i++) {
+            x[i] = i % size + 0.5f;
+            y[i] = i / size + 0.5f;
+            quadrants[i] = 1 + (i % size) * 3 / size;
+            for (int j = 0; j < beaconCount; j++) {
+                double rssi = model.rssiAtDistance(Math.hypot(x[i] - beaconX[j], y[i] - beaconY[j]))
+                        + random.nextGaussian() * 2;
+                rssis[i * beaconCount + j] = rssi < RadioMap.RSSI_FLOOR
+                        ? RadioMapFile.MISSING_RSSI : (int) Math.round(rssi);
+            }
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        RadioMapFile.write(out, macs, x, y, quadrants, rssis);
+        return out.toByteArray();
+    }
+}
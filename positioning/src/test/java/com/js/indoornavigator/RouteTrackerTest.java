@@ -0,0 +1,89 @@
+package com.js.indoornavigator;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class RouteTrackerTest {
+
+    private static final int SIZE = 5;
+
+    private RouteTracker tracker;
+
+    // A 5 x 5 grid one metre apart
+    @Before
+    public void setUp() {
+        BeaconNetwork.Builder builder = new BeaconNetwork.Builder(SIZE * SIZE);
+        Beacon[] beacons = new Beacon[SIZE * SIZE];
+        for (int node = 0; node < SIZE * SIZE; node++) {
+            beacons[node] = new Beacon(1, String.valueOf(node), MacAddress.toString(node),
+                    node % SIZE, node / SIZE);
+            if (node % SIZE + 1 < SIZE) {
+                builder.addEdge(node, node + 1);
+            }
+            if (node + SIZE < SIZE * SIZE) {
+                builder.addEdge(node, node + SIZE);
+            }
+        }
+
+        tracker = new RouteTracker(BeaconRouter.create(builder.build(), beacons));
+    }
+
+    @Test
+    public void cutsTheRouteWhileWalkingAlongIt() {
+        assertTrue(tracker.setDestination(0, 4));
+        assertEquals(4, tracker.getRoute().getDistance(), 1e-4);
+
+        assertFalse(tracker.onPosition(0));
+        assertTrue(tracker.onPosition(2));
+        assertArrayEquals(new int[] {2, 3, 4}, tracker.getRoute().toArray());
+        assertEquals(2, tracker.getRoute().getDistance(), 1e-4);
+        assertEquals(1, tracker.getCutCount());
+        assertEquals(1, tracker.getRerouteCount());
+    }
+
+    @Test
+    public void joinsTheRouteFromANeighbour() {
+        tracker.setDestination(0, 4);
+
+        // One step off the route, next to node 2
+        assertTrue(tracker.onPosition(7));
+        assertArrayEquals(new int[] {7, 2, 3, 4}, tracker.getRoute().toArray());
+        assertEquals(3, tracker.getRoute().getDistance(), 1e-4);
+        assertEquals(1, tracker.getJoinCount());
+
+        // Jitter back onto the route and off again, many times over
+        for (int i = 0; i < 100; i++) {
+            tracker.onPosition(2);
+            tracker.onPosition(7);
+        }
+        assertArrayEquals(new int[] {7, 2, 3, 4}, tracker.getRoute().toArray());
+        assertEquals(1, tracker.getRerouteCount());
+    }
+
+    @Test
+    public void ignoresPositionsThatAreNotNodes() {
+        tracker.setDestination(0, 4);
+
+        assertFalse(tracker.onPosition(BeaconRouter.NO_NODE));
+        assertFalse(tracker.onPosition(SIZE * SIZE));
+        assertArrayEquals(new int[] {0, 1, 2, 3, 4}, tracker.getRoute().toArray());
+        assertEquals(1, tracker.getRerouteCount());
+    }
+
+    @Test
+    public void reroutesWhenFarFromTheRoute() {
+        tracker.setDestination(0, 4);
+
+        assertTrue(tracker.onPosition(20));
+        assertEquals(20, tracker.getRoute().getNode(0));
+        assertEquals(4, tracker.getRoute().getDestination());
+        assertEquals(8, tracker.getRoute().getDistance(), 1e-4);
+        assertEquals(2, tracker.getRerouteCount());
+
+        tracker.clearDestination();
+        assertFalse(tracker.onPosition(3));
+        assertTrue(tracker.getRoute().isEmpty());
+    }
+}
@@ -0,0 +1,103 @@
+package com.js.indoornavigator;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class RssiFilterBankTest {
+
+    private static final long INTERVAL_NANOS = 100 * 1000000L;
+
+    @Test
+    public void noFilterPassesReadingsThrough() {
+        RssiFilterBank filters = new RssiFilterBank(2, RssiFilterBank.FILTER_NONE);
+
+        assertEquals(-70, filters.filter(0, -70, 0));
+        assertEquals(-50, filters.filter(0, -50, INTERVAL_NANOS));
+    }
+
+    @Test
+    public void movingAverageFollowsStep() {
+        RssiFilterBank filters = new RssiFilterBank(1, RssiFilterBank.FILTER_EMA);
+        assertEquals(-80, filters.filter(0, -80, 0));
+
+        int first = filters.filter(0, -60, INTERVAL_NANOS);
+        assertTrue(first > -80 && first < -60);
+
+        int last = first;
+        for (int i = 2; i < 40; i++) {
+            last = filters.filter(0, -60, i * INTERVAL_NANOS);
+        }
+        assertEquals(-60, last);
+    }
+
+    @Test
+    public void kalmanReducesNoise() {
+        assertReducesNoise(RssiFilterBank.FILTER_KALMAN);
+    }
+
+    @Test
+    public void medianReducesNoise() {
+        assertReducesNoise(RssiFilterBank.FILTER_MEDIAN);
+    }
+
+    @Test
+    public void medianRejectsOutliers() {
+        RssiFilterBank filters = new RssiFilterBank(1, RssiFilterBank.FILTER_MEDIAN);
+        for (int i = 0; i < RssiFilterBank.MEDIAN_WINDOW; i++) {
+            filters.filter(0, -70, i * INTERVAL_NANOS);
+        }
+
+        assertEquals(-70, filters.filter(0, -30, 10 * INTERVAL_NANOS));
+        assertEquals(-70, filters.filter(0, -30, 11 * INTERVAL_NANOS));
+    }
+
+    @Test
+    public void beaconsAreFilteredIndependently() {
+        RssiFilterBank filters = new RssiFilterBank(2, RssiFilterBank.FILTER_KALMAN);
+        for (int i = 0; i < 20; i++) {
+            filters.filter(0, -50, i * INTERVAL_NANOS);
+        }
+
+        assertEquals(-90, filters.filter(1, -90, 20 * INTERVAL_NANOS));
+        assertEquals(-50, filters.getValue(0), 0.5);
+    }
+
+    @Test
+    public void batchMatchesSingleReadings() {
+        int[] beacons = {0, 1, 0, 2, 1, 0};
+        int[] rssis = {-60, -70, -64, -80, -75, -58};
+        long[] timestamps = {0, 1, 2, 3, 4, 5};
+
+        RssiFilterBank single = new RssiFilterBank(3, RssiFilterBank.FILTER_MEDIAN);
+        int[] expected = new int[rssis.length];
+        for (int i = 0; i < rssis.length; i++) {
+            expected[i] = single.filter(beacons[i], rssis[i], timestamps[i]);
+        }
+
+        RssiFilterBank batch = new RssiFilterBank(3, RssiFilterBank.FILTER_MEDIAN);
+        batch.filter(beacons, rssis, timestamps, rssis.length);
+        assertArrayEquals(expected, rssis);
+    }
+
+    // The filtered readings of a constant RSSI with Gaussian noise must stay closer to the mean
+    private void assertReducesNoise(int type) {
+        RssiFilterBank filters = new RssiFilterBank(1, type);
+        Random random = new Random(5);
+
+        double rawError = 0;
+        double filteredError = 0;
+        for (int i = 0; i < 2000; i++) {
+            int rssi = -70 + (int) Math.round(random.nextGaussian() * 5);
+            int filtered = filters.filter(0, rssi, i * INTERVAL_NANOS);
+            if (i >= 100) {
+                rawError += (rssi + 70) * (rssi + 70);
+                filteredError += (filtered + 70) * (filtered + 70);
+            }
+        }
+
+        assertTrue(filteredError < rawError / 2);
+    }
+}
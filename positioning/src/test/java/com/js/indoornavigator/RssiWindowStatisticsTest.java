@@ -0,0 +1,107 @@
+package com.js.indoornavigator;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class RssiWindowStatisticsTest {
+
+    private static final long MILLISECOND = 1000000L;
+    private static final long SECOND = 1000 * MILLISECOND;
+
+    @Test
+    public void summarizesTheReadingsOfEachBeacon() {
+        RssiWindowStatistics statistics = new RssiWindowStatistics(2, 16, 10 * SECOND);
+        int[] readings = {-60, -62, -70, -58, -65};
+        for (int i = 0; i < readings.length; i++) {
+            statistics.add(0, readings[i], (i + 1) * SECOND);
+        }
+        statistics.add(1, -90, SECOND);
+
+        long now = 5 * SECOND;
+        assertEquals(5, statistics.getCount(0, 10 * SECOND, now));
+        assertEquals(-63, statistics.getMean(0, 10 * SECOND, now), 1e-9);
+        assertEquals(17.6, statistics.getVariance(0, 10 * SECOND, now), 1e-9);
+        assertEquals(-62, statistics.getPercentile(0, 50, now));
+        assertEquals(-70, statistics.getPercentile(0, 0, now));
+        assertEquals(-58, statistics.getPercentile(0, 100, now));
+        assertEquals(-90, statistics.getPercentile(1, 50, now));
+    }
+
+    @Test
+    public void queriesWindowsByTime() {
+        RssiWindowStatistics statistics = new RssiWindowStatistics(1, 64, 10 * SECOND);
+        for (int i = 0; i < 20; i++) {
+            statistics.add(0, i < 10 ? -80 : -60, i * 500 * MILLISECOND);
+        }
+
+        // The last 2 seconds hold only the stronger readings, the last 10 all of them
+        long now = 9500 * MILLISECOND;
+        assertEquals(4, statistics.getCount(0, 2 * SECOND, now));
+        assertEquals(-60, statistics.getMean(0, 2 * SECOND, now), 1e-9);
+        assertEquals(0, statistics.getVariance(0, 2 * SECOND, now), 1e-9);
+        assertEquals(-70, statistics.getMean(0, 10 * SECOND, now), 1e-9);
+
+        // Time moves on with the query, not with the readings
+        assertEquals(0, statistics.getCount(0, 2 * SECOND, 20 * SECOND));
+        assertTrue(Double.isNaN(statistics.getMean(0, 2 * SECOND, 20 * SECOND)));
+        assertEquals(RssiWindowStatistics.NO_RSSI, statistics.getPercentile(0, 50, 20 * SECOND));
+    }
+
+    @Test
+    public void matchesSortedReadingsAsTheWindowSlides() {
+        int capacity = 40;
+        long window = 3 * SECOND;
+        RssiWindowStatistics statistics = new RssiWindowStatistics(1, capacity, window);
+        Random random = new Random(1);
+        int[] readings = new int[1000];
+        long[] times = new long[readings.length];
+        long time = 0;
+
+        for (int i = 0; i < readings.length; i++) {
+            time += random.nextInt(200) * MILLISECOND;
+            readings[i] = -100 + random.nextInt(60);
+            times[i] = time;
+            statistics.add(0, readings[i], time);
+
+            // Readings within the window, at most capacity of them
+            int first = i;
+            while (first > 0 && i - first + 1 < capacity && times[first - 1] > time - window) {
+                first--;
+            }
+            int[] sorted = Arrays.copyOfRange(readings, first, i + 1);
+            Arrays.sort(sorted);
+            double sum = 0;
+            for (int value : sorted) {
+                sum += value;
+            }
+
+            assertEquals(sorted.length, statistics.getCount(0, window, time));
+            assertEquals(sum / sorted.length, statistics.getMean(0, window, time), 1e-9);
+            for (int percentile : new int[] {10, 50, 90}) {
+                int rank = Math.max(1, (int) Math.ceil(percentile / 100.0 * sorted.length));
+                assertEquals(sorted[rank - 1], statistics.getPercentile(0, percentile, time));
+            }
+        }
+    }
+
+    @Test
+    public void clearsABeacon() {
+        RssiWindowStatistics statistics = new RssiWindowStatistics(2, 8, 10 * SECOND);
+        statistics.add(0, -50, SECOND);
+        statistics.add(1, -70, SECOND);
+        statistics.clear(0);
+        statistics.add(0, -55, 2 * SECOND);
+
+        assertEquals(1, statistics.getCount(0, 10 * SECOND, 2 * SECOND));
+        assertEquals(-55, statistics.getPercentile(0, 100, 2 * SECOND));
+        assertEquals(-70, statistics.getPercentile(1, 100, 2 * SECOND));
+
+        // Readings out of range are clamped
+        statistics.add(1, -200, 3 * SECOND);
+        assertEquals(RssiWindowStatistics.MIN_RSSI, statistics.getPercentile(1, 0, 3 * SECOND));
+    }
+}
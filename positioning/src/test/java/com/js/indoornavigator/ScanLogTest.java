@@ -0,0 +1,162 @@
+package com.js.indoornavigator;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class ScanLogTest {
+
+    private static final String[] UUIDS = {"D5:00:25:D5:22:A9", "FF:48:85:91:B0:0D",
+            "E7:4E:95:C8:62:A3", "DE:38:78:85:1C:6D", "D1:07:0C:8F:45:90"};
+
+    private static final long INTERVAL_NANOS = 50 * 1000000L;
+
+    @Test
+    public void recordsRoundTrip() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ScanLogWriter writer = new ScanLogWriter(out, true);
+        for (int i = 0; i < 3000; i++) {
+            writer.append(i * INTERVAL_NANOS, MacAddress.parse(UUIDS[i % UUIDS.length]), -40 - i % 60,
+                    i % 6);
+        }
+        writer.close();
+        assertEquals(3000, writer.getRecordCount());
+        assertEquals(ScanLogWriter.HEADER_SIZE + 3000 * ScanLogWriter.RECORD_SIZE, out.size());
+
+        ScanLogReader reader = new ScanLogReader(new ByteArrayInputStream(out.toByteArray()));
+        for (int i = 0; i < 3000; i++) {
+            assertTrue(reader.next());
+            assertEquals(i * INTERVAL_NANOS, reader.getTimestampNanos());
+            assertEquals(MacAddress.parse(UUIDS[i % UUIDS.length]), reader.getMac());
+            assertEquals(-40 - i % 60, reader.getRssi());
+            assertEquals(i % 6, reader.getGroundTruthQuadrant());
+        }
+        assertFalse(reader.next());
+    }
+
+    @Test
+    public void truncatedRecordIsIgnored() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ScanLogWriter writer = new ScanLogWriter(out, true);
+        writer.append(1, 2, -60, 1);
+        writer.append(3, 4, -70, 2);
+        writer.close();
+
+        byte[] log = Arrays.copyOf(out.toByteArray(), out.size() - 5);
+        ScanLogReader reader = new ScanLogReader(new ByteArrayInputStream(log));
+        assertTrue(reader.next());
+        assertEquals(-60, reader.getRssi());
+        assertFalse(reader.next());
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsOtherFiles() throws IOException {
+        new ScanLogReader(new ByteArrayInputStream(new byte[] {'P', 'K', 3, 4, 0, 0, 0, 0}));
+    }
+
+    @Test
+    public void reopenedFileIsAppended() throws IOException {
+        File file = File.createTempFile("scans", ".log");
+        file.deleteOnExit();
+        assertTrue(file.delete());
+
+        ScanLogWriter writer = new ScanLogWriter(file);
+        writer.append(1, 1, -60, 1);
+        writer.close();
+        writer = new ScanLogWriter(file);
+        writer.append(2, 2, -61, 2);
+        writer.close();
+
+        InputStream in = new FileInputStream(file);
+        try {
+            ScanLogReader reader = new ScanLogReader(in);
+            assertTrue(reader.next());
+            assertEquals(1, reader.getTimestampNanos());
+            assertTrue(reader.next());
+            assertEquals(2, reader.getTimestampNanos());
+            assertFalse(reader.next());
+        } finally {
+            in.close();
+        }
+    }
+
+    @Test
+    public void replayIsDeterministic() throws IOException {
+        ReplayDriver driver = createDriver();
+
+        for (int mode : ReplayDriver.MODES) {
+            if (mode == PositioningEngine.MODE_FINGERPRINT) {
+                continue;
+            }
+            ReplayDriver.Result first = driver.run(mode, RssiFilterBank.FILTER_KALMAN);
+            ReplayDriver.Result second = driver.run(mode, RssiFilterBank.FILTER_KALMAN);
+
+            assertEquals(driver.getSampleCount(), first.samples);
+            assertEquals(first.positionChanges, second.positionChanges);
+            assertEquals(first.correctSamples, second.correctSamples);
+        }
+    }
+
+    @Test
+    public void replayScoresAgainstGroundTruth() throws IOException {
+        ReplayDriver driver = createDriver();
+
+        ReplayDriver.Result result = driver.run(PositioningEngine.MODE_HIGHEST_RSSI);
+        assertEquals(driver.getSampleCount(), result.scoredSamples);
+        assertTrue("accuracy " + result.getAccuracy(), result.getAccuracy() > 0.8);
+
+        List<ReplayDriver.Result> results = driver.runAll(RssiFilterBank.FILTER_NONE);
+        assertEquals(ReplayDriver.MODES.length - 1, results.size());
+    }
+
+    @Test
+    public void readsBeacons() throws IOException {
+        Beacon[] beacons = ReplayDriver.readBeacons(new StringReader(
+                "# quadrant id mac x y txPower\n"
+                        + "1 a D5:00:25:D5:22:A9\n"
+                        + "\n"
+                        + "2 b FF:48:85:91:B0:0D 3 1.5 -62\n"));
+
+        assertEquals(2, beacons.length);
+        assertEquals(2, beacons[1].getQuadrant());
+        assertEquals(3, beacons[1].getX(), 0);
+        assertEquals(1.5, beacons[1].getY(), 0);
+        assertEquals(-62, beacons[1].getTxPower(), 0);
+    }
+
+    // A device that walks along the beacons, next to beacon i for 40 samples at a time, with the
+    // quadrant it is in recorded as the ground truth
+    private ReplayDriver createDriver() throws IOException {
+        Beacon[] beacons = new Beacon[UUIDS.length];
+        for (int i = 0; i < beacons.length; i++) {
+            beacons[i] = new Beacon(i + 1, "beacon" + i, UUIDS[i], 3 * i, 0);
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ScanLogWriter writer = new ScanLogWriter(out, true);
+        Random random = new Random(7);
+        for (int i = 0; i < 2000; i++) {
+            int beacon = i % UUIDS.length;
+            int nearest = (i / 40) % UUIDS.length;
+            int rssi = (beacon == nearest ? -55 : -80) + random.nextInt(7) - 3;
+            writer.append(i * INTERVAL_NANOS, MacAddress.parse(UUIDS[beacon]), rssi, nearest + 1);
+        }
+        writer.close();
+
+        ReplayDriver driver = new ReplayDriver(beacons, BeaconNetwork.createDefault());
+        driver.load(new ByteArrayInputStream(out.toByteArray()));
+        assertEquals(2000, driver.getSampleCount());
+        return driver;
+    }
+}
@@ -0,0 +1,80 @@
+package com.js.indoornavigator;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ScanSampleBufferTest {
+
+    @Test
+    public void countsDroppedSamplesAndOverflows() {
+        ScanSampleBuffer buffer = new ScanSampleBuffer(4);
+        for (int i = 0; i < 6; i++) {
+            buffer.offer(i, -60, i);
+        }
+
+        assertEquals(4, buffer.size());
+        assertEquals(6, buffer.getOfferedCount());
+        assertEquals(2, buffer.getDroppedCount());
+        assertEquals(1, buffer.getOverflowCount());
+
+        final long[] drained = new long[4];
+        final int[] count = new int[1];
+        buffer.drain(new ScanSampleBuffer.SampleHandler() {
+            @Override
+            public void onSample(long mac, int rssi, long timestampNanos) {
+                drained[count[0]++] = mac;
+            }
+        }, 10);
+
+        assertEquals(4, count[0]);
+        assertEquals(3, drained[3]);
+        assertEquals(4, buffer.getHighWaterMark());
+        assertTrue(buffer.isEmpty());
+
+        // A new run of drops is a second overflow
+        for (int i = 0; i < 5; i++) {
+            buffer.offer(i, -60, i);
+        }
+        assertEquals(2, buffer.getOverflowCount());
+    }
+
+    @Test
+    public void deliversSamplesInOrderAcrossThreads() throws Exception {
+        final ScanSampleBuffer buffer = new ScanSampleBuffer(64);
+        final int samples = 100000;
+
+        Thread producer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < samples; i++) {
+                    while (!buffer.offer(i, i & 0x7F, i * 2L)) {
+                        Thread.yield();
+                    }
+                }
+            }
+        });
+        producer.start();
+
+        final long[] expected = new long[1];
+        final boolean[] ordered = {true};
+        ScanSampleBuffer.SampleHandler handler = new ScanSampleBuffer.SampleHandler() {
+            @Override
+            public void onSample(long mac, int rssi, long timestampNanos) {
+                if (mac != expected[0] || rssi != (mac & 0x7F) || timestampNanos != mac * 2) {
+                    ordered[0] = false;
+                }
+                expected[0]++;
+            }
+        };
+        while (expected[0] < samples) {
+            if (buffer.drain(handler, 16) == 0) {
+                Thread.yield();
+            }
+        }
+        producer.join();
+
+        assertTrue(ordered[0]);
+        assertEquals(samples, buffer.getOfferedCount() - buffer.getDroppedCount());
+    }
+}
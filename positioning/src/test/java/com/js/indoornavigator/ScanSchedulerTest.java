@@ -0,0 +1,99 @@
+package com.js.indoornavigator;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ScanSchedulerTest {
+
+    private static final long SECOND = 1000000000L;
+
+    @Test
+    public void backsOffWhileThePositionStaysInTheSameArea() {
+        ScanScheduler scheduler = new ScanScheduler();
+        scheduler.resume(0);
+        assertEquals(ScanScheduler.LEVEL_ACTIVE, scheduler.getLevel(0));
+        assertEquals(Long.MAX_VALUE, scheduler.getNextChangeNanos(0));
+
+        scheduler.onPosition(true, 2, true, 4.5f, 1.5f, SECOND);
+        assertEquals(11 * SECOND, scheduler.getNextChangeNanos(SECOND));
+
+        // Jitter within the radius does not count as moving
+        assertFalse(scheduler.onPosition(true, 2, true, 5.0f, 1.0f, 5 * SECOND));
+        assertEquals(ScanScheduler.LEVEL_SETTLING, scheduler.getLevel(11 * SECOND));
+        assertTrue(scheduler.isScanning(11 * SECOND));
+        assertEquals(61 * SECOND, scheduler.getNextChangeNanos(11 * SECOND));
+
+        // Stationary scans for 2 of every 10 seconds
+        scheduler.setBeaconTtl(30 * SECOND);
+        assertEquals(ScanScheduler.LEVEL_STATIONARY, scheduler.getLevel(61 * SECOND));
+        assertTrue(scheduler.isScanning(62 * SECOND));
+        assertEquals(63 * SECOND, scheduler.getNextChangeNanos(62 * SECOND));
+        assertFalse(scheduler.isScanning(64 * SECOND));
+        assertEquals(71 * SECOND, scheduler.getNextChangeNanos(64 * SECOND));
+        assertTrue(scheduler.isScanning(71 * SECOND));
+
+        // Leaving the area scans at full rate again
+        assertTrue(scheduler.onPosition(true, 3, true, 7.5f, 1.5f, 72 * SECOND));
+        assertEquals(ScanScheduler.LEVEL_ACTIVE, scheduler.getLevel(72 * SECOND));
+    }
+
+    @Test
+    public void pausesShorterThanTheBeaconTtl() {
+        ScanScheduler scheduler = new ScanScheduler();
+        scheduler.setBeaconTtl(SECOND);
+        scheduler.resume(0);
+        scheduler.onPosition(true, 2, false, 0, 0, 0);
+
+        // Scans for 2 seconds and pauses for half of the TTL
+        assertTrue(scheduler.isScanning(61 * SECOND));
+        assertEquals(62 * SECOND, scheduler.getNextChangeNanos(61 * SECOND));
+        assertFalse(scheduler.isScanning(62 * SECOND));
+        assertEquals(62 * SECOND + SECOND / 2, scheduler.getNextChangeNanos(62 * SECOND));
+        assertTrue(scheduler.isScanning(62 * SECOND + SECOND / 2));
+    }
+
+    @Test
+    public void quadrantModesSettleInAQuadrant() {
+        ScanScheduler scheduler = new ScanScheduler();
+        scheduler.resume(0);
+        scheduler.onPosition(true, 1, false, 0, 0, 0);
+        assertEquals(ScanScheduler.LEVEL_SETTLING, scheduler.getLevel(20 * SECOND));
+
+        assertTrue(scheduler.onPosition(true, 2, false, 0, 0, 20 * SECOND));
+        assertEquals(ScanScheduler.LEVEL_ACTIVE, scheduler.getLevel(20 * SECOND));
+
+        // Losing the position, as when the mode changes, also scans at full rate
+        scheduler.onPosition(true, 2, false, 0, 0, 20 * SECOND);
+        assertTrue(scheduler.onPosition(false, 0, false, 0, 0, 40 * SECOND));
+        assertEquals(ScanScheduler.LEVEL_ACTIVE, scheduler.getLevel(100 * SECOND));
+    }
+
+    @Test
+    public void scanModesStepDownFromTheConfiguredMode() {
+        assertEquals(2, ScanScheduler.getScanMode(ScanScheduler.LEVEL_ACTIVE, 2));
+        assertEquals(1, ScanScheduler.getScanMode(ScanScheduler.LEVEL_SETTLING, 2));
+        assertEquals(0, ScanScheduler.getScanMode(ScanScheduler.LEVEL_SETTLING, 0));
+        assertEquals(0, ScanScheduler.getScanMode(ScanScheduler.LEVEL_STATIONARY, 2));
+    }
+
+    @Test
+    public void measuresDutyCycleAndRateWhileResumed() {
+        ScanScheduler scheduler = new ScanScheduler();
+        scheduler.resume(0);
+        scheduler.setScanning(true, 0);
+        for (int i = 0; i < 20; i++) {
+            scheduler.recordCallback();
+        }
+        scheduler.setScanning(false, 2 * SECOND);
+        scheduler.pause(4 * SECOND);
+
+        // Time spent paused is not counted
+        assertEquals(0.5, scheduler.getDutyCycle(100 * SECOND), 1e-9);
+        assertEquals(5, scheduler.getCallbacksPerSecond(100 * SECOND), 1e-9);
+
+        scheduler.resume(100 * SECOND);
+        assertEquals(ScanScheduler.LEVEL_ACTIVE, scheduler.getLevel(100 * SECOND));
+        assertEquals(0.4, scheduler.getDutyCycle(101 * SECOND), 1e-9);
+    }
+}
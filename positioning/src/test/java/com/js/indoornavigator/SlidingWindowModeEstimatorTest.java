@@ -0,0 +1,84 @@
+package com.js.indoornavigator;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class SlidingWindowModeEstimatorTest {
+
+    @Test
+    public void matchesFullRescan() {
+        int keyCount = 50;
+        int window = 20;
+        SlidingWindowModeEstimator estimator = new SlidingWindowModeEstimator(keyCount, window);
+        int[] history = new int[10000];
+        Random random = new Random(3);
+
+        for (int i = 0; i < history.length; i++) {
+            // Skewed keys so that the mode changes now and then
+            history[i] = Math.min(random.nextInt(keyCount), random.nextInt(keyCount));
+            int mode = estimator.add(history[i], i);
+
+            int[] counts = new int[keyCount];
+            int largest = 0;
+            for (int j = Math.max(0, i - window + 1); j <= i; j++) {
+                largest = Math.max(largest, ++counts[history[j]]);
+            }
+
+            assertEquals(largest, estimator.getModeCount());
+            assertEquals(largest, counts[mode]);
+            assertEquals(Math.min(i + 1, window), estimator.size());
+        }
+    }
+
+    @Test
+    public void keepsFirstKeyOnTies() {
+        SlidingWindowModeEstimator estimator = new SlidingWindowModeEstimator(3, 4);
+        estimator.add(2, 0);
+        estimator.add(1, 1);
+        assertEquals(2, estimator.getMode());
+
+        estimator.add(1, 2);
+        assertEquals(1, estimator.getMode());
+
+        // Evicting the oldest 2 leaves key 1 ahead
+        estimator.add(0, 3);
+        estimator.add(0, 4);
+        assertEquals(1, estimator.getMode());
+        assertEquals(2, estimator.getCount(0));
+    }
+
+    @Test
+    public void evictsSamplesOlderThanTheWindow() {
+        SlidingWindowModeEstimator estimator = new SlidingWindowModeEstimator(2, 100);
+        estimator.setWindow(100, 1000);
+
+        estimator.add(0, 0);
+        estimator.add(0, 100);
+        estimator.add(1, 900);
+        assertEquals(0, estimator.getMode());
+
+        estimator.add(1, 1050);
+        assertEquals(3, estimator.size());
+        assertEquals(1, estimator.getMode());
+
+        estimator.expire(5000);
+        assertEquals(0, estimator.size());
+        assertEquals(-1, estimator.getMode());
+    }
+
+    @Test
+    public void shrinkingTheWindowEvictsOldestSamples() {
+        SlidingWindowModeEstimator estimator = new SlidingWindowModeEstimator(2, 10);
+        for (int i = 0; i < 6; i++) {
+            estimator.add(i < 4 ? 0 : 1, i);
+        }
+
+        estimator.setWindow(2, 0);
+        assertEquals(2, estimator.size());
+        assertEquals(1, estimator.getMode());
+        assertEquals(0, estimator.getCount(0));
+    }
+}
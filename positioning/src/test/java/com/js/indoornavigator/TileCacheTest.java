@@ -0,0 +1,136 @@
+package com.js.indoornavigator;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class TileCacheTest {
+
+    private static class Evictions implements TileCache.EvictionListener<String> {
+        final List<Long> keys = new ArrayList<>();
+
+        @Override
+        public void onEvicted(long key, String value) {
+            keys.add(key);
+        }
+    }
+
+    @Test
+    public void leastRecentlyUsedTileIsEvicted() {
+        Evictions evictions = new Evictions();
+        TileCache<String> cache = new TileCache<>(300, 16, evictions);
+        cache.put(1, "a", 100);
+        cache.put(2, "b", 100);
+        cache.put(3, "c", 100);
+
+        // Using 1 makes 2 the oldest
+        assertEquals("a", cache.get(1));
+        cache.put(4, "d", 100);
+
+        assertFalse(cache.contains(2));
+        assertTrue(cache.contains(1));
+        assertTrue(cache.contains(3));
+        assertEquals(1, evictions.keys.size());
+        assertEquals(Long.valueOf(2), evictions.keys.get(0));
+        assertEquals(300, cache.getBytes());
+    }
+
+    @Test
+    public void largeTileEvictsSeveral() {
+        Evictions evictions = new Evictions();
+        TileCache<String> cache = new TileCache<>(300, 16, evictions);
+        cache.put(1, "a", 100);
+        cache.put(2, "b", 100);
+        cache.put(3, "c", 100);
+        cache.put(4, "d", 250);
+
+        assertEquals(1, cache.size());
+        assertEquals(250, cache.getBytes());
+        assertEquals(3, cache.getEvictionCount());
+
+        // Larger than the whole cache: not kept, and nothing else is evicted for it
+        cache.put(5, "e", 301);
+        assertFalse(cache.contains(5));
+        assertTrue(cache.contains(4));
+    }
+
+    @Test
+    public void entryLimitIsKept() {
+        TileCache<String> cache = new TileCache<>(1000, 2, null);
+        cache.put(1, "a", 1);
+        cache.put(2, "b", 1);
+        cache.put(3, "c", 1);
+
+        assertEquals(2, cache.size());
+        assertNull(cache.get(1));
+        assertEquals("c", cache.get(3));
+    }
+
+    @Test
+    public void replacingKeepsSizesRight() {
+        TileCache<String> cache = new TileCache<>(1000, 4, null);
+        cache.put(1, "a", 100);
+        cache.put(1, "b", 200);
+        cache.put(2, null, 0);
+
+        assertEquals(2, cache.size());
+        assertEquals(200, cache.getBytes());
+        assertEquals("b", cache.get(1));
+
+        // Undecodable tiles are remembered but read as missing
+        assertTrue(cache.contains(2));
+        assertNull(cache.get(2));
+
+        assertTrue(cache.remove(1));
+        assertFalse(cache.remove(1));
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getBytes());
+    }
+
+    @Test
+    public void matchesReferenceUnderRandomUse() {
+        int maxEntries = 32;
+        TileCache<String> cache = new TileCache<>(2000, maxEntries, null);
+        List<Long> reference = new ArrayList<>();
+        List<Integer> sizes = new ArrayList<>();
+        Random random = new Random(4);
+
+        for (int i = 0; i < 20000; i++) {
+            long key = FloorPlan.tileKey(random.nextInt(3), random.nextInt(8), random.nextInt(8));
+            int index = reference.indexOf(key);
+            if (random.nextBoolean()) {
+                String value = cache.get(key);
+                assertEquals(index >= 0, value != null);
+                if (index >= 0) {
+                    assertEquals(Long.toString(key), value);
+                    reference.add(reference.remove(index));
+                    sizes.add(sizes.remove(index));
+                }
+            }
+            else {
+                int size = 20 + random.nextInt(150);
+                cache.put(key, Long.toString(key), size);
+                if (index >= 0) {
+                    reference.remove(index);
+                    sizes.remove(index);
+                }
+                long total = size;
+                for (int s : sizes) {
+                    total += s;
+                }
+                while (!reference.isEmpty() && (total > 2000 || reference.size() == maxEntries)) {
+                    reference.remove(0);
+                    total -= sizes.remove(0);
+                }
+                reference.add(key);
+                sizes.add(size);
+            }
+            assertEquals(reference.size(), cache.size());
+        }
+    }
+}
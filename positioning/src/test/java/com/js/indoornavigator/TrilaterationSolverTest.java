@@ -0,0 +1,75 @@
+package com.js.indoornavigator;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class TrilaterationSolverTest {
+
+    private static final float[] BEACON_X = {0, 10, 0, 10};
+    private static final float[] BEACON_Y = {0, 0, 10, 10};
+
+    @Test
+    public void recoversPositionFromExactRanges() {
+        TrilaterationSolver solver = new TrilaterationSolver(BEACON_X.length);
+
+        assertTrue(solver.solve(BEACON_X, BEACON_Y, ranges(2, 7), BEACON_X.length));
+
+        assertEquals(2, solver.getX(), 1e-3);
+        assertEquals(7, solver.getY(), 1e-3);
+        assertEquals(0, solver.getRmsResidual(), 1e-3);
+        assertTrue(solver.getIterations() > 0);
+        assertTrue(solver.getIterations() <= TrilaterationSolver.MAX_ITERATIONS);
+    }
+
+    @Test
+    public void leastSquaresBeatsWeightedCentroid() {
+        TrilaterationSolver solver = new TrilaterationSolver(BEACON_X.length);
+        double[] distances = ranges(2, 7);
+
+        solver.solveWeightedCentroid(BEACON_X, BEACON_Y, distances, BEACON_X.length);
+        double centroidError = Math.hypot(solver.getX() - 2, solver.getY() - 7);
+        assertEquals(0, solver.getIterations());
+
+        solver.solve(BEACON_X, BEACON_Y, distances, BEACON_X.length);
+        double solveError = Math.hypot(solver.getX() - 2, solver.getY() - 7);
+
+        assertTrue(solveError < centroidError);
+        assertEquals(2, solver.getSolveCount());
+    }
+
+    @Test
+    public void fallsBackToCentroidWithTwoBeacons() {
+        TrilaterationSolver solver = new TrilaterationSolver(BEACON_X.length);
+
+        assertTrue(solver.solve(BEACON_X, BEACON_Y, new double[]{5, 5}, 2));
+        assertEquals(5, solver.getX(), 1e-6);
+        assertEquals(0, solver.getY(), 1e-6);
+        assertFalse(solver.solve(BEACON_X, BEACON_Y, new double[0], 0));
+    }
+
+    @Test
+    public void calibrationRecoversPathLossModel() {
+        PathLossModel truth = new PathLossModel(-65, 2.7);
+        double[] distances = {0.5, 1, 2, 4, 8, 16};
+        double[] rssis = new double[distances.length];
+        for (int i = 0; i < distances.length; i++) {
+            rssis[i] = truth.rssiAtDistance(distances[i]);
+        }
+
+        PathLossModel model = PathLossModel.calibrate(distances, rssis, distances.length);
+
+        assertEquals(-65, model.getTxPower(), 1e-9);
+        assertEquals(2.7, model.getExponent(), 1e-9);
+        assertEquals(4, model.distanceAtRssi(model.rssiAtDistance(4)), 1e-9);
+    }
+
+    private double[] ranges(double x, double y) {
+        double[] distances = new double[BEACON_X.length];
+        for (int i = 0; i < distances.length; i++) {
+            distances[i] = Math.hypot(x - BEACON_X[i], y - BEACON_Y[i]);
+        }
+
+        return distances;
+    }
+}